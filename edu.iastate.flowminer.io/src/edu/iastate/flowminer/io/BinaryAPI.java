@@ -0,0 +1,910 @@
+package edu.iastate.flowminer.io;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.ontopia.utils.CompactHashMap;
+import net.ontopia.utils.CompactHashSet;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+
+import edu.iastate.flowminer.io.StreamAPI.DenseStreamImporter;
+import edu.iastate.flowminer.io.StreamAPI.SizedStreamImporter;
+import edu.iastate.flowminer.io.StreamAPI.StreamImporter;
+import edu.iastate.flowminer.io.common.BinaryReader;
+import edu.iastate.flowminer.io.common.BinaryWriter;
+import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.common.IdMap;
+import edu.iastate.flowminer.io.log.Log;
+import edu.iastate.flowminer.io.model.AnnotationTypeElement;
+import edu.iastate.flowminer.io.model.Attribute;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.ConstructorElement;
+import edu.iastate.flowminer.io.model.Element;
+import edu.iastate.flowminer.io.model.EnumConstantElement;
+import edu.iastate.flowminer.io.model.EnumTypeElement;
+import edu.iastate.flowminer.io.model.FieldVarElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.InterfaceTypeElement;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.LocalVarElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.NonPrimitiveTypeElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.io.model.ParamVarElement;
+import edu.iastate.flowminer.io.model.PrimitiveTypeElement;
+import edu.iastate.flowminer.io.model.Relationship;
+import edu.iastate.flowminer.io.model.ReturnVarElement;
+import edu.iastate.flowminer.io.model.ThisVarElement;
+import edu.iastate.flowminer.io.model.VarElement;
+import edu.iastate.flowminer.io.model.XMLConvertable;
+
+/**
+ * Compact binary summaries, holding exactly what the gzipped XML written by
+ * {@link ModelAPI} does but without any text to parse. {@link ModelAPI} and
+ * {@link StreamAPI} recognize binary summaries by their magic number, so the
+ * two formats can be used interchangeably, and {@link #convert} translates
+ * between them.
+ * <p>
+ * All integers are LEB128 varints, those which may be negative zigzag encoded:
+ * <pre>
+ * file:    "FMSB" version strings header record* END
+ * strings: count (byteLength utf8Bytes)*
+ * header:  author hasCreated [createdMillis] numElements dependencyOrdered maxID counts
+ * counts:  count (kind number)*
+ * record:  kind name idDelta tagCount tag* attrCount (key value)* fields [record* END]
+ * </pre>
+ * Strings are indices into the string table plus one, zero meaning null. The
+ * kind byte names the {@link Element} subclass; where a record sits (say, a
+ * class in a package versus a local class) follows from its parent, exactly
+ * as in the XML. Each id is stored relative to the previous record's id and
+ * each reference relative to the referring element's id, so most take a byte
+ * or two, fewer still for dependency ordered summaries. Container records
+ * (libraries, packages, types and methods) end their children with END; a
+ * method's parameters are part of its fields since its callback needs them.
+ */
+public class BinaryAPI {
+	private static final byte[] MAGIC = {'F', 'M', 'S', 'B'};
+	private static final int VERSION = 3;
+
+	// Record kinds, one per Element subclass
+	private static final int END = 0;
+	private static final int PRIMITIVE = 1;
+	private static final int LIBRARY = 2;
+	private static final int PACKAGE = 3;
+	private static final int CLASS = 4;
+	private static final int INTERFACE = 5;
+	private static final int ENUM = 6;
+	private static final int ANNOTATION = 7;
+	private static final int CONSTRUCTOR = 8;
+	private static final int METHOD = 9;
+	private static final int FIELD = 10;
+	private static final int ENUM_CONSTANT = 11;
+	private static final int PARAM = 12;
+	private static final int RETURN = 13;
+	private static final int THIS = 14;
+	private static final int LOCAL = 15;
+	private static final int RELATIONSHIP = 16;
+
+	/**
+	 * @param path
+	 * @return true if the file starts with the binary summary magic number
+	 */
+	public static boolean isBinary(String path){
+		InputStream in = null;
+		try{
+			in = new FileInputStream(path);
+			byte[] magic = new byte[MAGIC.length];
+			int read = 0;
+			while(read < magic.length){
+				int n = in.read(magic, read, magic.length - read);
+				if(n < 0) return false;
+				read += n;
+			}
+			return Arrays.equals(magic, MAGIC);
+		}catch(java.io.IOException e){
+			return false;
+		}finally{
+			if(in != null){
+				try{
+					in.close();
+				}catch(java.io.IOException e){}
+			}
+		}
+	}
+
+	public static void exportToFile(final IProgressMonitor mon, final IOModel model, final String destination)
+			throws Throwable {
+		final Throwable[] error = new Throwable[1];
+
+		class JobExporter{
+			IProgressMonitor monitor;
+			public JobExporter(IProgressMonitor monitor){
+				this.monitor = monitor;
+			}
+
+			IStatus doExport(){
+				try{
+					BinaryWriter out = new BinaryWriter(new FileOutputStream(destination));
+					try{
+						new Writer(out, model.exportIds(false)).write(model);
+					}finally{
+						out.close();
+					}
+
+					return Status.OK_STATUS;
+				}catch(Throwable t){
+					error[0] = t;
+					Log.error("IO export problem", error[0]);
+					return new Status(Status.ERROR, Log.pluginid, "Exception thrown during export", t);
+				}
+				finally{
+					monitor.done();
+				}
+			}
+		}
+
+		if(mon == null){
+			Job job = new Job("FlowMiner exporting binary summaries to file."){
+				@Override
+				protected IStatus run(final IProgressMonitor monitor) {
+					return new JobExporter(monitor).doExport();
+				}
+			};
+			job.setPriority(Job.LONG);
+			job.schedule();
+			job.join();
+		} else{
+			if(mon.isCanceled()) return;
+			try{
+				new JobExporter(mon).doExport();
+			}finally{
+				mon.done();
+			}
+		}
+
+		if(error[0] != null) throw error[0];
+	}
+
+	public static IOModel importFromFile(final IProgressMonitor mon, final String source) throws Throwable {
+		final IOModel[] result = new IOModel[1];
+		final Throwable[] error = new Throwable[1];
+
+		class JobImporter{
+			IProgressMonitor monitor;
+			public JobImporter(IProgressMonitor monitor){
+				this.monitor = monitor;
+			}
+
+			IStatus doImport(){
+				try{
+					result[0] = readModel(monitor, source);
+					return Status.OK_STATUS;
+				}catch(Throwable t){
+					error[0] = t;
+					Log.error("IO import problem", error[0]);
+					return new Status(Status.ERROR, Log.pluginid, "Exception thrown during import", t);
+				}
+				finally{
+					monitor.done();
+				}
+			}
+		}
+
+		if(mon == null){
+			Job job = new Job("FlowMiner importing binary summaries from file"){
+				@Override
+				protected IStatus run(final IProgressMonitor monitor) {
+					return new JobImporter(monitor).doImport();
+				}
+			};
+			job.setPriority(Job.LONG);
+			job.schedule();
+			job.join();
+		} else{
+			if(mon.isCanceled()) return null;
+			try{
+				new JobImporter(mon).doImport();
+			}finally{
+				mon.done();
+			}
+		}
+
+		if(error[0] != null) throw error[0];
+		return result[0];
+	}
+
+	public static void importFromFile(final IProgressMonitor mon, final String source, final StreamImporter importer) throws Throwable {
+		final Throwable[] error = new Throwable[1];
+
+		class JobImporter{
+			IProgressMonitor monitor;
+			public JobImporter(IProgressMonitor monitor){
+				this.monitor = monitor;
+			}
+
+			IStatus doImport(){
+				try{
+					streamImport(monitor, source, importer);
+					return Status.OK_STATUS;
+				}catch(Throwable t){
+					error[0] = t;
+					Log.error("IO import problem", error[0]);
+					return new Status(Status.ERROR, Log.pluginid, "Exception thrown during import", t);
+				}
+				finally{
+					monitor.done();
+				}
+			}
+		}
+
+		if(mon == null){
+			Job job = new Job("Using Binary API to Import File"){
+				@Override
+				protected IStatus run(final IProgressMonitor monitor) {
+					return new JobImporter(monitor).doImport();
+				}
+			};
+			job.setPriority(Job.LONG);
+			job.schedule();
+			job.join();
+		} else{
+			if(mon.isCanceled()) return;
+			try{
+				new JobImporter(mon).doImport();
+			}finally{
+				mon.done();
+			}
+		}
+
+		if(error[0] != null) throw error[0];
+	}
+
+	/**
+	 * Convert a summary to the other format: binary summaries become gzipped
+	 * XML and vice versa.
+	 */
+	public static void convert(final IProgressMonitor mon, final String source, final String destination) throws Throwable {
+		SubMonitor sm = mon == null ? null : SubMonitor.convert(mon, 2);
+		try{
+			boolean binary = isBinary(source);
+			IOModel model = ModelAPI.importFromFile(sm == null ? null : sm.newChild(1), source);
+			if(binary){
+				ModelAPI.exportToFile(sm == null ? null : sm.newChild(1), model, destination);
+			}else{
+				exportToFile(sm == null ? null : sm.newChild(1), model, destination);
+			}
+		}finally{
+			if(mon != null) mon.done();
+		}
+	}
+
+	static IOModel readModel(IProgressMonitor mon, String source){
+		final ModelBuilder builder = new ModelBuilder();
+		Reader reader = new Reader(source){
+			@Override
+			void header(){
+				builder.model = new IOModel(author, created);
+				builder.model.getCounts().putAll(counts);
+			}
+
+			@Override
+			void element(Element e, Element parent){
+				builder.attach(e, parent);
+			}
+		};
+		reader.read(mon);
+		return builder.model;
+	}
+
+	static void streamImport(final IProgressMonitor mon, String source, final StreamImporter importer){
+		final IProgressMonitor[] progress = new IProgressMonitor[]{mon};
+		final PrecedenceCallbackRunner pcr = new PrecedenceCallbackRunner(mon);
+		final RelationshipBatcher batch = RelationshipBatcher.create(importer);
+		Reader reader = new Reader(source){
+			@Override
+			void header(){
+				if(numElements > -1) progress[0] = SubMonitor.convert(mon, (int) numElements);
+				if(maxID != StreamImporter.NOT_DEFINED){
+					pcr.setMaxID(maxID);
+					if(importer instanceof DenseStreamImporter) ((DenseStreamImporter) importer).processMaxID(maxID);
+				}
+				pcr.setExpectedSize(numElements);
+				if(!counts.isEmpty() && importer instanceof SizedStreamImporter)
+					((SizedStreamImporter) importer).processCounts(Collections.unmodifiableMap(counts));
+				importer.processIOModel(author, created);
+				progress[0].worked(1);
+			}
+
+			@Override
+			void element(Element e, Element parent){
+				long parentID = parent == null ? (long) -1 : parent.getId();
+				pcr.callback(new ElementCallback(importer, batch, progress[0], e, parentID));
+				if(e instanceof MethodElement){
+					for(ParamVarElement p : ((MethodElement) e).getParam())
+						pcr.callback(new ElementCallback(importer, batch, progress[0], p, e.getId()));
+				}
+			}
+		};
+		try{
+			reader.read(mon);
+			if(batch != null) batch.flush();
+		}finally{
+			if(progress[0] != mon) progress[0].done();
+		}
+	}
+
+	/**
+	 * Writes a model in document order, the same order as the XML.
+	 */
+	private static class Writer{
+		BinaryWriter out;
+		Map<String, Integer> stringIndex = new CompactHashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		long lastID;
+
+		// Null to write ids as they are
+		IdMap ids;
+
+		Writer(BinaryWriter out, IdMap ids){
+			this.out = out;
+			this.ids = ids;
+		}
+
+		private long id(long id){
+			return ids == null ? id : ids.get(id);
+		}
+
+		void write(IOModel model){
+			Map<String, Long> counts = model.countElements();
+			for(String kind : counts.keySet()) addString(kind);
+			collectStrings(model);
+
+			out.writeBytes(MAGIC);
+			out.writeVarLong(VERSION);
+			out.writeVarLong(strings.size());
+			for(String s : strings) out.writeString(s);
+
+			writeString(model.getAuthor());
+			Date created = model.getCreated();
+			out.writeByte(created == null ? 0 : 1);
+			if(created != null) out.writeSignedVarLong(created.getTime());
+			out.writeVarLong(model.subtreeSize());
+			out.writeByte(ids != null && ids.isDependencyOrdered() ? 1 : 0);
+			out.writeSignedVarLong(ids == null ? (long) StreamImporter.NOT_DEFINED : ids.getMaxID());
+			out.writeVarLong(counts.size());
+			for(Map.Entry<String, Long> count : counts.entrySet()){
+				writeString(count.getKey());
+				out.writeVarLong(count.getValue());
+			}
+
+			for(PrimitiveTypeElement e : model.getPrimitive()) writeRecord(PRIMITIVE, e);
+			for(LibraryElement e : model.getLibrary()) writeRecord(LIBRARY, e);
+			for(Relationship e : model.getRelationship()) writeRecord(RELATIONSHIP, e);
+			out.writeByte(END);
+		}
+
+		private void collectStrings(IOModel model){
+			addString(model.getAuthor());
+			for(Element e : model.getPrimitive()) collectStrings(e);
+			for(Element e : model.getLibrary()) collectStrings(e);
+			for(Element e : model.getRelationship()) collectStrings(e);
+		}
+
+		private void collectStrings(Element e){
+			addString(e.getName());
+			for(String s : e.getTag()) addString(s);
+			for(Attribute a : e.getAttr()){
+				addString(a.getKey());
+				addString(a.getValue());
+			}
+			if(e instanceof LocalVarElement) addString(((LocalVarElement) e).getSchemaType());
+			if(e instanceof Relationship) addString(((Relationship) e).getSchemaType());
+			for(Element child : children(e)) collectStrings(child);
+			if(e instanceof MethodElement){
+				for(Element p : ((MethodElement) e).getParam()) collectStrings(p);
+			}
+		}
+
+		private void addString(String s){
+			if(s == null || stringIndex.containsKey(s)) return;
+			stringIndex.put(s, strings.size() + 1);
+			strings.add(s);
+		}
+
+		private void writeString(String s){
+			out.writeVarLong(s == null ? 0 : stringIndex.get(s));
+		}
+
+		private void writeRecord(int kind, Element e){
+			out.writeByte(kind);
+			writeString(e.getName());
+			long id = id(e.getId());
+			out.writeSignedVarLong(id - lastID);
+			lastID = id;
+
+			out.writeVarLong(e.getTag().size());
+			for(String s : e.getTag()) writeString(s);
+			out.writeVarLong(e.getAttr().size());
+			for(Attribute a : e.getAttr()){
+				writeString(a.getKey());
+				writeString(a.getValue());
+			}
+
+			if(e instanceof VarElement){
+				VarElement v = (VarElement) e;
+				out.writeSignedVarLong(id(v.getType()) - id);
+				out.writeSignedVarLong(v.getArray_dim());
+				if(e instanceof ParamVarElement){
+					out.writeSignedVarLong(((ParamVarElement) e).getParam_idx());
+				}else if(e instanceof LocalVarElement){
+					writeString(((LocalVarElement) e).getSchemaType());
+					out.writeSignedVarLong(((LocalVarElement) e).getParamIdx());
+				}
+			}else if(e instanceof NonPrimitiveTypeElement){
+				NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+				boolean extend = t.getExtend() != XMLConvertable.NOT_DEFINED;
+				out.writeByte(extend ? 1 : 0);
+				if(extend) out.writeSignedVarLong(id(t.getExtend()) - id);
+				writeReferences(t.getImplement(), id);
+			}else if(e instanceof MethodElement){
+				MethodElement m = (MethodElement) e;
+				writeReferences(m.getOverrides(), id);
+				out.writeVarLong(m.getParam().size());
+				for(ParamVarElement p : m.getParam()) writeRecord(PARAM, p);
+			}else if(e instanceof Relationship){
+				Relationship r = (Relationship) e;
+				out.writeSignedVarLong(id(r.getOrigin_id()) - id);
+				out.writeSignedVarLong(id(r.getDest_id()) - id);
+				writeString(r.getSchemaType());
+			}
+
+			if(isContainer(kind)){
+				for(Element child : children(e)) writeRecord(kindOf(child), child);
+				out.writeByte(END);
+			}
+		}
+
+		private void writeReferences(Set<Long> references, long id){
+			out.writeVarLong(references.size());
+			for(Long l : references) out.writeSignedVarLong(id(l) - id);
+		}
+	}
+
+	private static boolean isContainer(int kind){
+		switch(kind){
+		case LIBRARY:
+		case PACKAGE:
+		case CLASS:
+		case INTERFACE:
+		case ENUM:
+		case ANNOTATION:
+		case CONSTRUCTOR:
+		case METHOD:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static int kindOf(Element e){
+		if(e instanceof ClassTypeElement) return CLASS;
+		if(e instanceof InterfaceTypeElement) return INTERFACE;
+		if(e instanceof EnumTypeElement) return ENUM;
+		if(e instanceof AnnotationTypeElement) return ANNOTATION;
+		if(e instanceof ConstructorElement) return CONSTRUCTOR;
+		if(e instanceof MethodElement) return METHOD;
+		if(e instanceof FieldVarElement) return FIELD;
+		if(e instanceof EnumConstantElement) return ENUM_CONSTANT;
+		if(e instanceof ParamVarElement) return PARAM;
+		if(e instanceof ReturnVarElement) return RETURN;
+		if(e instanceof ThisVarElement) return THIS;
+		if(e instanceof LocalVarElement) return LOCAL;
+		if(e instanceof PackageElement) return PACKAGE;
+		if(e instanceof LibraryElement) return LIBRARY;
+		if(e instanceof PrimitiveTypeElement) return PRIMITIVE;
+		if(e instanceof Relationship) return RELATIONSHIP;
+		throw new IOException("No binary record kind for " + e.getClass().getName());
+	}
+
+	/**
+	 * Children in the order the XML writes them, not counting a method's
+	 * parameters.
+	 */
+	private static List<Element> children(Element e){
+		List<Element> children = new ArrayList<Element>();
+		if(e instanceof LibraryElement){
+			children.addAll(((LibraryElement) e).getPackages());
+		}else if(e instanceof PackageElement){
+			PackageElement p = (PackageElement) e;
+			children.addAll(p.getType_class());
+			children.addAll(p.getType_interface());
+			children.addAll(p.getType_enum());
+			children.addAll(p.getType_annotation());
+		}else if(e instanceof NonPrimitiveTypeElement){
+			NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+			children.addAll(t.getConstructor());
+			children.addAll(t.getMethod());
+			children.addAll(t.getField());
+			children.addAll(t.getNestedClass());
+			children.addAll(t.getNestedInterface());
+			children.addAll(t.getNestedEnum());
+			children.addAll(t.getNestedAnnotation());
+			if(e instanceof EnumTypeElement) children.addAll(((EnumTypeElement) e).getEnumConstant());
+		}else if(e instanceof MethodElement){
+			MethodElement m = (MethodElement) e;
+			if(m.getReturned() != null) children.add(m.getReturned());
+			if(m.getContextThis() != null) children.add(m.getContextThis());
+			children.addAll(m.getLocal_class());
+			children.addAll(m.getLocal_interface());
+			children.addAll(m.getLocal_enum());
+			children.addAll(m.getLocal_annotation());
+			children.addAll(m.getLocalVar());
+		}
+		return children;
+	}
+
+	/**
+	 * Decodes a binary summary into model elements, handing each one over
+	 * with its parent before reading its children.
+	 */
+	private static abstract class Reader{
+		String source;
+		BinaryReader in;
+		String[] strings;
+		long lastID;
+		IProgressMonitor mon;
+
+		String author;
+		Date created;
+		long numElements;
+		boolean dependencyOrdered;
+		long maxID = StreamImporter.NOT_DEFINED;
+		Map<String, Long> counts = new TreeMap<String, Long>();
+
+		Reader(String source){
+			this.source = source;
+		}
+
+		abstract void header();
+
+		abstract void element(Element e, Element parent);
+
+		void read(IProgressMonitor mon){
+			this.mon = mon;
+			try{
+				in = new BinaryReader(new BufferedInputStream(new FileInputStream(source), 65536));
+			}catch(java.io.IOException e){
+				throw new IOException(e);
+			}
+
+			try{
+				byte[] magic = new byte[MAGIC.length];
+				in.readBytes(magic);
+				if(!Arrays.equals(magic, MAGIC)) throw new IOException("Not a binary summary: " + source);
+				int version = in.readVarInt();
+				if(version < 1 || version > VERSION) throw new IOException("Unsupported binary summary version " + version + ": " + source);
+
+				strings = new String[in.readVarInt()];
+				for(int i = 0; i < strings.length; i++) strings[i] = in.readString();
+
+				author = readString();
+				if(in.readByte() != 0) created = new Date(in.readSignedVarLong());
+				numElements = in.readVarLong();
+				dependencyOrdered = in.readByte() != 0;
+				// Version 1 predates compacted ids, version 2 element counts
+				if(version >= 2) maxID = in.readSignedVarLong();
+				if(version >= 3){
+					int n = in.readVarInt();
+					for(int i = 0; i < n; i++){
+						String kind = readString();
+						counts.put(kind, in.readVarLong());
+					}
+				}
+				header();
+
+				readRecords(null, END);
+			}finally{
+				in.close();
+			}
+		}
+
+		private String readString(){
+			int index = in.readVarInt();
+			if(index == 0) return null;
+			if(index > strings.length) throw new IOException("String index out of range in binary summary: " + index);
+			return strings[index - 1];
+		}
+
+		private void readRecords(Element parent, int parentKind){
+			int kind;
+			while((kind = in.readByte()) != END){
+				if(mon.isCanceled()) return;
+				if(!allowed(parentKind, kind)) throw new IOException("Unexpected binary record kind " + kind + " inside kind " + parentKind);
+				Element e = readRecord(kind);
+				element(e, parent);
+				if(isContainer(kind)) readRecords(e, kind);
+			}
+		}
+
+		private boolean allowed(int parentKind, int kind){
+			switch(parentKind){
+			case END:
+				return kind == PRIMITIVE || kind == LIBRARY || kind == RELATIONSHIP;
+			case LIBRARY:
+				return kind == PACKAGE;
+			case PACKAGE:
+				return kind >= CLASS && kind <= ANNOTATION;
+			case ENUM:
+				return kind == ENUM_CONSTANT || isTypeMember(kind);
+			case CLASS:
+			case INTERFACE:
+			case ANNOTATION:
+				return isTypeMember(kind);
+			case CONSTRUCTOR:
+			case METHOD:
+				return (kind >= CLASS && kind <= ANNOTATION) || kind == RETURN || kind == THIS || kind == LOCAL;
+			default:
+				return false;
+			}
+		}
+
+		private boolean isTypeMember(int kind){
+			return (kind >= CLASS && kind <= ANNOTATION) || kind == CONSTRUCTOR || kind == METHOD || kind == FIELD;
+		}
+
+		private Element readRecord(int kind){
+			String name = readString();
+			long id = lastID + in.readSignedVarLong();
+			lastID = id;
+
+			Element e;
+			switch(kind){
+			case PRIMITIVE: e = new PrimitiveTypeElement(id, name); break;
+			case LIBRARY: e = new LibraryElement(id, name); break;
+			case PACKAGE: e = new PackageElement(id, name); break;
+			case CLASS: e = new ClassTypeElement(id, name); break;
+			case INTERFACE: e = new InterfaceTypeElement(id, name); break;
+			case ENUM: e = new EnumTypeElement(id, name); break;
+			case ANNOTATION: e = new AnnotationTypeElement(id, name); break;
+			case CONSTRUCTOR: e = new ConstructorElement(id, name); break;
+			case METHOD: e = new MethodElement(id, name); break;
+			case FIELD: e = new FieldVarElement(id, name); break;
+			case ENUM_CONSTANT: e = new EnumConstantElement(id, name); break;
+			case PARAM: e = new ParamVarElement(id, name); break;
+			case RETURN: e = new ReturnVarElement(id, name); break;
+			case THIS: e = new ThisVarElement(id, name); break;
+			case LOCAL: e = new LocalVarElement(id, name, null); break;
+			case RELATIONSHIP:
+				e = new Relationship(name, XMLConvertable.NOT_DEFINED, XMLConvertable.NOT_DEFINED, null);
+				e.setId(id);
+				break;
+			default:
+				throw new IOException("Unknown binary record kind: " + kind);
+			}
+
+			for(int i = in.readVarInt(); i > 0; i--) e.getTag().add(readString());
+			for(int i = in.readVarInt(); i > 0; i--) e.getAttr().add(new Attribute(readString(), readString()));
+
+			if(e instanceof VarElement){
+				VarElement v = (VarElement) e;
+				v.setType(id + in.readSignedVarLong());
+				v.setArray_dim((int) in.readSignedVarLong());
+				if(kind == PARAM){
+					((ParamVarElement) e).setParam_idx((int) in.readSignedVarLong());
+				}else if(kind == LOCAL){
+					((LocalVarElement) e).setSchemaType(readString());
+					((LocalVarElement) e).setParamIdx((int) in.readSignedVarLong());
+				}
+			}else if(e instanceof NonPrimitiveTypeElement){
+				NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+				if(in.readByte() != 0) t.setExtend(id + in.readSignedVarLong());
+				readReferences(t.getImplement(), id);
+			}else if(e instanceof MethodElement){
+				MethodElement m = (MethodElement) e;
+				readReferences(m.getOverrides(), id);
+				for(int i = in.readVarInt(); i > 0; i--){
+					int paramKind = in.readByte();
+					if(paramKind != PARAM) throw new IOException("Expected a parameter record but found kind " + paramKind);
+					m.getParam().add((ParamVarElement) readRecord(PARAM));
+				}
+			}else if(e instanceof Relationship){
+				Relationship r = (Relationship) e;
+				r.setOrigin_id(id + in.readSignedVarLong());
+				r.setDest_id(id + in.readSignedVarLong());
+				r.setSchemaType(readString());
+			}
+
+			return e;
+		}
+
+		private void readReferences(Set<Long> references, long id){
+			for(int i = in.readVarInt(); i > 0; i--) references.add(id + in.readSignedVarLong());
+		}
+	}
+
+	/**
+	 * Places each element where the XML parser would have put it.
+	 */
+	private static class ModelBuilder{
+		IOModel model;
+
+		void attach(Element e, Element parent){
+			if(parent == null){
+				if(e instanceof PrimitiveTypeElement) model.getPrimitive().add((PrimitiveTypeElement) e);
+				else if(e instanceof LibraryElement) model.getLibrary().add((LibraryElement) e);
+				else model.getRelationship().add((Relationship) e);
+			}else if(parent instanceof LibraryElement){
+				((LibraryElement) parent).getPackages().add((PackageElement) e);
+			}else if(parent instanceof PackageElement){
+				PackageElement p = (PackageElement) parent;
+				if(e instanceof ClassTypeElement) p.getType_class().add((ClassTypeElement) e);
+				else if(e instanceof InterfaceTypeElement) p.getType_interface().add((InterfaceTypeElement) e);
+				else if(e instanceof EnumTypeElement) p.getType_enum().add((EnumTypeElement) e);
+				else p.getType_annotation().add((AnnotationTypeElement) e);
+			}else if(parent instanceof NonPrimitiveTypeElement){
+				NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) parent;
+				if(e instanceof ConstructorElement) t.getConstructor().add((ConstructorElement) e);
+				else if(e instanceof MethodElement) t.getMethod().add((MethodElement) e);
+				else if(e instanceof FieldVarElement) t.getField().add((FieldVarElement) e);
+				else if(e instanceof EnumConstantElement) ((EnumTypeElement) t).getEnumConstant().add((EnumConstantElement) e);
+				else if(e instanceof ClassTypeElement) t.getNestedClass().add((ClassTypeElement) e);
+				else if(e instanceof InterfaceTypeElement) t.getNestedInterface().add((InterfaceTypeElement) e);
+				else if(e instanceof EnumTypeElement) t.getNestedEnum().add((EnumTypeElement) e);
+				else t.getNestedAnnotation().add((AnnotationTypeElement) e);
+			}else{
+				MethodElement m = (MethodElement) parent;
+				if(e instanceof ReturnVarElement) m.setReturned((ReturnVarElement) e);
+				else if(e instanceof ThisVarElement) m.setContextThis((ThisVarElement) e);
+				else if(e instanceof LocalVarElement) m.getLocalVar().add((LocalVarElement) e);
+				else if(e instanceof ClassTypeElement) m.getLocal_class().add((ClassTypeElement) e);
+				else if(e instanceof InterfaceTypeElement) m.getLocal_interface().add((InterfaceTypeElement) e);
+				else if(e instanceof EnumTypeElement) m.getLocal_enum().add((EnumTypeElement) e);
+				else m.getLocal_annotation().add((AnnotationTypeElement) e);
+			}
+		}
+	}
+
+	/**
+	 * Delivers one decoded element to a {@link StreamImporter}, waiting on the
+	 * same prerequisites as {@link StreamAPI}. Also used by {@link StaxImport}.
+	 */
+	static class ElementCallback extends PrecedenceCallbackRunner.Callback{
+		StreamImporter importer;
+		RelationshipBatcher batch;
+		IProgressMonitor mon;
+		Element element;
+		long parent;
+
+		/**
+		 * @param batch may be null to deliver relationships one at a time
+		 */
+		ElementCallback(StreamImporter importer, RelationshipBatcher batch, IProgressMonitor mon, Element element, long parent){
+			this.importer = importer;
+			this.batch = batch;
+			this.mon = mon;
+			this.element = element;
+			this.parent = parent;
+			this.id = element.getId();
+
+			if(parent > StreamImporter.NOT_DEFINED) addPrereq(parent);
+			if(element instanceof VarElement){
+				addPrereq(((VarElement) element).getType());
+			}else if(element instanceof NonPrimitiveTypeElement){
+				NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) element;
+				if(t.getExtend() > StreamImporter.NOT_DEFINED) addPrereq(t.getExtend());
+				for(Long l : t.getImplement()) addPrereq(l);
+			}else if(element instanceof MethodElement){
+				MethodElement m = (MethodElement) element;
+				for(ParamVarElement p : m.getParam()) addPrereq(p.getType());
+				for(Long l : m.getOverrides()) addPrereq(l);
+			}else if(element instanceof Relationship){
+				addPrereq(((Relationship) element).getOrigin_id());
+				addPrereq(((Relationship) element).getDest_id());
+			}
+		}
+
+		@Override
+		void doCallback() {
+			Element e = element;
+			String name = e.getName();
+			Set<String> tags = e.getTag();
+			Map<String, String> attr = toMap(e.getAttr());
+
+			switch(kindOf(e)){
+			case PRIMITIVE:
+				importer.processPrimitive(name, id, parent, tags, attr);
+				break;
+			case LIBRARY:
+				importer.processLibrary(name, id, parent, tags, attr);
+				break;
+			case PACKAGE:
+				importer.processPackage(name, id, parent, tags, attr);
+				break;
+			case CLASS:
+			case INTERFACE:
+			case ENUM:
+			case ANNOTATION:{
+				NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+				long extendID = t.getExtend();
+				Set<Long> implementIDs = t.getImplement();
+				if(e instanceof ClassTypeElement) importer.processClass(name, id, parent, tags, attr, extendID, implementIDs);
+				else if(e instanceof InterfaceTypeElement) importer.processInterface(name, id, parent, tags, attr, extendID, implementIDs);
+				else if(e instanceof EnumTypeElement) importer.processEnum(name, id, parent, tags, attr, extendID, implementIDs);
+				else importer.processAnnotation(name, id, parent, tags, attr, extendID, implementIDs);
+				break;
+			}
+			case CONSTRUCTOR:
+			case METHOD:{
+				MethodElement m = (MethodElement) e;
+				Set<StreamImporter.Param> params = new CompactHashSet<StreamImporter.Param>();
+				for(ParamVarElement p : m.getParam()) params.add(toParam(p, id));
+				if(e instanceof ConstructorElement) importer.processConstructor(name, id, parent, tags, attr, params);
+				else importer.processMethod(name, id, parent, tags, attr, m.getOverrides(), params);
+				break;
+			}
+			case FIELD:
+				importer.processField(name, id, parent, tags, attr, ((VarElement) e).getType(), ((VarElement) e).getArray_dim());
+				break;
+			case ENUM_CONSTANT:
+				importer.processEnumConstant(name, id, parent, tags, attr, ((VarElement) e).getType());
+				break;
+			case RETURN:
+				importer.processReturn(name, id, parent, tags, attr, ((VarElement) e).getType(), ((VarElement) e).getArray_dim());
+				break;
+			case THIS:
+				importer.processThis(name, id, parent, tags, attr, ((VarElement) e).getType());
+				break;
+			case LOCAL:{
+				LocalVarElement l = (LocalVarElement) e;
+				importer.processLocal(name, l.getSchemaType(), id, parent, tags, attr, l.getType(), l.getArray_dim(), l.getParamIdx());
+				break;
+			}
+			case RELATIONSHIP:{
+				Relationship r = (Relationship) e;
+				if(batch == null || !batch.add(name, r.getSchemaType(), id, tags, attr, r.getOrigin_id(), r.getDest_id()))
+					importer.processRelationship(name, r.getSchemaType(), id, parent, tags, attr, r.getOrigin_id(), r.getDest_id());
+				break;
+			}
+			default:
+				// Parameters are delivered with their method
+				break;
+			}
+			mon.worked(1);
+		}
+
+		private static Map<String, String> toMap(Set<Attribute> attrs){
+			if(attrs.isEmpty()) return Collections.emptyMap();
+			Map<String, String> attr = new CompactHashMap<String, String>();
+			for(Attribute a : attrs) attr.put(a.getKey(), a.getValue());
+			return attr;
+		}
+
+		private StreamImporter.Param toParam(ParamVarElement p, long methodID){
+			StreamImporter.Param param = new StreamImporter.Param();
+			param.id = p.getId();
+			param.parentID = methodID;
+			param.name = p.getName();
+			param.tag = p.getTag();
+			param.attr = toMap(p.getAttr());
+			param.arrayDimension = p.getArray_dim();
+			param.typeID = p.getType();
+			param.paramIdx = p.getParam_idx();
+			return param;
+		}
+	}
+}
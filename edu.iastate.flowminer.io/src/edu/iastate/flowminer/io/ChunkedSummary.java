@@ -0,0 +1,91 @@
+package edu.iastate.flowminer.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.text.ParseException;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.ximpleware.NavException;
+import com.ximpleware.VTDNav;
+
+import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.common.XMLChunkReader;
+import edu.iastate.flowminer.io.model.IOModel;
+
+/**
+ * Import of summaries too large to parse as one VTD document, which is
+ * limited to 1-2 GB of XML. Large summaries are inflated as a stream and cut
+ * between primitives, libraries and relationships into chunks, which are
+ * parsed one at a time by {@link XMLChunkReader}.
+ * <p>
+ * Summaries whose compressed size reaches the threshold are imported in
+ * chunks. The packages of each chunk are read on the pool as usual, but
+ * chunks are never read lazily nor kept in the {@link IndexCache}, since
+ * both hold the whole document in memory, and {@link StreamAPI} does not use
+ * dependency order for them.
+ */
+public class ChunkedSummary {
+	private static volatile long threshold = 64L << 20;
+	private static volatile int chunkSize = 256 << 20;
+
+	/**
+	 * Import summaries of at least the given compressed size in chunks.
+	 */
+	public static void setThreshold(long compressedBytes){
+		threshold = compressedBytes;
+	}
+
+	public static long getThreshold(){
+		return threshold;
+	}
+
+	/**
+	 * Set the target size of the XML in each chunk. Larger chunks take more
+	 * memory, and VTD cannot parse chunks much beyond 1 GB.
+	 */
+	public static void setChunkSize(int bytes){
+		chunkSize = bytes;
+	}
+
+	public static int getChunkSize(){
+		return chunkSize;
+	}
+
+	static boolean isChunked(String source){
+		return new File(source).length() >= threshold;
+	}
+
+	static XMLChunkReader open(String source){
+		try {
+			return new XMLChunkReader(new GZIPInputStream(new BufferedInputStream(new FileInputStream(source), 65536), 65536), chunkSize);
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Read the whole model, one chunk at a time.
+	 * 
+	 * @param threads how many packages of a chunk are read at once
+	 */
+	static IOModel readModel(IProgressMonitor mon, String source, int threads) throws ParseException, NavException{
+		XMLChunkReader chunks = open(source);
+		try{
+			VTDNav vn = chunks.next();
+			if(vn == null) throw new IOException("Empty summary: " + source);
+			IOModel model = new IOModel(mon, vn, threads);
+			while(!mon.isCanceled() && (vn = chunks.next()) != null){
+				IOModel part = new IOModel(mon, vn, threads);
+				model.getPrimitive().addAll(part.getPrimitive());
+				model.getLibrary().addAll(part.getLibrary());
+				model.getRelationship().addAll(part.getRelationship());
+			}
+			return model;
+		}finally{
+			chunks.close();
+		}
+	}
+}
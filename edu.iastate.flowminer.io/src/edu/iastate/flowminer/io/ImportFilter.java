@@ -0,0 +1,119 @@
+package edu.iastate.flowminer.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import net.ontopia.utils.CompactHashSet;
+
+/**
+ * Selects part of a summary for
+ * {@link StreamAPI#importFromFile(org.eclipse.core.runtime.IProgressMonitor, String, StreamAPI.StreamImporter, ImportFilter)}.
+ * <p>
+ * A type is selected if its package matches one of the package prefixes, if
+ * it or a type enclosing it is named as a type, or if neither prefixes nor
+ * types were given. With the public surface option only public and protected
+ * types and members are selected, without locals. Everything else is skipped
+ * along with its subtree.
+ * <p>
+ * Types which are skipped but referenced by selected elements, such as the
+ * type of a field or a supertype, are imported without their members.
+ * References which remain unresolved are dropped: overridden methods and
+ * supertypes are left out of their callback, while relationships and other
+ * elements which need them are not imported at all.
+ */
+public class ImportFilter {
+	private List<String> packagePrefixes = new ArrayList<String>();
+	private Set<String> typeNames = new CompactHashSet<String>();
+	private boolean publicSurfaceOnly;
+
+	/**
+	 * Select the package and every package nested under it, e.g. "java.util"
+	 * selects java.util and java.util.concurrent but not java.utilities.
+	 */
+	public ImportFilter addPackagePrefix(String prefix){
+		packagePrefixes.add(prefix);
+		return this;
+	}
+
+	/**
+	 * Select a type and its nested types by qualified name, with nested type
+	 * names separated by dots, e.g. "java.util.Map.Entry".
+	 */
+	public ImportFilter addTypeName(String qualifiedName){
+		typeNames.add(qualifiedName);
+		return this;
+	}
+
+	public ImportFilter setPublicSurfaceOnly(boolean publicSurfaceOnly){
+		this.publicSurfaceOnly = publicSurfaceOnly;
+		return this;
+	}
+
+	public List<String> getPackagePrefixes() {
+		return packagePrefixes;
+	}
+
+	public Set<String> getTypeNames() {
+		return typeNames;
+	}
+
+	public boolean isPublicSurfaceOnly() {
+		return publicSurfaceOnly;
+	}
+
+	private boolean selectsAllTypes(){
+		return packagePrefixes.isEmpty() && typeNames.isEmpty();
+	}
+
+	private static boolean within(String name, String prefix){
+		return prefix.isEmpty() || name.equals(prefix) || (name.startsWith(prefix) && name.charAt(prefix.length()) == '.');
+	}
+
+	/**
+	 * @return true if the package may hold selected types
+	 */
+	public boolean acceptPackage(String name){
+		if(name == null) name = "";
+		if(selectsAllTypes()) return true;
+		for(String prefix : packagePrefixes){
+			if(within(name, prefix)) return true;
+		}
+		for(String type : typeNames){
+			if(type.startsWith(name) && type.length() > name.length() && (name.isEmpty() || type.charAt(name.length()) == '.')) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param packageName
+	 * @param qualifiedName the package name and enclosing type names, dot separated
+	 * @param tags the type's tags
+	 */
+	public boolean acceptType(String packageName, String qualifiedName, Set<String> tags){
+		if(!acceptMember(tags)) return false;
+		if(selectsAllTypes()) return true;
+		if(packageName == null) packageName = "";
+		for(String prefix : packagePrefixes){
+			if(within(packageName, prefix)) return true;
+		}
+		for(String type : typeNames){
+			if(within(qualifiedName, type)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param tags the tags of a type, constructor, method or field
+	 */
+	public boolean acceptMember(Set<String> tags){
+		return !publicSurfaceOnly || tags.contains(Schema.Tag.IS_PUBLIC) || tags.contains(Schema.Tag.IS_PROTECTED);
+	}
+
+	/**
+	 * @return true if local variables and local types are selected
+	 */
+	public boolean acceptLocals(){
+		return !publicSurfaceOnly;
+	}
+}
@@ -0,0 +1,161 @@
+package edu.iastate.flowminer.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import com.ximpleware.VTDGen;
+import com.ximpleware.VTDNav;
+
+import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.log.Log;
+
+/**
+ * Optional on-disk cache of parsed XML summaries. When a directory is set, the
+ * first import of a summary saves the inflated document together with its VTD
+ * index, and later imports of the same file read the saved index back in
+ * instead of inflating and tokenizing the summary again. This saves time, not
+ * memory: the document and its index are still held on the heap.
+ * <p>
+ * Entries are keyed by the summary's path, size, modification time and a
+ * CRC-32 of its contents, since a summary rewritten at the same size within
+ * the file system's timestamp granularity keeps the other three. A changed
+ * summary gets a new entry, which replaces the old one.
+ */
+public class IndexCache {
+	private static final String SUFFIX = ".vxl";
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static volatile File directory;
+
+	/**
+	 * Cache parsed summaries in the given directory, which is created if
+	 * needed, or stop caching if null.
+	 */
+	public static void setDirectory(File dir){
+		directory = dir;
+	}
+
+	public static File getDirectory(){
+		return directory;
+	}
+
+	/**
+	 * Parse a compressed XML summary, from the cache if possible.
+	 */
+	static VTDNav parse(String source){
+		File dir = directory;
+		if(dir == null) return parseGZIP(source);
+
+		File file = new File(source);
+		String prefix;
+		File entry;
+		try {
+			prefix = hash(file.getCanonicalPath());
+			entry = new File(dir, prefix + "-" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + 
+					"-" + Long.toHexString(checksum(file)) + SUFFIX);
+		}catch(java.io.IOException e){
+			return parseGZIP(source);
+		}
+
+		if(entry.isFile()){
+			try{
+				return load(entry);
+			}catch(Exception e){
+				Log.warning("Discarding unreadable index cache entry " + entry, e);
+				entry.delete();
+			}
+		}
+
+		VTDNav vn = parseGZIP(source);
+		try{
+			store(vn, dir, prefix, entry);
+		}catch(Exception e){
+			Log.warning("Could not cache index of " + source + " in " + dir, e);
+		}
+		return vn;
+	}
+
+	private static VTDNav parseGZIP(String source){
+		VTDGen vg = new VTDGen();
+		if(!vg.parseGZIPFile(source, false)) throw new IOException("Could not parse summary: " + source);
+		return vg.getNav();
+	}
+
+	private static long checksum(File file) throws java.io.IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try{
+			byte[] buffer = new byte[65536];
+			for(int n; (n = in.read(buffer)) > 0;) crc.update(buffer, 0, n);
+		}finally{
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Reads the document and its index straight into the parser's buffers,
+	 * without first holding the whole entry in memory.
+	 */
+	private static VTDNav load(File entry) throws Exception {
+		InputStream in = new BufferedInputStream(new FileInputStream(entry), 65536);
+		try{
+			return new VTDGen().loadIndex(in);
+		}finally{
+			in.close();
+		}
+	}
+
+	private static void store(VTDNav vn, File dir, final String prefix, File entry) throws Exception {
+		if(!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Could not create " + dir);
+
+		// Write beside the entry and move it into place, so that concurrent
+		// imports never see a partial entry
+		File tmp = File.createTempFile(prefix, ".tmp", dir);
+		try{
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 65536);
+			try{
+				vn.writeIndex(out);
+			}finally{
+				out.close();
+			}
+			try{
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}catch(AtomicMoveNotSupportedException e){
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}finally{
+			tmp.delete();
+		}
+
+		// Drop entries for older versions of the same summary
+		File[] stale = dir.listFiles();
+		if(stale == null) return;
+		for(File f : stale){
+			if(f.getName().startsWith(prefix + "-") && f.getName().endsWith(SUFFIX) && !f.equals(entry)) f.delete();
+		}
+	}
+
+	private static String hash(String path){
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(path.getBytes(UTF8));
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < 10; i++) sb.append(String.format("%02x", digest[i]));
+			return sb.toString();
+		}catch(NoSuchAlgorithmException e){
+			throw new IOException(e);
+		}
+	}
+}
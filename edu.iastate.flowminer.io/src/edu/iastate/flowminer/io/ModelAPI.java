@@ -1,28 +1,85 @@
 package edu.iastate.flowminer.io;
 
-import java.io.BufferedWriter;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.Charset;
-import java.util.zip.GZIPOutputStream;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 
-import com.ximpleware.VTDGen;
 import com.ximpleware.VTDNav;
 
+import edu.iastate.flowminer.io.common.IdMap;
+import edu.iastate.flowminer.io.common.ParallelGZIPOutputStream;
+import edu.iastate.flowminer.io.common.ThreadPool;
+import edu.iastate.flowminer.io.common.XMLWriter;
 import edu.iastate.flowminer.io.log.Log;
 import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.XMLConvertable;
 
 public class ModelAPI {
 	public static final String JAXP_SCHEMA_SOURCE = "http://java.sun.com/xml/jaxp/properties/schemaSource";
 	public static final String SCHEMA_SOURCE = "edu.iastate.flowminer.io.xsd";
 	
+	private static volatile int compressionThreads = ThreadPool.Work.IO.getParallelism();
+	private static volatile int importThreads = ThreadPool.Work.CPU.getParallelism();
+	
+	/**
+	 * Set how many blocks of an export are compressed at once. 1 compresses
+	 * on the exporting thread.
+	 */
+	public static void setCompressionThreads(int threads){
+		compressionThreads = Math.max(threads, 1);
+	}
+	
+	public static int getCompressionThreads(){
+		return compressionThreads;
+	}
+	
+	/**
+	 * Set how many packages of an XML summary are read at once on import. 1
+	 * reads the whole summary on the importing thread.
+	 */
+	public static void setImportThreads(int threads){
+		importThreads = Math.max(threads, 1);
+	}
+	
+	public static int getImportThreads(){
+		return importThreads;
+	}
+	
 	public static void exportToFile(final IProgressMonitor mon, final IOModel model, final String destination)
 			throws Throwable {
+		exportToFile(mon, model, destination, false);
+	}
+	
+	/**
+	 * Export the model to a compressed summary file.
+	 * 
+	 * Elements are written with the ids worked out by
+	 * {@link IOModel#exportIds(boolean)}; the model keeps its own.
+	 * 
+	 * @param dependencyOrdered if true, elements are written in dependency
+	 * order so that {@link StreamAPI} can import the summary without
+	 * deferring callbacks. Otherwise, or if the model cannot be ordered, ids
+	 * keep their order, and the summary is marked dependency ordered only if
+	 * that is.
+	 */
+	public static void exportToFile(final IProgressMonitor mon, final IOModel model, final String destination, final boolean dependencyOrdered)
+			throws Throwable {
+		exportToFile(mon, model, destination, dependencyOrdered, false);
+	}
+	
+	/**
+	 * Export the model to a compressed summary file.
+	 * 
+	 * @param dependencyOrdered see {@link #exportToFile(IProgressMonitor, IOModel, String, boolean)}
+	 * @param indexed if true, each library and package is compressed separately
+	 * and indexed, so that {@link SummaryIndex} can read them individually. The
+	 * file remains an ordinary compressed summary.
+	 */
+	public static void exportToFile(final IProgressMonitor mon, final IOModel model, final String destination, final boolean dependencyOrdered,
+			final boolean indexed) throws Throwable {
 		final Throwable[] error = new Throwable[1];
 
 		class JobExporter{
@@ -33,16 +90,25 @@ public class ModelAPI {
 			
 			IStatus doExport(){
 				try{
-					// Conversion
-					StringBuilder sb = new StringBuilder(1000000000);
-					sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-					model.convert(sb, Schema.IOMODEL);
-
-					// Output
-					BufferedWriter wr = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(destination), 65536), Charset.forName("UTF-8")), 65536);
-					wr.write(sb.toString());
-					wr.flush();
-					wr.close();
+					IdMap ids = model.exportIds(dependencyOrdered);
+					if(ids == null && dependencyOrdered){
+						Log.warning("Summary has duplicate ids or dangling or cyclic references, exporting without dependency order: " + destination);
+						ids = model.exportIds(false);
+					}
+					
+					// Conversion streams straight through the compressor, which
+					// writes one gzip member per block
+					ParallelGZIPOutputStream gz = new ParallelGZIPOutputStream(new FileOutputStream(destination),
+							compressionThreads, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE);
+					XMLWriter wr = indexed ? new SummaryIndex.Writer(gz) : new XMLWriter(gz, 65536);
+					wr.setIds(ids);
+					try{
+						wr.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+						model.convert(wr, Schema.IOMODEL);
+					}finally{
+						wr.close();
+						XMLConvertable.clearEscapeCache();
+					}
 					
 					return Status.OK_STATUS;
 				}catch(Throwable t){
@@ -79,6 +145,22 @@ public class ModelAPI {
 	}
 	
 	public static IOModel importFromFile(final IProgressMonitor mon, final String source) throws Throwable {
+		return importFromFile(mon, source, false);
+	}
+	
+	/**
+	 * XML summaries whose compressed size reaches
+	 * {@link ChunkedSummary#getThreshold()} (64 MB by default) are read in
+	 * chunks, see {@link ChunkedSummary}. Their packages are still read on
+	 * the {@link #setImportThreads import threads}, but they are not kept in
+	 * the {@link IndexCache} and are never read lazily.
+	 * 
+	 * @param lazy if true, an XML summary is read only down to its
+	 * libraries, and the members of each package and type are read from the
+	 * retained index the first time they are asked for. Binary and chunked
+	 * summaries are always read in full.
+	 */
+	public static IOModel importFromFile(final IProgressMonitor mon, final String source, final boolean lazy) throws Throwable {
 		final IOModel[] result = new IOModel[1];
 		final Throwable[] error = new Throwable[1];
 
@@ -90,13 +172,21 @@ public class ModelAPI {
 			
 			IStatus doImport(){
 				try{
+					if(BinaryAPI.isBinary(source)){
+						result[0] = BinaryAPI.readModel(monitor, source);
+						return Status.OK_STATUS;
+					}
+					
+					if(ChunkedSummary.isChunked(source)){
+						result[0] = ChunkedSummary.readModel(monitor, source, importThreads);
+						return Status.OK_STATUS;
+					}
+					
 					// Setup
-					VTDGen vg = new VTDGen();
-					vg.parseGZIPFile(source, false);
-					VTDNav vn = vg.getNav();
+					VTDNav vn = IndexCache.parse(source);
 					
 					// Converted Output
-					result[0] = new IOModel(monitor, vn);
+					result[0] = lazy ? new IOModel(monitor, vn, true) : new IOModel(monitor, vn, importThreads);
 					return Status.OK_STATUS;
 				}catch(Throwable t){
 					error[0] = t;
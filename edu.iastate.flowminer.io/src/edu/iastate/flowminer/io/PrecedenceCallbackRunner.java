@@ -0,0 +1,253 @@
+package edu.iastate.flowminer.io;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import edu.iastate.flowminer.io.StreamAPI.StreamImporter;
+import edu.iastate.flowminer.io.common.DenseIdMap;
+import edu.iastate.flowminer.io.common.LongHashSet;
+
+/**
+ * Runs summary import callbacks as soon as every element id they depend on
+ * has been processed, deferring the rest until then. Shared by the readers
+ * for each summary format.
+ * <p>
+ * Ids are tracked in hash tables unless the reader learns the largest id of
+ * a compacted summary, when ids up to it are tracked in arrays instead.
+ */
+class PrecedenceCallbackRunner {
+	private static final long[] NO_PREREQS = new long[0];
+
+	static abstract class Callback{
+		// Distinct ids which must be processed before this callback
+		long[] prereqs = NO_PREREQS;
+		int numPrereqs;
+		// Prerequisites not yet completed, maintained by the runner
+		int pending;
+		// Set once a prerequisite is abandoned that the callback can't do without
+		boolean dropped;
+		long id = (long) StreamImporter.NOT_DEFINED;
+
+		final void addPrereq(long prereq){
+			for(int i = 0; i < numPrereqs; i++)
+				if(prereqs[i] == prereq) return;
+			if(numPrereqs == prereqs.length)
+				prereqs = Arrays.copyOf(prereqs, Math.max(4, numPrereqs * 2));
+			prereqs[numPrereqs++] = prereq;
+		}
+
+		abstract void doCallback();
+		
+		/**
+		 * Stop referring to a prerequisite which will never be processed.
+		 * 
+		 * @return false if the callback can't run without it
+		 */
+		boolean waive(long prereq){
+			return false;
+		}
+	}
+
+	IProgressMonitor mon;
+	// Completed ids up to the largest known id, and any others
+	BitSet completedDense;
+	int denseLimit;
+	LongHashSet completed;
+	// Deferred callbacks keyed by each missing prerequisite. Values are a lone
+	// Callback or, once a second dependent arrives, a List of them.
+	DenseIdMap<Object> queued;
+	DenseIdMap<Callback> added;
+	ArrayDeque<Callback> ready;
+	long numAdded, numCompleted, numDropped;
+
+	public PrecedenceCallbackRunner(IProgressMonitor mon){
+		this.mon = mon;
+		completed = new LongHashSet(1024);
+		queued = new DenseIdMap<Object>();
+		added = new DenseIdMap<Callback>();
+		ready = new ArrayDeque<Callback>();
+	}
+	
+	/**
+	 * Track ids from 0 to the given largest id in arrays rather than hash
+	 * tables. Only takes effect before any element callback has run or been
+	 * deferred.
+	 * 
+	 * @param maxID the largest id in the summary
+	 */
+	public void setMaxID(long maxID){
+		// At most the header's callback may have run
+		if(completedDense != null || numCompleted > 1 || !queued.isEmpty()) return;
+		if(!queued.setMaxID(maxID) || !added.setMaxID(maxID)) return;
+		denseLimit = (int) maxID + 1;
+		completedDense = new BitSet(denseLimit);
+	}
+	
+	/**
+	 * Size the tables for the given number of elements at once, unless ids
+	 * are tracked in arrays.
+	 * 
+	 * @param numElements
+	 */
+	public void setExpectedSize(long numElements){
+		if(completedDense != null || numElements <= 0) return;
+		completed.ensureCapacity((int) Math.min(numElements, Integer.MAX_VALUE - 8));
+	}
+	
+	private boolean isCompleted(long id){
+		if(id >= 0 && id < denseLimit) return completedDense.get((int) id);
+		return completed.contains(id);
+	}
+	
+	private void setCompleted(long id){
+		if(id >= 0 && id < denseLimit) completedDense.set((int) id);
+		else completed.add(id);
+	}
+
+	/**
+	 * Add the callback, executing if it's ready. Also executes subsequent dependencies which
+	 * are ready after this one is executed.
+	 *
+	 * @param callback
+	 */
+	public void callback(Callback callback){
+		numAdded++;
+		if(mon.isCanceled()) return;
+
+		int pending = 0;
+		for(int i = 0; i < callback.numPrereqs; i++){
+			long prereq = callback.prereqs[i];
+			if(!isCompleted(prereq)){
+				addDependency(prereq, callback);
+				pending++;
+			}
+		}
+		callback.pending = pending;
+
+		if(pending == 0){
+			completeCallback(callback);
+		}else{
+			added.put(callback.id, callback);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addDependency(long prereq, Callback callback){
+		Object dependents = queued.get(prereq);
+		if(dependents == null){
+			queued.put(prereq, callback);
+		}else if(dependents instanceof Callback){
+			List<Callback> list = new ArrayList<Callback>(4);
+			list.add((Callback) dependents);
+			list.add(callback);
+			queued.put(prereq, list);
+		}else{
+			((List<Callback>) dependents).add(callback);
+		}
+	}
+
+	/**
+	 * Run the callback and then, using an explicit worklist rather than recursion,
+	 * every deferred callback that it transitively unblocks.
+	 *
+	 * @param callback
+	 */
+	private void completeCallback(Callback callback){
+		ready.push(callback);
+		runReady();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void runReady(){
+		while(!ready.isEmpty()){
+			Callback next = ready.pop();
+			numCompleted++;
+			if(mon.isCanceled()){
+				ready.clear();
+				return;
+			}
+			next.doCallback();
+			long id = next.id;
+			setCompleted(id);
+			added.remove(id);
+
+			Object dependents = queued.remove(id);
+			if(dependents == null) continue;
+
+			if(dependents instanceof Callback){
+				release((Callback) dependents);
+			}else{
+				for(Callback dependency : (List<Callback>) dependents)
+					release(dependency);
+			}
+		}
+	}
+
+	private void release(Callback dependency){
+		if(!dependency.dropped && --dependency.pending == 0) ready.push(dependency);
+	}
+	
+	/**
+	 * @return a snapshot of the ids which deferred callbacks are waiting for
+	 */
+	long[] waitingFor(){
+		return queued.keys();
+	}
+	
+	/**
+	 * @return true if a callback with the given id has been added but not run
+	 */
+	boolean isPending(long id){
+		return added.containsKey(id);
+	}
+	
+	/**
+	 * @return true if a callback which has not been dropped waits for the id
+	 */
+	@SuppressWarnings("unchecked")
+	boolean isAwaited(long prereq){
+		Object dependents = queued.get(prereq);
+		if(dependents == null) return false;
+		if(dependents instanceof Callback) return !((Callback) dependents).dropped;
+		for(Callback c : (List<Callback>) dependents)
+			if(!c.dropped) return true;
+		return false;
+	}
+	
+	/**
+	 * Give up on a prerequisite which will never be processed. Callbacks which
+	 * can waive it stop waiting, running if nothing else held them back; the
+	 * rest are dropped, so that their own ids will never be processed either.
+	 * 
+	 * @param prereq
+	 */
+	@SuppressWarnings("unchecked")
+	void abandon(long prereq){
+		Object dependents = queued.remove(prereq);
+		if(dependents == null) return;
+		
+		if(dependents instanceof Callback){
+			abandon(prereq, (Callback) dependents);
+		}else{
+			for(Callback dependency : (List<Callback>) dependents)
+				abandon(prereq, dependency);
+		}
+		runReady();
+	}
+	
+	private void abandon(long prereq, Callback dependency){
+		if(dependency.dropped) return;
+		if(dependency.waive(prereq)){
+			release(dependency);
+		}else{
+			dependency.dropped = true;
+			numDropped++;
+			added.remove(dependency.id);
+		}
+	}
+}
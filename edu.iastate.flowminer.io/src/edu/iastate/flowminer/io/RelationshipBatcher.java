@@ -0,0 +1,95 @@
+package edu.iastate.flowminer.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.ontopia.utils.CompactHashMap;
+
+import edu.iastate.flowminer.io.StreamAPI.BatchStreamImporter;
+import edu.iastate.flowminer.io.StreamAPI.StreamImporter;
+
+/**
+ * Buffers relationships for a {@link BatchStreamImporter}, interning their
+ * schema types and tag sets, and hands them over a batch at a time.
+ * Relationships are never prerequisites, so delivering them late is safe.
+ */
+class RelationshipBatcher {
+	static final int BATCH_SIZE = 4096;
+
+	private BatchStreamImporter importer;
+	private long[] ids = new long[BATCH_SIZE];
+	private long[] originIDs = new long[BATCH_SIZE];
+	private long[] destIDs = new long[BATCH_SIZE];
+	private int[] typeCodes = new int[BATCH_SIZE];
+	private int[] tagCodes = new int[BATCH_SIZE];
+	private int size;
+
+	private Map<String, Integer> typeIndex = new CompactHashMap<String, Integer>();
+	private List<String> types = new ArrayList<String>();
+	private List<String> typesView = Collections.unmodifiableList(types);
+	private Map<Set<String>, Integer> tagIndex = new CompactHashMap<Set<String>, Integer>();
+	private List<Set<String>> tags = new ArrayList<Set<String>>();
+	private List<Set<String>> tagsView = Collections.unmodifiableList(tags);
+
+	private RelationshipBatcher(BatchStreamImporter importer){
+		this.importer = importer;
+	}
+
+	/**
+	 * @return a batcher for the importer, or null if it takes relationships
+	 * one at a time
+	 */
+	static RelationshipBatcher create(StreamImporter importer){
+		return importer instanceof BatchStreamImporter ? new RelationshipBatcher((BatchStreamImporter) importer) : null;
+	}
+
+	/**
+	 * @return false if the relationship has a name or attributes, and so must
+	 * be delivered on its own
+	 */
+	boolean add(String name, String type, long id, Set<String> tag, Map<String, String> attr, long originID, long destID){
+		if(name != null || !attr.isEmpty()) return false;
+
+		ids[size] = id;
+		originIDs[size] = originID;
+		destIDs[size] = destID;
+		typeCodes[size] = intern(type);
+		tagCodes[size] = intern(tag);
+		if(++size == BATCH_SIZE) flush();
+		return true;
+	}
+
+	private int intern(String type){
+		Integer code = typeIndex.get(type);
+		if(code == null){
+			code = types.size();
+			types.add(type);
+			typeIndex.put(type, code);
+		}
+		return code;
+	}
+
+	private int intern(Set<String> tag){
+		Integer code = tagIndex.get(tag);
+		if(code == null){
+			code = tags.size();
+			Set<String> copy = Collections.unmodifiableSet(tag);
+			tags.add(copy);
+			tagIndex.put(copy, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Deliver any buffered relationships.
+	 */
+	void flush(){
+		if(size == 0) return;
+		int count = size;
+		size = 0;
+		importer.processRelationships(count, ids, originIDs, destIDs, typeCodes, typesView, tagCodes, tagsView);
+	}
+}
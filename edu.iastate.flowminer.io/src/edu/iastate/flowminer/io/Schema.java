@@ -48,6 +48,9 @@ public interface Schema {
 	public static final String PARAM_VAR_INDEX = "ap";
 	public static final String LOCAL_VAR_SCHEMA_TYPE = "aq";
 	public static final String LIBRARY_PACKAGE = "ar";
+	public static final String IOMODEL_DEPENDENCY_ORDERED = "bd";
+	public static final String IOMODEL_MAX_ID = "be";
+	public static final String IOMODEL_COUNT = "bf";
 	
 	public static interface Tag{
 		public static final String IS_PUBLIC = "as";
@@ -62,4 +65,26 @@ public interface Schema {
 		public static final String IS_TRANSIENT = "bb";
 		public static final String IS_VOLATILE = "bc";
 	}
+	
+	/**
+	 * Keys of the element counts in a summary header.
+	 */
+	public static interface Count{
+		public static final String PRIMITIVE = "primitive";
+		public static final String LIBRARY = "library";
+		public static final String PACKAGE = "package";
+		public static final String TYPE = "type";
+		public static final String METHOD = "method";
+		public static final String PARAM = "param";
+		// Fields, enum constants, locals, returns and this
+		public static final String VARIABLE = "variable";
+		public static final String RELATIONSHIP = "relationship";
+		// Followed by a relationship's schema type, counting just that type
+		public static final String RELATIONSHIP_TYPE_PREFIX = "relationship:";
+		// Distinct names, tags, attribute keys and values, and schema types
+		public static final String STRING = "string";
+		
+		// Kinds which together count every element
+		public static final String[] ELEMENT_KINDS = {PRIMITIVE, LIBRARY, PACKAGE, TYPE, METHOD, PARAM, VARIABLE, RELATIONSHIP};
+	}
 }
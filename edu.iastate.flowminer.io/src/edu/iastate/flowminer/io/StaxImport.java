@@ -0,0 +1,354 @@
+package edu.iastate.flowminer.io;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+
+import edu.iastate.flowminer.io.StreamAPI.DenseStreamImporter;
+import edu.iastate.flowminer.io.StreamAPI.SizedStreamImporter;
+import edu.iastate.flowminer.io.StreamAPI.StreamImporter;
+import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.model.AnnotationTypeElement;
+import edu.iastate.flowminer.io.model.Attribute;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.ConstructorElement;
+import edu.iastate.flowminer.io.model.Element;
+import edu.iastate.flowminer.io.model.EnumConstantElement;
+import edu.iastate.flowminer.io.model.EnumTypeElement;
+import edu.iastate.flowminer.io.model.FieldVarElement;
+import edu.iastate.flowminer.io.model.InterfaceTypeElement;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.LocalVarElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.NonPrimitiveTypeElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.io.model.ParamVarElement;
+import edu.iastate.flowminer.io.model.PrimitiveTypeElement;
+import edu.iastate.flowminer.io.model.Relationship;
+import edu.iastate.flowminer.io.model.ReturnVarElement;
+import edu.iastate.flowminer.io.model.ThisVarElement;
+import edu.iastate.flowminer.io.model.VarElement;
+import edu.iastate.flowminer.io.model.XMLConvertable;
+
+/**
+ * Stream import of an XML summary in a single forward pass with a StAX pull
+ * parser, for {@link StreamAPI.Engine#STAX}.
+ * <p>
+ * Each element is read into a detached model {@link Element} and handed to
+ * the {@link PrecedenceCallbackRunner} as soon as its own fields have been
+ * read, before its children, using the same callbacks as the binary format.
+ * Nothing else of the document is kept. The runner still remembers the id of
+ * every element completed so far, so memory grows by a hash table entry per
+ * element, plus the callbacks waiting for prerequisites, rather than with the
+ * text of the summary. The runner's tables are not sized from the header, as
+ * arrays over every id would be allocated up front and mostly stay empty.
+ */
+class StaxImport {
+	/**
+	 * An open element: its model element, and whether its callback has been
+	 * queued yet.
+	 */
+	private static class Frame{
+		Element element;
+		Frame parent;
+		boolean queued;
+
+		Frame(Element element, Frame parent){
+			this.element = element;
+			this.parent = parent;
+		}
+	}
+
+	private IProgressMonitor mon;
+	private IProgressMonitor progress;
+	private StreamImporter importer;
+	private PrecedenceCallbackRunner pcr;
+	private RelationshipBatcher batch;
+	private XMLStreamReader xr;
+	private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+
+	private String author;
+	private Date created;
+	private long numElements = -1;
+	private long maxID = XMLConvertable.NOT_DEFINED;
+	private Map<String, Long> counts = new TreeMap<String, Long>();
+	private boolean headerDone;
+
+	private StaxImport(IProgressMonitor mon, StreamImporter importer){
+		this.mon = mon;
+		this.progress = mon;
+		this.importer = importer;
+		this.pcr = new PrecedenceCallbackRunner(mon);
+		this.batch = RelationshipBatcher.create(importer);
+	}
+
+	static void streamImport(IProgressMonitor mon, String source, StreamImporter importer){
+		StaxImport s = new StaxImport(mon, importer);
+		InputStream in = null;
+		try{
+			in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(source), 65536), 65536);
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			s.xr = factory.createXMLStreamReader(in);
+			try{
+				s.read();
+				if(s.batch != null) s.batch.flush();
+			}finally{
+				s.xr.close();
+			}
+		}catch(IOException e){
+			throw e;
+		}catch(Exception e){
+			throw new IOException("Could not import " + source, e);
+		}finally{
+			if(s.progress != mon) s.progress.done();
+			if(in != null){
+				try{
+					in.close();
+				}catch(java.io.IOException e){}
+			}
+		}
+	}
+
+	private void read() throws XMLStreamException, ParseException{
+		if(xr.nextTag() != XMLStreamConstants.START_ELEMENT || !Schema.IOMODEL.equals(xr.getLocalName()))
+			throw new IOException("Not a summary, the root element is " + xr.getLocalName());
+
+		Frame top = null;
+		while(xr.hasNext()){
+			if(mon.isCanceled()) return;
+			int event = xr.next();
+			if(event == XMLStreamConstants.END_ELEMENT){
+				if(top == null) break;
+				close(top);
+				top = top.parent;
+				continue;
+			}
+			if(event != XMLStreamConstants.START_ELEMENT) continue;
+
+			String tag = xr.getLocalName();
+			Element e = create(tag);
+			if(e != null){
+				if(top == null) header();
+				else if(!top.queued && !(e instanceof ParamVarElement)) queue(top);
+				top = new Frame(e, top);
+			}else if(top == null){
+				readHeaderField(tag);
+			}else{
+				readField(top.element, tag);
+			}
+		}
+		header();
+	}
+
+	private void header(){
+		if(headerDone) return;
+		headerDone = true;
+		if(numElements > -1) progress = SubMonitor.convert(mon, (int) numElements);
+		if(maxID != XMLConvertable.NOT_DEFINED && importer instanceof DenseStreamImporter)
+			((DenseStreamImporter) importer).processMaxID(maxID);
+		if(!counts.isEmpty() && importer instanceof SizedStreamImporter)
+			((SizedStreamImporter) importer).processCounts(Collections.unmodifiableMap(counts));
+		importer.processIOModel(author, created);
+		progress.worked(1);
+	}
+
+	private void readHeaderField(String tag) throws XMLStreamException, ParseException{
+		if(Schema.IOMODEL_COUNT.equals(tag)){
+			String key = null, value = null;
+			while(xr.nextTag() == XMLStreamConstants.START_ELEMENT){
+				if(Schema.ATTR_KEY.equals(xr.getLocalName())) key = xr.getElementText();
+				else if(Schema.ATTR_VAL.equals(xr.getLocalName())) value = xr.getElementText();
+				else throw new IOException("Unexpected element in count: " + xr.getLocalName());
+			}
+			if(key == null || value == null) throw new IOException("Incomplete count in summary header");
+			counts.put(key, Long.parseLong(value, Schema.RADIX));
+			return;
+		}
+		
+		String text = xr.getElementText();
+		switch(tag){
+		case Schema.IOMODEL_AUTHOR:
+			author = text;
+			break;
+		case Schema.IOMODEL_CREATED:
+			created = sdf.parse(text);
+			break;
+		case Schema.IOMODEL_NUM_ELEMENTS:
+			numElements = Long.parseLong(text, Schema.RADIX);
+			break;
+		case Schema.IOMODEL_DEPENDENCY_ORDERED:
+			// Elements are queued as they are read, whatever their order
+			break;
+		case Schema.IOMODEL_MAX_ID:
+			maxID = Long.parseLong(text, Schema.RADIX);
+			break;
+		default:
+			throw new IOException("Unexpected element in summary: " + tag);
+		}
+	}
+
+	/**
+	 * @return a detached element for the tag, or null if the tag is a field
+	 */
+	private static Element create(String tag){
+		long id = XMLConvertable.NOT_DEFINED;
+		switch(tag){
+		case Schema.IOMODEL_PRIMITIVE: return new PrimitiveTypeElement(id, null);
+		case Schema.IOMODEL_LIBRARY: return new LibraryElement(id, null);
+		case Schema.LIBRARY_PACKAGE: return new PackageElement(id, null);
+		case Schema.PACKAGE_CLASS:
+		case Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS:
+		case Schema.METHOD_LOCAL_CLASS:
+			return new ClassTypeElement(id, null);
+		case Schema.PACKAGE_INTERFACE:
+		case Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE:
+		case Schema.METHOD_LOCAL_INTERFACE:
+			return new InterfaceTypeElement(id, null);
+		case Schema.PACKAGE_ENUM:
+		case Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM:
+		case Schema.METHOD_LOCAL_ENUM:
+			return new EnumTypeElement(id, null);
+		case Schema.PACKAGE_ANNOTATION:
+		case Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION:
+		case Schema.METHOD_LOCAL_ANNOTATION:
+			return new AnnotationTypeElement(id, null);
+		case Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR: return new ConstructorElement(id, null);
+		case Schema.TYPE_NON_PRIMITIVE_METHOD: return new MethodElement(id, null);
+		case Schema.TYPE_NON_PRIMITIVE_FIELD: return new FieldVarElement(id, null);
+		case Schema.ENUM_TYPE_NON_PRIMITIVE_CONSTANT: return new EnumConstantElement(id, null);
+		case Schema.METHOD_PARAM: return new ParamVarElement(id, null);
+		case Schema.METHOD_RETURNED: return new ReturnVarElement(id, null);
+		case Schema.METHOD_CONTEXT_THIS: return new ThisVarElement(id, null);
+		case Schema.METHOD_LOCAL_VAR: return new LocalVarElement(id, null, null);
+		case Schema.IOMODEL_RELATIONSHIP:{
+			Relationship r = new Relationship(null, XMLConvertable.NOT_DEFINED, XMLConvertable.NOT_DEFINED, null);
+			r.setId(id);
+			return r;
+		}
+		default:
+			return null;
+		}
+	}
+
+	private void readField(Element e, String tag) throws XMLStreamException{
+		if(Schema.ELEMENT_ATTR.equals(tag)){
+			String key = null, value = null;
+			while(xr.nextTag() == XMLStreamConstants.START_ELEMENT){
+				if(Schema.ATTR_KEY.equals(xr.getLocalName())) key = xr.getElementText();
+				else if(Schema.ATTR_VAL.equals(xr.getLocalName())) value = xr.getElementText();
+				else throw new IOException("Unexpected element in attribute: " + xr.getLocalName());
+			}
+			e.getAttr().add(new Attribute(key, value));
+			return;
+		}
+
+		String text = xr.getElementText();
+		switch(tag){
+		case Schema.ELEMENT_NAME:
+			e.setName(text);
+			return;
+		case Schema.ELEMENT_ID:
+			e.setId(parseLong(text));
+			return;
+		case Schema.ELEMENT_TAG:
+			e.getTag().add(text);
+			return;
+		}
+
+		if(e instanceof VarElement){
+			VarElement v = (VarElement) e;
+			switch(tag){
+			case Schema.VAR_TYPE:
+				v.setType(parseLong(text));
+				return;
+			case Schema.VAR_ARRAY_DIM:
+				v.setArray_dim((int) parseLong(text));
+				return;
+			case Schema.PARAM_VAR_INDEX:
+				if(e instanceof ParamVarElement) ((ParamVarElement) e).setParam_idx((int) parseLong(text));
+				else if(e instanceof LocalVarElement) ((LocalVarElement) e).setParamIdx((int) parseLong(text));
+				else break;
+				return;
+			case Schema.LOCAL_VAR_SCHEMA_TYPE:
+				if(!(e instanceof LocalVarElement)) break;
+				((LocalVarElement) e).setSchemaType(text);
+				return;
+			}
+		}else if(e instanceof NonPrimitiveTypeElement){
+			NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+			switch(tag){
+			case Schema.TYPE_NON_PRIMITIVE_EXTENDS:
+				t.setExtend(parseLong(text));
+				return;
+			case Schema.TYPE_NON_PRIMITIVE_IMPLEMENTS:
+				t.getImplement().add(parseLong(text));
+				return;
+			}
+		}else if(e instanceof MethodElement){
+			if(Schema.METHOD_OVERRIDES.equals(tag)){
+				((MethodElement) e).getOverrides().add(parseLong(text));
+				return;
+			}
+		}else if(e instanceof Relationship){
+			Relationship r = (Relationship) e;
+			switch(tag){
+			case Schema.RELATIONSHIP_ORIGIN_ID:
+				r.setOrigin_id(parseLong(text));
+				return;
+			case Schema.RELATIONSHIP_DEST_ID:
+				r.setDest_id(parseLong(text));
+				return;
+			case Schema.RELATIONSHIP_SCHEMA_TYPE:
+				r.setSchemaType(text);
+				return;
+			}
+		}
+		throw new IOException("Unexpected element " + tag + " in " + e.getClass().getSimpleName() + " " + Long.toString(e.getId(), Schema.RADIX));
+	}
+
+	private static long parseLong(String text){
+		return Long.parseLong(text.trim(), Schema.RADIX);
+	}
+
+	/**
+	 * Queue an element's callback once its fields, and for a method its
+	 * parameters, have all been read.
+	 */
+	private void queue(Frame f){
+		f.queued = true;
+		Element e = f.element;
+		long parentID = f.parent == null ? (long) StreamImporter.NOT_DEFINED : f.parent.element.getId();
+		pcr.callback(new BinaryAPI.ElementCallback(importer, batch, progress, e, parentID));
+		if(e instanceof MethodElement){
+			for(ParamVarElement p : ((MethodElement) e).getParam())
+				pcr.callback(new BinaryAPI.ElementCallback(importer, batch, progress, p, e.getId()));
+		}
+	}
+
+	private void close(Frame f){
+		if(f.element instanceof ParamVarElement){
+			if(f.parent == null || !(f.parent.element instanceof MethodElement) || f.parent.queued)
+				throw new IOException("Unexpected parameter " + Long.toString(f.element.getId(), Schema.RADIX));
+			((MethodElement) f.parent.element).getParam().add((ParamVarElement) f.element);
+		}else if(!f.queued){
+			queue(f);
+		}
+	}
+}
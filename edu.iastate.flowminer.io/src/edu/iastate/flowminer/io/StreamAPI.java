@@ -4,9 +4,14 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import net.ontopia.utils.CompactHashMap;
 import net.ontopia.utils.CompactHashSet;
@@ -17,14 +22,25 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
 
+import com.ximpleware.BookMark;
+import com.ximpleware.IByteBuffer;
 import com.ximpleware.NavException;
-import com.ximpleware.VTDGen;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.common.LongHashSet;
+import edu.iastate.flowminer.io.common.LongObjectHashMap;
+import edu.iastate.flowminer.io.common.XMLChunkReader;
 import edu.iastate.flowminer.io.log.Log;
 
 public class StreamAPI {
+	/**
+	 * If true, callbacks are constructed reflectively from their class as
+	 * they were before the factory table. Only for measuring the difference.
+	 */
+	public static final String REFLECTIVE_CALLBACKS_PROPERTY = "flowminer.import.reflective";
+	// Twelve base-36 digits always fit in a long without overflow
+	private static final int MAX_FAST_DIGITS = 12;
 	private static SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
 	private static CompactHashSet<String> VALID_SCHEMA_STRINGS;
 	static{
@@ -72,7 +88,99 @@ public class StreamAPI {
 		}
 	}
 	
+	/**
+	 * A {@link StreamImporter} which takes relationships in batches. Relationships
+	 * without a name or attributes are delivered through
+	 * {@link #processRelationships}, any others one at a time as usual.
+	 */
+	public static interface BatchStreamImporter extends StreamImporter{
+		/**
+		 * Process a batch of relationships, whose parent is always
+		 * {@link StreamImporter#NOT_DEFINED}. The arrays are reused for the next
+		 * batch once this returns, and hold more than count entries.
+		 * 
+		 * @param count number of relationships in the batch
+		 * @param ids
+		 * @param originIDs
+		 * @param destIDs
+		 * @param typeCodes each relationship's schema type, as an index into types
+		 * @param types schema types seen so far in the import
+		 * @param tagCodes each relationship's tags, as an index into tags
+		 * @param tags tag sets seen so far in the import
+		 */
+		public void processRelationships(int count, long[] ids, long[] originIDs, long[] destIDs, 
+				int[] typeCodes, List<String> types, int[] tagCodes, List<Set<String>> tags);
+	}
+
+	/**
+	 * A {@link StreamImporter} which wants to know the largest element id of a
+	 * summary whose ids were compacted on export, for instance to index
+	 * imported elements by id in an array.
+	 */
+	public static interface DenseStreamImporter extends StreamImporter{
+		/**
+		 * Called before {@link #processIOModel}, and only for summaries whose
+		 * ids run from 0 to maxID.
+		 *
+		 * @param maxID
+		 */
+		public void processMaxID(long maxID);
+	}
+
+	/**
+	 * A {@link StreamImporter} which sizes its tables from the element counts
+	 * recorded in a summary's header.
+	 */
+	public static interface SizedStreamImporter extends StreamImporter{
+		/**
+		 * Called before {@link #processIOModel}, and only for summaries whose
+		 * header records counts.
+		 *
+		 * @param counts number of elements of each kind, keyed by
+		 * {@link Schema.Count}
+		 */
+		public void processCounts(Map<String, Long> counts);
+	}
+
+	/**
+	 * Parsers for XML summaries.
+	 */
+	public static enum Engine{
+		/**
+		 * Index the whole document with VTD-XML, then walk it. Supports
+		 * filtering and dependency order, and the {@link IndexCache}.
+		 */
+		VTD,
+		/**
+		 * Read the document in one pass with a StAX pull parser. The document
+		 * is not kept, only the ids of the elements read and the callbacks
+		 * waiting for prerequisites. Does not support filtering.
+		 */
+		STAX
+	}
+	
 	public static void importFromFile(final IProgressMonitor mon, final String source, final StreamImporter importer) throws Throwable {
+		importFromFile(mon, source, importer, null);
+	}
+	
+	/**
+	 * Import the summary, or with a filter just the part of it that the filter
+	 * selects. Filtering ignores dependency order and is only supported for
+	 * XML summaries.
+	 * 
+	 * @param filter may be null to import everything
+	 */
+	public static void importFromFile(final IProgressMonitor mon, final String source, final StreamImporter importer, final ImportFilter filter) throws Throwable {
+		importFromFile(mon, source, importer, filter, Engine.VTD);
+	}
+	
+	/**
+	 * @param filter may be null to import everything
+	 * @param engine parser for XML summaries, binary summaries are always
+	 * streamed
+	 */
+	public static void importFromFile(final IProgressMonitor mon, final String source, final StreamImporter importer, final ImportFilter filter, 
+			final Engine engine) throws Throwable {
 		final Throwable[] error = new Throwable[1];
 
 		class JobImporter{
@@ -83,12 +191,36 @@ public class StreamAPI {
 			
 			IStatus doImport(){
 				try{
+					if(BinaryAPI.isBinary(source)){
+						if(filter != null) throw new IOException("Filtered import is not supported for binary summaries, convert to XML first: " + source);
+						BinaryAPI.streamImport(monitor, source, importer);
+						return Status.OK_STATUS;
+					}
+					
+					if(engine == Engine.STAX){
+						if(filter != null) throw new IOException("Filtered import is not supported by the StAX engine: " + source);
+						StaxImport.streamImport(monitor, source, importer);
+						return Status.OK_STATUS;
+					}
+					
+					if(ChunkedSummary.isChunked(source)){
+						XMLChunkReader chunks = ChunkedSummary.open(source);
+						try{
+							VTDNav vn = chunks.next();
+							if(vn == null) throw new IOException("Empty summary: " + source);
+							StreamAPI s = new StreamAPI(monitor, vn, importer, filter);
+							s.chunks = chunks;
+							s.streamImport();
+						}finally{
+							chunks.close();
+						}
+						return Status.OK_STATUS;
+					}
+					
 					// Setup
-					VTDGen vg = new VTDGen();
-					vg.parseGZIPFile(source, false);
-					VTDNav vn = vg.getNav();
+					VTDNav vn = IndexCache.parse(source);
 					
-					StreamAPI s = new StreamAPI(mon, vn, importer);
+					StreamAPI s = new StreamAPI(monitor, vn, importer, filter);
 					s.streamImport();
 					
 					// Re-enable if you need to debug problems with not all callbacks executing.
@@ -133,42 +265,65 @@ public class StreamAPI {
 		PrecedenceCallbackRunner pcr = s.pcr;
 		
 		// Detect cycles
-		Set<Long> stack = new CompactHashSet<Long>();
-		for(Long uncompleted : pcr.queued.keySet()){
-			for(StreamImporterCallback sic : pcr.queued.get(uncompleted)){
-				cycleDetect(pcr, stack, sic);
-			}
+		LongHashSet done = new LongHashSet();
+		for(long uncompleted : pcr.added.keys()){
+			cycleDetect(pcr, done, pcr.added.get(uncompleted));
 		}
 		
 		// Detect quantity mismatch
 		long added = s.pcr.numAdded;
 		long completed = s.pcr.numCompleted;
 		if(added != completed) {
-			Long someKey = pcr.queued.keySet().iterator().next();
-			Set<StreamImporterCallback> uncompletedExamples = (Set<StreamImporterCallback>) s.pcr.queued.get(someKey);
-			StreamImporterCallback uncompletedExample = uncompletedExamples.iterator().next();
+			long[] uncompleted = pcr.added.keys();
+			PrecedenceCallbackRunner.Callback uncompletedExample = uncompleted.length == 0 ? null : pcr.added.get(uncompleted[0]);
 			
 			throw new IOException("Parsed " + added + " stream callbacks but " + completed + " were run! Example:\n" + uncompletedExample);
 		}
 	}
 	
-	private static void cycleDetect(PrecedenceCallbackRunner pcr, Set<Long> stack, StreamImporterCallback current){
-		Long id = current.id;
-		if(stack.contains(id)){
-			StringBuilder sb = new StringBuilder();
+	/**
+	 * Depth first search for a cycle through the prerequisites of start.
+	 * Callbacks already searched from are in done and are not searched again,
+	 * so each is visited once however many paths lead to it.
+	 */
+	private static void cycleDetect(PrecedenceCallbackRunner pcr, LongHashSet done, PrecedenceCallbackRunner.Callback start){
+		if(done.contains(start.id)) return;
+		
+		// The search path, and for each callback on it the next prerequisite
+		// to look at
+		List<PrecedenceCallbackRunner.Callback> path = new ArrayList<PrecedenceCallbackRunner.Callback>();
+		int[] next = new int[16];
+		LongHashSet onStack = new LongHashSet();
+		path.add(start);
+		onStack.add(start.id);
+		while(!path.isEmpty()){
+			int top = path.size() - 1;
+			PrecedenceCallbackRunner.Callback current = path.get(top);
+			if(next[top] == current.numPrereqs){
+				path.remove(top);
+				onStack.remove(current.id);
+				done.add(current.id);
+				continue;
+			}
 			
-			for(Long l : stack){
-				sb.append("\n").append(pcr.added.get(l));
+			long prereqID = current.prereqs[next[top]++];
+			if(onStack.contains(prereqID)){
+				StringBuilder sb = new StringBuilder();
+				
+				for(PrecedenceCallbackRunner.Callback sic : path){
+					sb.append("\n").append(sic);
+				}
+				
+				throw new IOException("Detected cycle!" + sb.toString());
 			}
 			
-			throw new IOException("Detected cycle!" + sb.toString());
+			PrecedenceCallbackRunner.Callback prereq = pcr.added.get(prereqID);
+			if(prereq == null || done.contains(prereqID)) continue;
+			if(path.size() == next.length) next = Arrays.copyOf(next, next.length * 2);
+			next[path.size()] = 0;
+			path.add(prereq);
+			onStack.add(prereqID);
 		}
-		
-		
-		
-		stack.add(id);
-		for(Long l : current.prereqs) cycleDetect(pcr, stack, pcr.added.get(l));
-		stack.remove(id);
 	}
 	
 	private static void throwForMissingElement(String tag){
@@ -195,42 +350,213 @@ public class StreamAPI {
 	
 	IProgressMonitor mon;
 	VTDNav vn;
+	// Later parts of a summary imported in chunks, see ChunkedSummary
+	XMLChunkReader chunks;
+	// Set if the importer takes relationships in batches
+	RelationshipBatcher batch;
 	StreamImporter importer;
-	PrecedenceCallbackRunner pcr = new PrecedenceCallbackRunner();
+	PrecedenceCallbackRunner pcr;
+	// Set once the header says the summary is dependency ordered
+	OrderedCallbackRunner ordered;
+	Map<String, CallbackFactory> factoriesByTag = new CompactHashMap<String, CallbackFactory>();
+	/**
+	 * True if token bytes map one-to-one onto characters, so that numbers can
+	 * be decoded without first building a String.
+	 */
+	boolean byteDecodable;
+	// Selective import state, see ImportFilter
+	ImportFilter filter;
+	// Skipped packages and types which may yet be imported without members
+	LongObjectHashMap<Skipped> skipped;
+	// Set while importing such a package or type, so its children are skipped
+	boolean stubbing;
+	String scopePackage, scopeType;
+	String peekName;
+	long peekID;
+	Set<String> peekTags = new CompactHashSet<String>();
 	
-	private StreamAPI(IProgressMonitor mon, VTDNav vn, StreamImporter importer){
+	private StreamAPI(IProgressMonitor mon, VTDNav vn, StreamImporter importer, ImportFilter filter){
 		this.mon = mon;
 		this.vn = vn;
 		this.importer = importer;
+		this.filter = filter;
+		if(filter != null) skipped = new LongObjectHashMap<Skipped>();
+		this.pcr = new PrecedenceCallbackRunner(mon);
+		this.batch = RelationshipBatcher.create(importer);
+		int encoding = vn.getEncoding();
+		this.byteDecodable = encoding == VTDNav.FORMAT_UTF8 || encoding == VTDNav.FORMAT_ASCII || encoding == VTDNav.FORMAT_ISO_8859_1;
+		registerFactories();
+	}
+	
+	/**
+	 * Creates the callback for one child element, with the cursor positioned on it.
+	 */
+	private abstract class CallbackFactory{
+		final Class<? extends StreamImporterCallback> type;
+		
+		CallbackFactory(Class<? extends StreamImporterCallback> type){
+			this.type = type;
+		}
+		
+		abstract StreamImporterCallback create(long parentID) throws NavException;
+	}
+	
+	/**
+	 * Constructs callbacks the way parseChildren did before the factory table.
+	 */
+	private class ReflectiveCallbackFactory extends CallbackFactory{
+		ReflectiveCallbackFactory(Class<? extends StreamImporterCallback> type){
+			super(type);
+		}
+		
+		@Override
+		StreamImporterCallback create(long parentID) throws NavException {
+			try{
+				return (StreamImporterCallback) type.getDeclaredConstructors()[0].newInstance(StreamAPI.this, parentID);
+			}catch(InvocationTargetException e){
+				if(e.getCause() instanceof NavException) throw (NavException) e.getCause();
+				if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+				throw new IOException(e.getCause());
+			}catch(InstantiationException | IllegalAccessException e){
+				throw new IOException(e);
+			}
+		}
 	}
 	
-	private void streamImport() throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, ParseException, NoSuchMethodException{
+	private void registerFactory(CallbackFactory factory, String... tags){
+		if(Boolean.getBoolean(REFLECTIVE_CALLBACKS_PROPERTY)) factory = new ReflectiveCallbackFactory(factory.type);
+		for(String tag : tags) factoriesByTag.put(tag, factory);
+	}
+	
+	private void registerFactories(){
+		registerFactory(new CallbackFactory(PrimitiveCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new PrimitiveCallback(parentID);
+			}
+		}, Schema.IOMODEL_PRIMITIVE);
+		registerFactory(new CallbackFactory(LibraryCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new LibraryCallback(parentID);
+			}
+		}, Schema.IOMODEL_LIBRARY);
+		registerFactory(new CallbackFactory(RelationshipCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new RelationshipCallback(parentID);
+			}
+		}, Schema.IOMODEL_RELATIONSHIP);
+		registerFactory(new CallbackFactory(PackageCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new PackageCallback(parentID);
+			}
+		}, Schema.LIBRARY_PACKAGE);
+		registerFactory(new CallbackFactory(ClassCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new ClassCallback(parentID);
+			}
+		}, Schema.PACKAGE_CLASS, Schema.METHOD_LOCAL_CLASS, Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS);
+		registerFactory(new CallbackFactory(InterfaceCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new InterfaceCallback(parentID);
+			}
+		}, Schema.PACKAGE_INTERFACE, Schema.METHOD_LOCAL_INTERFACE, Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE);
+		registerFactory(new CallbackFactory(EnumCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new EnumCallback(parentID);
+			}
+		}, Schema.PACKAGE_ENUM, Schema.METHOD_LOCAL_ENUM, Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM);
+		registerFactory(new CallbackFactory(AnnotationCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new AnnotationCallback(parentID);
+			}
+		}, Schema.PACKAGE_ANNOTATION, Schema.METHOD_LOCAL_ANNOTATION, Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION);
+		registerFactory(new CallbackFactory(ConstructorCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new ConstructorCallback(parentID);
+			}
+		}, Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR);
+		registerFactory(new CallbackFactory(MethodCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new MethodCallback(parentID);
+			}
+		}, Schema.TYPE_NON_PRIMITIVE_METHOD);
+		registerFactory(new CallbackFactory(FieldCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new FieldCallback(parentID);
+			}
+		}, Schema.TYPE_NON_PRIMITIVE_FIELD);
+		registerFactory(new CallbackFactory(EnumConstantCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new EnumConstantCallback(parentID);
+			}
+		}, Schema.ENUM_TYPE_NON_PRIMITIVE_CONSTANT);
+		registerFactory(new CallbackFactory(ParamCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new ParamCallback(parentID);
+			}
+		}, Schema.METHOD_PARAM);
+		registerFactory(new CallbackFactory(ReturnCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new ReturnCallback(parentID);
+			}
+		}, Schema.METHOD_RETURNED);
+		registerFactory(new CallbackFactory(ThisCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new ThisCallback(parentID);
+			}
+		}, Schema.METHOD_CONTEXT_THIS);
+		registerFactory(new CallbackFactory(LocalCallback.class){
+			@Override
+			StreamImporterCallback create(long parentID) throws NavException {
+				return new LocalCallback(parentID);
+			}
+		}, Schema.METHOD_LOCAL_VAR);
+	}
+	
+	private void streamImport() throws NavException, ParseException{
 		new IOModelCallback();
+		if(batch != null) batch.flush();
 	}
 	
-	private abstract class StreamImporterCallback{
-		Set<Long> prereqs = new CompactHashSet<Long>();
+	private abstract class StreamImporterCallback extends PrecedenceCallbackRunner.Callback{
 		long parent = (long) StreamImporter.NOT_DEFINED;
-		long id = (long) StreamImporter.NOT_DEFINED;
+		// VTD index of this callback's element
+		int index;
 		
 		public StreamImporterCallback(long parent) throws NavException{
 			this.parent = parent;
-			if(parent > StreamImporter.NOT_DEFINED) prereqs.add(parent);
+			this.index = vn.getCurrentIndex();
+			if(parent > StreamImporter.NOT_DEFINED) addPrereq(parent);
 			vn.toElement(VTDNav.FC);
 		}
 		
 		final void callback(){
-			pcr.callback(this);
+			if(ordered != null) ordered.callback(this);
+			else pcr.callback(this);
 		}
-		
-		abstract void doCallback();
 	}
 	
 	private class IOModelCallback extends StreamImporterCallback{
 		String author;
 		Date date; 
+		long maxID = StreamImporter.NOT_DEFINED;
+		Map<String, Long> counts = new TreeMap<String, Long>();
 		
-		public IOModelCallback() throws NavException, ParseException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public IOModelCallback() throws NavException, ParseException {
 			super(-1);
 			if(mon.isCanceled()) return;
 			id = (long) -1;
@@ -242,15 +568,32 @@ public class StreamAPI {
 				numElements = parseLong(Schema.IOMODEL_NUM_ELEMENTS, false); 
 				mon = SubMonitor.convert(mon, (int) numElements);
 			}
+			if(vn.toElement(VTDNav.NS)){
+				if(Boolean.parseBoolean(parseString(Schema.IOMODEL_DEPENDENCY_ORDERED, false)) && filter == null && chunks == null)
+					ordered = new OrderedCallbackRunner(index, numElements);
+			}
+			if(vn.toElement(VTDNav.NS)){
+				maxID = parseLong(Schema.IOMODEL_MAX_ID, false);
+				if(maxID != StreamImporter.NOT_DEFINED) pcr.setMaxID(maxID);
+			}
+			if(vn.toElement(VTDNav.NS))
+				parseCounts(Schema.IOMODEL_COUNT, counts);
+			pcr.setExpectedSize(numElements);
 			this.callback();
 			
 			try{
-				if(vn.toElement(VTDNav.NS))
-					parseChildren((long) -1, Schema.IOMODEL_PRIMITIVE, PrimitiveCallback.class);
-				if(vn.toElement(VTDNav.NS))
-					parseChildren((long) -1, Schema.IOMODEL_LIBRARY, LibraryCallback.class);
-				if(vn.toElement(VTDNav.NS))
-					parseChildren((long) -1, Schema.IOMODEL_RELATIONSHIP, RelationshipCallback.class);
+				if(ordered != null){
+					ordered.run();
+				}else{
+					if(vn.toElement(VTDNav.NS))
+						parseChildren((long) -1, Schema.IOMODEL_PRIMITIVE);
+					if(vn.toElement(VTDNav.NS))
+						parseChildren((long) -1, Schema.IOMODEL_LIBRARY);
+					if(vn.toElement(VTDNav.NS))
+						parseChildren((long) -1, Schema.IOMODEL_RELATIONSHIP);
+					if(chunks != null) parseChunks();
+					if(filter != null) resolveFiltered();
+				}
 				vn.toElement(VTDNav.P);
 			}finally{
 				if(numElements > -1) mon.done();
@@ -259,19 +602,23 @@ public class StreamAPI {
 
 		@Override
 		void doCallback() {
+			if(maxID != StreamImporter.NOT_DEFINED && importer instanceof DenseStreamImporter)
+				((DenseStreamImporter) importer).processMaxID(maxID);
+			if(!counts.isEmpty() && importer instanceof SizedStreamImporter)
+				((SizedStreamImporter) importer).processCounts(Collections.unmodifiableMap(counts));
 			importer.processIOModel(author, date);
 			mon.worked(1);
 		}
 	}
 	
 	private class LibraryCallback extends ElementCallback{
-		public LibraryCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public LibraryCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			this.callback();
 			
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.LIBRARY_PACKAGE, PackageCallback.class);
+				parseChildren(id, Schema.LIBRARY_PACKAGE);
 			vn.toElement(VTDNav.P);
 		}
 
@@ -285,7 +632,8 @@ public class StreamAPI {
 	private abstract class ElementCallback extends StreamImporterCallback{
 		String name;
 		Set<String> tags = new CompactHashSet<String>();
-		Map<String, String> attr = new CompactHashMap<String,String>();
+		// Most elements have no attributes, so share an empty map between them
+		Map<String, String> attr = Collections.emptyMap();
 		
 		public ElementCallback(long parent) throws NavException {
 			super(parent);
@@ -295,16 +643,21 @@ public class StreamAPI {
 			id = parseLong(Schema.ELEMENT_ID, true);
 			if(vn.toElement(VTDNav.NS)) 
 				parseTags(Schema.ELEMENT_TAG, tags);
-			if(vn.toElement(VTDNav.NS)) 
+			if(vn.toElement(VTDNav.NS)){
+				if(vn.matchElement(Schema.ELEMENT_ATTR)) attr = new CompactHashMap<String,String>();
 				parseAttr(Schema.ELEMENT_ATTR, attr);
+			}
 		}
 		
 		@Override
 		public String toString(){
 			StringBuilder sb = new StringBuilder();
 			sb.append("{");
-			for(Long l : prereqs) sb.append(Long.toString(l, Schema.RADIX)).append(",");
-			sb.deleteCharAt(sb.length()-1).append("}");
+			for(int i = 0; i < numPrereqs; i++){
+				if(i > 0) sb.append(",");
+				sb.append(Long.toString(prereqs[i], Schema.RADIX));
+			}
+			sb.append("}");
 			
 			return "NAME: " + name +
 				"\nTYPE: " + this.getClass().getSimpleName() +
@@ -314,19 +667,19 @@ public class StreamAPI {
 	}
 	
 	private class PackageCallback extends ElementCallback{
-		public PackageCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public PackageCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			this.callback();
 			
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.PACKAGE_CLASS, ClassCallback.class);
+				parseChildren(id, Schema.PACKAGE_CLASS);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.PACKAGE_INTERFACE, InterfaceCallback.class);
+				parseChildren(id, Schema.PACKAGE_INTERFACE);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.PACKAGE_ENUM, EnumCallback.class);
+				parseChildren(id, Schema.PACKAGE_ENUM);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.PACKAGE_ANNOTATION, AnnotationCallback.class);
+				parseChildren(id, Schema.PACKAGE_ANNOTATION);
 			vn.toElement(VTDNav.P);
 		}
 
@@ -351,8 +704,8 @@ public class StreamAPI {
 			destID = parseLong(Schema.RELATIONSHIP_DEST_ID, true);
 			vn.toElement(VTDNav.NS);
 			type = parseString(Schema.RELATIONSHIP_SCHEMA_TYPE, true);
-			prereqs.add(originID);
-			prereqs.add(destID);
+			addPrereq(originID);
+			addPrereq(destID);
 			
 			this.callback();
 			vn.toElement(VTDNav.P);
@@ -360,7 +713,8 @@ public class StreamAPI {
 
 		@Override
 		void doCallback() {
-			importer.processRelationship(name, type, id, parent, tags, attr, originID, destID);
+			if(batch == null || !batch.add(name, type, id, tags, attr, originID, destID))
+				importer.processRelationship(name, type, id, parent, tags, attr, originID, destID);
 			mon.worked(1);
 		}
 	}
@@ -395,14 +749,14 @@ public class StreamAPI {
 		Set<Long> overridesID = new CompactHashSet<Long>();
 		Set<StreamImporter.Param> mSigParam = new CompactHashSet<StreamImporter.Param>();
 		
-		public MethodCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public MethodCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			
 			if(vn.toElement(VTDNav.NS)){
-				for(StreamImporterCallback sic : parseChildren(id, Schema.METHOD_PARAM, ParamCallback.class)){
+				for(StreamImporterCallback sic : parseChildren(id, Schema.METHOD_PARAM)){
 					ParamCallback pc = (ParamCallback) sic;
-					prereqs.add(pc.typeID);
+					addPrereq(pc.typeID);
 					
 					StreamImporter.Param p = new StreamImporter.Param();
 					transferParamContents(pc, p);
@@ -411,24 +765,24 @@ public class StreamAPI {
 			}
 
 			if(vn.toElement(VTDNav.NS)) parseLongs(Schema.METHOD_OVERRIDES, overridesID);	
-			for(Long l : overridesID) prereqs.add(l);
+			for(Long l : overridesID) addPrereq(l);
 			
 			this.callback();
 			
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.METHOD_RETURNED, ReturnCallback.class);
+				parseChildren(id, Schema.METHOD_RETURNED);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.METHOD_CONTEXT_THIS, ThisCallback.class);
+				parseChildren(id, Schema.METHOD_CONTEXT_THIS);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.METHOD_LOCAL_CLASS, ClassCallback.class);
+				parseChildren(id, Schema.METHOD_LOCAL_CLASS);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.METHOD_LOCAL_INTERFACE, InterfaceCallback.class);
+				parseChildren(id, Schema.METHOD_LOCAL_INTERFACE);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.METHOD_LOCAL_ENUM, EnumCallback.class);
+				parseChildren(id, Schema.METHOD_LOCAL_ENUM);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.METHOD_LOCAL_ANNOTATION, AnnotationCallback.class);
+				parseChildren(id, Schema.METHOD_LOCAL_ANNOTATION);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.METHOD_LOCAL_VAR, LocalCallback.class);
+				parseChildren(id, Schema.METHOD_LOCAL_VAR);
 			
 			vn.toElement(VTDNav.P);
 		}
@@ -438,10 +792,15 @@ public class StreamAPI {
 			importer.processMethod(name, id, parent, tags, attr, overridesID, mSigParam);
 			mon.worked(1 + mSigParam.size());
 		}
+		
+		@Override
+		boolean waive(long prereq) {
+			return overridesID.remove(prereq);
+		}
 	}
 	
 	private class ConstructorCallback extends MethodCallback{
-		public ConstructorCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public ConstructorCallback(long parent) throws NavException {
 			super(parent);
 		}
 		
@@ -461,7 +820,7 @@ public class StreamAPI {
 			if(mon.isCanceled()) return;
 			vn.toElement(VTDNav.NS);
 			typeID = parseLong(Schema.VAR_TYPE, true);
-			prereqs.add(typeID);
+			addPrereq(typeID);
 			if(vn.toElement(VTDNav.NS))
 				arrayDim = parseInt(Schema.VAR_ARRAY_DIM, false);
 		}
@@ -471,36 +830,46 @@ public class StreamAPI {
 		long extendsID = StreamImporter.NOT_DEFINED;
 		Set<Long> implementsIDs = new CompactHashSet<Long>();
 		
-		public NonPrimitiveTypeCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public NonPrimitiveTypeCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			if(vn.toElement(VTDNav.NS))
 				extendsID = parseLong(Schema.TYPE_NON_PRIMITIVE_EXTENDS, false);
 			if(vn.toElement(VTDNav.NS))
 				parseLongs(Schema.TYPE_NON_PRIMITIVE_IMPLEMENTS, implementsIDs);
-			if(extendsID > StreamImporter.NOT_DEFINED) prereqs.add(extendsID);
-			for(Long l : implementsIDs) prereqs.add(l);
+			if(extendsID > StreamImporter.NOT_DEFINED) addPrereq(extendsID);
+			for(Long l : implementsIDs) addPrereq(l);
 			this.callback();
 			
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR, ConstructorCallback.class);
+				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_METHOD, MethodCallback.class);
+				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_METHOD);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_FIELD, FieldCallback.class);
+				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_FIELD);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS, ClassCallback.class);
+				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE, InterfaceCallback.class);
+				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM, EnumCallback.class);
+				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM);
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION, AnnotationCallback.class);
+				parseChildren(id, Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION);
+		}
+		
+		@Override
+		boolean waive(long prereq) {
+			boolean waived = implementsIDs.remove(prereq);
+			if(extendsID == prereq){
+				extendsID = StreamImporter.NOT_DEFINED;
+				waived = true;
+			}
+			return waived;
 		}
 	}
 	
 	private class AnnotationCallback extends NonPrimitiveTypeCallback{
-		public AnnotationCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public AnnotationCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			vn.toElement(VTDNav.P);
@@ -514,7 +883,7 @@ public class StreamAPI {
 	}
 	
 	private class ClassCallback extends NonPrimitiveTypeCallback{
-		public ClassCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public ClassCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			vn.toElement(VTDNav.P);
@@ -528,11 +897,11 @@ public class StreamAPI {
 	}
 	
 	private class EnumCallback extends NonPrimitiveTypeCallback{
-		public EnumCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public EnumCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			if(vn.toElement(VTDNav.NS))
-				parseChildren(id, Schema.ENUM_TYPE_NON_PRIMITIVE_CONSTANT, EnumConstantCallback.class);
+				parseChildren(id, Schema.ENUM_TYPE_NON_PRIMITIVE_CONSTANT);
 			vn.toElement(VTDNav.P);
 		}
 
@@ -544,7 +913,7 @@ public class StreamAPI {
 	}
 	
 	private class InterfaceCallback extends NonPrimitiveTypeCallback{
-		public InterfaceCallback(long parent) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException {
+		public InterfaceCallback(long parent) throws NavException {
 			super(parent);
 			if(mon.isCanceled()) return;
 			vn.toElement(VTDNav.P);
@@ -658,8 +1027,7 @@ public class StreamAPI {
 	}
 	
 	private Date parseDate(String tag, boolean required) throws NavException, ParseException{
-		String element = vn.toString(vn.getCurrentIndex());
-		if(tag.equals(element)){
+		if(vn.matchElement(tag)){
 			return sdf.parse(parseString(tag, required));
 		}else{
 			if(required) throwForMissingElement(tag);
@@ -669,8 +1037,7 @@ public class StreamAPI {
 	}
 	
 	private String parseString(String tag, boolean required) throws NavException{
-		String element = vn.toString(vn.getCurrentIndex());
-		if(tag.equals(element)){
+		if(vn.matchElement(tag)){
 			return vn.toString(vn.getText());
 		}else{
 			if(required) throwForMissingElement(tag);
@@ -680,9 +1047,8 @@ public class StreamAPI {
 	}
 	
 	private long parseLong(String tag, boolean required) throws NavException{
-		String element = vn.toString(vn.getCurrentIndex());
-		if(tag.equals(element)){
-			return Long.parseLong(vn.toString(vn.getText()), Schema.RADIX);
+		if(vn.matchElement(tag)){
+			return parseRadixLong(vn.getText());
 		}else{
 			if(required) throwForMissingElement(tag);
 			vn.toElement(VTDNav.PS);
@@ -691,9 +1057,8 @@ public class StreamAPI {
 	}
 	
 	private int parseInt(String tag, boolean required) throws NavException{
-		String element = vn.toString(vn.getCurrentIndex());
-		if(tag.equals(element)){
-			return Integer.parseInt(vn.toString(vn.getText()), Schema.RADIX);
+		if(vn.matchElement(tag)){
+			return parseRadixInt(vn.getText());
 		}else{
 			if(required) throwForMissingElement(tag);
 			vn.toElement(VTDNav.PS);
@@ -703,8 +1068,7 @@ public class StreamAPI {
 
 	private void parseTags(String elementTag, Set<String> tags) throws NavException{
 		do{
-			String element = vn.toString(vn.getCurrentIndex());
-			if(elementTag.equals(element)){
+			if(vn.matchElement(elementTag)){
 				tags.add(parseString(Schema.ELEMENT_TAG, true));
 			}else{
 				vn.toElement(VTDNav.PS);
@@ -715,8 +1079,7 @@ public class StreamAPI {
 
 	private void parseAttr(String tag,  Map<String,String> attr) throws NavException{
 		do{
-			String element = vn.toString(vn.getCurrentIndex());
-			if(tag.equals(element)){
+			if(vn.matchElement(tag)){
 				vn.toElement(VTDNav.FC);
 				String key = parseString(Schema.ATTR_KEY, true);
 				vn.toElement(VTDNav.NS);
@@ -730,10 +1093,25 @@ public class StreamAPI {
 		}while(vn.toElement(VTDNav.NS));
 	}
 	
+	private void parseCounts(String tag, Map<String,Long> counts) throws NavException{
+		do{
+			if(vn.matchElement(tag)){
+				vn.toElement(VTDNav.FC);
+				String key = parseString(Schema.ATTR_KEY, true);
+				vn.toElement(VTDNav.NS);
+				long count = parseLong(Schema.ATTR_VAL, true);
+				vn.toElement(VTDNav.P);
+				counts.put(key, count);
+			}else{
+				vn.toElement(VTDNav.PS);
+				return;
+			}
+		}while(vn.toElement(VTDNav.NS));
+	}
+	
 	private void parseLongs(String tag, Set<Long> longs) throws NavException{
 		do{
-			String element = vn.toString(vn.getCurrentIndex());
-			if(tag.equals(element)){
+			if(vn.matchElement(tag)){
 				longs.add(parseLong(tag, false));
 			}else{
 				vn.toElement(VTDNav.PS);
@@ -742,12 +1120,59 @@ public class StreamAPI {
 		}while(vn.toElement(VTDNav.NS));
 	}
 	
-	private Set<StreamImporterCallback> parseChildren(long parentID, String tag, Class<? extends StreamImporterCallback> clazz) throws NavException, InstantiationException, IllegalAccessException, IllegalArgumentException, InvocationTargetException, SecurityException, NoSuchMethodException{
+	/**
+	 * Decode a base {@link Schema#RADIX} number directly from the bytes of the
+	 * given token, falling back to {@link Long#parseLong(String, int)} for
+	 * anything unusual (entities, multi-byte encodings, possible overflow).
+	 * @param index
+	 * @return
+	 * @throws NavException
+	 */
+	private long parseRadixLong(int index) throws NavException{
+		if(!byteDecodable || index == -1) return Long.parseLong(vn.toString(index), Schema.RADIX);
+		int offset = vn.getTokenOffset(index);
+		int end = offset + vn.getTokenLength(index);
+		IByteBuffer xml = vn.getXML();
+		
+		boolean negative = offset < end && xml.byteAt(offset) == '-';
+		int i = negative ? offset + 1 : offset;
+		if(i == end || end - i > MAX_FAST_DIGITS) return Long.parseLong(vn.toString(index), Schema.RADIX);
+		
+		long result = 0;
+		for(; i < end; i++){
+			int digit = Character.digit((char) xml.byteAt(i), Schema.RADIX);
+			if(digit < 0) return Long.parseLong(vn.toString(index), Schema.RADIX);
+			result = result * Schema.RADIX + digit;
+		}
+		return negative ? -result : result;
+	}
+	
+	private int parseRadixInt(int index) throws NavException{
+		long result = parseRadixLong(index);
+		if(result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) return Integer.parseInt(vn.toString(index), Schema.RADIX);
+		return (int) result;
+	}
+	
+	/**
+	 * Parse the run of sibling elements named tag, creating each callback with
+	 * the factory registered for that tag.
+	 */
+	private Set<StreamImporterCallback> parseChildren(long parentID, String tag) throws NavException{
+		CallbackFactory factory = factoriesByTag.get(tag);
+		if(factory == null) throw new IOException("No callback registered for element: " + tag + " (" + fieldForElement(tag) + ")");
+		return parseChildren(parentID, tag, factory);
+	}
+	
+	private Set<StreamImporterCallback> parseChildren(long parentID, String tag, CallbackFactory factory) throws NavException{
 		Set<StreamImporterCallback> ret = new CompactHashSet<StreamImporterCallback>();
+		// In id order children are dispatched on their own, except for the
+		// parameters which make up a method's signature
+		boolean skip = stubbing || (ordered != null && factory.type != ParamCallback.class);
 		do{
-			String element = vn.toString(vn.getCurrentIndex());
-			if(tag.equals(element)){
-				ret.add((StreamImporterCallback) clazz.getDeclaredConstructors()[0].newInstance(StreamAPI.this, parentID));
+			if(vn.matchElement(tag)){
+				if(skip) continue;
+				if(filter == null) ret.add(factory.create(parentID));
+				else createFiltered(parentID, tag, factory, ret);
 			}else{
 				vn.toElement(VTDNav.PS);
 				break;
@@ -756,62 +1181,376 @@ public class StreamAPI {
 		return ret;
 	}
 	
-	private class PrecedenceCallbackRunner {
-		Set<Long> completed;
-		Map<Long, Set<StreamImporterCallback>> queued;
-		Map<Long, StreamImporterCallback> added;
-		long numAdded, numCompleted;
+	/**
+	 * Parse the primitives, libraries and relationships in each remaining chunk
+	 * of the summary.
+	 */
+	private void parseChunks() throws NavException{
+		VTDNav next;
+		while(!mon.isCanceled() && (next = chunks.next()) != null){
+			vn = next;
+			if(!vn.toElement(VTDNav.FC)) continue;
+			do{
+				parseChildren((long) -1, vn.toString(vn.getCurrentIndex()));
+			}while(vn.toElement(VTDNav.NS));
+		}
+	}
+	
+	private static final String[] PACKAGE_TYPE_TAGS = {Schema.PACKAGE_CLASS, Schema.PACKAGE_INTERFACE, Schema.PACKAGE_ENUM, Schema.PACKAGE_ANNOTATION};
+	private static final String[] NESTED_TYPE_TAGS = {Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS, Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE, 
+		Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM, Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION};
+	private static final String[] LOCAL_TYPE_TAGS = {Schema.METHOD_LOCAL_CLASS, Schema.METHOD_LOCAL_INTERFACE, 
+		Schema.METHOD_LOCAL_ENUM, Schema.METHOD_LOCAL_ANNOTATION};
+	
+	/**
+	 * A package or type left out by the filter, which is imported without its
+	 * children if something selected refers to it.
+	 */
+	private static class Skipped{
+		VTDNav nav;
+		BookMark mark;
+		long parent;
+		CallbackFactory factory;
+	}
+	
+	private static boolean contains(String[] tags, String tag){
+		for(String t : tags)
+			if(t.equals(tag)) return true;
+		return false;
+	}
+	
+	/**
+	 * Create the callback for the element under the cursor if the filter
+	 * selects it, or else skip its subtree.
+	 */
+	private void createFiltered(long parentID, String tag, CallbackFactory factory, Set<StreamImporterCallback> ret) throws NavException{
+		boolean isPackage = Schema.LIBRARY_PACKAGE.equals(tag);
+		boolean isLocalType = contains(LOCAL_TYPE_TAGS, tag);
+		boolean isType = isLocalType || contains(PACKAGE_TYPE_TAGS, tag) || contains(NESTED_TYPE_TAGS, tag);
+		
+		if(!isPackage && !isType){
+			boolean accept;
+			switch(tag){
+			case Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR:
+			case Schema.TYPE_NON_PRIMITIVE_METHOD:
+			case Schema.TYPE_NON_PRIMITIVE_FIELD:
+				peek();
+				accept = filter.acceptMember(peekTags);
+				break;
+			case Schema.METHOD_LOCAL_VAR:
+				accept = filter.acceptLocals();
+				break;
+			default:
+				accept = true;
+			}
+			if(accept) ret.add(factory.create(parentID));
+			return;
+		}
+		
+		peek();
+		String outerPackage = scopePackage;
+		String outerType = scopeType;
+		boolean accept;
+		if(isPackage){
+			scopePackage = peekName == null ? "" : peekName;
+			scopeType = null;
+			accept = filter.acceptPackage(scopePackage);
+		}else{
+			String prefix = outerType != null ? outerType : outerPackage;
+			scopeType = prefix == null || prefix.isEmpty() ? peekName : prefix + "." + peekName;
+			accept = (!isLocalType || filter.acceptLocals()) && filter.acceptType(outerPackage, scopeType, peekTags);
+		}
+		
+		try{
+			if(accept) ret.add(factory.create(parentID));
+			else skip(parentID, isPackage, factory);
+		}finally{
+			scopePackage = outerPackage;
+			scopeType = outerType;
+		}
+	}
+	
+	/**
+	 * Read the name, id and tags of the element under the cursor.
+	 */
+	private void peek() throws NavException{
+		peekName = null;
+		peekID = StreamImporter.NOT_DEFINED;
+		peekTags.clear();
+		if(!vn.toElement(VTDNav.FC)) return;
+		do{
+			if(vn.matchElement(Schema.ELEMENT_NAME)) peekName = vn.toString(vn.getText());
+			else if(vn.matchElement(Schema.ELEMENT_ID)) peekID = parseRadixLong(vn.getText());
+			else if(vn.matchElement(Schema.ELEMENT_TAG)) peekTags.add(vn.toString(vn.getText()));
+			else break;
+		}while(vn.toElement(VTDNav.NS));
+		vn.toElement(VTDNav.P);
+	}
+	
+	/**
+	 * Remember the package or type under the cursor, whose name and id have
+	 * been peeked, then look for selected types nested in it.
+	 */
+	private void skip(long parentID, boolean isPackage, CallbackFactory factory) throws NavException{
+		if(peekID == StreamImporter.NOT_DEFINED) throwForMissingElement(Schema.ELEMENT_ID);
+		Skipped s = new Skipped();
+		s.nav = vn;
+		s.mark = new BookMark(vn);
+		s.mark.recordCursorPosition();
+		s.parent = parentID;
+		s.factory = factory;
+		skipped.put(peekID, s);
+		
+		long id = peekID;
+		String[] typeTags = isPackage ? PACKAGE_TYPE_TAGS : NESTED_TYPE_TAGS;
+		Set<StreamImporterCallback> ret = new CompactHashSet<StreamImporterCallback>();
+		if(vn.toElement(VTDNav.FC)){
+			do{
+				for(String tag : typeTags){
+					if(vn.matchElement(tag)){
+						createFiltered(id, tag, factoriesByTag.get(tag), ret);
+						break;
+					}
+				}
+			}while(vn.toElement(VTDNav.NS));
+			vn.toElement(VTDNav.P);
+		}
+	}
+	
+	/**
+	 * Import a skipped package or type without its children, along with the
+	 * skipped packages and types enclosing it.
+	 * 
+	 * @return false if the id is not a skipped package or type
+	 */
+	private boolean materialize(long id) throws NavException{
+		Skipped s = skipped.remove(id);
+		if(s == null) return false;
+		materialize(s.parent);
+		
+		VTDNav current = vn;
+		vn = s.nav;
+		s.mark.setCursorPosition();
+		stubbing = true;
+		try{
+			s.factory.create(s.parent);
+		}finally{
+			stubbing = false;
+			vn = current;
+		}
+		return true;
+	}
+	
+	/**
+	 * Once the whole document has been read, settle the callbacks still waiting
+	 * on something the filter left out: import skipped packages and types that
+	 * are referred to, and abandon every other missing prerequisite.
+	 */
+	private void resolveFiltered() throws NavException{
+		while(!mon.isCanceled()){
+			boolean progress = false;
+			for(long prereq : pcr.waitingFor()){
+				if(!pcr.isPending(prereq) && !skipped.containsKey(prereq)){
+					pcr.abandon(prereq);
+					progress = true;
+				}
+			}
+			if(progress) continue;
+			
+			for(long prereq : pcr.waitingFor()){
+				if(pcr.isAwaited(prereq) && materialize(prereq)) progress = true;
+			}
+			if(!progress) return;
+		}
+	}
+	
+	/**
+	 * Runs the callbacks of a summary whose header says it is dependency
+	 * ordered, i.e. every element's id is greater than the ids of its
+	 * prerequisites (see IOModel#exportIds). Elements are visited in
+	 * increasing id order and each callback runs as soon as it is parsed. A
+	 * prerequisite which has not already run means the promise was broken, and
+	 * the import fails instead of deferring.
+	 */
+	private class OrderedCallbackRunner {
+		// Elements in document order: VTD index, position of the parent element
+		// (-1 for children of the root), and id
+		int[] indices;
+		int[] parents;
+		int[] ids;
+		int size;
+		// Element id in the high half, document position in the low half, so a
+		// plain sort of the longs gives id order
+		long[] order;
+		// Document position of the element under the cursor, -1 while in the header
+		int cursor = -1;
+		int[] targetChain = new int[16];
+		int[] cursorChain = new int[16];
+		// Only the callback for this element runs; others are parsed as part of it
+		int target;
+		String[] tags;
+		CallbackFactory[] factories;
 		
-		public PrecedenceCallbackRunner(){
-			completed = new CompactHashSet<Long>();
-			queued = new CompactHashMap<Long, Set<StreamImporterCallback>>();
-			added = new CompactHashMap<Long, StreamImporterCallback>();
+		public OrderedCallbackRunner(int rootIndex, long numElements){
+			this.target = rootIndex;
+			int capacity = (int) Math.max(1024, Math.min(numElements, Integer.MAX_VALUE - 8));
+			this.indices = new int[capacity];
+			this.parents = new int[capacity];
+			this.ids = new int[capacity];
+			this.tags = factoriesByTag.keySet().toArray(new String[factoriesByTag.size()]);
+			this.factories = new CallbackFactory[tags.length];
+			for(int i = 0; i < tags.length; i++) factories[i] = factoriesByTag.get(tags[i]);
+		}
+		
+		public void callback(StreamImporterCallback callback){
+			if(callback.index != target) return;
+			if(mon.isCanceled()) return;
+			
+			for(int i = 0; i < callback.numPrereqs; i++){
+				long prereq = callback.prereqs[i];
+				if(prereq >= callback.id || !contains(prereq))
+					throw new IOException("Summary is marked dependency ordered, but " + Long.toString(prereq, Schema.RADIX) + " was not imported before:\n" + callback);
+			}
+			callback.doCallback();
 		}
 		
 		/**
-		 * Add the callback, executing if it's ready. Also executes subsequent dependencies which
-		 * are ready after this one is executed.
+		 * Index every element after the header, then create each callback in id
+		 * order. The cursor must be on the last header element.
 		 * 
-		 * @param callback
+		 * @throws NavException
 		 */
-		public void callback(StreamImporterCallback callback){ 
-			numAdded++;
-			added.put(callback.id, callback);
-			if(mon.isCanceled()) return;
-			callback.prereqs.removeAll(completed);
+		void run() throws NavException{
+			while(vn.toElement(VTDNav.NS)) collect(-1);
 			
-			if(callback.prereqs.isEmpty()){
-				completeCallback(callback);
-			}else{
-				for(Long l : callback.prereqs) addDependency(l, callback);
+			order = new long[size];
+			for(int i = 0; i < size; i++) order[i] = ((long) ids[i] << 32) | i;
+			Arrays.sort(order);
+			
+			for(int i = 0; i < size; i++){
+				if(mon.isCanceled()) return;
+				if(i > 0 && order[i] >>> 32 == order[i - 1] >>> 32)
+					throw new IOException("Duplicate element id: " + Long.toString(order[i] >>> 32, Schema.RADIX));
+				
+				int pos = (int) order[i];
+				moveTo(pos);
+				target = indices[pos];
+				factoryForCurrent().create(parents[pos] < 0 ? (long) -1 : ids[parents[pos]]);
+				if(vn.getCurrentIndex() != target) vn.recoverNode(target);
+				cursor = pos;
+			}
+		}
+		
+		/**
+		 * Record the element under the cursor and every element nested in it.
+		 * Elements are told apart from plain values by their id child.
+		 */
+		private void collect(int parent) throws NavException{
+			int index = vn.getCurrentIndex();
+			if(!vn.toElement(VTDNav.FC)) return;
+			if(vn.matchElement(Schema.ELEMENT_NAME)) vn.toElement(VTDNav.NS);
+			if(vn.matchElement(Schema.ELEMENT_ID)){
+				int pos = add(parseRadixLong(vn.getText()), index, parent);
+				while(vn.toElement(VTDNav.NS)) collect(pos);
 			}
+			vn.toElement(VTDNav.P);
 		}
 		
-		private void addDependency(Long l, StreamImporterCallback callback){
-			Set<StreamImporterCallback> dependencySet = queued.get(l);
-			if(dependencySet == null){
-				dependencySet = new CompactHashSet<StreamImporterCallback>();
-				queued.put(l, dependencySet);
+		private int add(long id, int index, int parent){
+			if(id < 0 || id > Integer.MAX_VALUE)
+				throw new IOException("Element id out of range for a dependency ordered summary: " + Long.toString(id, Schema.RADIX));
+			if(size == indices.length){
+				indices = Arrays.copyOf(indices, size * 2);
+				parents = Arrays.copyOf(parents, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
 			}
-			dependencySet.add(callback);
+			indices[size] = index;
+			parents[size] = parent;
+			ids[size] = (int) id;
+			return size++;
 		}
 		
-		private void completeCallback(StreamImporterCallback callback){
-			numCompleted++;
-			if(mon.isCanceled()) return;
-			callback.doCallback();
-			Long id = callback.id;
-			completed.add(id);
-			added.remove(id);
+		private boolean contains(long id){
+			if(id < 0 || id > Integer.MAX_VALUE) return false;
+			int pos = Arrays.binarySearch(order, id << 32);
+			if(pos < 0) pos = -pos - 1;
+			return pos < size && order[pos] >>> 32 == id;
+		}
+		
+		/**
+		 * VTD indices of the element at pos and its ancestors below the root,
+		 * outermost first.
+		 * 
+		 * @return the depth of the element
+		 */
+		private int chain(int pos, boolean forTarget){
+			int depth = 0;
+			for(int p = pos; p >= 0; p = parents[p]) depth++;
+			int[] chain = forTarget ? targetChain : cursorChain;
+			if(chain.length < depth) chain = new int[depth * 2];
+			for(int p = pos, i = depth - 1; p >= 0; p = parents[p], i--) chain[i] = indices[p];
+			if(forTarget) targetChain = chain;
+			else cursorChain = chain;
+			return depth;
+		}
+		
+		/**
+		 * Walk the cursor to the element at pos: up to the branch shared with the
+		 * current position, then across and down. Consecutive ids are mostly
+		 * neighbours in the document, so this is far cheaper than recovering each
+		 * node from its index.
+		 */
+		private void moveTo(int pos) throws NavException{
+			int targetDepth = chain(pos, true);
+			int level;
+			if(cursor < 0){
+				level = 1;
+				cursorChain[0] = vn.getCurrentIndex();
+			}else{
+				level = chain(cursor, false);
+			}
 			
-			Set<StreamImporterCallback> dependencySet = queued.remove(id);
-			if(dependencySet == null) return;
+			int common = 0;
+			while(common < targetDepth && common < level && targetChain[common] == cursorChain[common]) common++;
 			
-			for(StreamImporterCallback dependency : dependencySet){
-				if(dependency.prereqs.remove(id) && dependency.prereqs.isEmpty()){
-					completeCallback(dependency);
+			// Already on the target or below it, such as the last root child
+			// the header scan stopped on
+			if(common == targetDepth){
+				while(level > targetDepth){
+					vn.toElement(VTDNav.P);
+					level--;
 				}
+				return;
+			}
+			
+			while(level > common + 1){
+				vn.toElement(VTDNav.P);
+				level--;
+			}
+			if(level == common){
+				vn.toElement(VTDNav.FC);
+				level++;
+			}
+			
+			while(true){
+				int want = targetChain[level - 1];
+				while(vn.getCurrentIndex() < want) step(VTDNav.NS);
+				while(vn.getCurrentIndex() > want) step(VTDNav.PS);
+				if(level == targetDepth) return;
+				step(VTDNav.FC);
+				level++;
+			}
+		}
+		
+		private void step(int direction) throws NavException{
+			if(!vn.toElement(direction)) throw new IOException("Lost track of the cursor while importing in dependency order");
+		}
+		
+		private CallbackFactory factoryForCurrent() throws NavException{
+			for(int i = 0; i < tags.length; i++){
+				if(vn.matchElement(tags[i])) return factories[i];
 			}
+			throw new IOException("No callback registered for element: " + vn.toString(vn.getCurrentIndex()));
 		}
 	}
 }
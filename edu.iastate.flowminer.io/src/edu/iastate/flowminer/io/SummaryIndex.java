@@ -0,0 +1,377 @@
+package edu.iastate.flowminer.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.ximpleware.VTDGen;
+import com.ximpleware.VTDNav;
+
+import edu.iastate.flowminer.io.common.BinaryReader;
+import edu.iastate.flowminer.io.common.BinaryWriter;
+import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.common.ParallelGZIPOutputStream;
+import edu.iastate.flowminer.io.common.XMLWriter;
+import edu.iastate.flowminer.io.model.Element;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.io.model.SubtreeListener;
+
+/**
+ * Index of an indexed summary, as written by
+ * {@link ModelAPI#exportToFile(IProgressMonitor, edu.iastate.flowminer.io.model.IOModel, String, boolean, boolean)}.
+ * <p>
+ * In an indexed summary every library and package starts and ends on a gzip
+ * member boundary, and a trailer maps each one's name and id range to the
+ * compressed bytes which hold it. A single library or package can then be
+ * inflated and parsed on its own, without touching the rest of the file.
+ * The trailer sits in the extra fields of empty gzip members, so an indexed
+ * summary is still an ordinary .xml.gz to every other reader.
+ */
+public class SummaryIndex {
+	public static final int LIBRARY = 0;
+	public static final int PACKAGE = 1;
+	private static final int VERSION = 1;
+
+	public static class Entry{
+		int kind;
+		String name;
+		String library;
+		long id;
+		long minID, maxID;
+		long offset, length;
+		// Gzip members spanned, while writing
+		int firstMember, endMember;
+
+		/**
+		 * @return {@link SummaryIndex#LIBRARY} or {@link SummaryIndex#PACKAGE}
+		 */
+		public int getKind() {
+			return kind;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return for a package, the name of its library
+		 */
+		public String getLibrary() {
+			return library;
+		}
+
+		public long getId() {
+			return id;
+		}
+
+		/**
+		 * @return the smallest id in the subtree. Ids between this and
+		 * {@link #getMaxID()} need not all belong to the subtree.
+		 */
+		public long getMinID() {
+			return minID;
+		}
+
+		public long getMaxID() {
+			return maxID;
+		}
+
+		/**
+		 * @return offset of the subtree's first gzip member in the file
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return compressed length of the subtree's gzip members
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		@Override
+		public String toString(){
+			return (kind == LIBRARY ? "library " : "package " + library + "/") + name;
+		}
+	}
+
+	private String path;
+	private List<Entry> entries;
+
+	private SummaryIndex(String path, List<Entry> entries){
+		this.path = path;
+		this.entries = entries;
+	}
+
+	/**
+	 * @param path
+	 * @return the summary's index, or null if it was not exported with one
+	 */
+	public static SummaryIndex read(String path){
+		byte[] trailer;
+		try {
+			trailer = ParallelGZIPOutputStream.readTrailer(path);
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+		if(trailer == null) return null;
+
+		BinaryReader in = new BinaryReader(new ByteArrayInputStream(trailer));
+		int version = in.readVarInt();
+		if(version != VERSION) throw new IOException("Unsupported summary index version " + version + ": " + path);
+		int count = in.readVarInt();
+		List<Entry> entries = new ArrayList<Entry>(count);
+		for(int i = 0; i < count; i++){
+			Entry e = new Entry();
+			e.kind = in.readByte();
+			e.name = readString(in);
+			e.library = readString(in);
+			e.id = in.readSignedVarLong();
+			e.minID = in.readSignedVarLong();
+			e.maxID = in.readSignedVarLong();
+			e.offset = in.readVarLong();
+			e.length = in.readVarLong();
+			entries.add(e);
+		}
+		return new SummaryIndex(path, Collections.unmodifiableList(entries));
+	}
+
+	private static String readString(BinaryReader in){
+		return in.readByte() == 0 ? null : in.readString();
+	}
+
+	private static void writeString(BinaryWriter out, String s){
+		out.writeByte(s == null ? 0 : 1);
+		if(s != null) out.writeString(s);
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return every library and package, in document order
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	public List<Entry> getLibraries(){
+		List<Entry> result = new ArrayList<Entry>();
+		for(Entry e : entries) if(e.kind == LIBRARY) result.add(e);
+		return result;
+	}
+
+	public List<Entry> getPackages(String library){
+		List<Entry> result = new ArrayList<Entry>();
+		for(Entry e : entries) if(e.kind == PACKAGE && equal(library, e.library)) result.add(e);
+		return result;
+	}
+
+	/**
+	 * @return the first package with the given names, or null
+	 */
+	public Entry getPackage(String library, String name){
+		for(Entry e : entries) if(e.kind == PACKAGE && equal(library, e.library) && equal(name, e.name)) return e;
+		return null;
+	}
+
+	/**
+	 * @return libraries and packages whose id range covers the given id, which
+	 * is in one of them if it is in any library at all
+	 */
+	public List<Entry> getEntriesContaining(long id){
+		List<Entry> result = new ArrayList<Entry>();
+		for(Entry e : entries) if(e.minID <= id && id <= e.maxID) result.add(e);
+		return result;
+	}
+
+	private static boolean equal(String a, String b){
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * @return the inflated XML of just the given library or package
+	 */
+	public InputStream open(Entry e){
+		try {
+			RandomAccessFile file = new RandomAccessFile(path, "r");
+			file.seek(e.offset);
+			return new GZIPInputStream(new BufferedInputStream(new RegionInputStream(file, e.length), 65536), 65536);
+		}catch(java.io.IOException ex){
+			throw new IOException(ex);
+		}
+	}
+
+	/**
+	 * Parse just the given library or package from the summary.
+	 *
+	 * @return a {@link LibraryElement} or {@link PackageElement}
+	 */
+	public Element importEntry(IProgressMonitor mon, Entry e){
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(e.length * 8, Integer.MAX_VALUE - 8));
+			InputStream in = open(e);
+			try{
+				byte[] buf = new byte[65536];
+				int n;
+				while((n = in.read(buf)) != -1) bytes.write(buf, 0, n);
+			}finally{
+				in.close();
+			}
+
+			VTDGen vg = new VTDGen();
+			vg.setDoc(bytes.toByteArray());
+			vg.parse(false);
+			VTDNav vn = vg.getNav();
+			return e.kind == LIBRARY ? new LibraryElement(mon, vn) : new PackageElement(mon, vn);
+		}catch(IOException ex){
+			throw ex;
+		}catch(Exception ex){
+			throw new IOException("Could not import " + e + " from " + path, ex);
+		}
+	}
+
+	/**
+	 * A window onto part of a file, which the stream closes.
+	 */
+	private static class RegionInputStream extends InputStream{
+		RandomAccessFile file;
+		long remaining;
+
+		RegionInputStream(RandomAccessFile file, long length){
+			this.file = file;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws java.io.IOException {
+			if(remaining == 0) return -1;
+			int b = file.read();
+			if(b >= 0) remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws java.io.IOException {
+			if(len == 0) return 0;
+			if(remaining == 0) return -1;
+			int n = file.read(b, off, (int) Math.min(len, remaining));
+			if(n > 0) remaining -= n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(remaining, Integer.MAX_VALUE);
+		}
+
+		@Override
+		public void close() throws java.io.IOException {
+			file.close();
+		}
+	}
+
+	/**
+	 * Starts a gzip member at each library and package boundary while the
+	 * model is converted, then writes the index as the trailer on close.
+	 */
+	static class Writer extends XMLWriter implements SubtreeListener{
+		private ParallelGZIPOutputStream gz;
+		private List<Entry> entries = new ArrayList<Entry>();
+		private ArrayDeque<Entry> open = new ArrayDeque<Entry>();
+		private boolean finished;
+
+		Writer(ParallelGZIPOutputStream gz){
+			super(gz, 65536);
+			this.gz = gz;
+		}
+
+		private static boolean indexed(Element e){
+			return e instanceof LibraryElement || e instanceof PackageElement;
+		}
+
+		@Override
+		public void beginElement(Element e) {
+			long id = id(e.getId());
+			for(Entry o : open){
+				if(id < o.minID) o.minID = id;
+				if(id > o.maxID) o.maxID = id;
+			}
+			if(!indexed(e)) return;
+
+			Entry entry = new Entry();
+			entry.kind = e instanceof LibraryElement ? LIBRARY : PACKAGE;
+			entry.name = e.getName();
+			if(entry.kind == PACKAGE && !open.isEmpty()) entry.library = open.peek().name;
+			entry.id = entry.minID = entry.maxID = id;
+			entry.firstMember = endMember();
+			open.push(entry);
+			entries.add(entry);
+		}
+
+		@Override
+		public void endElement(Element e) {
+			if(!indexed(e)) return;
+			open.pop().endMember = endMember();
+		}
+
+		private int endMember(){
+			flushBuffer();
+			try {
+				return gz.endMember();
+			}catch(java.io.IOException e){
+				throw new IOException(e);
+			}
+		}
+
+		/**
+		 * Finish the document with the index, then close.
+		 */
+		@Override
+		public void close() {
+			try{
+				// Leave out the index if conversion failed part way
+				if(!finished && open.isEmpty()){
+					finished = true;
+					flushBuffer();
+					gz.flush();
+
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					BinaryWriter out = new BinaryWriter(bytes);
+					out.writeVarLong(VERSION);
+					out.writeVarLong(entries.size());
+					for(Entry e : entries){
+						e.offset = gz.getMemberOffset(e.firstMember);
+						e.length = gz.getMemberOffset(e.endMember) - e.offset;
+						out.writeByte(e.kind);
+						writeString(out, e.name);
+						writeString(out, e.library);
+						out.writeSignedVarLong(e.id);
+						out.writeSignedVarLong(e.minID);
+						out.writeSignedVarLong(e.maxID);
+						out.writeVarLong(e.offset);
+						out.writeVarLong(e.length);
+					}
+					out.close();
+					gz.finish(bytes.toByteArray());
+				}
+			}catch(java.io.IOException e){
+				throw new IOException(e);
+			}finally{
+				super.close();
+			}
+		}
+	}
+}
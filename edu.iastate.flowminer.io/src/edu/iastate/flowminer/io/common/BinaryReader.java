@@ -0,0 +1,88 @@
+package edu.iastate.flowminer.io.common;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Buffered source for the binary summary format, the counterpart of
+ * {@link BinaryWriter}. Running out of input is an error.
+ */
+public class BinaryReader {
+	private static final int DEFAULT_BUFFER_SIZE = 65536;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private InputStream in;
+	private byte[] buf;
+	private int pos;
+	private int limit;
+
+	public BinaryReader(InputStream in){
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BinaryReader(InputStream in, int bufferSize){
+		this.in = in;
+		this.buf = new byte[Math.max(bufferSize, 16)];
+	}
+
+	private void fill(){
+		try {
+			int n = in.read(buf, 0, buf.length);
+			if(n < 0) throw new IOException("Unexpected end of binary summary");
+			pos = 0;
+			limit = n;
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+	}
+
+	public int readByte(){
+		if(pos == limit) fill();
+		return buf[pos++] & 0xFF;
+	}
+
+	public void readBytes(byte[] b){
+		int off = 0;
+		while(off < b.length){
+			if(pos == limit) fill();
+			int n = Math.min(b.length - off, limit - pos);
+			System.arraycopy(buf, pos, b, off, n);
+			pos += n;
+			off += n;
+		}
+	}
+
+	public long readVarLong(){
+		long result = 0;
+		for(int shift = 0; shift < 64; shift += 7){
+			int b = readByte();
+			result |= (long) (b & 0x7F) << shift;
+			if((b & 0x80) == 0) return result;
+		}
+		throw new IOException("Malformed varint in binary summary");
+	}
+
+	public long readSignedVarLong(){
+		long v = readVarLong();
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	public int readVarInt(){
+		long v = readVarLong();
+		if(v < 0 || v > Integer.MAX_VALUE) throw new IOException("Count out of range in binary summary: " + v);
+		return (int) v;
+	}
+
+	public String readString(){
+		byte[] bytes = new byte[readVarInt()];
+		readBytes(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	public void close(){
+		try {
+			in.close();
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+	}
+}
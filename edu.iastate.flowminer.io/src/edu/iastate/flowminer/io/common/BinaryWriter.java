@@ -0,0 +1,98 @@
+package edu.iastate.flowminer.io.common;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Buffered sink for the binary summary format: raw bytes, unsigned LEB128
+ * varints, zigzag varints for values which may be negative, and
+ * length-prefixed UTF-8 strings.
+ */
+public class BinaryWriter {
+	private static final int DEFAULT_BUFFER_SIZE = 65536;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private OutputStream out;
+	private byte[] buf;
+	private int pos;
+
+	public BinaryWriter(OutputStream out){
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BinaryWriter(OutputStream out, int bufferSize){
+		this.out = out;
+		this.buf = new byte[Math.max(bufferSize, 16)];
+	}
+
+	public void writeByte(int b){
+		if(pos == buf.length) drain();
+		buf[pos++] = (byte) b;
+	}
+
+	public void writeBytes(byte[] b){
+		int off = 0;
+		while(off < b.length){
+			if(pos == buf.length) drain();
+			int n = Math.min(b.length - off, buf.length - pos);
+			System.arraycopy(b, off, buf, pos, n);
+			pos += n;
+			off += n;
+		}
+	}
+
+	/**
+	 * Seven bits per byte, low bits first, high bit set on all but the last.
+	 */
+	public void writeVarLong(long v){
+		if(pos + 10 > buf.length) drain();
+		while((v & ~0x7FL) != 0){
+			buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[pos++] = (byte) v;
+	}
+
+	/**
+	 * Zigzag encoding keeps small negative numbers short.
+	 */
+	public void writeSignedVarLong(long v){
+		writeVarLong((v << 1) ^ (v >> 63));
+	}
+
+	public void writeString(String s){
+		byte[] bytes = s.getBytes(UTF8);
+		writeVarLong(bytes.length);
+		writeBytes(bytes);
+	}
+
+	private void drain(){
+		if(pos == 0) return;
+		try {
+			out.write(buf, 0, pos);
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+		pos = 0;
+	}
+
+	public void flush(){
+		drain();
+		try {
+			out.flush();
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+	}
+
+	public void close(){
+		try{
+			flush();
+		}finally{
+			try {
+				out.close();
+			}catch(java.io.IOException e){
+				throw new IOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,175 @@
+package edu.iastate.flowminer.io.common;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map from summary element ids to objects. Once the largest id is known, as
+ * it is for summaries whose ids were compacted on export, ids from 0 to that
+ * id index straight into an array; any others, and all ids before then, go to
+ * a {@link LongObjectHashMap}. Null values are not supported. Not thread safe.
+ *
+ * @param <V>
+ */
+public class DenseIdMap<V> extends AbstractMap<Long, V> {
+	private static final int MAX_DENSE = Integer.MAX_VALUE - 8;
+
+	private Object[] dense = new Object[0];
+	private int denseSize;
+	private LongObjectHashMap<V> sparse = new LongObjectHashMap<V>();
+
+	/**
+	 * Index ids up to and including the given id by array from now on. Ids
+	 * already mapped move over.
+	 *
+	 * @return false if the id is negative or too large for an array
+	 */
+	public boolean setMaxID(long maxID){
+		if(maxID < 0 || maxID >= MAX_DENSE) return false;
+		if(maxID < dense.length) return true;
+
+		Object[] grown = new Object[(int) maxID + 1];
+		System.arraycopy(dense, 0, grown, 0, dense.length);
+		dense = grown;
+		for(long key : sparse.keys()){
+			if(key >= 0 && key < dense.length){
+				dense[(int) key] = sparse.remove(key);
+				denseSize++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Make room for the expected number of ids at once. Ids are assumed to
+	 * fill the array first, so only the rest need room in the hash table.
+	 */
+	public void ensureCapacity(int expectedSize){
+		if(expectedSize > dense.length) sparse.ensureCapacity(expectedSize - dense.length);
+	}
+
+	private boolean isDense(long key){
+		return key >= 0 && key < dense.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key){
+		return isDense(key) ? (V) dense[(int) key] : sparse.get(key);
+	}
+
+	public boolean containsKey(long key){
+		return isDense(key) ? dense[(int) key] != null : sparse.containsKey(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value){
+		if(value == null) throw new NullPointerException();
+		if(!isDense(key)) return sparse.put(key, value);
+		V old = (V) dense[(int) key];
+		dense[(int) key] = value;
+		if(old == null) denseSize++;
+		return old;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key){
+		if(!isDense(key)) return sparse.remove(key);
+		V old = (V) dense[(int) key];
+		dense[(int) key] = null;
+		if(old != null) denseSize--;
+		return old;
+	}
+
+	/**
+	 * @return a snapshot of the mapped ids
+	 */
+	public long[] keys(){
+		long[] sparseKeys = sparse.keys();
+		long[] keys = new long[denseSize + sparseKeys.length];
+		int n = 0;
+		for(int i = 0; i < dense.length && n < denseSize; i++)
+			if(dense[i] != null) keys[n++] = i;
+		System.arraycopy(sparseKeys, 0, keys, n, sparseKeys.length);
+		return keys;
+	}
+
+	@Override
+	public V get(Object key){
+		return key instanceof Long ? get(((Long) key).longValue()) : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key){
+		return key instanceof Long && containsKey(((Long) key).longValue());
+	}
+
+	@Override
+	public V put(Long key, V value){
+		return put(key.longValue(), value);
+	}
+
+	@Override
+	public V remove(Object key){
+		return key instanceof Long ? remove(((Long) key).longValue()) : null;
+	}
+
+	@Override
+	public int size(){
+		return denseSize + sparse.size();
+	}
+
+	@Override
+	public void clear(){
+		dense = new Object[dense.length];
+		denseSize = 0;
+		sparse = new LongObjectHashMap<V>();
+	}
+
+	@Override
+	public Set<Map.Entry<Long, V>> entrySet(){
+		return new AbstractSet<Map.Entry<Long, V>>(){
+			@Override
+			public Iterator<Map.Entry<Long, V>> iterator(){
+				final long[] keys = keys();
+				return new Iterator<Map.Entry<Long, V>>(){
+					int next;
+					long last;
+
+					@Override
+					public boolean hasNext(){
+						return next < keys.length;
+					}
+
+					@Override
+					public Map.Entry<Long, V> next(){
+						if(next == keys.length) throw new NoSuchElementException();
+						last = keys[next++];
+						return new SimpleEntry<Long, V>(last, get(last)){
+							private static final long serialVersionUID = 1L;
+
+							@Override
+							public V setValue(V value){
+								put(getKey().longValue(), value);
+								return super.setValue(value);
+							}
+						};
+					}
+
+					@Override
+					public void remove(){
+						DenseIdMap.this.remove(last);
+					}
+				};
+			}
+
+			@Override
+			public int size(){
+				return DenseIdMap.this.size();
+			}
+		};
+	}
+}
@@ -0,0 +1,114 @@
+package edu.iastate.flowminer.io.common;
+
+import java.util.Arrays;
+
+/**
+ * The ids a model's elements are written with, keyed by their ids in the
+ * model. Exports renumber through one of these rather than changing the
+ * model. Open-addressing, like {@link LongObjectHashMap}. Not thread safe.
+ */
+public class IdMap {
+	// Marks an empty slot; the key itself is tracked by a flag
+	private static final long FREE = Long.MIN_VALUE;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private long[] values;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	private boolean hasFreeKey;
+	private long freeValue;
+
+	private boolean dependencyOrdered;
+
+	public IdMap(int expectedSize){
+		allocate(LongHashSet.tableSizeFor(expectedSize, LOAD_FACTOR));
+	}
+
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		values = new long[capacity];
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private int slot(long key){
+		int idx = LongHashSet.mix(key) & mask;
+		while(keys[idx] != FREE && keys[idx] != key) idx = (idx + 1) & mask;
+		return idx;
+	}
+
+	/**
+	 * @param id an id in the model
+	 * @return the id to write in its place, or the id itself if it is not
+	 * renumbered
+	 */
+	public long get(long id){
+		if(id == FREE) return hasFreeKey ? freeValue : id;
+		int idx = slot(id);
+		return keys[idx] == FREE ? id : values[idx];
+	}
+
+	public boolean containsKey(long id){
+		if(id == FREE) return hasFreeKey;
+		return keys[slot(id)] != FREE;
+	}
+
+	public void put(long id, long newID){
+		if(id == FREE){
+			if(!hasFreeKey) size++;
+			hasFreeKey = true;
+			freeValue = newID;
+			return;
+		}
+		int idx = slot(id);
+		if(keys[idx] == FREE){
+			keys[idx] = id;
+			if(++size > resizeAt){
+				values[idx] = newID;
+				rehash(keys.length << 1);
+				return;
+			}
+		}
+		values[idx] = newID;
+	}
+
+	private void rehash(int capacity){
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		allocate(capacity);
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != FREE){
+				int idx = slot(oldKeys[i]);
+				keys[idx] = oldKeys[i];
+				values[idx] = oldValues[i];
+			}
+		}
+	}
+
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @return the largest id written, since ids are written densely from 0
+	 */
+	public long getMaxID(){
+		return size - 1;
+	}
+
+	/**
+	 * @return true if every element is written with a larger id than
+	 * everything an importer needs before it
+	 */
+	public boolean isDependencyOrdered(){
+		return dependencyOrdered;
+	}
+
+	public void setDependencyOrdered(boolean dependencyOrdered){
+		this.dependencyOrdered = dependencyOrdered;
+	}
+}
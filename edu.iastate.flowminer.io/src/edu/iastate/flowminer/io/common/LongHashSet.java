@@ -0,0 +1,131 @@
+package edu.iastate.flowminer.io.common;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive longs. Stores keys in a single array
+ * instead of one boxed Long and entry per element. Not thread safe.
+ */
+public class LongHashSet {
+	// Marks an empty slot; the key itself is tracked by a flag
+	private static final long FREE = Long.MIN_VALUE;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private int size;
+	private int mask;
+	private int resizeAt;
+	private boolean hasFreeKey;
+
+	public LongHashSet(){
+		this(16);
+	}
+
+	public LongHashSet(int expectedSize){
+		allocate(tableSizeFor(expectedSize, LOAD_FACTOR));
+	}
+
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	static int mix(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	static int tableSizeFor(int expectedSize, float loadFactor){
+		long needed = (long) Math.ceil(Math.max(expectedSize, 2) / loadFactor);
+		if(needed > (1 << 30)) return 1 << 30;
+		return Integer.highestOneBit((int) needed - 1) << 1;
+	}
+
+	private int slot(long key){
+		int idx = mix(key) & mask;
+		while(keys[idx] != FREE && keys[idx] != key) idx = (idx + 1) & mask;
+		return idx;
+	}
+
+	public boolean contains(long key){
+		if(key == FREE) return hasFreeKey;
+		return keys[slot(key)] != FREE;
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key was not already present
+	 */
+	public boolean add(long key){
+		if(key == FREE){
+			if(hasFreeKey) return false;
+			hasFreeKey = true;
+			size++;
+			return true;
+		}
+		int idx = slot(key);
+		if(keys[idx] != FREE) return false;
+		keys[idx] = key;
+		if(++size > resizeAt) rehash(keys.length << 1);
+		return true;
+	}
+
+	/**
+	 * @param key
+	 * @return true if the key was present
+	 */
+	public boolean remove(long key){
+		if(key == FREE){
+			if(!hasFreeKey) return false;
+			hasFreeKey = false;
+			size--;
+			return true;
+		}
+		int idx = slot(key);
+		if(keys[idx] == FREE) return false;
+		// Backward-shift deletion keeps probe chains intact without tombstones
+		int last = idx;
+		while(true){
+			idx = (idx + 1) & mask;
+			long k = keys[idx];
+			if(k == FREE) break;
+			int home = mix(k) & mask;
+			if(last <= idx ? (home <= last || home > idx) : (home <= last && home > idx)){
+				keys[last] = k;
+				last = idx;
+			}
+		}
+		keys[last] = FREE;
+		size--;
+		return true;
+	}
+
+	private void rehash(int capacity){
+		long[] oldKeys = keys;
+		allocate(capacity);
+		for(long k : oldKeys){
+			if(k != FREE) keys[slot(k)] = k;
+		}
+	}
+
+	/**
+	 * Grow the table at once to hold the expected number of keys without
+	 * further rehashing.
+	 * 
+	 * @param expectedSize
+	 */
+	public void ensureCapacity(int expectedSize){
+		int capacity = tableSizeFor(expectedSize, LOAD_FACTOR);
+		if(capacity > keys.length) rehash(capacity);
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+}
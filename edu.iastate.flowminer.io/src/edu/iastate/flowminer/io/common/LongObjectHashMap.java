@@ -0,0 +1,170 @@
+package edu.iastate.flowminer.io.common;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive long keys to objects. Avoids the
+ * boxed keys and per-entry objects of a general purpose map, which matters
+ * when tracking millions of summary element ids. Not thread safe.
+ *
+ * @param <V>
+ */
+public class LongObjectHashMap<V> {
+	// Marks an empty slot; the key itself is stored out of line
+	private static final long FREE = Long.MIN_VALUE;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	private int mask;
+	private int resizeAt;
+
+	private boolean hasFreeKey;
+	private V freeValue;
+
+	public LongObjectHashMap(){
+		this(16);
+	}
+
+	public LongObjectHashMap(int expectedSize){
+		allocate(LongHashSet.tableSizeFor(expectedSize, LOAD_FACTOR));
+	}
+
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		values = new Object[capacity];
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * LOAD_FACTOR);
+	}
+
+	private int slot(long key){
+		int idx = LongHashSet.mix(key) & mask;
+		while(keys[idx] != FREE && keys[idx] != key) idx = (idx + 1) & mask;
+		return idx;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key){
+		if(key == FREE) return hasFreeKey ? freeValue : null;
+		int idx = slot(key);
+		return keys[idx] == FREE ? null : (V) values[idx];
+	}
+
+	public boolean containsKey(long key){
+		if(key == FREE) return hasFreeKey;
+		return keys[slot(key)] != FREE;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 * @return the previous value for key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value){
+		if(key == FREE){
+			V old = freeValue;
+			if(!hasFreeKey) size++;
+			hasFreeKey = true;
+			freeValue = value;
+			return old;
+		}
+		int idx = slot(key);
+		if(keys[idx] != FREE){
+			V old = (V) values[idx];
+			values[idx] = value;
+			return old;
+		}
+		keys[idx] = key;
+		values[idx] = value;
+		if(++size > resizeAt) rehash(keys.length << 1);
+		return null;
+	}
+
+	/**
+	 * @param key
+	 * @return the removed value, or null if key was absent
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key){
+		if(key == FREE){
+			if(!hasFreeKey) return null;
+			V old = freeValue;
+			hasFreeKey = false;
+			freeValue = null;
+			size--;
+			return old;
+		}
+		int idx = slot(key);
+		if(keys[idx] == FREE) return null;
+		V old = (V) values[idx];
+		shiftDown(idx);
+		size--;
+		return old;
+	}
+
+	// Backward-shift deletion keeps probe chains intact without tombstones
+	private void shiftDown(int idx){
+		int last = idx;
+		while(true){
+			idx = (idx + 1) & mask;
+			long k = keys[idx];
+			if(k == FREE) break;
+			int home = LongHashSet.mix(k) & mask;
+			if(last <= idx ? (home <= last || home > idx) : (home <= last && home > idx)){
+				keys[last] = k;
+				values[last] = values[idx];
+				last = idx;
+			}
+		}
+		keys[last] = FREE;
+		values[last] = null;
+	}
+
+	private void rehash(int capacity){
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(capacity);
+		for(int i = 0; i < oldKeys.length; i++){
+			if(oldKeys[i] != FREE){
+				int idx = slot(oldKeys[i]);
+				keys[idx] = oldKeys[i];
+				values[idx] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Grow the table at once to hold the expected number of keys without
+	 * further rehashing.
+	 * 
+	 * @param expectedSize
+	 */
+	public void ensureCapacity(int expectedSize){
+		int capacity = LongHashSet.tableSizeFor(expectedSize, LOAD_FACTOR);
+		if(capacity > keys.length) rehash(capacity);
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * @return a snapshot of the keys currently in the map, in no particular order
+	 */
+	public long[] keys(){
+		long[] result = new long[size];
+		int pos = 0;
+		if(hasFreeKey) result[pos++] = FREE;
+		for(long k : keys){
+			if(k != FREE) result[pos++] = k;
+		}
+		return result;
+	}
+}
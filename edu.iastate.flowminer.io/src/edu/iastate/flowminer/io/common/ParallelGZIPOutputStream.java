@@ -0,0 +1,310 @@
+package edu.iastate.flowminer.io.common;
+
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output compressed on several threads. Input is cut into fixed size
+ * blocks, each of which is deflated on the {@link ThreadPool} into its own
+ * complete gzip member, and the members are written out in order. The result
+ * is a standard multi-member gzip file, readable by
+ * {@link java.util.zip.GZIPInputStream} and so by VTDGen.parseGZIPFile.
+ * <p>
+ * At most one block per thread is being compressed or waiting to be written
+ * at any time, which bounds both parallelism and memory.
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+	// Member header: magic, deflate, no flags, no mtime, no extra flags, unknown OS
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+	private static final byte FEXTRA = 4;
+
+	// Extra field subfield ids for trailer data and the member which locates it
+	private static final byte[] TRAILER_DATA = {'F', 'D'};
+	private static final byte[] TRAILER_END = {'F', 'E'};
+	private static final int TRAILER_CHUNK = 60000;
+	public static final int TRAILER_END_LENGTH = 10 + 6 + 12 + 10;
+
+	private OutputStream out;
+	private int threads;
+	private int blockSize;
+	private byte[] block;
+	private int pos;
+	private ArrayDeque<Member> pending = new ArrayDeque<Member>();
+	private boolean wroteMember;
+	private boolean closed;
+	// Members handed to the compressor so far, and where each written one starts
+	private int submitted;
+	private long[] memberOffsets = new long[64];
+	private int numWritten;
+	private long written;
+
+	private static class Member implements Runnable{
+		byte[] data;
+		int length;
+		byte[] compressed;
+		int compressedLength;
+		Future<?> future;
+
+		Member(byte[] data, int length){
+			this.data = data;
+			this.length = length;
+		}
+
+		@Override
+		public void run() {
+			CRC32 crc = new CRC32();
+			crc.update(data, 0, length);
+
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try{
+				deflater.setInput(data, 0, length);
+				deflater.finish();
+
+				// Deflate can slightly expand incompressible input
+				compressed = new byte[HEADER.length + length + (length >> 12) + 64];
+				System.arraycopy(HEADER, 0, compressed, 0, HEADER.length);
+				int n = HEADER.length;
+				while(!deflater.finished()){
+					if(n == compressed.length - 8) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+					n += deflater.deflate(compressed, n, compressed.length - 8 - n);
+				}
+				n = writeInt(compressed, n, (int) crc.getValue());
+				compressedLength = writeInt(compressed, n, length);
+			}finally{
+				deflater.end();
+			}
+			data = null;
+		}
+
+		private static int writeInt(byte[] b, int pos, int v){
+			b[pos++] = (byte) v;
+			b[pos++] = (byte) (v >> 8);
+			b[pos++] = (byte) (v >> 16);
+			b[pos++] = (byte) (v >> 24);
+			return pos;
+		}
+	}
+
+	public ParallelGZIPOutputStream(OutputStream out){
+		this(out, ThreadPool.Work.IO.getParallelism(), DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * @param out
+	 * @param threads number of blocks to compress at once; 1 compresses on
+	 * the calling thread
+	 * @param blockSize uncompressed bytes per gzip member
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int threads, int blockSize){
+		this.out = out;
+		this.threads = Math.max(threads, 1);
+		this.blockSize = Math.max(blockSize, 1024);
+		this.block = new byte[this.blockSize];
+	}
+
+	@Override
+	public void write(int b) throws java.io.IOException {
+		if(pos == blockSize) submit();
+		block[pos++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws java.io.IOException {
+		while(len > 0){
+			if(pos == blockSize) submit();
+			int n = Math.min(len, blockSize - pos);
+			System.arraycopy(b, off, block, pos, n);
+			pos += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void submit() throws java.io.IOException {
+		if(closed) throw new java.io.IOException("Stream closed");
+		Member member = new Member(block, pos);
+		block = new byte[blockSize];
+		pos = 0;
+		submitted++;
+
+		if(threads == 1){
+			member.run();
+			writeMember(member);
+			return;
+		}
+
+		while(pending.size() >= threads) writeMember(pending.poll());
+		member.future = ThreadPool.submit(ThreadPool.Work.IO, member);
+		pending.add(member);
+	}
+
+	private void writeMember(Member member) throws java.io.IOException {
+		if(member.future != null){
+			try {
+				member.future.get();
+			}catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while compressing");
+			}catch(ExecutionException e){
+				throw new java.io.IOException("Compression failed", e.getCause());
+			}
+		}
+		writeRaw(member.compressed, member.compressedLength);
+	}
+
+	private void writeRaw(byte[] b, int length) throws java.io.IOException {
+		if(numWritten == memberOffsets.length) memberOffsets = Arrays.copyOf(memberOffsets, numWritten * 2);
+		memberOffsets[numWritten++] = written;
+		out.write(b, 0, length);
+		written += length;
+		wroteMember = true;
+	}
+
+	/**
+	 * Ends the current member, if it holds anything, so that what is written
+	 * next starts a new one. Unlike {@link #flush()} this does not wait for
+	 * compression to catch up.
+	 *
+	 * @return the number of the member that the next byte written will start
+	 */
+	public int endMember() throws java.io.IOException {
+		if(pos > 0) submit();
+		return submitted;
+	}
+
+	/**
+	 * @param member a member number from {@link #endMember()}, which must have
+	 * been written out by {@link #flush()} or {@link #finish(byte[])}
+	 * @return the compressed offset at which the member starts
+	 */
+	public long getMemberOffset(int member){
+		if(member == numWritten) return written;
+		if(member < 0 || member > numWritten) throw new IllegalStateException("Member " + member + " has not been written");
+		return memberOffsets[member];
+	}
+
+	/**
+	 * Finish the compressed data, then append the given trailer in the extra
+	 * fields of empty members, which gzip readers skip. The last member is
+	 * always {@link #TRAILER_END_LENGTH} bytes and locates the rest, so
+	 * {@link #readTrailer(String)} finds the trailer from the end of the file.
+	 * Nothing more may be written afterwards.
+	 */
+	public void finish(byte[] trailer) throws java.io.IOException {
+		flush();
+		if(!wroteMember) submit();
+		while(!pending.isEmpty()) writeMember(pending.poll());
+
+		long trailerOffset = written;
+		for(int off = 0; off < trailer.length; off += TRAILER_CHUNK){
+			int n = Math.min(TRAILER_CHUNK, trailer.length - off);
+			writeRaw(emptyMember(TRAILER_DATA, trailer, off, n), HEADER.length + 6 + n + 10);
+		}
+
+		byte[] end = new byte[12];
+		for(int i = 0; i < 8; i++) end[i] = (byte) (trailerOffset >>> (8 * i));
+		Member.writeInt(end, 8, trailer.length);
+		writeRaw(emptyMember(TRAILER_END, end, 0, end.length), TRAILER_END_LENGTH);
+		out.flush();
+		closed = true;
+	}
+
+	private static byte[] emptyMember(byte[] subfield, byte[] data, int off, int len){
+		byte[] b = new byte[HEADER.length + 6 + len + 10];
+		System.arraycopy(HEADER, 0, b, 0, HEADER.length);
+		b[3] = FEXTRA;
+		int n = HEADER.length;
+		b[n++] = (byte) (len + 4);
+		b[n++] = (byte) ((len + 4) >> 8);
+		b[n++] = subfield[0];
+		b[n++] = subfield[1];
+		b[n++] = (byte) len;
+		b[n++] = (byte) (len >> 8);
+		System.arraycopy(data, off, b, n, len);
+		n += len;
+		// Empty final fixed Huffman block, then zero CRC and length
+		b[n++] = 0x03;
+		b[n++] = 0x00;
+		return b;
+	}
+
+	/**
+	 * @return the trailer written by {@link #finish(byte[])}, or null if the
+	 * file does not end with one
+	 */
+	public static byte[] readTrailer(String path) throws java.io.IOException {
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try{
+			long length = file.length();
+			if(length < TRAILER_END_LENGTH) return null;
+			byte[] end = new byte[TRAILER_END_LENGTH];
+			file.seek(length - TRAILER_END_LENGTH);
+			file.readFully(end);
+			byte[] expected = emptyMember(TRAILER_END, new byte[12], 0, 12);
+			for(int i = 0; i < HEADER.length + 4; i++){
+				if(end[i] != expected[i]) return null;
+			}
+
+			int n = HEADER.length + 6;
+			long trailerOffset = 0;
+			for(int i = 0; i < 8; i++) trailerOffset |= (end[n + i] & 0xFFL) << (8 * i);
+			int trailerLength = (end[n + 8] & 0xFF) | (end[n + 9] & 0xFF) << 8 | (end[n + 10] & 0xFF) << 16 | (end[n + 11] & 0xFF) << 24;
+			if(trailerOffset < 0 || trailerLength < 0 || trailerOffset > length - TRAILER_END_LENGTH) return null;
+
+			byte[] trailer = new byte[trailerLength];
+			file.seek(trailerOffset);
+			byte[] header = new byte[HEADER.length + 6];
+			for(int off = 0; off < trailerLength; off += TRAILER_CHUNK){
+				int chunk = Math.min(TRAILER_CHUNK, trailerLength - off);
+				file.readFully(header);
+				if(header[3] != FEXTRA || header[HEADER.length + 2] != TRAILER_DATA[0] || header[HEADER.length + 3] != TRAILER_DATA[1]
+						|| ((header[HEADER.length + 4] & 0xFF) | (header[HEADER.length + 5] & 0xFF) << 8) != chunk){
+					throw new java.io.IOException("Malformed gzip trailer in " + path);
+				}
+				file.readFully(trailer, off, chunk);
+				file.skipBytes(10);
+			}
+			return trailer;
+		}finally{
+			file.close();
+		}
+	}
+
+	/**
+	 * Ends the current member early and writes out everything compressed so
+	 * far. Frequent flushing costs compression ratio.
+	 */
+	@Override
+	public void flush() throws java.io.IOException {
+		if(pos > 0) submit();
+		while(!pending.isEmpty()) writeMember(pending.poll());
+		out.flush();
+	}
+
+	@Override
+	public void close() throws java.io.IOException {
+		if(closed){
+			out.close();
+			return;
+		}
+		try{
+			// An empty file is not valid gzip, so always write at least one member
+			if(pos > 0 || (!wroteMember && pending.isEmpty())) submit();
+			while(!pending.isEmpty()) writeMember(pending.poll());
+		}finally{
+			closed = true;
+			pending.clear();
+			block = null;
+			out.close();
+		}
+	}
+}
@@ -1,60 +1,196 @@
-
 package edu.iastate.flowminer.io.common;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A wrapped, fixed thread pool for accomplishing tasks in parallel. Allows for
- * both synchronous and asynchronous task execution.
- * 
+ * The thread pools shared by everything in FlowMiner that runs in parallel.
+ * Allows for both synchronous and asynchronous task execution.
+ *
+ * There is one pool for CPU bound work, such as mining, reading summaries
+ * and assembling models, and one for compressing and writing summaries, so
+ * that neither waits behind the other. Both are made when first used, and
+ * are configured with system properties:
+ *
+ * flowminer.threads.mode - "workstealing" (the default) for fork/join pools
+ * in which a task waiting on other tasks runs queued tasks meanwhile, or
+ * "fixed" for fixed pools with spare threads for blocked tasks
+ * flowminer.threads.cpu - parallelism of the CPU pool, by default the number
+ * of processors
+ * flowminer.threads.io - parallelism of the IO pool, by default the number
+ * of processors
+ *
  * @author Tom Deering
- * 
+ *
  */
 public abstract class ThreadPool {
 	// Don't construct this class
 	private ThreadPool() {
 	}
 
-	// The wrapped thread pool. We do 2 more than the number of CPUs so that
-	// use cases where multiple threads in the pool block don't cause a deadlock.
-	private static ThreadPoolExecutor executor = (ThreadPoolExecutor) 
-			Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()*2 + 2);
-	
+	public static final String MODE_PROPERTY = "flowminer.threads.mode";
+	public static final String CPU_THREADS_PROPERTY = "flowminer.threads.cpu";
+	public static final String IO_THREADS_PROPERTY = "flowminer.threads.io";
+	public static final String MODE_WORK_STEALING = "workstealing";
+	public static final String MODE_FIXED = "fixed";
+
+	/**
+	 * The kinds of work, each with its own pool.
+	 */
+	public enum Work {
+		CPU(CPU_THREADS_PROPERTY),
+		IO(IO_THREADS_PROPERTY);
+
+		private final String threadsProperty;
+		private volatile ExecutorService executor;
+
+		private Work(String threadsProperty){
+			this.threadsProperty = threadsProperty;
+		}
+
+		/**
+		 * @return the number of threads this pool runs tasks on at once
+		 */
+		public int getParallelism(){
+			return Math.max(Integer.getInteger(threadsProperty, Runtime.getRuntime().availableProcessors()), 1);
+		}
+
+		private ExecutorService executor(){
+			ExecutorService e = executor;
+			if(e == null){
+				synchronized(this){
+					e = executor;
+					if(e == null) executor = e = newExecutor(this);
+				}
+			}
+			return e;
+		}
+	}
+
+	/**
+	 * Wraps each task as it is submitted, such as to record when it runs.
+	 */
+	public interface TaskWrapper{
+		public Runnable wrap(Work work, Runnable task);
+	}
+
+	private static volatile TaskWrapper taskWrapper;
+
+	/**
+	 * Wrap tasks submitted from now on with the given wrapper.
+	 *
+	 * @param wrapper may be null to submit tasks as they are
+	 */
+	public static void setTaskWrapper(TaskWrapper wrapper){
+		taskWrapper = wrapper;
+	}
+
+	/**
+	 * @return whether the pools steal work, see {@link #MODE_PROPERTY}
+	 */
+	public static boolean isWorkStealing(){
+		return !MODE_FIXED.equalsIgnoreCase(System.getProperty(MODE_PROPERTY, MODE_WORK_STEALING));
+	}
+
+	private static ExecutorService newExecutor(Work work){
+		final String name = "FlowMiner " + work.name().toLowerCase() + " ";
+		final int parallelism = work.getParallelism();
+		if(isWorkStealing()){
+			// Async mode runs the tasks a worker submits first in, first out
+			// rather than last first, so that they start in the order they
+			// were submitted, as they do in fixed pools
+			return new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory(){
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					t.setName(name + t.getPoolIndex());
+					return t;
+				}
+			}, null, true);
+		}
+
+		// 2 more than twice the parallelism, so that use cases where multiple
+		// threads in the pool block don't cause a deadlock
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newFixedThreadPool(parallelism * 2 + 2, new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Submits the given task to the pool for the given kind of work, for
+	 * non-blocking execution.
+	 *
+	 * @param work
+	 * @param task
+	 * @return
+	 */
+	public static Future<?> submit(Work work, Runnable task) {
+		TaskWrapper wrapper = taskWrapper;
+		if(wrapper != null) task = wrapper.wrap(work, task);
+		ExecutorService e = work.executor();
+		if(e instanceof ForkJoinPool) return ((ForkJoinPool) e).submit(new PoolTask(task));
+		return e.submit(task);
+	}
+
 	/**
-	 * Submits the given runnables for non-blocking execution.
-	 * 
+	 * Submits the given CPU bound runnables for non-blocking execution.
+	 *
 	 * @param tasks
 	 * @return
 	 */
 	public static Future<?>[] submitRunnables(Runnable... tasks) {
-		List<Runnable> taskList = new LinkedList<Runnable>();
-		for (Runnable r : tasks)
-			taskList.add(r);
-		return submitRunnables(taskList);
+		return submitRunnables(new ArrayList<Runnable>(Arrays.asList(tasks)));
 	}
 
 	/**
-	 * Submits the given runnables for non-blocking execution.
-	 * 
+	 * Submits the given CPU bound runnables for non-blocking execution.
+	 *
 	 * @param tasks
 	 * @return
 	 */
 	public static Future<?>[] submitRunnables(List<Runnable> tasks) {
+		return submitRunnables(Work.CPU, tasks);
+	}
+
+	/**
+	 * Submits the given runnables to the pool for the given kind of work,
+	 * for non-blocking execution.
+	 *
+	 * @param work
+	 * @param tasks
+	 * @return
+	 */
+	public static Future<?>[] submitRunnables(Work work, List<Runnable> tasks) {
 		// Randomize task order, to mitigate worst-case performance problems
 		// with
 		// concurrent locking
-		Collections.shuffle(tasks);
+		if(tasks.size() > 1) Collections.shuffle(tasks);
 
 		// Add the tasks
 		Future<?>[] futures = new Future<?>[tasks.size()];
 		for (int i = 0; i < tasks.size(); i++) {
-			futures[i] = executor.submit(tasks.get(i));
+			futures[i] = submit(work, tasks.get(i));
 		}
 
 		return futures;
@@ -62,10 +198,10 @@ public abstract class ThreadPool {
 
 	/**
 	 * Submits the given runnables for blocking execution.
-	 * 
+	 *
 	 * @param tasks
 	 * @return
-	 * @throws Throwable 
+	 * @throws Throwable
 	 */
 	public static void submitRunnablesBlocking(boolean throwTaskException, Runnable... tasks) throws Throwable {
 		// Submit and wait for the tasks to complete
@@ -74,10 +210,10 @@ public abstract class ThreadPool {
 
 	/**
 	 * Submits the given runnables for blocking execution.
-	 * 
+	 *
 	 * @param tasks
 	 * @return
-	 * @throws Throwable 
+	 * @throws Throwable
 	 */
 	public static void submitRunnablesBlocking(boolean throwTaskException, List<Runnable> tasks) throws Throwable {
 		// Submit and wait for the tasks to complete
@@ -86,12 +222,12 @@ public abstract class ThreadPool {
 
 	/**
 	 * Blocks until the runnables for the given Futures complete.
-	 * 
+	 *
 	 * Optionally rethrows for issues encountered by the tasks.
-	 * 
+	 *
 	 * @param waitFor
 	 * @return
-	 * @throws Throwable 
+	 * @throws Throwable
 	 */
 	public static void blockUntilAllComplete(boolean throwTaskException, Future<?>... waitFor) throws Throwable {
 		LinkedList<Future<?>> running = new LinkedList<Future<?>>();
@@ -101,14 +237,15 @@ public abstract class ThreadPool {
 	}
 
 	/**
-	 * Blocks until the Runnables for the given Futures complete.
-	 * 
+	 * Blocks until the Runnables for the given Futures complete. Waiting on
+	 * a thread of a work stealing pool runs other queued tasks meanwhile.
+	 *
 	 * Optionally rethrows for issues encountered by the tasks.
-	 * 
+	 *
 	 * @param throwTaskException
 	 * @param waitFor
 	 * @return
-	 * @throws Throwable 
+	 * @throws Throwable
 	 */
 	public static void blockUntilAllComplete(boolean throwTaskException, LinkedList<Future<?>> waitFor) throws Throwable {
 		// Wait for tasks to complete
@@ -116,27 +253,118 @@ public abstract class ThreadPool {
 			Future<?> f = waitFor.poll();
 
 			while (true) {
-				synchronized (f) {
-					if (f.isDone())
-						break;
-					try {
-						f.get();
-					} catch (InterruptedException e) {
-					} catch (ExecutionException e) {
-						if(throwTaskException) throw e.getCause();
-					}
+				if (f.isDone()){
+					if(throwTaskException) rethrow(f);
+					break;
+				}
+				try {
+					await(f);
+				} catch (InterruptedException e) {
+				} catch (ExecutionException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * A task of a work stealing pool, which keeps what it threw. Waiting on a
+	 * fork/join task from another thread throws a copy of the exception
+	 * instead, made on the waiting thread.
+	 */
+	private static class PoolTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Runnable task;
+		private volatile Throwable thrown;
+
+		PoolTask(Runnable task){
+			this.task = task;
+		}
+
+		@Override
+		protected void compute() {
+			try{
+				task.run();
+			}catch(RuntimeException | Error e){
+				thrown = e;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Throw what the task threw, as it was thrown.
+	 */
+	private static void rethrow(Future<?> f) throws Throwable {
+		try{
+			f.get();
+		}catch(ExecutionException e){
+			Throwable t = f instanceof PoolTask ? ((PoolTask) f).thrown : null;
+			throw unwrap(t != null ? t : e);
+		}catch(CancellationException | InterruptedException e){
+		}
+	}
+
+	/**
+	 * @return the cause of exceptions which only report that another task
+	 * failed, such as from waiting on a future within a task. Java 8's
+	 * CompletionException is unwrapped by the flowminer ThreadPool, as this
+	 * plugin runs on Java 7.
+	 */
+	private static Throwable unwrap(Throwable t){
+		while(t instanceof ExecutionException && t.getCause() != null) t = t.getCause();
+		return t;
+	}
+
+	private static void await(final Future<?> f) throws InterruptedException, ExecutionException {
+		// Fork/join tasks help themselves, and anything else is waited on
+		// with the pool's leave, so it can start another thread meanwhile
+		if(f instanceof ForkJoinTask || !(Thread.currentThread() instanceof ForkJoinWorkerThread)){
+			f.get();
+			return;
+		}
+		ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker(){
+			@Override
+			public boolean block() throws InterruptedException {
+				try{
+					f.get();
+				}catch(ExecutionException e){
 				}
+				return true;
 			}
+
+			@Override
+			public boolean isReleasable() {
+				return f.isDone();
+			}
+		});
+	}
+
+	/**
+	 * @return whether the pool for the given kind of work has threads with
+	 * nothing queued to do
+	 */
+	public static boolean hasIdleThreads(Work work) {
+		ExecutorService e = work.executor();
+		if(e instanceof ForkJoinPool){
+			ForkJoinPool p = (ForkJoinPool) e;
+			return p.getActiveThreadCount() + p.getQueuedSubmissionCount() + p.getQueuedTaskCount() < p.getParallelism();
 		}
+		ThreadPoolExecutor t = (ThreadPoolExecutor) e;
+		return t.getActiveCount() + t.getQueue().size() < t.getMaximumPoolSize();
 	}
 
 	/**
-	 * Gets the number of Runnables in the Executor execution queue.
-	 * 
+	 * Gets the number of Runnables queued for the CPU bound pool.
+	 *
 	 * @param tasks
 	 * @return
 	 */
 	public static int numRunnablesInQueue() {
-		return executor.getQueue().size();
+		ExecutorService e = Work.CPU.executor();
+		if(e instanceof ForkJoinPool){
+			ForkJoinPool p = (ForkJoinPool) e;
+			return (int) Math.min(p.getQueuedSubmissionCount() + p.getQueuedTaskCount(), Integer.MAX_VALUE);
+		}
+		return ((ThreadPoolExecutor) e).getQueue().size();
 	}
-}
\ No newline at end of file
+}
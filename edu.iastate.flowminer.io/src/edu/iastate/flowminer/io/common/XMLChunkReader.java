@@ -0,0 +1,227 @@
+package edu.iastate.flowminer.io.common;
+
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.ximpleware.VTDGen;
+import com.ximpleware.VTDNav;
+
+/**
+ * Reads a document too large for a single VTD index as a series of smaller
+ * documents. The children of the root element are packed in document order
+ * into chunks of roughly the given size, and each chunk is wrapped in a copy
+ * of the root element's tags and parsed on its own. The first chunk also holds
+ * the prolog. A single child of the root is never split.
+ * <p>
+ * Only one chunk is held at a time, so memory depends on the chunk size
+ * rather than the size of the document. The document must be UTF-8.
+ */
+public class XMLChunkReader {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int READ_SIZE = 65536;
+
+	private static final int TEXT = 0, LT = 1, START = 2, END = 3, BANG = 4, COMMENT = 5, CDATA = 6, PI = 7, DECL = 8;
+
+	private InputStream in;
+	private int chunkSize;
+	private byte[] buf;
+	private int len;
+	private int scan;
+	private boolean eof, done;
+
+	// Scanner state
+	private int state = TEXT;
+	private int depth;
+	private byte quote;
+	private byte prev1, prev2;
+	private int tagStart;
+	private int declDepth;
+
+	// Copies of the root element's tags, which wrap every later chunk
+	private byte[] rootStart;
+	private byte[] rootEnd;
+
+	/**
+	 * @param in the document, which is closed by {@link #close()}
+	 * @param chunkSize target bytes per chunk
+	 */
+	public XMLChunkReader(InputStream in, int chunkSize){
+		this.in = in;
+		this.chunkSize = Math.max(chunkSize, 1024);
+		this.buf = new byte[initialCapacity(0)];
+	}
+
+	private int initialCapacity(int needed){
+		return Math.max(needed, (int) Math.min((long) chunkSize + READ_SIZE, Integer.MAX_VALUE - 8));
+	}
+
+	/**
+	 * @return the next chunk, or null after the last
+	 */
+	public VTDNav next(){
+		if(done) return null;
+		try{
+			while(true){
+				if(scan == len){
+					if(eof){
+						done = true;
+						if(depth > 0 || rootStart == null) throw new IOException("Unexpected end of XML document");
+						return null;
+					}
+					fill();
+					continue;
+				}
+
+				byte b = buf[scan++];
+				int end = step(b);
+				if(end == 0) continue;
+
+				// The root was closed, so this is the last chunk
+				if(depth == 0){
+					done = true;
+					return parse(buf, end);
+				}
+
+				// A child of the root was closed
+				if(end >= chunkSize) return cut(end);
+			}
+		}catch(IOException e){
+			throw e;
+		}catch(Exception e){
+			throw new IOException("Could not read XML chunk", e);
+		}
+	}
+
+	private void fill() throws java.io.IOException {
+		if(len == buf.length){
+			if(buf.length >= Integer.MAX_VALUE - 8) throw new IOException("Child of the root element too large to parse");
+			buf = Arrays.copyOf(buf, (int) Math.min(buf.length * 2L, Integer.MAX_VALUE - 8));
+		}
+		int n = in.read(buf, len, Math.min(READ_SIZE, buf.length - len));
+		if(n < 0) eof = true;
+		else len += n;
+	}
+
+	/**
+	 * Advance the scanner past one byte at scan - 1.
+	 *
+	 * @return the offset just past a child of the root or the root itself if
+	 * the byte closed one, otherwise 0
+	 */
+	private int step(byte b){
+		int result = 0;
+		switch(state){
+		case TEXT:
+			if(b == '<'){
+				state = LT;
+				tagStart = scan - 1;
+			}
+			break;
+		case LT:
+			if(b == '/') state = END;
+			else if(b == '!') state = BANG;
+			else if(b == '?') state = PI;
+			else{
+				state = START;
+				quote = 0;
+			}
+			break;
+		case START:
+			if(quote != 0){
+				if(b == quote) quote = 0;
+			}else if(b == '"' || b == '\''){
+				quote = b;
+			}else if(b == '>'){
+				state = TEXT;
+				if(prev1 == '/'){
+					if(depth == 1) result = scan;
+				}else if(++depth == 1){
+					rootStart = Arrays.copyOfRange(buf, tagStart, scan);
+					rootEnd = ("</" + rootName() + ">").getBytes(UTF8);
+				}
+			}
+			break;
+		case END:
+			if(b == '>'){
+				state = TEXT;
+				if(--depth <= 1) result = scan;
+			}
+			break;
+		case BANG:
+			if(b == '-') state = COMMENT;
+			else if(b == '['){
+				state = depth > 0 ? CDATA : DECL;
+				declDepth = 1;
+			}else{
+				state = DECL;
+				declDepth = 0;
+			}
+			break;
+		case COMMENT:
+			if(b == '>' && prev1 == '-' && prev2 == '-') state = TEXT;
+			break;
+		case CDATA:
+			if(b == '>' && prev1 == ']' && prev2 == ']') state = TEXT;
+			break;
+		case PI:
+			if(b == '>' && prev1 == '?') state = TEXT;
+			break;
+		case DECL:
+			if(b == '[') declDepth++;
+			else if(b == ']') declDepth--;
+			else if(b == '>' && declDepth == 0) state = TEXT;
+			break;
+		}
+		prev2 = prev1;
+		prev1 = b;
+		return result;
+	}
+
+	private String rootName(){
+		int i = 1;
+		while(i < rootStart.length){
+			byte c = rootStart[i];
+			if(c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '/' || c == '>') break;
+			i++;
+		}
+		return new String(rootStart, 1, i - 1, UTF8);
+	}
+
+	/**
+	 * Close the root element after the given offset and parse everything up to
+	 * it. What follows moves to a new buffer, after a copy of the root's start
+	 * tag.
+	 */
+	private VTDNav cut(int end) throws Exception {
+		int remaining = len - end;
+		byte[] next = new byte[initialCapacity(rootStart.length + remaining)];
+		System.arraycopy(rootStart, 0, next, 0, rootStart.length);
+		System.arraycopy(buf, end, next, rootStart.length, remaining);
+
+		byte[] chunk = buf;
+		if(chunk.length < end + rootEnd.length) chunk = Arrays.copyOf(chunk, end + rootEnd.length);
+		System.arraycopy(rootEnd, 0, chunk, end, rootEnd.length);
+
+		buf = next;
+		len = rootStart.length + remaining;
+		scan = rootStart.length;
+		return parse(chunk, end + rootEnd.length);
+	}
+
+	private static VTDNav parse(byte[] doc, int length) throws Exception {
+		VTDGen vg = new VTDGen();
+		vg.setDoc(doc, 0, length);
+		vg.parse(false);
+		return vg.getNav();
+	}
+
+	public void close(){
+		buf = null;
+		try {
+			in.close();
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+	}
+}
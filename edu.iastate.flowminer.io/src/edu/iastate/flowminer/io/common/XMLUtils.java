@@ -21,6 +21,7 @@ public class XMLUtils {
 	 * @throws IOException 
 	 **/
 	public static String writeValidXMLText(String s) throws IOException {
+		if(!needsEscaping(s)) return s;
 		
 		StringBuilder sb = new StringBuilder(s.length());
 		
@@ -69,6 +70,29 @@ public class XMLUtils {
 		return sb.toString();
 	}
 	
+	/**
+	 * @return false if {@link #writeValidXMLText(String)} would return the
+	 * string unchanged
+	 */
+	public static boolean needsEscaping(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+				case '<':
+				case '>':
+				case '\'':
+				case '"':
+				case '&':
+				case '\n':
+				case '\t':
+					return true;
+				default:
+					if (!isValidCodePoint(c)) return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * 
 	 * @param codePoint
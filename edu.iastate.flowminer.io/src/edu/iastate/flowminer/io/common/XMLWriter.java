@@ -0,0 +1,141 @@
+package edu.iastate.flowminer.io.common;
+
+import java.io.OutputStream;
+
+/**
+ * Buffered UTF-8 sink for streaming XML out of the model. Characters are
+ * encoded straight into a byte buffer which is drained to the underlying
+ * stream whenever it fills, so the size of an export is no longer bounded
+ * by what fits in a single in-memory document.
+ * <p>
+ * The encoding matches an {@link java.io.OutputStreamWriter} for UTF-8,
+ * including replacement of unpaired surrogates with '?'.
+ */
+public class XMLWriter {
+	private static final int DEFAULT_BUFFER_SIZE = 65536;
+	private OutputStream out;
+	private byte[] buf;
+	private int pos;
+	private char highSurrogate;
+	private IdMap ids;
+
+	public XMLWriter(OutputStream out){
+		this(out, DEFAULT_BUFFER_SIZE);
+	}
+
+	public XMLWriter(OutputStream out, int bufferSize){
+		this.out = out;
+		this.buf = new byte[Math.max(bufferSize, 16)];
+	}
+
+	/**
+	 * Write element ids, and references to them, renumbered by the given ids.
+	 * 
+	 * @param ids may be null to write ids as they are
+	 */
+	public void setIds(IdMap ids){
+		this.ids = ids;
+	}
+	
+	public IdMap getIds(){
+		return ids;
+	}
+	
+	/**
+	 * @return the id to write for the given element id
+	 */
+	public long id(long id){
+		return ids == null ? id : ids.get(id);
+	}
+
+	public XMLWriter append(String s){
+		for(int i = 0; i < s.length(); i++) write(s.charAt(i));
+		return this;
+	}
+
+	public XMLWriter append(char c){
+		write(c);
+		return this;
+	}
+
+	private void write(char c){
+		if(pos + 4 > buf.length) drain();
+
+		if(highSurrogate != 0){
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if(Character.isLowSurrogate(c)){
+				int cp = Character.toCodePoint(high, c);
+				buf[pos++] = (byte) (0xF0 | (cp >> 18));
+				buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+				return;
+			}
+			buf[pos++] = '?';
+		}
+
+		if(c < 0x80){
+			buf[pos++] = (byte) c;
+		}else if(c < 0x800){
+			buf[pos++] = (byte) (0xC0 | (c >> 6));
+			buf[pos++] = (byte) (0x80 | (c & 0x3F));
+		}else if(Character.isHighSurrogate(c)){
+			highSurrogate = c;
+		}else if(Character.isLowSurrogate(c)){
+			buf[pos++] = '?';
+		}else{
+			buf[pos++] = (byte) (0xE0 | (c >> 12));
+			buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buf[pos++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	private void drain(){
+		if(pos == 0) return;
+		try {
+			out.write(buf, 0, pos);
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+		pos = 0;
+	}
+
+	/**
+	 * Write out buffered bytes without flushing the underlying stream. Only
+	 * call between characters, never inside a surrogate pair.
+	 */
+	public void flushBuffer(){
+		drain();
+	}
+
+	/**
+	 * Write out any buffered bytes and flush the underlying stream. A dangling
+	 * high surrogate is written as '?'.
+	 */
+	public void flush(){
+		if(highSurrogate != 0){
+			if(pos + 1 > buf.length) drain();
+			buf[pos++] = '?';
+			highSurrogate = 0;
+		}
+		drain();
+		try {
+			out.flush();
+		}catch(java.io.IOException e){
+			throw new IOException(e);
+		}
+	}
+
+	public void close(){
+		try{
+			flush();
+		}finally{
+			try {
+				out.close();
+			}catch(java.io.IOException e){
+				throw new IOException(e);
+			}
+		}
+	}
+}
@@ -8,13 +8,19 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class Attribute extends XMLConvertable{
+	// Interned, since a few keys and values repeat across a whole model
 	private String key, value;
 	
 	public Attribute(String key, String value){
-		this.key = key;
-		this.value = value;
+		this.key = intern(key);
+		this.value = intern(value);
+	}
+	
+	private static String intern(String s){
+		return s == null ? null : s.intern();
 	}
 	
 	@Override
@@ -27,10 +33,10 @@ public class Attribute extends XMLConvertable{
 	public boolean interpretChild(IProgressMonitor mon, VTDNav vn, String name) throws NavException, ParseException{
 		switch (name) {
 		case Schema.ATTR_KEY:
-			key = vn.toString(vn.getText());
+			key = intern(vn.toString(vn.getText()));
 			return true;
 		case Schema.ATTR_VAL:
-			value = vn.toString(vn.getText());
+			value = intern(vn.toString(vn.getText()));
 			return true;
 		default:
 			return false;
@@ -47,11 +53,11 @@ public class Attribute extends XMLConvertable{
 	}
 
 	@Override
-	public void convert(StringBuilder sb, String name) {
-		startNode(sb, name);
-		createNode(sb, Schema.ATTR_KEY, key);
-		createNode(sb, Schema.ATTR_VAL, value);
-		endNode(sb, name);
+	public void convert(XMLWriter wr, String name) {
+		startNode(wr, name);
+		createNode(wr, Schema.ATTR_KEY, key);
+		createNode(wr, Schema.ATTR_VAL, value);
+		endNode(wr, name);
 	}
 	
 	@Override
@@ -64,7 +70,7 @@ public class Attribute extends XMLConvertable{
 	}
 
 	public void setKey(String key) {
-		this.key = key;
+		this.key = intern(key);
 	}
 
 	public String getValue() {
@@ -72,6 +78,6 @@ public class Attribute extends XMLConvertable{
 	}
 
 	public void setValue(String value) {
-		this.value = value;
+		this.value = intern(value);
 	}
 }
\ No newline at end of file
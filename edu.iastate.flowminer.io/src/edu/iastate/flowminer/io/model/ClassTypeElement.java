@@ -9,8 +9,16 @@ import com.ximpleware.VTDNav;
 
 public class ClassTypeElement extends NonPrimitiveTypeElement {
 	public ClassTypeElement(IProgressMonitor mon, VTDNav vn) throws NavException, ParseException {
+		this(mon, vn, false);
+	}
+	
+	/**
+	 * @param lazy if true, members are read as their getters are first called
+	 */
+	public ClassTypeElement(IProgressMonitor mon, VTDNav vn, boolean lazy) throws NavException, ParseException {
 		super(mon, vn);
-		parse();
+		if(lazy) parseLazily();
+		else parse();
 	}
 
 	public ClassTypeElement(long id, String name) {
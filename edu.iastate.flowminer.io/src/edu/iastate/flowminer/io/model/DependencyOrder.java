@@ -0,0 +1,229 @@
+package edu.iastate.flowminer.io.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import edu.iastate.flowminer.io.common.IdMap;
+import edu.iastate.flowminer.io.common.LongHashSet;
+import edu.iastate.flowminer.io.common.LongObjectHashMap;
+
+/**
+ * Works out ids 0..n-1 to write a model's elements with, leaving the model
+ * itself untouched. {@link #order()} makes every element's id greater than
+ * the ids of everything an importer needs before it: its parent, the type of
+ * a variable, the types a type extends or implements, the methods a method
+ * overrides and the types of its parameters, and the endpoints of a
+ * relationship. Visiting elements in increasing id order is then a valid
+ * import order, without deferring any callbacks.
+ *
+ * Ids are handed out by a depth-first walk from the elements in order of
+ * their current ids, so related elements stay close together and a model
+ * which is already in dependency order keeps its order. {@link #compact()}
+ * instead hands them out in order of current ids, which only makes them
+ * dense. Either way the result depends only on the current ids, not on the
+ * iteration order of the model's sets.
+ */
+class DependencyOrder {
+	private static final Comparator<Element> BY_ID = new Comparator<Element>(){
+		@Override
+		public int compare(Element a, Element b) {
+			return Long.compare(a.getId(), b.getId());
+		}
+	};
+
+	private IOModel model;
+	private List<Element> elements = new ArrayList<Element>();
+	private LongObjectHashMap<Element> byId = new LongObjectHashMap<Element>();
+	private LongObjectHashMap<Element> parentOf = new LongObjectHashMap<Element>();
+
+	DependencyOrder(IOModel model){
+		this.model = model;
+	}
+
+	/**
+	 * @return the new ids, in dependency order, or null if ids are
+	 * duplicated or references are dangling or cyclic
+	 */
+	IdMap order(){
+		if(!index()) return null;
+		List<Element> order = sort();
+		if(order == null) return null;
+		IdMap ids = renumber(order);
+		ids.setDependencyOrdered(true);
+		return ids;
+	}
+
+	/**
+	 * The new ids keep the order of the current ones, and are marked as
+	 * dependency ordered if they happen to be.
+	 * 
+	 * @return the new ids, or null if ids are duplicated or references are
+	 * dangling
+	 */
+	IdMap compact(){
+		if(!index()) return null;
+		IdMap ids = renumber(elements);
+		boolean ordered = true;
+		for(Element e : elements){
+			long id = ids.get(e.getId());
+			for(long dep : dependencies(e)){
+				if(!byId.containsKey(dep)) return null;
+				if(ids.get(dep) >= id) ordered = false;
+			}
+		}
+		ids.setDependencyOrdered(ordered);
+		return ids;
+	}
+
+	private boolean index(){
+		for(Element e : model.getPrimitive()) if(!index(e, null)) return false;
+		for(Element e : model.getLibrary()) if(!index(e, null)) return false;
+		for(Element e : model.getRelationship()) if(!index(e, null)) return false;
+		Collections.sort(elements, BY_ID);
+		return true;
+	}
+
+	private boolean index(Element e, Element parent){
+		if(byId.put(e.getId(), e) != null) return false;
+		if(parent != null) parentOf.put(e.getId(), parent);
+		elements.add(e);
+		for(Element child : children(e)){
+			if(!index(child, e)) return false;
+		}
+		return true;
+	}
+
+	static List<Element> children(Element e){
+		List<Element> children = new ArrayList<Element>();
+		if(e instanceof LibraryElement){
+			children.addAll(((LibraryElement) e).getPackages());
+		}else if(e instanceof PackageElement){
+			PackageElement p = (PackageElement) e;
+			children.addAll(p.getType_class());
+			children.addAll(p.getType_interface());
+			children.addAll(p.getType_enum());
+			children.addAll(p.getType_annotation());
+		}else if(e instanceof NonPrimitiveTypeElement){
+			NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+			children.addAll(t.getConstructor());
+			children.addAll(t.getMethod());
+			children.addAll(t.getField());
+			children.addAll(t.getNestedClass());
+			children.addAll(t.getNestedInterface());
+			children.addAll(t.getNestedEnum());
+			children.addAll(t.getNestedAnnotation());
+			if(e instanceof EnumTypeElement) children.addAll(((EnumTypeElement) e).getEnumConstant());
+		}else if(e instanceof MethodElement){
+			MethodElement m = (MethodElement) e;
+			children.addAll(m.getParam());
+			if(m.getReturned() != null) children.add(m.getReturned());
+			if(m.getContextThis() != null) children.add(m.getContextThis());
+			children.addAll(m.getLocal_class());
+			children.addAll(m.getLocal_interface());
+			children.addAll(m.getLocal_enum());
+			children.addAll(m.getLocal_annotation());
+			children.addAll(m.getLocalVar());
+		}
+		return children;
+	}
+
+	private long[] dependencies(Element e){
+		long[] deps = new long[4];
+		int n = 0;
+
+		Element parent = parentOf.get(e.getId());
+		if(parent != null) deps = append(deps, n++, parent.getId());
+
+		if(e instanceof VarElement){
+			deps = append(deps, n++, ((VarElement) e).getType());
+		}else if(e instanceof NonPrimitiveTypeElement){
+			NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+			if(t.getExtend() != XMLConvertable.NOT_DEFINED) deps = append(deps, n++, t.getExtend());
+			for(Long l : t.getImplement()) deps = append(deps, n++, l);
+		}else if(e instanceof MethodElement){
+			MethodElement m = (MethodElement) e;
+			for(Long l : m.getOverrides()) deps = append(deps, n++, l);
+			for(ParamVarElement p : m.getParam()) deps = append(deps, n++, p.getType());
+		}else if(e instanceof Relationship){
+			Relationship r = (Relationship) e;
+			deps = append(deps, n++, r.getOrigin_id());
+			deps = append(deps, n++, r.getDest_id());
+		}
+
+		return Arrays.copyOf(deps, n);
+	}
+
+	private static long[] append(long[] array, int pos, long value){
+		if(pos == array.length) array = Arrays.copyOf(array, array.length * 2);
+		array[pos] = value;
+		return array;
+	}
+
+	private static class Frame{
+		Element element;
+		long[] deps;
+		int next;
+
+		Frame(Element element, long[] deps){
+			this.element = element;
+			this.deps = deps;
+		}
+	}
+
+	/**
+	 * Iterative depth-first post-order, since supertype chains can be far
+	 * deeper than the call stack allows.
+	 *
+	 * @return elements with dependencies first, or null on a cycle or dangling reference
+	 */
+	private List<Element> sort(){
+		List<Element> order = new ArrayList<Element>(elements.size());
+		LongHashSet finished = new LongHashSet(elements.size());
+		LongHashSet onPath = new LongHashSet();
+		List<Frame> stack = new ArrayList<Frame>();
+
+		for(Element root : elements){
+			if(finished.contains(root.getId())) continue;
+			stack.add(new Frame(root, sortedDependencies(root)));
+			onPath.add(root.getId());
+
+			while(!stack.isEmpty()){
+				Frame top = stack.get(stack.size() - 1);
+				if(top.next < top.deps.length){
+					long dep = top.deps[top.next++];
+					if(finished.contains(dep)) continue;
+					if(onPath.contains(dep)) return null;
+					Element next = byId.get(dep);
+					if(next == null) return null;
+					stack.add(new Frame(next, sortedDependencies(next)));
+					onPath.add(dep);
+				}else{
+					stack.remove(stack.size() - 1);
+					long id = top.element.getId();
+					onPath.remove(id);
+					finished.add(id);
+					order.add(top.element);
+				}
+			}
+		}
+
+		return order;
+	}
+
+	private long[] sortedDependencies(Element e){
+		long[] deps = dependencies(e);
+		Arrays.sort(deps);
+		return deps;
+	}
+
+	private static IdMap renumber(List<Element> order){
+		IdMap ids = new IdMap(order.size());
+		for(int i = 0; i < order.size(); i++){
+			ids.put(order.get(i).getId(), i);
+		}
+		return ids;
+	}
+}
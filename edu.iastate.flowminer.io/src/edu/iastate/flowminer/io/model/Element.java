@@ -1,7 +1,11 @@
 package edu.iastate.flowminer.io.model;
 
 import java.text.ParseException;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.ontopia.utils.CompactHashSet;
 
@@ -11,25 +15,95 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public abstract class Element extends XMLConvertable {
 	private long id;
 	private String name;
-	private Set<String> tag = new CompactHashSet<String>();
-	private Set<Attribute> attr = new CompactHashSet<Attribute>(); 
-	private static long idGen;
-	private static final Object idGenLock = new Object();
+	// Schema.Tag modifiers, one bit each in MODIFIERS order
+	private int modifiers;
+	// Member sets by slot, allocated as they are first written
+	private Object[] members;
+	
+	// Each thread takes ids from its own block, so creating elements on
+	// many threads does not contend on the counter
+	private static final int ID_BLOCK_SIZE = 1024;
+	private static final AtomicLong idGen = new AtomicLong();
+	private static final ThreadLocal<long[]> idBlock = new ThreadLocal<long[]>(){
+		@Override
+		protected long[] initialValue() {
+			return new long[2];
+		}
+	};
+	
+	private static final String[] MODIFIERS = {
+		Schema.Tag.IS_PUBLIC, Schema.Tag.IS_PROTECTED, Schema.Tag.IS_PRIVATE,
+		Schema.Tag.IS_ABSTRACT, Schema.Tag.IS_FINAL, Schema.Tag.IS_NATIVE,
+		Schema.Tag.IS_STATIC, Schema.Tag.IS_SYNCHRONIZED, Schema.Tag.IS_STRICTFP,
+		Schema.Tag.IS_TRANSIENT, Schema.Tag.IS_VOLATILE
+	};
+	
+	// Attributes, and tags which are not modifiers
+	static final int ATTR_SLOT = 0;
+	static final int TAG_SLOT = 1;
+	// Subclasses number their member slots from here
+	static final int FIRST_MEMBER_SLOT = 2;
 	
 	public Element(IProgressMonitor mon, VTDNav vn) throws NavException, ParseException {
 		super(mon, vn);
 	}
 	
+	private static long nextId(){
+		// Next and end of this thread's block
+		long[] block = idBlock.get();
+		if(block[0] == block[1]){
+			block[0] = idGen.getAndAdd(ID_BLOCK_SIZE);
+			block[1] = block[0] + ID_BLOCK_SIZE;
+		}
+		return block[0]++;
+	}
+	
+	/**
+	 * @return the set in the given slot, or null if nothing was ever added
+	 */
+	@SuppressWarnings("unchecked")
+	final <E> Set<E> memberSet(int slot){
+		Object[] m = members;
+		return m == null || slot >= m.length ? null : (Set<E>) m[slot];
+	}
+	
+	/**
+	 * @return the set in the given slot, allocating it if need be
+	 */
+	@SuppressWarnings("unchecked")
+	final <E> Set<E> writableMemberSet(int slot){
+		if(members == null){
+			members = new Object[slot + 1];
+		}else if(slot >= members.length){
+			Object[] grown = new Object[slot + 1];
+			System.arraycopy(members, 0, grown, 0, members.length);
+			members = grown;
+		}
+		if(members[slot] == null) members[slot] = new CompactHashSet<E>();
+		return (Set<E>) members[slot];
+	}
+	
+	final void clearMemberSet(int slot){
+		if(members != null && slot < members.length) members[slot] = null;
+	}
+	
+	private static int modifierBit(Object tag){
+		for(int i = 0; i < MODIFIERS.length; i++)
+			if(MODIFIERS[i].equals(tag)) return 1 << i;
+		return 0;
+	}
+	
 	@Override
 	public void releaseMemory(){
 		name = null;
-		for(XMLConvertable c : attr) c.releaseMemory();
-		tag = null;
-		attr = null;
+		for(XMLConvertable c : getAttr()) c.releaseMemory();
+		modifiers = 0;
+		members = null;
 	}
 	
 	@Override
@@ -42,21 +116,25 @@ public abstract class Element extends XMLConvertable {
 			id = Long.parseLong(vn.toString(vn.getText()), Schema.RADIX);
 			return true;
 		case Schema.ELEMENT_TAG:
-			tag.add(vn.toString(vn.getText()));
+			getTag().add(vn.toString(vn.getText()));
 			return true;
 		case Schema.ELEMENT_ATTR:
-			attr.add(new Attribute(mon, vn));
+			// Already read when a lazily parsed element builds its members
+			if(!isMaterializing()) getAttr().add(new Attribute(mon, vn));
 			return true;
 		default:
 			return false;
 		}
 	}
 
+	/**
+	 * Create an element with a new id, unique within the session. Ids are
+	 * handed out in blocks per thread, so they are not in creation order
+	 * across threads.
+	 */
 	public Element(String name) {
 		super();
-		synchronized(idGenLock){
-			this.id = idGen++;
-		}
+		this.id = nextId();
 		this.name = name;
 	}
 
@@ -82,31 +160,113 @@ public abstract class Element extends XMLConvertable {
 		this.name = name;
 	}
 	
+	/**
+	 * @return the element's tags. {@link Schema.Tag} modifiers are kept as
+	 * bits, and come first in that order.
+	 */
 	public Set<String> getTag(){
-		return tag;
+		return new TagSet();
 	}
 	
 	public Set<Attribute> getAttr(){
-		return attr;
+		return new MemberSet<Attribute>(this, ATTR_SLOT);
 	}
 	
 	@Override
-	public final void convert(StringBuilder sb, String name) {
-		startNode(sb, name);
-		if(this.name != null) createNode(sb, Schema.ELEMENT_NAME, this.name);
-		createNode(sb, Schema.ELEMENT_ID, Long.toString(id, Schema.RADIX));
+	public final void convert(XMLWriter wr, String name) {
+		SubtreeListener listener = wr instanceof SubtreeListener ? (SubtreeListener) wr : null;
+		if(listener != null) listener.beginElement(this);
 		
-		for (String s : tag) {
-			createNode(sb, Schema.ELEMENT_TAG, s);
+		startNode(wr, name);
+		if(this.name != null) createNode(wr, Schema.ELEMENT_NAME, this.name);
+		createNode(wr, Schema.ELEMENT_ID, Long.toString(wr.id(id), Schema.RADIX));
+		
+		for (String s : getTag()) {
+			createNode(wr, Schema.ELEMENT_TAG, s);
 		}
 		
-		for(Attribute a : attr){
-			a.convert(sb, Schema.ELEMENT_ATTR);
+		for(Attribute a : getAttr()){
+			a.convert(wr, Schema.ELEMENT_ATTR);
 		}
 		
-		doConvert(sb, name);
-		endNode(sb, name);
+		doConvert(wr, name);
+		endNode(wr, name);
+		
+		if(listener != null) listener.endElement(this);
 	}
 	
-	public abstract void doConvert(StringBuilder sb, String name);
+	public abstract void doConvert(XMLWriter wr, String name);
+	
+	/**
+	 * The modifier bits followed by the other tags.
+	 */
+	private class TagSet extends AbstractSet<String> {
+		private final Set<String> others = new MemberSet<String>(Element.this, TAG_SLOT);
+		
+		@Override
+		public int size(){
+			return Integer.bitCount(modifiers) + others.size();
+		}
+		
+		@Override
+		public boolean contains(Object o){
+			int bit = modifierBit(o);
+			return bit != 0 ? (modifiers & bit) != 0 : others.contains(o);
+		}
+		
+		@Override
+		public boolean add(String tag){
+			int bit = modifierBit(tag);
+			if(bit == 0) return others.add(tag);
+			if((modifiers & bit) != 0) return false;
+			modifiers |= bit;
+			return true;
+		}
+		
+		@Override
+		public boolean remove(Object o){
+			int bit = modifierBit(o);
+			if(bit == 0) return others.remove(o);
+			if((modifiers & bit) == 0) return false;
+			modifiers &= ~bit;
+			return true;
+		}
+		
+		@Override
+		public Iterator<String> iterator(){
+			return new Iterator<String>(){
+				private int bits = modifiers;
+				private int last = -1;
+				private Iterator<String> rest;
+				
+				@Override
+				public boolean hasNext(){
+					return bits != 0 || rest().hasNext();
+				}
+				
+				@Override
+				public String next(){
+					if(bits != 0){
+						last = Integer.numberOfTrailingZeros(bits);
+						bits &= bits - 1;
+						return MODIFIERS[last];
+					}
+					last = -1;
+					if(!rest().hasNext()) throw new NoSuchElementException();
+					return rest.next();
+				}
+				
+				@Override
+				public void remove(){
+					if(last >= 0) modifiers &= ~(1 << last);
+					else rest().remove();
+				}
+				
+				private Iterator<String> rest(){
+					if(rest == null) rest = others.iterator();
+					return rest;
+				}
+			};
+		}
+	}
 }
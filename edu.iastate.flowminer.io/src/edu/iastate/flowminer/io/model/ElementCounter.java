@@ -0,0 +1,70 @@
+package edu.iastate.flowminer.io.model;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.ontopia.utils.CompactHashMap;
+import net.ontopia.utils.CompactHashSet;
+
+import edu.iastate.flowminer.io.Schema;
+
+/**
+ * Counts the elements of a model by kind, with keys from
+ * {@link Schema.Count}, so that readers can size their tables before the
+ * first element arrives.
+ */
+class ElementCounter {
+	private Map<String, long[]> counts = new CompactHashMap<String, long[]>();
+	private Set<String> strings = new CompactHashSet<String>();
+
+	static Map<String, Long> count(IOModel model){
+		ElementCounter counter = new ElementCounter();
+		for(Element e : model.getPrimitive()) counter.visit(e);
+		for(Element e : model.getLibrary()) counter.visit(e);
+		for(Element e : model.getRelationship()) counter.visit(e);
+
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for(String kind : counter.counts.keySet())
+			result.put(kind, counter.counts.get(kind)[0]);
+		result.put(Schema.Count.STRING, (long) counter.strings.size());
+		return result;
+	}
+
+	private void visit(Element e){
+		add(kind(e));
+		if(e instanceof Relationship) add(Schema.Count.RELATIONSHIP_TYPE_PREFIX + ((Relationship) e).getSchemaType());
+
+		addString(e.getName());
+		for(String tag : e.getTag()) addString(tag);
+		for(Attribute a : e.getAttr()){
+			addString(a.getKey());
+			addString(a.getValue());
+		}
+		if(e instanceof LocalVarElement) addString(((LocalVarElement) e).getSchemaType());
+		if(e instanceof Relationship) addString(((Relationship) e).getSchemaType());
+
+		for(Element child : DependencyOrder.children(e)) visit(child);
+	}
+
+	private static String kind(Element e){
+		if(e instanceof PrimitiveTypeElement) return Schema.Count.PRIMITIVE;
+		if(e instanceof LibraryElement) return Schema.Count.LIBRARY;
+		if(e instanceof PackageElement) return Schema.Count.PACKAGE;
+		if(e instanceof NonPrimitiveTypeElement) return Schema.Count.TYPE;
+		if(e instanceof MethodElement) return Schema.Count.METHOD;
+		if(e instanceof ParamVarElement) return Schema.Count.PARAM;
+		if(e instanceof VarElement) return Schema.Count.VARIABLE;
+		return Schema.Count.RELATIONSHIP;
+	}
+
+	private void add(String kind){
+		long[] count = counts.get(kind);
+		if(count == null) counts.put(kind, count = new long[1]);
+		count[0]++;
+	}
+
+	private void addString(String s){
+		if(s != null) strings.add(s);
+	}
+}
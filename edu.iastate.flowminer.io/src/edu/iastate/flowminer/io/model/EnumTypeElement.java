@@ -3,8 +3,6 @@ package edu.iastate.flowminer.io.model;
 import java.text.ParseException;
 import java.util.Set;
 
-import net.ontopia.utils.CompactHashSet;
-
 import org.eclipse.core.runtime.IProgressMonitor;
 
 import com.ximpleware.NavException;
@@ -12,13 +10,22 @@ import com.ximpleware.PilotException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class EnumTypeElement extends NonPrimitiveTypeElement {
-	private Set<EnumConstantElement> enumConstants = new CompactHashSet<EnumConstantElement>();
+	private static final int ENUM_CONSTANT = NEXT_MEMBER_SLOT;
 	
 	public EnumTypeElement(IProgressMonitor mon, VTDNav vn) throws PilotException, NavException, ParseException {
+		this(mon, vn, false);
+	}
+	
+	/**
+	 * @param lazy if true, members are read as their getters are first called
+	 */
+	public EnumTypeElement(IProgressMonitor mon, VTDNav vn, boolean lazy) throws PilotException, NavException, ParseException {
 		super(mon, vn);
-		parse();
+		if(lazy) parseLazily();
+		else parse();
 	}
 
 	@Override
@@ -26,7 +33,8 @@ public class EnumTypeElement extends NonPrimitiveTypeElement {
 		if(super.interpretChild(mon, vn, name)) return true;
 		switch (name) {
 		case Schema.ENUM_TYPE_NON_PRIMITIVE_CONSTANT:
-			enumConstants.add(new EnumConstantElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<EnumConstantElement>writableMemberSet(ENUM_CONSTANT).add(new EnumConstantElement(mon, vn));
 			return true;
 		default:
 			return false;
@@ -41,26 +49,21 @@ public class EnumTypeElement extends NonPrimitiveTypeElement {
 		super(name);
 	}
 	
-	@Override
-	public void releaseMemory(){
-		super.releaseMemory();
-		enumConstants = null;
-	}
-	
 	public Set<EnumConstantElement> getEnumConstant(){
-		return enumConstants;
+		materialize();
+		return new MemberSet<EnumConstantElement>(this, ENUM_CONSTANT);
 	}
 
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		super.doConvert(sb, name);
-		for (EnumConstantElement e : enumConstants) {
-			e.convert(sb, Schema.ENUM_TYPE_NON_PRIMITIVE_CONSTANT);
+	public void doConvert(XMLWriter wr, String name){
+		super.doConvert(wr, name);
+		for (EnumConstantElement e : getEnumConstant()) {
+			e.convert(wr, Schema.ENUM_TYPE_NON_PRIMITIVE_CONSTANT);
 		}
 	}
 	
 	@Override
 	public int subtreeSize() {
-		return super.subtreeSize() + enumConstants.size();
+		return super.subtreeSize() + getEnumConstant().size();
 	}
 }
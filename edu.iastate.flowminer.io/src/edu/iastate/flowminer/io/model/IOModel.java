@@ -3,7 +3,9 @@ package edu.iastate.flowminer.io.model;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import net.ontopia.utils.CompactHashSet;
 
@@ -13,25 +15,61 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.IdMap;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class IOModel extends XMLConvertable {
 	private String author;
 	private Date created;
+	private Map<String, Long> counts = new TreeMap<String, Long>();
 	private Set<LibraryElement> libraries = new CompactHashSet<LibraryElement>();
 	private Set<PrimitiveTypeElement> primitive = new CompactHashSet<PrimitiveTypeElement>();
 	private Set<Relationship> relationship = new CompactHashSet<Relationship>();
+	private PackageReader packageReader;
 	private static SimpleDateFormat sdf = new SimpleDateFormat(
 			"yyyy-MM-dd'T'HH:mm:ss");
 	
 	public IOModel(IProgressMonitor mon, VTDNav vn) throws ParseException, NavException {
+		this(mon, vn, false);
+	}
+	
+	/**
+	 * @param lazy if true, read just the header now. Libraries and their
+	 * packages and types are then read from the document as their getters
+	 * are first called, so the document must stay in memory.
+	 */
+	public IOModel(IProgressMonitor mon, VTDNav vn, boolean lazy) throws ParseException, NavException {
 		super(mon, vn);
-		parse();
+		if(lazy) parseLazily();
+		else parse();
+	}
+	
+	/**
+	 * @param threads how many threads read packages at once, each with its
+	 * own clone of the document cursor. 1 reads the whole document on the
+	 * calling thread.
+	 */
+	public IOModel(IProgressMonitor mon, VTDNav vn, int threads) throws ParseException, NavException {
+		super(mon, vn);
+		if(threads <= 1){
+			parse();
+			return;
+		}
+		packageReader = new PackageReader(mon, threads);
+		try{
+			parse();
+			packageReader.readAll();
+		}finally{
+			packageReader = null;
+		}
 	}
 	
 	@Override
 	public void releaseMemory(){
+		discardDeferred();
 		author = null;
 		created = null;
+		counts = null;
 		libraries = null;
 		primitive = null;
 		relationship = null;
@@ -41,12 +79,16 @@ public class IOModel extends XMLConvertable {
 	public boolean interpretChild(IProgressMonitor mon, VTDNav vn, String name) throws NavException, ParseException{
 		switch (name) {
 		case Schema.IOMODEL_LIBRARY:
-			libraries.add(new LibraryElement(mon, vn));
+			if(isDeferring()) return true;
+			if(packageReader != null) libraries.add(new LibraryElement(mon, vn, packageReader));
+			else libraries.add(new LibraryElement(mon, vn, isLazy()));
 			return true;
 		case Schema.IOMODEL_PRIMITIVE:
+			if(isDeferring()) return true;
 			primitive.add(new PrimitiveTypeElement(mon, vn));
 			return true;
 		case Schema.IOMODEL_RELATIONSHIP:
+			if(isDeferring()) return true;
 			relationship.add(new Relationship(mon, vn));
 			return true;
 		case Schema.IOMODEL_AUTHOR:
@@ -55,6 +97,15 @@ public class IOModel extends XMLConvertable {
 		case Schema.IOMODEL_CREATED:
 			created = sdf.parse(vn.toString(vn.getText()));
 			return true;
+		case Schema.IOMODEL_DEPENDENCY_ORDERED:
+		case Schema.IOMODEL_MAX_ID:
+			// These describe the ids as they were written, which any edit to
+			// the model can invalidate, so exports work them out again
+			return true;
+		case Schema.IOMODEL_COUNT:
+			Attribute count = new Attribute(mon, vn);
+			counts.put(count.getKey(), Long.parseLong(count.getValue(), Schema.RADIX));
+			return true;
 		default:
 			return false;
 		}
@@ -82,53 +133,108 @@ public class IOModel extends XMLConvertable {
 		this.created = created;
 	}
 
+	/**
+	 * @return element counts keyed by {@link Schema.Count}, as read from a
+	 * summary header or last computed by {@link #countElements()}
+	 */
+	public Map<String, Long> getCounts() {
+		return counts;
+	}
+	
+	/**
+	 * Count the model's elements by kind. Exports do this to record the
+	 * counts in the header.
+	 * 
+	 * @return the counts, keyed by {@link Schema.Count}
+	 */
+	public Map<String, Long> countElements() {
+		counts = ElementCounter.count(this);
+		return counts;
+	}
+	
+	/**
+	 * Work out the ids to write the model's elements with, which run from 0
+	 * so that readers can index elements by id in arrays. Ids handed out by
+	 * {@link Element#Element(String)} are unique across the whole session,
+	 * so without this the ids in a summary are sparse and keep growing. The
+	 * model keeps its own ids, and the result depends only on them.
+	 * 
+	 * @param dependencyOrdered if true, ids increase along the references an
+	 * importer waits on (parents, types, supertypes, overrides, relationship
+	 * endpoints), so that readers can process elements in id order without
+	 * deferring any. Otherwise they keep the order of the current ids.
+	 * @return the ids, or null if the model has duplicate ids or dangling
+	 * references, or cyclic ones if dependency order was asked for
+	 */
+	public IdMap exportIds(boolean dependencyOrdered) {
+		DependencyOrder order = new DependencyOrder(this);
+		return dependencyOrdered ? order.order() : order.compact();
+	}
+
 	public Set<LibraryElement> getLibrary() {
+		materialize();
 		return libraries;
 	}
 
 	public Set<PrimitiveTypeElement> getPrimitive() {
+		materialize();
 		return primitive;
 	}
 
 	public Set<Relationship> getRelationship() {
+		materialize();
 		return relationship;
 	}
 	
 	@Override
-	public void convert(StringBuilder sb, String name){
-		rootNode(sb, name);
+	public void convert(XMLWriter wr, String name){
+		rootNode(wr, name);
 		
 		if (author != null) {
-			createNode(sb, Schema.IOMODEL_AUTHOR, author);
+			createNode(wr, Schema.IOMODEL_AUTHOR, author);
 		}
 
 		if (created != null) {
-			createNode(sb, Schema.IOMODEL_CREATED, sdf.format(created));
+			createNode(wr, Schema.IOMODEL_CREATED, sdf.format(created));
+		}
+		
+		createNode(wr, Schema.IOMODEL_NUM_ELEMENTS, Long.toString(subtreeSize(), Schema.RADIX));
+		
+		// Only ids renumbered by the writer are known to be dense and ordered
+		IdMap ids = wr.getIds();
+		if (ids != null && ids.isDependencyOrdered()) {
+			createNode(wr, Schema.IOMODEL_DEPENDENCY_ORDERED, Boolean.TRUE.toString());
 		}
 		
-		createNode(sb, Schema.IOMODEL_NUM_ELEMENTS, Long.toString(subtreeSize(), Schema.RADIX));
+		if (ids != null) {
+			createNode(wr, Schema.IOMODEL_MAX_ID, Long.toString(ids.getMaxID(), Schema.RADIX));
+		}
+		
+		for (Map.Entry<String, Long> count : countElements().entrySet()) {
+			new Attribute(count.getKey(), Long.toString(count.getValue(), Schema.RADIX)).convert(wr, Schema.IOMODEL_COUNT);
+		}
 		
-		for (PrimitiveTypeElement e : primitive) {
-			e.convert(sb, Schema.IOMODEL_PRIMITIVE);
+		for (PrimitiveTypeElement e : getPrimitive()) {
+			e.convert(wr, Schema.IOMODEL_PRIMITIVE);
 		}
 		
-		for (LibraryElement e : libraries) {
-			e.convert(sb, Schema.IOMODEL_LIBRARY);
+		for (LibraryElement e : getLibrary()) {
+			e.convert(wr, Schema.IOMODEL_LIBRARY);
 		}
 
-		for (Relationship e : relationship) {
-			e.convert(sb, Schema.IOMODEL_RELATIONSHIP);
+		for (Relationship e : getRelationship()) {
+			e.convert(wr, Schema.IOMODEL_RELATIONSHIP);
 		}
 		
-		endNode(sb, name);
+		endNode(wr, name);
 	}
 
 	@Override
 	public int subtreeSize() {
 		int size = 0;
-		for(XMLConvertable dc : libraries) size += dc.subtreeSize();
-		for(XMLConvertable dc : primitive) size += dc.subtreeSize();
-		for(XMLConvertable dc : relationship) size += dc.subtreeSize();
+		for(XMLConvertable dc : getLibrary()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getPrimitive()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getRelationship()) size += dc.subtreeSize();
 		return size;
 	}
 }
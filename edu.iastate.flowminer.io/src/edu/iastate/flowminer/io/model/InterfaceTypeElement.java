@@ -9,8 +9,16 @@ import com.ximpleware.VTDNav;
 
 public class InterfaceTypeElement extends NonPrimitiveTypeElement {
 	public InterfaceTypeElement(IProgressMonitor mon, VTDNav vn) throws NavException, ParseException {
+		this(mon, vn, false);
+	}
+	
+	/**
+	 * @param lazy if true, members are read as their getters are first called
+	 */
+	public InterfaceTypeElement(IProgressMonitor mon, VTDNav vn, boolean lazy) throws NavException, ParseException {
 		super(mon, vn);
-		parse();
+		if(lazy) parseLazily();
+		else parse();
 	}
 
 	public InterfaceTypeElement(long id, String name) {
@@ -11,18 +11,40 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class LibraryElement extends Element {
 	private Set<PackageElement> packages = new CompactHashSet<PackageElement>();
+	private PackageReader packageReader;
 
 	public LibraryElement(IProgressMonitor mon, VTDNav vn) throws NavException, ParseException {
+		this(mon, vn, false);
+	}
+	
+	/**
+	 * @param lazy if true, packages are read as {@link #getPackages()} is
+	 * first called
+	 */
+	public LibraryElement(IProgressMonitor mon, VTDNav vn, boolean lazy) throws NavException, ParseException {
 		super(mon, vn);
+		if(lazy) parseLazily();
+		else parse();
+	}
+	
+	/**
+	 * Leave packages to the given reader, which adds them when it is done.
+	 */
+	LibraryElement(IProgressMonitor mon, VTDNav vn, PackageReader packageReader) throws NavException, ParseException {
+		super(mon, vn);
+		this.packageReader = packageReader;
 		parse();
+		this.packageReader = null;
 	}
 	
 	@Override
 	public void releaseMemory(){
 		super.releaseMemory();
+		discardDeferred();
 		packages.clear();
 		packages = null;
 	}
@@ -32,7 +54,12 @@ public class LibraryElement extends Element {
 		if(super.interpretChild(mon, vn, name)) return true;
 		switch (name) {
 		case Schema.LIBRARY_PACKAGE:
-			packages.add(new PackageElement(mon, vn));
+			if(isDeferring()) return true;
+			if(packageReader != null){
+				packageReader.defer(this, vn);
+				return true;
+			}
+			packages.add(new PackageElement(mon, vn, isLazy()));
 			return true;
 		default:
 			return false;
@@ -47,21 +74,26 @@ public class LibraryElement extends Element {
 		super(name);
 	}
 	
+	void addPackage(PackageElement p) {
+		packages.add(p);
+	}
+	
 	public Set<PackageElement> getPackages() {
+		materialize();
 		return packages;
 	}
 	
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		for (PackageElement e : packages) {
-			e.convert(sb, Schema.LIBRARY_PACKAGE);
+	public void doConvert(XMLWriter wr, String name){
+		for (PackageElement e : getPackages()) {
+			e.convert(wr, Schema.LIBRARY_PACKAGE);
 		}
 	}
 	
 	@Override
 	public int subtreeSize() {
 		int size = 1;
-		for(XMLConvertable dc : packages) size += dc.subtreeSize();
+		for(XMLConvertable dc : getPackages()) size += dc.subtreeSize();
 		return size;
 	}
 }
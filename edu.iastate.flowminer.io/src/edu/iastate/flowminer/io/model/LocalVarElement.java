@@ -8,6 +8,7 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class LocalVarElement extends VarElement {
 	String type;
@@ -60,12 +61,12 @@ public class LocalVarElement extends VarElement {
 	}
 	
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		super.doConvert(sb, name);
-		createNode(sb, Schema.LOCAL_VAR_SCHEMA_TYPE, type);
+	public void doConvert(XMLWriter wr, String name){
+		super.doConvert(wr, name);
+		createNode(wr, Schema.LOCAL_VAR_SCHEMA_TYPE, type);
 		
 		if(paramIdx > -1){
-			createNode(sb, Schema.PARAM_VAR_INDEX, Integer.toString(paramIdx, Schema.RADIX));
+			createNode(wr, Schema.PARAM_VAR_INDEX, Integer.toString(paramIdx, Schema.RADIX));
 		}
 	}
 }
@@ -0,0 +1,68 @@
+package edu.iastate.flowminer.io.model;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * View of one of an element's member slots. The set behind it is only
+ * allocated once something is added, so elements with no members of a kind
+ * pay nothing for them. Views are made as getters are called, and read and
+ * write straight through to the element.
+ *
+ * @param <E>
+ */
+final class MemberSet<E> extends AbstractSet<E> {
+	private final Element owner;
+	private final int slot;
+
+	MemberSet(Element owner, int slot){
+		this.owner = owner;
+		this.slot = slot;
+	}
+
+	private Set<E> backing(){
+		return owner.memberSet(slot);
+	}
+
+	@Override
+	public int size(){
+		Set<E> s = backing();
+		return s == null ? 0 : s.size();
+	}
+
+	@Override
+	public boolean isEmpty(){
+		Set<E> s = backing();
+		return s == null || s.isEmpty();
+	}
+
+	@Override
+	public boolean contains(Object o){
+		Set<E> s = backing();
+		return s != null && s.contains(o);
+	}
+
+	@Override
+	public Iterator<E> iterator(){
+		Set<E> s = backing();
+		return s == null ? Collections.<E>emptyIterator() : s.iterator();
+	}
+
+	@Override
+	public boolean add(E e){
+		return owner.<E>writableMemberSet(slot).add(e);
+	}
+
+	@Override
+	public boolean remove(Object o){
+		Set<E> s = backing();
+		return s != null && s.remove(o);
+	}
+
+	@Override
+	public void clear(){
+		owner.clearMemberSet(slot);
+	}
+}
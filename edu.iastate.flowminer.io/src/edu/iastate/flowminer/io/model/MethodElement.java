@@ -3,25 +3,25 @@ package edu.iastate.flowminer.io.model;
 import java.text.ParseException;
 import java.util.Set;
 
-import net.ontopia.utils.CompactHashSet;
-
 import org.eclipse.core.runtime.IProgressMonitor;
 
 import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class MethodElement extends Element {
-	private Set<ParamVarElement> param = new CompactHashSet<ParamVarElement>();
+	private static final int PARAM = FIRST_MEMBER_SLOT;
+	private static final int LOCAL_CLASS = PARAM + 1;
+	private static final int LOCAL_ANNOTATION = LOCAL_CLASS + 1;
+	private static final int LOCAL_ENUM = LOCAL_ANNOTATION + 1;
+	private static final int LOCAL_INTERFACE = LOCAL_ENUM + 1;
+	private static final int LOCAL_VAR = LOCAL_INTERFACE + 1;
+	private static final int OVERRIDES = LOCAL_VAR + 1;
+	
 	private ReturnVarElement returned;
 	private ThisVarElement context_this;
-	private Set<ClassTypeElement> local_class = new CompactHashSet<ClassTypeElement>();
-	private Set<AnnotationTypeElement> local_annotation = new CompactHashSet<AnnotationTypeElement>();
-	private Set<EnumTypeElement> local_enum = new CompactHashSet<EnumTypeElement>();
-	private Set<InterfaceTypeElement> local_interface = new CompactHashSet<InterfaceTypeElement>();
-	private Set<LocalVarElement> local_var = new CompactHashSet<LocalVarElement>();
-	private Set<Long> overrides = new CompactHashSet<Long>();
 	
 	public MethodElement(IProgressMonitor mon, VTDNav vn) throws NumberFormatException, NavException, ParseException {
 		super(mon, vn);
@@ -41,12 +41,6 @@ public class MethodElement extends Element {
 		super.releaseMemory();
 		returned = null;
 		context_this = null;
-		param = null;
-		local_class = null;
-		local_annotation = null;
-		local_enum = null;
-		local_interface = null;
-		local_var = null;
 	}
 
 	@Override
@@ -54,19 +48,19 @@ public class MethodElement extends Element {
 		if(super.interpretChild(mon, vn, name)) return true;
 		switch (name) {
 		case Schema.METHOD_PARAM:
-			param.add(new ParamVarElement(mon, vn));
+			this.<ParamVarElement>writableMemberSet(PARAM).add(new ParamVarElement(mon, vn));
 			return true;
 		case Schema.METHOD_LOCAL_CLASS:
-			local_class.add(new ClassTypeElement(mon, vn));
+			this.<ClassTypeElement>writableMemberSet(LOCAL_CLASS).add(new ClassTypeElement(mon, vn));
 			return true;
 		case Schema.METHOD_LOCAL_INTERFACE:
-			local_interface.add(new InterfaceTypeElement(mon, vn));
+			this.<InterfaceTypeElement>writableMemberSet(LOCAL_INTERFACE).add(new InterfaceTypeElement(mon, vn));
 			return true;
 		case Schema.METHOD_LOCAL_ENUM:
-			local_enum.add(new EnumTypeElement(mon, vn));
+			this.<EnumTypeElement>writableMemberSet(LOCAL_ENUM).add(new EnumTypeElement(mon, vn));
 			return true;
 		case Schema.METHOD_LOCAL_ANNOTATION:
-			local_annotation.add(new AnnotationTypeElement(mon, vn));
+			this.<AnnotationTypeElement>writableMemberSet(LOCAL_ANNOTATION).add(new AnnotationTypeElement(mon, vn));
 			return true;
 		case Schema.METHOD_RETURNED:
 			returned = new ReturnVarElement(mon, vn);
@@ -75,10 +69,10 @@ public class MethodElement extends Element {
 			context_this = new ThisVarElement(mon, vn);
 			return true;
 		case Schema.METHOD_LOCAL_VAR:
-			local_var.add(new LocalVarElement(mon, vn));
+			this.<LocalVarElement>writableMemberSet(LOCAL_VAR).add(new LocalVarElement(mon, vn));
 			return true;
 		case Schema.METHOD_OVERRIDES:
-			overrides.add(Long.parseLong(vn.toString(vn.getText()),Schema.RADIX));
+			this.<Long>writableMemberSet(OVERRIDES).add(Long.parseLong(vn.toString(vn.getText()),Schema.RADIX));
 			return true;
 		default:
 			return false;
@@ -86,7 +80,7 @@ public class MethodElement extends Element {
 	}
 	
 	public Set<ParamVarElement> getParam() {
-		return param;
+		return new MemberSet<ParamVarElement>(this, PARAM);
 	}
 
 	public ReturnVarElement getReturned() {
@@ -98,27 +92,27 @@ public class MethodElement extends Element {
 	}
 	
 	public Set<Long> getOverrides(){
-		return overrides;
+		return new MemberSet<Long>(this, OVERRIDES);
 	}
 
 	public Set<ClassTypeElement> getLocal_class() {
-		return local_class;
+		return new MemberSet<ClassTypeElement>(this, LOCAL_CLASS);
 	}
 
 	public Set<AnnotationTypeElement> getLocal_annotation() {
-		return local_annotation;
+		return new MemberSet<AnnotationTypeElement>(this, LOCAL_ANNOTATION);
 	}
 
 	public Set<EnumTypeElement> getLocal_enum() {
-		return local_enum;
+		return new MemberSet<EnumTypeElement>(this, LOCAL_ENUM);
 	}
 
 	public Set<InterfaceTypeElement> getLocal_interface() {
-		return local_interface;
+		return new MemberSet<InterfaceTypeElement>(this, LOCAL_INTERFACE);
 	}
 
 	public Set<LocalVarElement> getLocalVar(){
-		return local_var;
+		return new MemberSet<LocalVarElement>(this, LOCAL_VAR);
 	}
 	
 	public ThisVarElement getContextThis(){
@@ -130,53 +124,53 @@ public class MethodElement extends Element {
 	}
 	
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		for (ParamVarElement e : param) {
-			e.convert(sb, Schema.METHOD_PARAM);
+	public void doConvert(XMLWriter wr, String name){
+		for (ParamVarElement e : getParam()) {
+			e.convert(wr, Schema.METHOD_PARAM);
 		}
 		
-		for(Long l : overrides){
-			createNode(sb, Schema.METHOD_OVERRIDES, Long.toString(l, Schema.RADIX));
+		for(Long l : getOverrides()){
+			createNode(wr, Schema.METHOD_OVERRIDES, Long.toString(wr.id(l), Schema.RADIX));
 		}
 		
 		if (returned != null) {
-			returned.convert(sb, Schema.METHOD_RETURNED);
+			returned.convert(wr, Schema.METHOD_RETURNED);
 		}
 		
 		if(context_this != null){
-			context_this.convert(sb, Schema.METHOD_CONTEXT_THIS);
+			context_this.convert(wr, Schema.METHOD_CONTEXT_THIS);
 		}
 
-		for (ClassTypeElement e : local_class) {
-			e.convert(sb, Schema.METHOD_LOCAL_CLASS);
+		for (ClassTypeElement e : getLocal_class()) {
+			e.convert(wr, Schema.METHOD_LOCAL_CLASS);
 		}
 		
-		for (InterfaceTypeElement e : local_interface) {
-			e.convert(sb, Schema.METHOD_LOCAL_INTERFACE);
+		for (InterfaceTypeElement e : getLocal_interface()) {
+			e.convert(wr, Schema.METHOD_LOCAL_INTERFACE);
 		}
 		
-		for (EnumTypeElement e : local_enum) {
-			e.convert(sb, Schema.METHOD_LOCAL_ENUM);
+		for (EnumTypeElement e : getLocal_enum()) {
+			e.convert(wr, Schema.METHOD_LOCAL_ENUM);
 		}
 		
-		for (AnnotationTypeElement e : local_annotation) {
-			e.convert(sb, Schema.METHOD_LOCAL_ANNOTATION);
+		for (AnnotationTypeElement e : getLocal_annotation()) {
+			e.convert(wr, Schema.METHOD_LOCAL_ANNOTATION);
 		}
 		
-		for(LocalVarElement e : local_var){
-			e.convert(sb, Schema.METHOD_LOCAL_VAR);
+		for(LocalVarElement e : getLocalVar()){
+			e.convert(wr, Schema.METHOD_LOCAL_VAR);
 		}
 	}
 
 	@Override
 	public int subtreeSize() {
 		int size = 1;
-		for(XMLConvertable dc : param) size += dc.subtreeSize();
-		for(XMLConvertable dc : local_class) size += dc.subtreeSize();
-		for(XMLConvertable dc : local_interface) size += dc.subtreeSize();
-		for(XMLConvertable dc : local_enum) size += dc.subtreeSize();
-		for(XMLConvertable dc : local_annotation) size += dc.subtreeSize();
-		for(XMLConvertable dc : local_var) size += dc.subtreeSize();
+		for(XMLConvertable dc : getParam()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getLocal_class()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getLocal_interface()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getLocal_enum()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getLocal_annotation()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getLocalVar()) size += dc.subtreeSize();
 		if(returned != null) size += 1;
 		if(context_this != null) size += 1;
 		return size;
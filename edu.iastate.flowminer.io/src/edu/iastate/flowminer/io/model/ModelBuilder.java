@@ -0,0 +1,70 @@
+package edu.iastate.flowminer.io.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Assembles a model on several threads at once. Model elements are not
+ * thread safe, so rather than nesting children into shared parents directly,
+ * each task records its additions in its own {@link Buffer}. Once the tasks
+ * are done, {@link #merge()} applies every buffer on one thread, in the
+ * order the buffers were made, so the result does not depend on how the
+ * tasks interleaved.
+ * <p>
+ * Elements may still be created and have their own fields set on any
+ * thread; ids come from per-thread blocks, see {@link Element#Element(String)}.
+ */
+public class ModelBuilder {
+	private final List<Buffer> buffers = new ArrayList<Buffer>();
+
+	/**
+	 * Make a buffer for one task. Make buffers on the thread which submits
+	 * the tasks, so that they merge in a fixed order.
+	 */
+	public Buffer newBuffer(){
+		Buffer buffer = new Buffer();
+		synchronized(buffers){
+			buffers.add(buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Apply and forget every buffer. Call once the tasks filling them are
+	 * done.
+	 */
+	public void merge(){
+		synchronized(buffers){
+			for(Buffer buffer : buffers) buffer.apply();
+			buffers.clear();
+		}
+	}
+
+	/**
+	 * Additions to a model, recorded by a single task.
+	 */
+	public static final class Buffer {
+		private final List<Collection<Object>> targets = new ArrayList<Collection<Object>>();
+		private final List<Object> children = new ArrayList<Object>();
+
+		private Buffer(){
+		}
+
+		/**
+		 * Add the child to the given member set, such as
+		 * {@link PackageElement#getType_class()}, when the builder merges.
+		 */
+		@SuppressWarnings("unchecked")
+		public <E> void add(Collection<? super E> to, E child){
+			targets.add((Collection<Object>) to);
+			children.add(child);
+		}
+
+		private void apply(){
+			for(int i = 0; i < targets.size(); i++) targets.get(i).add(children.get(i));
+			targets.clear();
+			children.clear();
+		}
+	}
+}
@@ -3,26 +3,27 @@ package edu.iastate.flowminer.io.model;
 import java.text.ParseException;
 import java.util.Set;
 
-import net.ontopia.utils.CompactHashSet;
-
 import org.eclipse.core.runtime.IProgressMonitor;
 
 import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public abstract class NonPrimitiveTypeElement extends TypeElement {
-	private Set<FieldVarElement> field = new CompactHashSet<FieldVarElement>();
-	private Set<MethodElement> method = new CompactHashSet<MethodElement>();
-	private Set<ClassTypeElement> nestedClass = new CompactHashSet<ClassTypeElement>();
-	private Set<InterfaceTypeElement> nestedInterface = new CompactHashSet<InterfaceTypeElement>();
-	private Set<EnumTypeElement> nestedEnum = new CompactHashSet<EnumTypeElement>();
-	private Set<AnnotationTypeElement> nestedAnnotation = new CompactHashSet<AnnotationTypeElement>();
+	private static final int FIELD = FIRST_MEMBER_SLOT;
+	private static final int METHOD = FIELD + 1;
+	private static final int NESTED_CLASS = METHOD + 1;
+	private static final int NESTED_INTERFACE = NESTED_CLASS + 1;
+	private static final int NESTED_ENUM = NESTED_INTERFACE + 1;
+	private static final int NESTED_ANNOTATION = NESTED_ENUM + 1;
+	private static final int CONSTRUCTOR = NESTED_ANNOTATION + 1;
+	private static final int IMPLEMENT = CONSTRUCTOR + 1;
+	// Subclasses number their member slots from here
+	static final int NEXT_MEMBER_SLOT = IMPLEMENT + 1;
 	
-	private Set<ConstructorElement> constructor = new CompactHashSet<ConstructorElement>();
 	private long extend = NOT_DEFINED;
-	private Set<Long> implement = new CompactHashSet<Long>();
 	
 	public NonPrimitiveTypeElement(IProgressMonitor mon, VTDNav vn) throws NavException, ParseException {
 		super(mon, vn);
@@ -31,14 +32,7 @@ public abstract class NonPrimitiveTypeElement extends TypeElement {
 	@Override
 	public void releaseMemory(){
 		super.releaseMemory();
-		field = null;
-		method = null;
-		nestedClass = null;
-		nestedInterface = null;
-		nestedEnum = null;
-		nestedAnnotation = null;
-		constructor = null;
-		implement = null;
+		discardDeferred();
 	}
 	
 	@Override
@@ -46,28 +40,35 @@ public abstract class NonPrimitiveTypeElement extends TypeElement {
 		if(super.interpretChild(mon, vn, name)) return true;
 		switch (name) {
 		case Schema.TYPE_NON_PRIMITIVE_FIELD:
-			field.add(new FieldVarElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<FieldVarElement>writableMemberSet(FIELD).add(new FieldVarElement(mon, vn));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_METHOD:
-			method.add(new MethodElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<MethodElement>writableMemberSet(METHOD).add(new MethodElement(mon, vn));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS:
-			nestedClass.add(new ClassTypeElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<ClassTypeElement>writableMemberSet(NESTED_CLASS).add(new ClassTypeElement(mon, vn, isLazy()));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE:
-			nestedInterface.add(new InterfaceTypeElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<InterfaceTypeElement>writableMemberSet(NESTED_INTERFACE).add(new InterfaceTypeElement(mon, vn, isLazy()));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM:
-			nestedEnum.add(new EnumTypeElement(mon, vn.cloneNav()));
+			if(isDeferring()) return true;
+			this.<EnumTypeElement>writableMemberSet(NESTED_ENUM).add(new EnumTypeElement(mon, vn.cloneNav(), isLazy()));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION:
-			nestedAnnotation.add(new AnnotationTypeElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<AnnotationTypeElement>writableMemberSet(NESTED_ANNOTATION).add(new AnnotationTypeElement(mon, vn, isLazy()));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR:
-			constructor.add(new ConstructorElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<ConstructorElement>writableMemberSet(CONSTRUCTOR).add(new ConstructorElement(mon, vn));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_IMPLEMENTS:
-			implement.add(Long.parseLong(vn.toString(vn.getText()), Schema.RADIX));
+			this.<Long>writableMemberSet(IMPLEMENT).add(Long.parseLong(vn.toString(vn.getText()), Schema.RADIX));
 			return true;
 		case Schema.TYPE_NON_PRIMITIVE_EXTENDS:
 			extend = Long.parseLong(vn.toString(vn.getText()), Schema.RADIX);
@@ -86,11 +87,13 @@ public abstract class NonPrimitiveTypeElement extends TypeElement {
 	}
 
 	public Set<FieldVarElement> getField() {
-		return field;
+		materialize();
+		return new MemberSet<FieldVarElement>(this, FIELD);
 	}
 
 	public Set<MethodElement> getMethod() {
-		return method;
+		materialize();
+		return new MemberSet<MethodElement>(this, METHOD);
 	}
 
 	public long getExtend() {
@@ -102,78 +105,85 @@ public abstract class NonPrimitiveTypeElement extends TypeElement {
 	}
 
 	public Set<Long> getImplement() {
-		return implement;
+		return new MemberSet<Long>(this, IMPLEMENT);
 	}
 
 	public Set<ClassTypeElement> getNestedClass() {
-		return nestedClass;
+		materialize();
+		return new MemberSet<ClassTypeElement>(this, NESTED_CLASS);
 	}
 
 	public Set<InterfaceTypeElement> getNestedInterface() {
-		return nestedInterface;
+		materialize();
+		return new MemberSet<InterfaceTypeElement>(this, NESTED_INTERFACE);
 	}
 
 	public Set<EnumTypeElement> getNestedEnum() {
-		return nestedEnum;
+		materialize();
+		return new MemberSet<EnumTypeElement>(this, NESTED_ENUM);
 	}
 
 	public Set<AnnotationTypeElement> getNestedAnnotation() {
-		return nestedAnnotation;
+		materialize();
+		return new MemberSet<AnnotationTypeElement>(this, NESTED_ANNOTATION);
 	}
 
 	public Set<ConstructorElement> getConstructor(){
-		return constructor;
+		materialize();
+		return new MemberSet<ConstructorElement>(this, CONSTRUCTOR);
 	}
 	
 	@Override
-	public void doConvert(StringBuilder sb, String name){
+	public void doConvert(XMLWriter wr, String name){
+		materialize();
 		if(extend != NOT_DEFINED){
-			createNode(sb, Schema.TYPE_NON_PRIMITIVE_EXTENDS,Long.toString(extend, Schema.RADIX));
+			createNode(wr, Schema.TYPE_NON_PRIMITIVE_EXTENDS,Long.toString(wr.id(extend), Schema.RADIX));
 		}
 		
-		for(Long l : implement){
-			createNode(sb, Schema.TYPE_NON_PRIMITIVE_IMPLEMENTS, Long.toString(l, Schema.RADIX));
+		for(Long l : getImplement()){
+			createNode(wr, Schema.TYPE_NON_PRIMITIVE_IMPLEMENTS, Long.toString(wr.id(l), Schema.RADIX));
 		}
 		
-		for (ConstructorElement e : constructor) {
-			e.convert(sb, Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR);
+		for (ConstructorElement e : getConstructor()) {
+			e.convert(wr, Schema.TYPE_NON_PRIMITIVE_CONSTRUCTOR);
 		}
 			
-		for (MethodElement e : method) {
-			e.convert(sb, Schema.TYPE_NON_PRIMITIVE_METHOD);
+		for (MethodElement e : getMethod()) {
+			e.convert(wr, Schema.TYPE_NON_PRIMITIVE_METHOD);
 		}
 		
-		for (FieldVarElement e : field) {
-			e.convert(sb, Schema.TYPE_NON_PRIMITIVE_FIELD);
+		for (FieldVarElement e : getField()) {
+			e.convert(wr, Schema.TYPE_NON_PRIMITIVE_FIELD);
 		}
 
-		for (NonPrimitiveTypeElement e : nestedClass) {
-			e.convert(sb, Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS);
+		for (NonPrimitiveTypeElement e : getNestedClass()) {
+			e.convert(wr, Schema.TYPE_NON_PRIMITIVE_NESTED_CLASS);
 		}
 		
-		for (NonPrimitiveTypeElement e : nestedInterface) {
-			e.convert(sb, Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE);
+		for (NonPrimitiveTypeElement e : getNestedInterface()) {
+			e.convert(wr, Schema.TYPE_NON_PRIMITIVE_NESTED_INTERFACE);
 		}
 		
-		for (NonPrimitiveTypeElement e : nestedEnum) {
-			e.convert(sb, Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM);
+		for (NonPrimitiveTypeElement e : getNestedEnum()) {
+			e.convert(wr, Schema.TYPE_NON_PRIMITIVE_NESTED_ENUM);
 		}
 
-		for (NonPrimitiveTypeElement e : nestedAnnotation) {
-			e.convert(sb, Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION);
+		for (NonPrimitiveTypeElement e : getNestedAnnotation()) {
+			e.convert(wr, Schema.TYPE_NON_PRIMITIVE_NESTED_ANNOTATION);
 		}
 	}
 	
 	@Override
 	public int subtreeSize() {
+		materialize();
 		int size = 1;
-		for(XMLConvertable dc : field) size += dc.subtreeSize();
-		for(XMLConvertable dc : method) size += dc.subtreeSize();
-		for(XMLConvertable dc : nestedClass) size += dc.subtreeSize();
-		for(XMLConvertable dc : nestedInterface) size += dc.subtreeSize();
-		for(XMLConvertable dc : nestedEnum) size += dc.subtreeSize();
-		for(XMLConvertable dc : nestedAnnotation) size += dc.subtreeSize();
-		for(XMLConvertable dc : constructor) size += dc.subtreeSize();
+		for(XMLConvertable dc : getField()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getMethod()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getNestedClass()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getNestedInterface()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getNestedEnum()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getNestedAnnotation()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getConstructor()) size += dc.subtreeSize();
 		return size;
 	}
 }
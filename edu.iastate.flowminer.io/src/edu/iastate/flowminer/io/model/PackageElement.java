@@ -3,33 +3,37 @@ package edu.iastate.flowminer.io.model;
 import java.text.ParseException;
 import java.util.Set;
 
-import net.ontopia.utils.CompactHashSet;
-
 import org.eclipse.core.runtime.IProgressMonitor;
 
 import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class PackageElement extends Element {
-	private Set<ClassTypeElement> type_class = new CompactHashSet<ClassTypeElement>();
-	private Set<InterfaceTypeElement> type_interface = new CompactHashSet<InterfaceTypeElement>();
-	private Set<EnumTypeElement> type_enum = new CompactHashSet<EnumTypeElement>();
-	private Set<AnnotationTypeElement> type_annotation = new CompactHashSet<AnnotationTypeElement>();
+	private static final int TYPE_CLASS = FIRST_MEMBER_SLOT;
+	private static final int TYPE_INTERFACE = TYPE_CLASS + 1;
+	private static final int TYPE_ENUM = TYPE_INTERFACE + 1;
+	private static final int TYPE_ANNOTATION = TYPE_ENUM + 1;
 
 	public PackageElement(IProgressMonitor mon, VTDNav vn) throws NavException, ParseException {
+		this(mon, vn, false);
+	}
+	
+	/**
+	 * @param lazy if true, types are read as their getters are first called
+	 */
+	public PackageElement(IProgressMonitor mon, VTDNav vn, boolean lazy) throws NavException, ParseException {
 		super(mon, vn);
-		parse();
+		if(lazy) parseLazily();
+		else parse();
 	}
 	
 	@Override
 	public void releaseMemory(){
 		super.releaseMemory();
-		type_class = null;
-		type_interface = null;
-		type_enum = null;
-		type_annotation = null;
+		discardDeferred();
 	}
 
 	@Override
@@ -37,16 +41,20 @@ public class PackageElement extends Element {
 		if(super.interpretChild(mon, vn, name)) return true;
 		switch (name) {
 		case Schema.PACKAGE_CLASS:
-			type_class.add(new ClassTypeElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<ClassTypeElement>writableMemberSet(TYPE_CLASS).add(new ClassTypeElement(mon, vn, isLazy()));
 			return true;
 		case Schema.PACKAGE_INTERFACE:
-			type_interface.add(new InterfaceTypeElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<InterfaceTypeElement>writableMemberSet(TYPE_INTERFACE).add(new InterfaceTypeElement(mon, vn, isLazy()));
 			return true;
 		case Schema.PACKAGE_ENUM:
-			type_enum.add(new EnumTypeElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<EnumTypeElement>writableMemberSet(TYPE_ENUM).add(new EnumTypeElement(mon, vn, isLazy()));
 			return true;
 		case Schema.PACKAGE_ANNOTATION:
-			type_annotation.add(new AnnotationTypeElement(mon, vn));
+			if(isDeferring()) return true;
+			this.<AnnotationTypeElement>writableMemberSet(TYPE_ANNOTATION).add(new AnnotationTypeElement(mon, vn, isLazy()));
 			return true;
 		default:
 			return false;
@@ -62,47 +70,52 @@ public class PackageElement extends Element {
 	}
 	
 	public Set<ClassTypeElement> getType_class() {
-		return type_class;
+		materialize();
+		return new MemberSet<ClassTypeElement>(this, TYPE_CLASS);
 	}
 
 	public Set<InterfaceTypeElement> getType_interface() {
-		return type_interface;
+		materialize();
+		return new MemberSet<InterfaceTypeElement>(this, TYPE_INTERFACE);
 	}
 
 	public Set<EnumTypeElement> getType_enum() {
-		return type_enum;
+		materialize();
+		return new MemberSet<EnumTypeElement>(this, TYPE_ENUM);
 	}
 
 	public Set<AnnotationTypeElement> getType_annotation() {
-		return type_annotation;
+		materialize();
+		return new MemberSet<AnnotationTypeElement>(this, TYPE_ANNOTATION);
 	}
 	
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		for (ClassTypeElement e : type_class) {
-			e.convert(sb, Schema.PACKAGE_CLASS);
+	public void doConvert(XMLWriter wr, String name){
+		materialize();
+		for (ClassTypeElement e : getType_class()) {
+			e.convert(wr, Schema.PACKAGE_CLASS);
 		}
 		
-		for (InterfaceTypeElement e : type_interface) {
-			e.convert(sb, Schema.PACKAGE_INTERFACE);
+		for (InterfaceTypeElement e : getType_interface()) {
+			e.convert(wr, Schema.PACKAGE_INTERFACE);
 		}
 		
-		for (EnumTypeElement e : type_enum) {
-			e.convert(sb, Schema.PACKAGE_ENUM);
+		for (EnumTypeElement e : getType_enum()) {
+			e.convert(wr, Schema.PACKAGE_ENUM);
 		}
 		
-		for (AnnotationTypeElement e : type_annotation) {
-			e.convert(sb, Schema.PACKAGE_ANNOTATION);
+		for (AnnotationTypeElement e : getType_annotation()) {
+			e.convert(wr, Schema.PACKAGE_ANNOTATION);
 		}
 	}
 	
 	@Override
 	public int subtreeSize() {
 		int size = 1;
-		for(XMLConvertable dc : type_class) size += dc.subtreeSize();
-		for(XMLConvertable dc : type_interface) size += dc.subtreeSize();
-		for(XMLConvertable dc : type_enum) size += dc.subtreeSize();
-		for(XMLConvertable dc : type_annotation) size += dc.subtreeSize();
+		for(XMLConvertable dc : getType_class()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getType_interface()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getType_enum()) size += dc.subtreeSize();
+		for(XMLConvertable dc : getType_annotation()) size += dc.subtreeSize();
 		return size;
 	}
 }
@@ -0,0 +1,108 @@
+package edu.iastate.flowminer.io.model;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import com.ximpleware.NavException;
+import com.ximpleware.VTDNav;
+
+import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.common.ThreadPool;
+
+/**
+ * Reads the packages of a summary on the {@link ThreadPool}. While the model
+ * is parsed, each package is only recorded with its own clone of the
+ * document cursor. {@link #readAll()} then reads them on several threads and
+ * adds them to their libraries in document order, so the model comes out
+ * the same as one read on a single thread.
+ */
+class PackageReader {
+	private final IProgressMonitor mon;
+	private final int threads;
+	private final List<LibraryElement> owners = new ArrayList<LibraryElement>();
+	private final List<VTDNav> cursors = new ArrayList<VTDNav>();
+
+	PackageReader(IProgressMonitor mon, int threads){
+		this.mon = mon;
+		this.threads = threads;
+	}
+
+	/**
+	 * Record the package at the cursor, to be read into the given library.
+	 */
+	void defer(LibraryElement owner, VTDNav vn){
+		owners.add(owner);
+		cursors.add(vn.cloneNav());
+	}
+
+	/**
+	 * Read every recorded package, on this thread and up to threads - 1
+	 * workers, and add each to its library.
+	 */
+	void readAll() throws NavException, ParseException {
+		final PackageElement[] read = new PackageElement[cursors.size()];
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicLong worked = new AtomicLong();
+		final Exception[] error = new Exception[1];
+
+		// Workers report progress here, and the import's monitor is only
+		// touched from this thread
+		final IProgressMonitor workerMon = new NullProgressMonitor(){
+			@Override
+			public boolean isCanceled() {
+				return super.isCanceled() || mon.isCanceled();
+			}
+
+			@Override
+			public void worked(int work) {
+				worked.addAndGet(work);
+			}
+		};
+
+		Runnable worker = new Runnable(){
+			@Override
+			public void run() {
+				int i;
+				while(!workerMon.isCanceled() && (i = next.getAndIncrement()) < read.length){
+					try{
+						read[i] = new PackageElement(workerMon, cursors.get(i));
+					}catch(NavException | ParseException e){
+						synchronized(error){
+							if(error[0] == null) error[0] = e;
+						}
+						workerMon.setCanceled(true);
+					}
+					cursors.set(i, null);
+				}
+			}
+		};
+
+		int workers = Math.min(threads, read.length) - 1;
+		List<Future<?>> running = new ArrayList<Future<?>>();
+		for(int i = 0; i < workers; i++) running.add(ThreadPool.submitRunnables(worker)[0]);
+		worker.run();
+		try{
+			ThreadPool.blockUntilAllComplete(true, running.toArray(new Future<?>[running.size()]));
+		}catch(RuntimeException | Error e){
+			throw e;
+		}catch(Throwable t){
+			throw new IOException("Package reader failed", t);
+		}
+		mon.worked((int) Math.min(worked.get(), Integer.MAX_VALUE));
+
+		if(error[0] instanceof NavException) throw (NavException) error[0];
+		if(error[0] instanceof ParseException) throw (ParseException) error[0];
+		for(int i = 0; i < read.length; i++){
+			if(read[i] != null) owners.get(i).addPackage(read[i]);
+		}
+		owners.clear();
+		cursors.clear();
+	}
+}
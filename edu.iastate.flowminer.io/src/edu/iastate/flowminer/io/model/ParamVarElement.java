@@ -8,6 +8,7 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class ParamVarElement extends VarElement {
 	private int param_idx = NOT_DEFINED;
@@ -46,8 +47,8 @@ public class ParamVarElement extends VarElement {
 	}
 
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		super.doConvert(sb, name);
-		createNode(sb, Schema.PARAM_VAR_INDEX, Integer.toString(param_idx, Schema.RADIX));
+	public void doConvert(XMLWriter wr, String name){
+		super.doConvert(wr, name);
+		createNode(wr, Schema.PARAM_VAR_INDEX, Integer.toString(param_idx, Schema.RADIX));
 	}
 }
\ No newline at end of file
@@ -7,6 +7,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
+import edu.iastate.flowminer.io.common.XMLWriter;
+
 public class PrimitiveTypeElement extends TypeElement {
 	public PrimitiveTypeElement(IProgressMonitor mon, VTDNav vn) throws NavException, ParseException {
 		super(mon, vn);
@@ -27,6 +29,6 @@ public class PrimitiveTypeElement extends TypeElement {
 	}
 
 	@Override
-	public void doConvert(StringBuilder sb, String name) {
+	public void doConvert(XMLWriter wr, String name) {
 	}
 }
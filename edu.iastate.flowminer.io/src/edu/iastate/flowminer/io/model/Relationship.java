@@ -8,6 +8,7 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public class Relationship extends Element {
 	private long origin_id;
@@ -69,10 +70,10 @@ public class Relationship extends Element {
 	}
 	
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		createNode(sb, Schema.RELATIONSHIP_ORIGIN_ID, Long.toString(origin_id, Schema.RADIX));
-		createNode(sb, Schema.RELATIONSHIP_DEST_ID, Long.toString(dest_id, Schema.RADIX));
-		createNode(sb, Schema.RELATIONSHIP_SCHEMA_TYPE, schemaType);
+	public void doConvert(XMLWriter wr, String name){
+		createNode(wr, Schema.RELATIONSHIP_ORIGIN_ID, Long.toString(wr.id(origin_id), Schema.RADIX));
+		createNode(wr, Schema.RELATIONSHIP_DEST_ID, Long.toString(wr.id(dest_id), Schema.RADIX));
+		createNode(wr, Schema.RELATIONSHIP_SCHEMA_TYPE, schemaType);
 	}
 	
 	@Override
@@ -0,0 +1,18 @@
+package edu.iastate.flowminer.io.model;
+
+/**
+ * Implemented by an {@link edu.iastate.flowminer.io.common.XMLWriter} which
+ * needs to know where each element's XML begins and ends, for instance to
+ * index parts of a summary.
+ */
+public interface SubtreeListener {
+	/**
+	 * Called before anything of the element is written.
+	 */
+	public void beginElement(Element e);
+
+	/**
+	 * Called once the element and all of its children have been written.
+	 */
+	public void endElement(Element e);
+}
@@ -8,6 +8,7 @@ import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
 import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
 
 public abstract class VarElement extends Element {
 	private int array_dim = NOT_DEFINED;
@@ -57,11 +58,11 @@ public abstract class VarElement extends Element {
 	}
 	
 	@Override
-	public void doConvert(StringBuilder sb, String name){
-		createNode(sb, Schema.VAR_TYPE, Long.toString(type, Schema.RADIX));
+	public void doConvert(XMLWriter wr, String name){
+		createNode(wr, Schema.VAR_TYPE, Long.toString(wr.id(type), Schema.RADIX));
 		
 		if (array_dim > NOT_DEFINED) {
-			createNode(sb, Schema.VAR_ARRAY_DIM, Integer.toString(array_dim, Schema.RADIX));
+			createNode(wr, Schema.VAR_ARRAY_DIM, Integer.toString(array_dim, Schema.RADIX));
 		}
 	}
 	
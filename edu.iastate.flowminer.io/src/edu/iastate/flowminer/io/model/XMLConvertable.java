@@ -1,25 +1,106 @@
 package edu.iastate.flowminer.io.model;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
 import java.text.ParseException;
-
-import net.ontopia.utils.CompactHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 
+import com.ximpleware.BookMark;
 import com.ximpleware.NavException;
 import com.ximpleware.VTDNav;
 
+import edu.iastate.flowminer.io.common.IOException;
 import edu.iastate.flowminer.io.common.XMLUtils;
+import edu.iastate.flowminer.io.common.XMLWriter;
 import edu.iastate.flowminer.io.log.Log;
 
 public abstract class XMLConvertable {
 	public static final int NOT_DEFINED = -1;
 	private IProgressMonitor mon;
 	private VTDNav vn;
+	private boolean lazy;
+	// Position of a lazily parsed element whose members are not built yet
+	private volatile BookMark deferred;
+	private boolean materializing;
+	
 	public XMLConvertable(IProgressMonitor mon, VTDNav vn){
 		this.mon = mon;
 		this.vn = vn;
 	}
+	
+	/**
+	 * Parse the element's own fields, but leave its members in the document
+	 * until {@link #materialize()} is called, which subclasses supporting
+	 * lazy parsing do from their getters. Members which support it are
+	 * parsed lazily in turn.
+	 */
+	public final void parseLazily() throws NavException, ParseException{
+		lazy = true;
+		deferred = new BookMark(vn);
+		deferred.recordCursorPosition();
+		parse();
+	}
+	
+	/**
+	 * @return true if the element was parsed by {@link #parseLazily()}
+	 */
+	protected final boolean isLazy(){
+		return lazy;
+	}
+	
+	/**
+	 * @return true while parsing the fields of a lazily parsed element, when
+	 * {@link #interpretChild} should skip its members
+	 */
+	protected final boolean isDeferring(){
+		return deferred != null && !materializing;
+	}
+	
+	/**
+	 * @return true while building the members of a lazily parsed element,
+	 * whose own fields have already been read
+	 */
+	protected final boolean isMaterializing(){
+		return materializing;
+	}
+	
+	/**
+	 * Build the members of a lazily parsed element, if not done yet. Lazily
+	 * parsed elements share the document's cursor, which this holds while it
+	 * reads.
+	 */
+	protected final void materialize(){
+		if(deferred == null) return;
+		synchronized(vn){
+			// Getters called while building members see them as they are
+			if(deferred == null || materializing) return;
+			IProgressMonitor importMonitor = mon;
+			mon = new NullProgressMonitor();
+			materializing = true;
+			try{
+				deferred.setCursorPosition();
+				parse();
+			}catch(NavException | ParseException e){
+				throw new IOException("Could not read deferred members from summary", e);
+			}finally{
+				materializing = false;
+				mon = importMonitor;
+			}
+			deferred.unbind();
+			deferred = null;
+		}
+	}
+	
+	/**
+	 * Forget the members of a lazily parsed element which were never built.
+	 */
+	protected final void discardDeferred(){
+		if(deferred != null) deferred.unbind();
+		deferred = null;
+	}
 
 	public final void parse() throws NavException, ParseException{
 		if(vn.toElement(VTDNav.FC)){
@@ -46,40 +127,89 @@ public abstract class XMLConvertable {
 		return toGet.getName();
 	}
 
-	private static CompactHashMap<String,String> stringToEscaped = new CompactHashMap<String,String>();
+	// Escaped forms of strings which needed escaping, such as "<init>" and
+	// signatures. Emptied whenever it fills, and after each export.
+	private static final ConcurrentHashMap<String,String> stringToEscaped = new ConcurrentHashMap<String,String>();
+	private static volatile int escapeCacheSize = 4096;
+	
+	/**
+	 * Set how many escaped strings are remembered between writes. 0 escapes
+	 * every string afresh. Strings which need no escaping are never
+	 * remembered.
+	 */
+	public static void setEscapeCacheSize(int size){
+		escapeCacheSize = Math.max(size, 0);
+		clearEscapeCache();
+	}
+	
+	public static int getEscapeCacheSize(){
+		return escapeCacheSize;
+	}
+	
+	/**
+	 * Forget all remembered escaped strings.
+	 */
+	public static void clearEscapeCache(){
+		stringToEscaped.clear();
+	}
 	
 	private static String escape(String s){
+		if(!XMLUtils.needsEscaping(s)) return s;
+		int limit = escapeCacheSize;
+		if(limit == 0) return XMLUtils.writeValidXMLText(s);
+		
 		String escaped = stringToEscaped.get(s);
 		if(escaped == null){
 			escaped = XMLUtils.writeValidXMLText(s);
+			if(stringToEscaped.size() >= limit) stringToEscaped.clear();
 			stringToEscaped.put(s, escaped);
 		}
 		return escaped;
 	}
 			
-	protected static void createNode(StringBuilder sb, String name, String content) {
+	protected static void createNode(XMLWriter wr, String name, String content) {
 		String escapedName = escape(name);
-		sb.append("<").append(escapedName).append(">").
+		wr.append("<").append(escapedName).append(">").
 		   append(escape(content)).
 		   append("</").append(escapedName).append(">");
 	}
 	
-	public static void startNode(StringBuilder sb, String name){
-		sb.append("<").append(escape(name)).append(">");
+	public static void startNode(XMLWriter wr, String name){
+		wr.append("<").append(escape(name)).append(">");
 	}
 	
-	public static void rootNode(StringBuilder sb, String name){
-		sb.append("<").append(escape(name)).append(" ").
+	public static void rootNode(XMLWriter wr, String name){
+		wr.append("<").append(escape(name)).append(" ").
 		append("xmlns=\"http://" + Log.pluginid + "\" ").
 		append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ").
 		append("xsi:schemaLocation=\"http://" + Log.pluginid + " " + Log.pluginid + ".xsd\"").append(">");
 	}
 	
-	public static void endNode(StringBuilder sb, String name){
-		sb.append("</").append(escape(name)).append(">");
+	public static void endNode(XMLWriter wr, String name){
+		wr.append("</").append(escape(name)).append(">");
 	}
 	
-	public abstract void convert(StringBuilder sb, String name);
+	/**
+	 * Stream the XML form of this element into the given writer.
+	 * @param wr
+	 * @param name
+	 */
+	public abstract void convert(XMLWriter wr, String name);
+	
+	/**
+	 * Append the XML form of this element to the given builder. Prefer
+	 * {@link #convert(XMLWriter, String)} for large models, which does not
+	 * need the whole document in memory.
+	 * @param sb
+	 * @param name
+	 */
+	public void convert(StringBuilder sb, String name){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		XMLWriter wr = new XMLWriter(bytes);
+		convert(wr, name);
+		wr.flush();
+		sb.append(new String(bytes.toByteArray(), Charset.forName("UTF-8")));
+	}
 	
 	public abstract void releaseMemory();
 	
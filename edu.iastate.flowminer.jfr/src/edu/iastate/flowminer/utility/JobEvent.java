@@ -0,0 +1,53 @@
+package edu.iastate.flowminer.utility;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one job recorded by {@link JobTrace}. JFR needs
+ * Java 11, so this lives in a fragment of its own, and JobTrace only loads
+ * {@link Recorder} once it has found JFR in the running JVM.
+ */
+@Name("edu.iastate.flowminer.Job")
+@Label("FlowMiner Job")
+@Category("FlowMiner")
+@StackTrace(false)
+class JobEvent extends Event {
+	@Label("Id")
+	long id;
+
+	@Label("Kind")
+	String category;
+
+	@Label("Job")
+	String job;
+
+	@Label("Queued")
+	@Timespan(Timespan.NANOSECONDS)
+	long queued;
+
+	static class Recorder implements JobTrace.FlightRecorder{
+		@Override
+		public Object begin(JobTrace.Job job){
+			JobEvent event = new JobEvent();
+			if(!event.isEnabled()) return null;
+			event.id = job.id;
+			event.category = job.category;
+			event.job = job.name;
+			event.queued = job.startNanos - job.queuedNanos;
+			event.begin();
+			return event;
+		}
+
+		@Override
+		public void commit(Object event){
+			JobEvent e = (JobEvent) event;
+			e.end();
+			e.commit();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package edu.iastate.flowminer.benchmark;
+
+import java.io.File;
+import java.io.OutputStream;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.XMLConvertable;
+
+/**
+ * Measures how long the synthetic summary of {@link StreamImportBenchmark}
+ * takes to write as XML at several escape cache sizes, and how much heap is
+ * still held once an export is done. A cache of Integer.MAX_VALUE behaves
+ * like the unbounded cache escaping used to keep.
+ *
+ * Run as a plain Java application: EscapeBenchmark [numClasses] [rounds]
+ */
+public class EscapeBenchmark {
+	private static final int DEFAULT_CLASSES = 20000;
+	private static final int DEFAULT_ROUNDS = 5;
+	private static final int[] CACHE_SIZES = {0, 4096, Integer.MAX_VALUE};
+
+	public static void main(String[] args) throws Throwable {
+		int numClasses = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLASSES;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+		int defaultSize = XMLConvertable.getEscapeCacheSize();
+
+		IOModel model = StreamImportBenchmark.syntheticModel(numClasses);
+		System.out.println("Synthetic summary: " + model.subtreeSize() + " elements");
+		try{
+			// Warm up, so the first cache size measured is not also paying
+			// for compilation
+			for(int size : CACHE_SIZES){
+				XMLConvertable.setEscapeCacheSize(size);
+				write(model);
+			}
+			
+			for(int size : CACHE_SIZES){
+				XMLConvertable.setEscapeCacheSize(size);
+				long best = Long.MAX_VALUE;
+				for(int r = 0; r < rounds; ++r){
+					long start = System.nanoTime();
+					write(model);
+					best = Math.min(best, System.nanoTime() - start);
+				}
+				System.out.println("Escape cache " + size + ": best write " + best / 1000000 + " ms");
+			}
+
+			XMLConvertable.setEscapeCacheSize(defaultSize);
+			File summary = File.createTempFile("FlowMiner_benchmark_", ".xml.gz");
+			try{
+				long before = usedHeap();
+				ModelAPI.exportToFile(new NullProgressMonitor(), model, summary.getAbsolutePath());
+				long after = usedHeap();
+				System.out.println("Heap held after export: " + Math.max(after - before, 0) / 1024 + " KiB");
+			}finally{
+				summary.delete();
+			}
+		}finally{
+			XMLConvertable.setEscapeCacheSize(defaultSize);
+		}
+	}
+
+	private static void write(IOModel model){
+		XMLWriter wr = new XMLWriter(new OutputStream(){
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}, 65536);
+		model.convert(wr, Schema.IOMODEL);
+		wr.flush();
+	}
+
+	private static long usedHeap(){
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; ++i) System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,176 @@
+package edu.iastate.flowminer.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.StreamAPI;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.FieldVarElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.LocalVarElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.io.model.ParamVarElement;
+import edu.iastate.flowminer.io.model.PrimitiveTypeElement;
+import edu.iastate.flowminer.io.model.Relationship;
+import edu.iastate.flowminer.io.model.ReturnVarElement;
+import edu.iastate.flowminer.io.model.ThisVarElement;
+
+/**
+ * Measures summary import through {@link StreamAPI} on a large synthetic
+ * summary, with callbacks created by the typed factory table and, for
+ * comparison, reflectively from their class as parseChildren used to do.
+ *
+ * Run as a plain Java application: StreamImportBenchmark [numClasses] [rounds]
+ */
+public class StreamImportBenchmark {
+	private static final int DEFAULT_CLASSES = 20000;
+	private static final int DEFAULT_ROUNDS = 5;
+
+	public static void main(String[] args) throws Throwable {
+		int numClasses = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLASSES;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+
+		File summary = File.createTempFile("FlowMiner_benchmark_", ".xml.gz");
+		try{
+			IOModel model = syntheticModel(numClasses);
+			int elements = model.subtreeSize();
+			ModelAPI.exportToFile(new NullProgressMonitor(), model, summary.getAbsolutePath());
+			model = null;
+			System.out.println("Synthetic summary: " + elements + " elements, " + summary.length() + " bytes compressed");
+
+			benchmarkImport(summary.getAbsolutePath(), elements, rounds);
+		}finally{
+			summary.delete();
+		}
+	}
+
+	/**
+	 * Build a summary shaped like a mined library: packages of classes, each
+	 * with fields and methods carrying parameters, locals and flow relationships.
+	 */
+	static IOModel syntheticModel(int numClasses){
+		Random random = new Random(42);
+		IOModel model = new IOModel("benchmark", new Date());
+		PrimitiveTypeElement intType = new PrimitiveTypeElement("int");
+		model.getPrimitive().add(intType);
+		List<Long> types = new ArrayList<Long>();
+		types.add(intType.getId());
+
+		LibraryElement library = new LibraryElement("benchmark.jar");
+		model.getLibrary().add(library);
+		PackageElement pkg = null;
+		for(int c = 0; c < numClasses; ++c){
+			if(c % 100 == 0){
+				pkg = new PackageElement("edu.iastate.benchmark.p" + c / 100);
+				library.getPackages().add(pkg);
+			}
+			ClassTypeElement clazz = new ClassTypeElement("C" + c);
+			pkg.getType_class().add(clazz);
+			if(c > 0) clazz.setExtend(types.get(random.nextInt(types.size())));
+			types.add(clazz.getId());
+
+			FieldVarElement field = new FieldVarElement("f");
+			field.setType(types.get(random.nextInt(types.size())));
+			clazz.getField().add(field);
+
+			for(int m = 0; m < 4; ++m){
+				MethodElement method = new MethodElement("m" + m);
+				clazz.getMethod().add(method);
+				ThisVarElement thiz = new ThisVarElement("this");
+				thiz.setType(clazz.getId());
+				method.setContextThis(thiz);
+				ReturnVarElement ret = new ReturnVarElement("ret");
+				ret.setType(types.get(random.nextInt(types.size())));
+				method.setReturned(ret);
+
+				List<Long> locals = new ArrayList<Long>();
+				for(int p = 0; p < 2; ++p){
+					ParamVarElement param = new ParamVarElement("p" + p);
+					param.setParam_idx(p);
+					param.setType(types.get(random.nextInt(types.size())));
+					method.getParam().add(param);
+				}
+				for(int l = 0; l < 6; ++l){
+					LocalVarElement local = new LocalVarElement("l" + l, "LOCAL");
+					local.setType(types.get(random.nextInt(types.size())));
+					method.getLocalVar().add(local);
+					locals.add(local.getId());
+				}
+				for(int r = 0; r < locals.size(); ++r){
+					model.getRelationship().add(new Relationship(null,
+							locals.get(random.nextInt(locals.size())), locals.get(random.nextInt(locals.size())), "FLOW"));
+				}
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * Alternates the two ways of creating callbacks round by round, so that
+	 * both see the same warm up and heap.
+	 */
+	static void benchmarkImport(String path, int elements, int rounds) throws Throwable {
+		long bestFactory = Long.MAX_VALUE, bestReflective = Long.MAX_VALUE;
+		try{
+			for(int round = 0; round < rounds; ++round){
+				System.setProperty(StreamAPI.REFLECTIVE_CALLBACKS_PROPERTY, "false");
+				CountingImporter factory = timeImport(path);
+				bestFactory = Math.min(bestFactory, factory.nanos);
+
+				System.setProperty(StreamAPI.REFLECTIVE_CALLBACKS_PROPERTY, "true");
+				CountingImporter reflective = timeImport(path);
+				bestReflective = Math.min(bestReflective, reflective.nanos);
+
+				if(factory.count != reflective.count) throw new IllegalStateException("Factory import delivered " + factory.count + 
+						" callbacks, reflective import " + reflective.count);
+				if(round == 0) System.out.println("Stream import delivered " + factory.count + " callbacks");
+			}
+		}finally{
+			System.clearProperty(StreamAPI.REFLECTIVE_CALLBACKS_PROPERTY);
+		}
+		System.out.println("Stream import, factory:    " + millis(bestFactory) + " ms (" + (long) (elements / (bestFactory / 1e9)) + " elements/s)");
+		System.out.println("Stream import, reflective: " + millis(bestReflective) + " ms (" + (long) (elements / (bestReflective / 1e9)) + " elements/s)");
+	}
+
+	private static CountingImporter timeImport(String path) throws Throwable {
+		CountingImporter importer = new CountingImporter();
+		long start = System.nanoTime();
+		StreamAPI.importFromFile(new NullProgressMonitor(), path, importer);
+		importer.nanos = System.nanoTime() - start;
+		return importer;
+	}
+
+	private static long millis(long nanos){
+		return nanos / 1000000;
+	}
+
+	private static class CountingImporter implements StreamAPI.StreamImporter{
+		long count, nanos;
+		public void processLibrary(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {count++;}
+		public void processAnnotation(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {count++;}
+		public void processClass(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {count++;}
+		public void processConstructor(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, Set<Param> params) {count++;}
+		public void processEnumConstant(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type) {count++;}
+		public void processEnum(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {count++;}
+		public void processField(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension) {count++;}
+		public void processInterface(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {count++;}
+		public void processIOModel(String author, Date created) {count++;}
+		public void processLocal(String name, String schemaType, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension, int paramIdx) {count++;}
+		public void processMethod(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, Set<Long> overridesID, Set<Param> params) {count++;}
+		public void processPackage(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {count++;}
+		public void processPrimitive(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {count++;}
+		public void processRelationship(String name, String type, long id, long parentID, Set<String> tag, Map<String, String> attr, long originID, long destID) {count++;}
+		public void processThis(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type) {count++;}
+		public void processReturn(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension) {count++;}
+	}
+}
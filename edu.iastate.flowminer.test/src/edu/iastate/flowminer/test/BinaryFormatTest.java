@@ -0,0 +1,457 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.BinaryAPI;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.ImportFilter;
+import edu.iastate.flowminer.io.StreamAPI;
+import edu.iastate.flowminer.io.StreamAPI.Engine;
+import edu.iastate.flowminer.io.StreamAPI.StreamImporter;
+import edu.iastate.flowminer.io.common.BinaryReader;
+import edu.iastate.flowminer.io.common.BinaryWriter;
+import edu.iastate.flowminer.io.common.IOException;
+import edu.iastate.flowminer.io.model.Attribute;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.Element;
+import edu.iastate.flowminer.io.model.EnumConstantElement;
+import edu.iastate.flowminer.io.model.EnumTypeElement;
+import edu.iastate.flowminer.io.model.FieldVarElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.InterfaceTypeElement;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.LocalVarElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.NonPrimitiveTypeElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.io.model.ParamVarElement;
+import edu.iastate.flowminer.io.model.PrimitiveTypeElement;
+import edu.iastate.flowminer.io.model.Relationship;
+import edu.iastate.flowminer.io.model.ReturnVarElement;
+import edu.iastate.flowminer.io.model.ThisVarElement;
+
+/**
+ * Tests the binary summary format of {@link BinaryAPI}: that it holds exactly
+ * what the XML does, its varint encoding, and that records are only accepted
+ * where the XML schema allows them.
+ */
+public class BinaryFormatTest {
+	// Record kinds, as numbered by BinaryAPI
+	private static final int END = 0;
+	private static final int LIBRARY = 2;
+	private static final int PACKAGE = 3;
+	private static final int CLASS = 4;
+	private static final int ENUM = 6;
+	private static final int ENUM_CONSTANT = 11;
+
+	private static final long[] EDGE_VALUES = {0, 1, -1, 63, -64, 64, -65, 127, 128, 16383, 16384,
+		Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1};
+
+	private File xml, bin, back;
+
+	@Before
+	public void setUp() throws Exception {
+		xml = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		bin = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".bin");
+		back = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		xml.delete();
+		bin.delete();
+		back.delete();
+	}
+
+	@Test
+	public void xmlToBinaryToXml() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		ModelAPI.exportToFile(mon, sampleModel(), xml.getAbsolutePath());
+		BinaryAPI.convert(mon, xml.getAbsolutePath(), bin.getAbsolutePath());
+		BinaryAPI.convert(mon, bin.getAbsolutePath(), back.getAbsolutePath());
+
+		assertFalse(BinaryAPI.isBinary(xml.getAbsolutePath()));
+		assertTrue(BinaryAPI.isBinary(bin.getAbsolutePath()));
+		assertFalse(BinaryAPI.isBinary(back.getAbsolutePath()));
+		assertTrue(bin.length() < xml.length());
+
+		List<String> expected = imported(xml);
+		assertEquals(16, expected.size());
+		assertEquals(expected, imported(bin));
+		assertEquals(expected, imported(back));
+	}
+
+	@Test
+	public void exportKeepsModelIds() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		IOModel model = sampleModel();
+		List<Long> ids = ids(model);
+		ModelAPI.exportToFile(mon, model, xml.getAbsolutePath(), true);
+		BinaryAPI.exportToFile(mon, model, bin.getAbsolutePath());
+		assertEquals(ids, ids(model));
+
+		// Exported ids depend only on the model's ids, so the same model
+		// always exports the same summary
+		ModelAPI.exportToFile(mon, model, back.getAbsolutePath(), true);
+		assertEquals(imported(xml), imported(back));
+	}
+
+	@Test
+	public void roundTripsKeepIds() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		for(boolean dependencyOrdered : new boolean[]{false, true}){
+			ModelAPI.exportToFile(mon, sampleModel(), xml.getAbsolutePath(), dependencyOrdered);
+			IOModel model = ModelAPI.importFromFile(mon, xml.getAbsolutePath());
+			List<Long> ids = ids(model);
+			assertEquals(Long.valueOf(ids.size() - 1), ids.get(ids.size() - 1));
+
+			ModelAPI.exportToFile(mon, model, back.getAbsolutePath());
+			assertEquals(imported(xml), imported(back));
+			BinaryAPI.exportToFile(mon, model, bin.getAbsolutePath());
+			assertEquals(imported(xml), imported(bin));
+			assertEquals(ids, ids(BinaryAPI.importFromFile(mon, bin.getAbsolutePath())));
+		}
+	}
+
+	@Test
+	public void varintEdgeValues() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryWriter out = new BinaryWriter(bytes, 16);
+		for(long v : EDGE_VALUES){
+			out.writeVarLong(v);
+			out.writeSignedVarLong(v);
+		}
+		out.close();
+
+		BinaryReader in = new BinaryReader(new ByteArrayInputStream(bytes.toByteArray()), 16);
+		for(long v : EDGE_VALUES){
+			assertEquals(v, in.readVarLong());
+			assertEquals(v, in.readSignedVarLong());
+		}
+	}
+
+	@Test
+	public void varintLengths() {
+		assertEquals(1, varLongLength(0));
+		assertEquals(1, varLongLength(127));
+		assertEquals(2, varLongLength(128));
+		assertEquals(10, varLongLength(-1));
+		assertEquals(9, varLongLength(Long.MAX_VALUE));
+
+		// Zigzag keeps small magnitudes short whatever their sign
+		assertEquals(1, signedVarLongLength(-1));
+		assertEquals(1, signedVarLongLength(-64));
+		assertEquals(2, signedVarLongLength(64));
+		assertEquals(10, signedVarLongLength(Long.MIN_VALUE));
+	}
+
+	@Test
+	public void rejectsMalformedVarints() {
+		byte[] tooLong = new byte[11];
+		for(int i = 0; i < tooLong.length; i++) tooLong[i] = (byte) 0xFF;
+		try{
+			new BinaryReader(new ByteArrayInputStream(tooLong)).readVarLong();
+			fail("Read a varint longer than 64 bits");
+		}catch(IOException e){
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryWriter out = new BinaryWriter(bytes);
+		out.writeVarLong((long) Integer.MAX_VALUE + 1);
+		out.close();
+		try{
+			new BinaryReader(new ByteArrayInputStream(bytes.toByteArray())).readVarInt();
+			fail("Read a count larger than an int");
+		}catch(IOException e){
+		}
+	}
+
+	@Test
+	public void acceptsEnumConstantInEnum() throws Throwable {
+		IOModel model = BinaryAPI.importFromFile(new NullProgressMonitor(), writeRecords(bin, LIBRARY, PACKAGE, ENUM, ENUM_CONSTANT));
+		assertEquals(1, model.getLibrary().iterator().next().getPackages().iterator().next()
+				.getType_enum().iterator().next().getEnumConstant().size());
+	}
+
+	@Test
+	public void rejectsEnumConstantInClass() throws Throwable {
+		assertRejected(LIBRARY, PACKAGE, CLASS, ENUM_CONSTANT);
+	}
+
+	@Test
+	public void rejectsPackageAtTopLevel() throws Throwable {
+		assertRejected(PACKAGE);
+	}
+
+	@Test
+	public void rejectsClassInLibrary() throws Throwable {
+		assertRejected(LIBRARY, CLASS);
+	}
+
+	private void assertRejected(int... nesting) throws Throwable {
+		try{
+			BinaryAPI.importFromFile(new NullProgressMonitor(), writeRecords(bin, nesting));
+			fail("Imported misplaced record kind " + nesting[nesting.length - 1]);
+		}catch(IOException e){
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected binary record kind"));
+		}
+	}
+
+	/**
+	 * Write a binary summary with an empty header holding one record of each
+	 * given kind, each nested in the one before.
+	 */
+	private static String writeRecords(File destination, int... nesting) throws Exception {
+		BinaryWriter out = new BinaryWriter(new FileOutputStream(destination));
+		out.writeBytes(new byte[]{'F', 'M', 'S', 'B'});
+		out.writeVarLong(3);
+		out.writeVarLong(0); // strings
+		out.writeVarLong(0); // author
+		out.writeByte(0); // created
+		out.writeVarLong(nesting.length);
+		out.writeByte(0); // dependency ordered
+		out.writeSignedVarLong(-1); // max id
+		out.writeVarLong(0); // counts
+
+		for(int i = 0; i < nesting.length; i++){
+			int kind = nesting[i];
+			out.writeByte(kind);
+			out.writeVarLong(0); // name
+			out.writeSignedVarLong(1); // id
+			out.writeVarLong(0); // tags
+			out.writeVarLong(0); // attributes
+			if(kind == CLASS || kind == ENUM){
+				out.writeByte(0); // extends
+				out.writeVarLong(0); // implements
+			}else if(kind == ENUM_CONSTANT){
+				out.writeSignedVarLong(-1); // type, the enum
+				out.writeSignedVarLong(0); // array dimension
+			}
+		}
+		for(int kind : nesting){
+			if(kind != ENUM_CONSTANT) out.writeByte(END);
+		}
+		out.writeByte(END);
+		out.close();
+		return destination.getAbsolutePath();
+	}
+
+	private static int varLongLength(long v){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryWriter out = new BinaryWriter(bytes);
+		out.writeVarLong(v);
+		out.close();
+		return bytes.size();
+	}
+
+	private static int signedVarLongLength(long v){
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryWriter out = new BinaryWriter(bytes);
+		out.writeSignedVarLong(v);
+		out.close();
+		return bytes.size();
+	}
+
+	/**
+	 * @return every callback of a stream import of the summary, with all of
+	 * its arguments, sorted since sibling order is not kept
+	 */
+	static List<String> imported(File summary) throws Throwable {
+		return imported(new NullProgressMonitor(), summary, null, Engine.VTD);
+	}
+
+	/**
+	 * @param mon may be null, to import in a job
+	 * @param filter may be null to import everything
+	 * @see #imported(File)
+	 */
+	static List<String> imported(IProgressMonitor mon, File summary, ImportFilter filter, Engine engine) throws Throwable {
+		return imported(mon, summary, filter, engine, new Recorder());
+	}
+
+	/**
+	 * @param recorder records the callbacks, and may take more of them than
+	 * a plain {@link StreamImporter}
+	 * @see #imported(File)
+	 */
+	static List<String> imported(IProgressMonitor mon, File summary, ImportFilter filter, Engine engine, Recorder recorder) throws Throwable {
+		StreamAPI.importFromFile(mon, summary.getAbsolutePath(), recorder, filter, engine);
+		Collections.sort(recorder.calls);
+		return recorder.calls;
+	}
+
+	/**
+	 * Records each callback with all of its arguments, with sets and maps in
+	 * a canonical order.
+	 */
+	static class Recorder implements StreamImporter{
+		final List<String> calls = new ArrayList<String>();
+
+		void record(Object... args){
+			calls.add(Arrays.deepToString(canonical(args)));
+		}
+
+		private Object[] canonical(Object[] args){
+			for(int i = 0; i < args.length; i++){
+				if(args[i] instanceof Map){
+					// CompactHashMap has no entry set
+					Map<?, ?> map = (Map<?, ?>) args[i];
+					Map<Object, Object> sorted = new TreeMap<Object, Object>();
+					for(Object key : map.keySet()) sorted.put(key, map.get(key));
+					args[i] = sorted;
+				}
+				else if(args[i] instanceof Set) args[i] = new TreeSet<Object>((Set<?>) args[i]);
+			}
+			return args;
+		}
+
+		private List<String> params(Set<Param> params){
+			List<String> result = new ArrayList<String>();
+			for(Param p : params) result.add(Arrays.deepToString(canonical(new Object[]{p.paramIdx, p.name, p.id, p.surface, p.parentID, p.tag, p.attr, p.typeID, p.arrayDimension})));
+			Collections.sort(result);
+			return result;
+		}
+
+		public void processIOModel(String author, Date created) {record("IOModel", author, created);}
+		public void processLibrary(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {record("Library", name, id, parentID, tag, attr);}
+		public void processPackage(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {record("Package", name, id, parentID, tag, attr);}
+		public void processPrimitive(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {record("Primitive", name, id, parentID, tag, attr);}
+		public void processClass(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Class", name, id, parentID, tag, attr, extendID, implementID);}
+		public void processAnnotation(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Annotation", name, id, parentID, tag, attr, extendID, implementID);}
+		public void processEnum(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Enum", name, id, parentID, tag, attr, extendID, implementID);}
+		public void processInterface(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Interface", name, id, parentID, tag, attr, extendID, implementID);}
+		public void processConstructor(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, Set<Param> params) {record("Constructor", name, id, parentID, tag, attr, params(params));}
+		public void processMethod(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, Set<Long> overridesID, Set<Param> params) {record("Method", name, id, parentID, tag, attr, overridesID, params(params));}
+		public void processEnumConstant(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type) {record("EnumConstant", name, id, parentID, tag, attr, type);}
+		public void processField(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension) {record("Field", name, id, parentID, tag, attr, type, dimension);}
+		public void processLocal(String name, String schemaType, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension, int paramIdx) {record("Local", name, schemaType, id, parentID, tag, attr, type, dimension, paramIdx);}
+		public void processThis(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type) {record("This", name, id, parentID, tag, attr, type);}
+		public void processReturn(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension) {record("Return", name, id, parentID, tag, attr, type, dimension);}
+		public void processRelationship(String name, String type, long id, long parentID, Set<String> tag, Map<String, String> attr, long originID, long destID) {record("Relationship", name, type, id, parentID, tag, attr, originID, destID);}
+	}
+
+	/**
+	 * @return the ids of the elements of a model shaped like
+	 * {@link #sampleModel()}, sorted
+	 */
+	static List<Long> ids(IOModel model){
+		List<Long> ids = new ArrayList<Long>();
+		for(Element e : model.getPrimitive()) ids(e, ids);
+		for(Element e : model.getLibrary()) ids(e, ids);
+		for(Element e : model.getRelationship()) ids(e, ids);
+		Collections.sort(ids);
+		return ids;
+	}
+
+	static void ids(Element e, List<Long> ids){
+		ids.add(e.getId());
+		if(e instanceof LibraryElement){
+			for(Element c : ((LibraryElement) e).getPackages()) ids(c, ids);
+		}else if(e instanceof PackageElement){
+			PackageElement p = (PackageElement) e;
+			for(Element c : p.getType_class()) ids(c, ids);
+			for(Element c : p.getType_interface()) ids(c, ids);
+			for(Element c : p.getType_enum()) ids(c, ids);
+			for(Element c : p.getType_annotation()) ids(c, ids);
+		}else if(e instanceof NonPrimitiveTypeElement){
+			NonPrimitiveTypeElement t = (NonPrimitiveTypeElement) e;
+			for(Element c : t.getConstructor()) ids(c, ids);
+			for(Element c : t.getMethod()) ids(c, ids);
+			for(Element c : t.getField()) ids(c, ids);
+			for(Element c : t.getNestedClass()) ids(c, ids);
+			if(e instanceof EnumTypeElement){
+				for(Element c : ((EnumTypeElement) e).getEnumConstant()) ids(c, ids);
+			}
+		}else if(e instanceof MethodElement){
+			MethodElement m = (MethodElement) e;
+			for(Element c : m.getParam()) ids(c, ids);
+			if(m.getReturned() != null) ids(m.getReturned(), ids);
+			if(m.getContextThis() != null) ids(m.getContextThis(), ids);
+			for(Element c : m.getLocalVar()) ids(c, ids);
+			for(Element c : m.getLocal_class()) ids(c, ids);
+		}
+	}
+
+	/**
+	 * A small summary using every kind of element, with tags, attributes,
+	 * negative parameter indices and references in both directions.
+	 */
+	static IOModel sampleModel(){
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		PrimitiveTypeElement intType = new PrimitiveTypeElement("int");
+		model.getPrimitive().add(intType);
+
+		LibraryElement library = new LibraryElement("l.jar");
+		library.getAttr().add(new Attribute("version", "1.0 \u00e9"));
+		model.getLibrary().add(library);
+		PackageElement pkg = new PackageElement("p.q");
+		library.getPackages().add(pkg);
+
+		InterfaceTypeElement iface = new InterfaceTypeElement("I");
+		ClassTypeElement clazz = new ClassTypeElement("C");
+		EnumTypeElement enumType = new EnumTypeElement("E");
+		pkg.getType_class().add(clazz);
+		pkg.getType_interface().add(iface);
+		pkg.getType_enum().add(enumType);
+		clazz.getImplement().add(iface.getId());
+		clazz.getTag().add("public");
+		EnumConstantElement constant = new EnumConstantElement("X");
+		constant.setType(enumType.getId());
+		enumType.getEnumConstant().add(constant);
+
+		FieldVarElement field = new FieldVarElement("f");
+		field.setType(enumType.getId());
+		field.setArray_dim(2);
+		clazz.getField().add(field);
+
+		MethodElement method = new MethodElement("m");
+		method.getAttr().add(new Attribute("sig", "m(<&>)"));
+		clazz.getMethod().add(method);
+		ParamVarElement param = new ParamVarElement("p");
+		param.setParam_idx(0);
+		param.setType(intType.getId());
+		method.getParam().add(param);
+		ThisVarElement thiz = new ThisVarElement("this");
+		thiz.setType(clazz.getId());
+		method.setContextThis(thiz);
+		ReturnVarElement ret = new ReturnVarElement("ret");
+		ret.setType(iface.getId());
+		method.setReturned(ret);
+		LocalVarElement local = new LocalVarElement("l", "LOCAL");
+		local.setType(clazz.getId());
+		local.setParamIdx(-1);
+		method.getLocalVar().add(local);
+		ClassTypeElement localClass = new ClassTypeElement("Local");
+		localClass.setExtend(clazz.getId());
+		method.getLocal_class().add(localClass);
+
+		Relationship flow = new Relationship(null, param.getId(), local.getId(), "FLOW");
+		flow.getTag().add("FLOW");
+		model.getRelationship().add(flow);
+		model.getRelationship().add(new Relationship("back", local.getId(), ret.getId(), "FLOW"));
+		return model;
+	}
+}
@@ -0,0 +1,158 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.BinaryAPI;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.model.Attribute;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.FieldVarElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+
+/**
+ * Tests that the tags, attributes and member sets of model elements, kept
+ * as modifier bits and shared slots, behave as plain sets do and survive
+ * being written and read back.
+ */
+public class CompactElementTest {
+	private static final String[] MODIFIERS = {
+		Schema.Tag.IS_PUBLIC, Schema.Tag.IS_PROTECTED, Schema.Tag.IS_PRIVATE,
+		Schema.Tag.IS_ABSTRACT, Schema.Tag.IS_FINAL, Schema.Tag.IS_NATIVE,
+		Schema.Tag.IS_STATIC, Schema.Tag.IS_SYNCHRONIZED, Schema.Tag.IS_STRICTFP,
+		Schema.Tag.IS_TRANSIENT, Schema.Tag.IS_VOLATILE
+	};
+
+	private File xml, bin;
+
+	@Before
+	public void setUp() throws Exception {
+		xml = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		bin = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".bin");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		xml.delete();
+		bin.delete();
+	}
+
+	@Test
+	public void tags() {
+		MethodElement m = new MethodElement("m");
+		Set<String> tags = m.getTag();
+		assertTrue(tags.isEmpty());
+		assertTrue(tags.add("custom"));
+		assertTrue(tags.add(Schema.Tag.IS_STATIC));
+		assertTrue(tags.add(Schema.Tag.IS_PUBLIC));
+		assertFalse(tags.add(Schema.Tag.IS_PUBLIC));
+		assertFalse(tags.add("custom"));
+		assertEquals(new HashSet<String>(Arrays.asList("custom", Schema.Tag.IS_STATIC, Schema.Tag.IS_PUBLIC)), m.getTag());
+		assertEquals("Modifiers first, in order", Arrays.asList(Schema.Tag.IS_PUBLIC, Schema.Tag.IS_STATIC, "custom"), list(m.getTag()));
+
+		Iterator<String> it = m.getTag().iterator();
+		it.next();
+		it.remove();
+		it.next();
+		it.next();
+		it.remove();
+		assertEquals(Arrays.asList(Schema.Tag.IS_STATIC), list(m.getTag()));
+		assertTrue(m.getTag().remove(Schema.Tag.IS_STATIC));
+		assertFalse(m.getTag().remove(Schema.Tag.IS_STATIC));
+		assertTrue(m.getTag().isEmpty());
+	}
+
+	@Test
+	public void memberSets() {
+		ClassTypeElement clazz = new ClassTypeElement("C");
+		assertTrue(clazz.getMethod().isEmpty());
+		assertFalse(clazz.getMethod().iterator().hasNext());
+
+		MethodElement m = new MethodElement("m");
+		FieldVarElement f = new FieldVarElement("f");
+		Set<MethodElement> methods = clazz.getMethod();
+		methods.add(m);
+		clazz.getField().add(f);
+		assertEquals("Views of the same slot agree", 1, clazz.getMethod().size());
+		assertTrue(methods.contains(m));
+		assertFalse("Slots are separate", clazz.getField().contains(m));
+		assertSame(f, clazz.getField().iterator().next());
+
+		Iterator<MethodElement> it = clazz.getMethod().iterator();
+		it.next();
+		it.remove();
+		assertTrue(methods.isEmpty());
+		assertEquals(1, clazz.getField().size());
+		clazz.getField().clear();
+		assertTrue(clazz.getField().isEmpty());
+
+		Attribute a = new Attribute(new String("key"), new String("value"));
+		clazz.getAttr().add(a);
+		assertSame("Attributes are interned", "key", clazz.getAttr().iterator().next().getKey());
+		assertSame("value", a.getValue());
+	}
+
+	@Test
+	public void roundTrip() throws Throwable {
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+		PackageElement pkg = new PackageElement("p");
+		library.getPackages().add(pkg);
+		ClassTypeElement clazz = new ClassTypeElement("C");
+		pkg.getType_class().add(clazz);
+		// Every modifier and some other tags, spread over the methods
+		for(int i = 0; i < MODIFIERS.length; i++){
+			MethodElement m = new MethodElement("m" + i);
+			m.getTag().add(MODIFIERS[i]);
+			m.getTag().add(MODIFIERS[(i + 3) % MODIFIERS.length]);
+			if(i % 2 == 0) m.getTag().add("t" + i);
+			if(i % 3 == 0) m.getAttr().add(new Attribute("k", "v" + i));
+			clazz.getMethod().add(m);
+		}
+		NullProgressMonitor mon = new NullProgressMonitor();
+		ModelAPI.exportToFile(mon, model, xml.getAbsolutePath());
+		BinaryAPI.exportToFile(mon, model, bin.getAbsolutePath());
+		List<String> expected = imported(xml);
+		assertEquals(expected, imported(bin));
+
+		for(IOModel back : new IOModel[]{ModelAPI.importFromFile(mon, xml.getAbsolutePath()), BinaryAPI.importFromFile(mon, bin.getAbsolutePath())}){
+			ClassTypeElement c = back.getLibrary().iterator().next().getPackages().iterator().next().getType_class().iterator().next();
+			assertEquals(MODIFIERS.length, c.getMethod().size());
+			for(MethodElement m : c.getMethod()){
+				int i = Integer.parseInt(m.getName().substring(1));
+				Set<String> tags = new HashSet<String>(Arrays.asList(MODIFIERS[i], MODIFIERS[(i + 3) % MODIFIERS.length]));
+				if(i % 2 == 0) tags.add("t" + i);
+				assertEquals(m.getName(), tags, m.getTag());
+				assertEquals(m.getName(), i % 3 == 0 ? 1 : 0, m.getAttr().size());
+			}
+		}
+		ModelAPI.exportToFile(mon, ModelAPI.importFromFile(mon, xml.getAbsolutePath()), xml.getAbsolutePath());
+		assertEquals(expected, imported(xml));
+	}
+
+	private static List<String> list(Set<String> tags){
+		return new ArrayList<String>(tags);
+	}
+}
@@ -0,0 +1,112 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.ids;
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static edu.iastate.flowminer.test.BinaryFormatTest.sampleModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.BinaryAPI;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.StreamAPI.Engine;
+import edu.iastate.flowminer.io.StreamAPI.SizedStreamImporter;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.test.BinaryFormatTest.Recorder;
+
+/**
+ * Tests that the element counts recorded in a summary's header count each
+ * kind of element, and reach a {@link SizedStreamImporter} the same way
+ * before anything else, whichever way the summary is read.
+ */
+public class CountsTest {
+	private File xml, bin;
+
+	@Before
+	public void setUp() throws Throwable {
+		xml = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		bin = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".bin");
+		NullProgressMonitor mon = new NullProgressMonitor();
+		ModelAPI.exportToFile(mon, sampleModel(), xml.getAbsolutePath());
+		BinaryAPI.exportToFile(mon, sampleModel(), bin.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		xml.delete();
+		bin.delete();
+	}
+
+	@Test
+	public void countsEachKind() {
+		IOModel model = sampleModel();
+		Map<String, Long> counts = new TreeMap<String, Long>(model.countElements());
+		assertEquals(Long.valueOf(1), counts.get(Schema.Count.PRIMITIVE));
+		assertEquals(Long.valueOf(1), counts.get(Schema.Count.LIBRARY));
+		assertEquals(Long.valueOf(1), counts.get(Schema.Count.PACKAGE));
+		assertEquals("I, C, E and Local", Long.valueOf(4), counts.get(Schema.Count.TYPE));
+		assertEquals(Long.valueOf(1), counts.get(Schema.Count.METHOD));
+		assertEquals(Long.valueOf(1), counts.get(Schema.Count.PARAM));
+		assertEquals("f, X, this, ret and l", Long.valueOf(5), counts.get(Schema.Count.VARIABLE));
+		assertEquals(Long.valueOf(2), counts.get(Schema.Count.RELATIONSHIP));
+		assertEquals(Long.valueOf(2), counts.get(Schema.Count.RELATIONSHIP_TYPE_PREFIX + "FLOW"));
+		assertTrue(counts.get(Schema.Count.STRING) > 0);
+
+		long total = 0;
+		for(String kind : Schema.Count.ELEMENT_KINDS) total += counts.get(kind);
+		assertEquals(ids(model).size(), total);
+	}
+
+	@Test
+	public void sameCountsEveryWay() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		Map<String, Long> expected = new TreeMap<String, Long>(sampleModel().countElements());
+		for(Engine engine : Engine.values()){
+			CountsRecorder recorder = new CountsRecorder();
+			imported(mon, xml, null, engine, recorder);
+			assertEquals(engine.name(), expected, recorder.counts);
+		}
+		CountsRecorder recorder = new CountsRecorder();
+		imported(mon, bin, null, Engine.VTD, recorder);
+		assertEquals(expected, recorder.counts);
+
+		assertEquals(expected, new TreeMap<String, Long>(ModelAPI.importFromFile(mon, xml.getAbsolutePath()).getCounts()));
+		assertEquals(expected, new TreeMap<String, Long>(BinaryAPI.importFromFile(mon, bin.getAbsolutePath()).getCounts()));
+	}
+
+	/**
+	 * Summaries written before counts were recorded import as before.
+	 */
+	@Test
+	public void withoutCounts() throws Throwable {
+		String header = "<" + Schema.IOMODEL_COUNT + ">.*?</" + Schema.IOMODEL_COUNT + ">";
+		StreamImportTest.write(xml, StreamImportTest.read(xml).replaceAll(header, ""), StandardCharsets.UTF_8);
+		CountsRecorder recorder = new CountsRecorder();
+		List<String> calls = imported(new NullProgressMonitor(), xml, null, Engine.VTD, recorder);
+		assertNull(recorder.counts);
+		assertEquals(imported(bin), calls);
+	}
+
+	private static class CountsRecorder extends Recorder implements SizedStreamImporter{
+		Map<String, Long> counts;
+
+		@Override
+		public void processCounts(Map<String, Long> counts) {
+			assertTrue("Counts come first", calls.isEmpty());
+			this.counts = new TreeMap<String, Long>(new HashMap<String, Long>(counts));
+		}
+	}
+}
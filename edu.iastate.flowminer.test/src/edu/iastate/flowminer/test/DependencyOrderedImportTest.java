@@ -0,0 +1,165 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.StreamAPI;
+import edu.iastate.flowminer.io.StreamAPI.StreamImporter;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+
+/**
+ * Tests streaming import of dependency ordered summaries, which visits
+ * elements in id order instead of document order.
+ */
+public class DependencyOrderedImportTest {
+	private File summary;
+
+	@Before
+	public void setUp() throws Exception {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		summary.delete();
+	}
+
+	@Test
+	public void singleLibrary() throws Throwable {
+		IOModel model = new IOModel("test", new Date());
+		model.getLibrary().add(new LibraryElement("l.jar"));
+
+		assertEquals(Arrays.asList("IOModel test", "Library l.jar"), roundTrip(model));
+	}
+
+	@Test
+	public void superclassDeclaredAfterSubclass() throws Throwable {
+		IOModel model = new IOModel("test", new Date());
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+		PackageElement pkg = new PackageElement("p");
+		library.getPackages().add(pkg);
+		ClassTypeElement c0 = new ClassTypeElement("C0");
+		ClassTypeElement c1 = new ClassTypeElement("C1");
+		pkg.getType_class().add(c0);
+		pkg.getType_class().add(c1);
+		c0.setExtend(c1.getId());
+
+		assertEquals(Arrays.asList("IOModel test", "Library l.jar", "Package p", "Class C1", "Class C0"), roundTrip(model));
+	}
+
+	/**
+	 * Edits can break the order of an imported summary, which a default
+	 * export must not claim to keep.
+	 */
+	@Test
+	public void editedAfterImport() throws Throwable {
+		IOModel model = new IOModel("test", new Date());
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+		PackageElement pkg = new PackageElement("p");
+		library.getPackages().add(pkg);
+		pkg.getType_class().add(new ClassTypeElement("C0"));
+		ModelAPI.exportToFile(new NullProgressMonitor(), model, summary.getAbsolutePath(), true);
+		assertTrue(isMarkedDependencyOrdered());
+
+		// The new superclass gets a fresh id, larger than any in the summary
+		IOModel imported = ModelAPI.importFromFile(new NullProgressMonitor(), summary.getAbsolutePath());
+		pkg = imported.getLibrary().iterator().next().getPackages().iterator().next();
+		ClassTypeElement c0 = pkg.getType_class().iterator().next();
+		ClassTypeElement c1 = new ClassTypeElement("C1");
+		pkg.getType_class().add(c1);
+		c0.setExtend(c1.getId());
+		assertTrue(c1.getId() > c0.getId());
+
+		ModelAPI.exportToFile(new NullProgressMonitor(), imported, summary.getAbsolutePath());
+		assertFalse(isMarkedDependencyOrdered());
+		assertEquals(Arrays.asList("IOModel test", "Library l.jar", "Package p", "Class C1", "Class C0"), streamImport());
+
+		ModelAPI.exportToFile(new NullProgressMonitor(), imported, summary.getAbsolutePath(), true);
+		assertTrue(isMarkedDependencyOrdered());
+		assertEquals(Arrays.asList("IOModel test", "Library l.jar", "Package p", "Class C1", "Class C0"), streamImport());
+	}
+
+	private List<String> roundTrip(IOModel model) throws Throwable {
+		ModelAPI.exportToFile(new NullProgressMonitor(), model, summary.getAbsolutePath(), true);
+		assertTrue(isMarkedDependencyOrdered());
+		return streamImport();
+	}
+
+	private List<String> streamImport() throws Throwable {
+		RecordingImporter importer = new RecordingImporter();
+		StreamAPI.importFromFile(new NullProgressMonitor(), summary.getAbsolutePath(), importer);
+		return importer.calls;
+	}
+
+	private boolean isMarkedDependencyOrdered() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new GZIPInputStream(new FileInputStream(summary));
+		try{
+			byte[] buffer = new byte[4096];
+			for(int n; (n = in.read(buffer)) > 0;) bytes.write(buffer, 0, n);
+		}finally{
+			in.close();
+		}
+		return bytes.toString("UTF-8").contains("<" + Schema.IOMODEL_DEPENDENCY_ORDERED + ">true<");
+	}
+
+	/**
+	 * Records each callback, and checks that the elements it refers to were
+	 * delivered before it.
+	 */
+	private static class RecordingImporter implements StreamImporter{
+		final List<String> calls = new ArrayList<String>();
+		private final Set<Long> seen = new HashSet<Long>();
+
+		private void record(String kind, String name, long id, long... dependencies){
+			for(long dependency : dependencies){
+				if(dependency != NOT_DEFINED) assertTrue(kind + " " + name + " imported before " + dependency, seen.contains(dependency));
+			}
+			seen.add(id);
+			calls.add(kind + " " + name);
+		}
+
+		public void processIOModel(String author, Date created) {calls.add("IOModel " + author);}
+		public void processLibrary(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {record("Library", name, id, parentID);}
+		public void processPackage(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {record("Package", name, id, parentID);}
+		public void processClass(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Class", name, id, parentID, extendID);}
+		public void processAnnotation(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Annotation", name, id, parentID, extendID);}
+		public void processEnum(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Enum", name, id, parentID, extendID);}
+		public void processInterface(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {record("Interface", name, id, parentID, extendID);}
+		public void processConstructor(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, Set<Param> params) {record("Constructor", name, id, parentID);}
+		public void processMethod(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, Set<Long> overridesID, Set<Param> params) {record("Method", name, id, parentID);}
+		public void processEnumConstant(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type) {record("EnumConstant", name, id, parentID, type);}
+		public void processField(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension) {record("Field", name, id, parentID, type);}
+		public void processLocal(String name, String schemaType, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension, int paramIdx) {record("Local", name, id, parentID, type);}
+		public void processThis(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type) {record("This", name, id, parentID, type);}
+		public void processReturn(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long type, int dimension) {record("Return", name, id, parentID, type);}
+		public void processPrimitive(String name, long id, long parentID, Set<String> tag, Map<String, String> attr) {record("Primitive", name, id, parentID);}
+		public void processRelationship(String name, String type, long id, long parentID, Set<String> tag, Map<String, String> attr, long originID, long destID) {record("Relationship", name, id, parentID, originID, destID);}
+	}
+}
@@ -0,0 +1,112 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.common.XMLUtils;
+import edu.iastate.flowminer.io.model.Attribute;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.io.model.XMLConvertable;
+
+/**
+ * Tests that strings are only escaped when escaping changes them, and that
+ * names needing escaping are written and read back the same whatever the
+ * size of the escape cache.
+ */
+public class EscapeTest {
+	private static final String[] NAMES = {"<init>", "a&b", "q\"'", "t\tn\n", "\u00e9", "plain", "<clinit>"};
+
+	private File summary;
+	private int cacheSize;
+
+	@Before
+	public void setUp() throws Exception {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		cacheSize = XMLConvertable.getEscapeCacheSize();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		XMLConvertable.setEscapeCacheSize(cacheSize);
+		summary.delete();
+	}
+
+	@Test
+	public void needsEscapingIffEscapingChanges() {
+		for(char c = 0; c < Character.MAX_VALUE; c++){
+			String s = "a" + c + "b";
+			boolean changed = !XMLUtils.writeValidXMLText(s).equals(s);
+			assertEquals("Character " + (int) c, changed, XMLUtils.needsEscaping(s));
+		}
+		String clean = "java.util.Map$Entry";
+		assertSame(clean, XMLUtils.writeValidXMLText(clean));
+		assertEquals("", XMLUtils.writeValidXMLText(""));
+	}
+
+	@Test
+	public void roundTrip() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		List<String> expected = null;
+		// 1 empties the cache on nearly every string
+		for(int size : new int[]{0, 1, 4096}){
+			XMLConvertable.setEscapeCacheSize(size);
+			ModelAPI.exportToFile(mon, model(), summary.getAbsolutePath());
+
+			Set<String> names = new TreeSet<String>();
+			IOModel model = ModelAPI.importFromFile(mon, summary.getAbsolutePath());
+			ClassTypeElement clazz = model.getLibrary().iterator().next().getPackages().iterator().next().getType_class().iterator().next();
+			for(MethodElement m : clazz.getMethod()){
+				names.add(m.getName());
+				assertEquals(m.getName(), m.getAttr().iterator().next().getValue());
+			}
+			assertEquals("Cache size " + size, sorted(NAMES), names);
+
+			List<String> calls = imported(summary);
+			if(expected == null) expected = calls;
+			assertEquals("Cache size " + size, expected, calls);
+		}
+	}
+
+	/**
+	 * A class with a method of each name, with the name again as an
+	 * attribute.
+	 */
+	private static IOModel model(){
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+		PackageElement pkg = new PackageElement("p");
+		library.getPackages().add(pkg);
+		ClassTypeElement clazz = new ClassTypeElement("C");
+		pkg.getType_class().add(clazz);
+		for(String name : NAMES){
+			MethodElement m = new MethodElement(name);
+			m.getAttr().add(new Attribute("sig", name));
+			clazz.getMethod().add(m);
+		}
+		return model;
+	}
+
+	private static Set<String> sorted(String... names){
+		Set<String> set = new TreeSet<String>();
+		for(String name : names) set.add(name);
+		return set;
+	}
+}
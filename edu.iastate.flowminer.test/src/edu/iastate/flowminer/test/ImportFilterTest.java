@@ -0,0 +1,192 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ImportFilter;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.StreamAPI.Engine;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.FieldVarElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.LocalVarElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+
+/**
+ * Tests that {@link ImportFilter} selects packages on dot boundaries, types
+ * by name with their nested types, and the public surface without locals,
+ * and that skipped types referenced by selected ones are imported without
+ * their members.
+ */
+public class ImportFilterTest {
+	private File summary;
+
+	@Before
+	public void setUp() throws Throwable {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		ModelAPI.exportToFile(new NullProgressMonitor(), model(), summary.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		summary.delete();
+	}
+
+	@Test
+	public void packageBoundaries() {
+		ImportFilter filter = new ImportFilter().addPackagePrefix("a.b");
+		assertTrue(filter.acceptPackage("a.b"));
+		assertTrue(filter.acceptPackage("a.b.c"));
+		assertFalse(filter.acceptPackage("a.bc"));
+		assertFalse(filter.acceptPackage("a"));
+		assertFalse(filter.acceptPackage(null));
+		assertTrue(filter.acceptType("a.b.c", "a.b.c.T", tags()));
+		assertFalse(filter.acceptType("a.bc", "a.bc.T", tags()));
+
+		assertTrue(new ImportFilter().addPackagePrefix("").acceptPackage("x.y"));
+		assertTrue(new ImportFilter().acceptPackage("x.y"));
+	}
+
+	@Test
+	public void typeBoundaries() {
+		ImportFilter filter = new ImportFilter().addTypeName("a.b.T");
+		assertTrue("Packages enclosing the type may hold it", filter.acceptPackage("a.b"));
+		assertTrue(filter.acceptPackage("a"));
+		assertTrue(filter.acceptPackage(null));
+		assertFalse(filter.acceptPackage("a.bc"));
+		assertFalse(filter.acceptPackage("a.b.T"));
+		assertTrue(filter.acceptType("a.b", "a.b.T", tags()));
+		assertTrue("Nested types are selected", filter.acceptType("a.b", "a.b.T.N", tags()));
+		assertFalse(filter.acceptType("a.b", "a.b.TT", tags()));
+		assertFalse(filter.acceptType("a.b", "a.b.U", tags()));
+	}
+
+	@Test
+	public void publicSurface() {
+		ImportFilter filter = new ImportFilter().setPublicSurfaceOnly(true);
+		assertTrue(filter.acceptMember(tags(Schema.Tag.IS_PUBLIC)));
+		assertTrue(filter.acceptMember(tags(Schema.Tag.IS_PROTECTED)));
+		assertFalse(filter.acceptMember(tags(Schema.Tag.IS_PRIVATE)));
+		assertFalse(filter.acceptMember(tags()));
+		assertFalse(filter.acceptType("a.b", "a.b.T", tags()));
+		assertFalse(filter.acceptLocals());
+		assertTrue(new ImportFilter().acceptMember(tags()));
+		assertTrue(new ImportFilter().acceptLocals());
+	}
+
+	@Test
+	public void importPackagePrefix() throws Throwable {
+		List<String> calls = imported(new NullProgressMonitor(), summary, new ImportFilter().addPackagePrefix("a.b"), Engine.VTD);
+		assertEquals(sorted("a.b", "a.b.c", "a.bc"), named(calls, "Package"));
+		assertEquals("Ref is imported for the field referencing it", sorted("Pub", "Sub", "Ref"), named(calls, "Class"));
+		assertEquals("Ref's members are not", sorted("pub", "priv"), named(calls, "Method"));
+		assertEquals(sorted("lv"), named(calls, "Local"));
+		assertEquals(sorted("f"), named(calls, "Field"));
+	}
+
+	@Test
+	public void importTypeName() throws Throwable {
+		List<String> calls = imported(new NullProgressMonitor(), summary, new ImportFilter().addTypeName("a.bc.Ref"), Engine.VTD);
+		assertEquals(sorted("a.bc"), named(calls, "Package"));
+		assertEquals(sorted("Ref"), named(calls, "Class"));
+		assertEquals(sorted("r"), named(calls, "Method"));
+	}
+
+	@Test
+	public void importPublicSurface() throws Throwable {
+		List<String> calls = imported(new NullProgressMonitor(), summary, new ImportFilter().setPublicSurfaceOnly(true), Engine.VTD);
+		assertEquals(sorted("Pub", "Sub", "Ref"), named(calls, "Class"));
+		assertEquals(sorted("pub", "r"), named(calls, "Method"));
+		assertEquals(sorted("f"), named(calls, "Field"));
+		assertEquals(sorted(), named(calls, "Local"));
+
+		assertEquals("Without a filter everything is imported", imported(summary).size(),
+				imported(new NullProgressMonitor(), summary, new ImportFilter(), Engine.VTD).size());
+	}
+
+	/**
+	 * Packages a.b, a.b.c and a.bc, which only share a prefix with a.b up to
+	 * a dot boundary. Pub in a.b has a field of the type Ref in a.bc, a public
+	 * method with a local and a private method.
+	 */
+	private static IOModel model(){
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+
+		ClassTypeElement pub = publicClass(library, "a.b", "Pub");
+		publicClass(library, "a.b.c", "Sub");
+		ClassTypeElement ref = publicClass(library, "a.bc", "Ref");
+		MethodElement r = new MethodElement("r");
+		r.getTag().add(Schema.Tag.IS_PUBLIC);
+		ref.getMethod().add(r);
+
+		FieldVarElement f = new FieldVarElement("f");
+		f.getTag().add(Schema.Tag.IS_PUBLIC);
+		f.setType(ref.getId());
+		pub.getField().add(f);
+		MethodElement pubMethod = new MethodElement("pub");
+		pubMethod.getTag().add(Schema.Tag.IS_PUBLIC);
+		pub.getMethod().add(pubMethod);
+		LocalVarElement lv = new LocalVarElement("lv", "LOCAL");
+		lv.setType(pub.getId());
+		pubMethod.getLocalVar().add(lv);
+		MethodElement priv = new MethodElement("priv");
+		priv.getTag().add(Schema.Tag.IS_PRIVATE);
+		pub.getMethod().add(priv);
+		return model;
+	}
+
+	private static ClassTypeElement publicClass(LibraryElement library, String packageName, String name){
+		PackageElement pkg = new PackageElement(packageName);
+		library.getPackages().add(pkg);
+		ClassTypeElement clazz = new ClassTypeElement(name);
+		clazz.getTag().add(Schema.Tag.IS_PUBLIC);
+		pkg.getType_class().add(clazz);
+		return clazz;
+	}
+
+	/**
+	 * @return the names passed to each callback of the kind, sorted
+	 */
+	private static List<String> named(List<String> calls, String kind){
+		List<String> names = new ArrayList<String>();
+		for(String call : calls){
+			String[] args = call.substring(1).split(", ");
+			if(args[0].equals(kind)) names.add(args[1]);
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	private static List<String> sorted(String... names){
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, names);
+		Collections.sort(list);
+		return list;
+	}
+
+	private static Set<String> tags(String... tags){
+		Set<String> set = new HashSet<String>();
+		Collections.addAll(set, tags);
+		return set;
+	}
+}
@@ -0,0 +1,106 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.IndexCache;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+
+/**
+ * Tests that {@link IndexCache} serves repeated imports of a summary from one
+ * entry, and never serves an entry for a summary that has since changed.
+ */
+public class IndexCacheTest {
+	private File cache, summary, other;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = Files.createTempDirectory("FlowMiner_cache").toFile();
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		other = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		IndexCache.setDirectory(cache);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		IndexCache.setDirectory(null);
+		for(File f : cache.listFiles()) f.delete();
+		cache.delete();
+		summary.delete();
+		other.delete();
+	}
+
+	@Test
+	public void hit() throws Throwable {
+		export("A", summary);
+		assertEquals("A", importClassName());
+		File[] entries = cache.listFiles();
+		assertEquals(1, entries.length);
+		long stored = entries[0].lastModified();
+
+		assertEquals("A", importClassName());
+		entries = cache.listFiles();
+		assertEquals(1, entries.length);
+		assertEquals(stored, entries[0].lastModified());
+	}
+
+	@Test
+	public void rewrittenAtSameSizeAndTime() throws Throwable {
+		export("A", summary);
+		assertEquals("A", importClassName());
+
+		// Compressed sizes vary, so find a class name giving the same size
+		String name = null;
+		for(char c = 'B'; c <= 'Z' && name == null; c++){
+			export(String.valueOf(c), other);
+			if(other.length() == summary.length()) name = String.valueOf(c);
+		}
+		assertTrue("No same size summary", name != null);
+
+		long modified = summary.lastModified();
+		Files.copy(other.toPath(), summary.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		assertTrue(summary.setLastModified(modified));
+		assertEquals(name, importClassName());
+		assertEquals("The new entry replaces the old one", 1, cache.listFiles().length);
+	}
+
+	@Test
+	public void unreadableEntryIsReplaced() throws Throwable {
+		export("A", summary);
+		assertEquals("A", importClassName());
+		File entry = cache.listFiles()[0];
+		Files.write(entry.toPath(), new byte[]{1, 2, 3});
+
+		assertEquals("A", importClassName());
+		assertTrue(entry.length() > 3);
+	}
+
+	private static void export(String className, File destination) throws Throwable {
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+		PackageElement pkg = new PackageElement("p");
+		library.getPackages().add(pkg);
+		pkg.getType_class().add(new ClassTypeElement(className));
+		ModelAPI.exportToFile(new NullProgressMonitor(), model, destination.getAbsolutePath());
+	}
+
+	private String importClassName() throws Throwable {
+		IOModel model = ModelAPI.importFromFile(new NullProgressMonitor(), summary.getAbsolutePath());
+		return model.getLibrary().iterator().next().getPackages().iterator().next().getType_class().iterator().next().getName();
+	}
+}
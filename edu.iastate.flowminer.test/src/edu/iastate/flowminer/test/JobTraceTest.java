@@ -0,0 +1,80 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.common.ThreadPool;
+import edu.iastate.flowminer.io.common.ThreadPool.Work;
+import edu.iastate.flowminer.utility.JobTrace;
+
+/**
+ * Tests that {@link JobTrace} records tasks submitted straight to the io
+ * plugin's pools, and that the trace property records and writes a timeline
+ * without any other code.
+ */
+public class JobTraceTest {
+	private File trace;
+
+	@Before
+	public void setUp() throws Exception {
+		trace = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".json");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		System.clearProperty(JobTrace.TRACE_PROPERTY);
+		JobTrace.stop();
+		trace.delete();
+	}
+
+	@Test
+	public void recordsIoPoolTasks() throws Throwable {
+		JobTrace.start();
+		for(Work work : Work.values()) ThreadPool.submit(work, new Task()).get();
+		JobTrace.stop();
+		ThreadPool.submit(Work.IO, new Untraced()).get();
+
+		JobTrace.writeChromeTrace(trace);
+		String written = read();
+		assertTrue(written.contains(Task.class.getName()));
+		assertFalse("Tasks are not recorded once stopped", written.contains(Untraced.class.getName()));
+	}
+
+	@Test
+	public void traceProperty() throws Throwable {
+		JobTrace.startIfRequested();
+		assertFalse(JobTrace.isRecording());
+
+		System.setProperty(JobTrace.TRACE_PROPERTY, trace.getAbsolutePath());
+		JobTrace.startIfRequested();
+		assertTrue(JobTrace.isRecording());
+		ThreadPool.submit(Work.IO, new Task()).get();
+		JobTrace.writeIfRequested();
+		assertTrue(read().contains(Task.class.getName()));
+		assertTrue("Recording goes on for the next run", JobTrace.isRecording());
+	}
+
+	private String read() throws Exception {
+		return new String(Files.readAllBytes(trace.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static class Task implements Runnable{
+		@Override
+		public void run() {
+		}
+	}
+
+	private static class Untraced implements Runnable{
+		@Override
+		public void run() {
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.ids;
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static edu.iastate.flowminer.test.BinaryFormatTest.sampleModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.PackageElement;
+
+/**
+ * Tests that a model read lazily holds the same elements as one read in
+ * full, whichever threads first ask for them, and that it can be changed
+ * and written back like any other.
+ */
+public class LazyImportTest {
+	private static final long TIMEOUT = 60000;
+	private static final int THREADS = 8;
+
+	private File summary, back;
+
+	@Before
+	public void setUp() throws Throwable {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		back = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		ModelAPI.exportToFile(new NullProgressMonitor(), sampleModel(), summary.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		summary.delete();
+		back.delete();
+	}
+
+	@Test
+	public void matchesFullImport() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		List<Long> ids = ids(ModelAPI.importFromFile(mon, summary.getAbsolutePath()));
+		IOModel lazy = ModelAPI.importFromFile(mon, summary.getAbsolutePath(), true);
+		assertEquals(ids, ids(lazy));
+
+		// Written back without first asking for its members
+		ModelAPI.exportToFile(mon, ModelAPI.importFromFile(mon, summary.getAbsolutePath(), true), back.getAbsolutePath());
+		assertEquals(imported(summary), imported(back));
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void concurrentFirstReads() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		List<Long> expected = ids(ModelAPI.importFromFile(mon, summary.getAbsolutePath()));
+		for(int round = 0; round < 20; round++){
+			final IOModel lazy = ModelAPI.importFromFile(mon, summary.getAbsolutePath(), true);
+			final CountDownLatch start = new CountDownLatch(1);
+			final List<List<Long>> read = new ArrayList<List<Long>>();
+			final Throwable[] error = new Throwable[1];
+			List<Thread> threads = new ArrayList<Thread>();
+			for(int i = 0; i < THREADS; i++){
+				Thread t = new Thread(){
+					@Override
+					public void run() {
+						try{
+							start.await();
+							List<Long> ids = ids(lazy);
+							synchronized(read){
+								read.add(ids);
+							}
+						}catch(Throwable t){
+							error[0] = t;
+						}
+					}
+				};
+				t.start();
+				threads.add(t);
+			}
+			start.countDown();
+			for(Thread t : threads) t.join();
+			if(error[0] != null) throw error[0];
+			for(List<Long> ids : read) assertEquals(expected, ids);
+		}
+	}
+
+	/**
+	 * Members added to a package which was never read are written along with
+	 * the ones it already had.
+	 */
+	@Test
+	public void changeBeforeRead() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		IOModel lazy = ModelAPI.importFromFile(mon, summary.getAbsolutePath(), true);
+		PackageElement pkg = lazy.getLibrary().iterator().next().getPackages().iterator().next();
+		pkg.getType_class().add(new ClassTypeElement("D"));
+		ModelAPI.exportToFile(mon, lazy, back.getAbsolutePath());
+
+		List<String> expected = imported(summary);
+		List<String> written = imported(back);
+		assertEquals(expected.size() + 1, written.size());
+		assertTrue(written.containsAll(expected));
+	}
+}
@@ -0,0 +1,120 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.ids;
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.ModelBuilder;
+import edu.iastate.flowminer.io.model.ModelBuilder.Buffer;
+import edu.iastate.flowminer.io.model.PackageElement;
+
+/**
+ * Tests that {@link ModelBuilder} applies buffers only on merge, in the order
+ * they were made, and that a model assembled by many threads at once holds
+ * every element once, with unique ids.
+ */
+public class ModelBuilderTest {
+	private static final long TIMEOUT = 60000;
+	private static final int THREADS = 8;
+	private static final int CLASSES = 200;
+
+	private File summary;
+
+	@Before
+	public void setUp() throws Exception {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		summary.delete();
+	}
+
+	@Test
+	public void mergesInOrderBuffersWereMade() {
+		List<String> target = new ArrayList<String>();
+		ModelBuilder builder = new ModelBuilder();
+		Buffer first = builder.newBuffer();
+		Buffer second = builder.newBuffer();
+		second.add(target, "c");
+		first.add(target, "a");
+		second.add(target, "d");
+		first.add(target, "b");
+		assertTrue("Nothing is added before merging", target.isEmpty());
+
+		builder.merge();
+		assertEquals(Arrays.asList("a", "b", "c", "d"), target);
+		builder.merge();
+		assertEquals("Buffers are applied once", 4, target.size());
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void concurrentAssembly() throws Throwable {
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+		final PackageElement pkg = new PackageElement("p");
+		library.getPackages().add(pkg);
+		final ClassTypeElement shared = new ClassTypeElement("Shared");
+		pkg.getType_class().add(shared);
+
+		ModelBuilder builder = new ModelBuilder();
+		final Throwable[] error = new Throwable[1];
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < THREADS; i++){
+			final int thread = i;
+			final Buffer buffer = builder.newBuffer();
+			Thread t = new Thread(){
+				@Override
+				public void run() {
+					try{
+						for(int k = 0; k < CLASSES; k++){
+							ClassTypeElement clazz = new ClassTypeElement("C" + thread + "_" + k);
+							buffer.add(pkg.getType_class(), clazz);
+							MethodElement m = new MethodElement("m" + thread + "_" + k);
+							buffer.add(clazz.getMethod(), m);
+							buffer.add(shared.getMethod(), new MethodElement("s" + thread + "_" + k));
+						}
+					}catch(Throwable t){
+						error[0] = t;
+					}
+				}
+			};
+			t.start();
+			threads.add(t);
+		}
+		for(Thread t : threads) t.join();
+		if(error[0] != null) throw error[0];
+		builder.merge();
+
+		assertEquals(THREADS * CLASSES + 1, pkg.getType_class().size());
+		assertEquals(THREADS * CLASSES, shared.getMethod().size());
+		List<Long> ids = ids(model);
+		assertEquals("Ids are unique", ids.size(), new HashSet<Long>(ids).size());
+
+		NullProgressMonitor mon = new NullProgressMonitor();
+		ModelAPI.exportToFile(mon, model, summary.getAbsolutePath());
+		assertEquals(ids.size(), ids(ModelAPI.importFromFile(mon, summary.getAbsolutePath())).size());
+		// The library, the package and the shared class, with a class and two
+		// methods for each addition
+		assertEquals(1 + 3 + THREADS * CLASSES * 3, imported(summary).size());
+	}
+}
@@ -0,0 +1,121 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+import edu.iastate.flowminer.utility.ThreadPool;
+
+/**
+ * Tests that {@link ThreadPool#parallelFor} runs each element once, reports
+ * progress a chunk at a time, and only completes, normally or not, once no
+ * element is running any more.
+ */
+public class ParallelForTest {
+	private static final int ELEMENTS = 10000;
+	private static final int CHUNK = 16;
+	private static final long TIMEOUT = 60000;
+
+	@Test(timeout = TIMEOUT)
+	public void runsEachElementOnce() throws Throwable {
+		final AtomicIntegerArray runs = new AtomicIntegerArray(ELEMENTS);
+		final AtomicInteger running = new AtomicInteger();
+		RecordingMonitor mon = new RecordingMonitor();
+		Future<?> done = ThreadPool.parallelFor(mon, indices(ELEMENTS), CHUNK, new Consumer<Integer>(){
+			@Override
+			public void accept(Integer i) {
+				running.incrementAndGet();
+				runs.incrementAndGet(i);
+				Thread.yield();
+				running.decrementAndGet();
+			}
+		});
+		done.get();
+
+		assertEquals("Elements still running once done", 0, running.get());
+		for(int i = 0; i < ELEMENTS; i++) assertEquals("Runs of element " + i, 1, runs.get(i));
+		assertEquals(ELEMENTS, mon.total());
+		for(int worked : mon.worked) assertTrue("Progress of " + worked + " elements at once", worked <= CHUNK);
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void failsOnceEveryRangeHasStopped() throws Throwable {
+		final RuntimeException thrown = new RuntimeException("element 100");
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger ran = new AtomicInteger();
+		RecordingMonitor mon = new RecordingMonitor();
+		Future<?> done = ThreadPool.parallelFor(mon, indices(ELEMENTS), CHUNK, new Consumer<Integer>(){
+			@Override
+			public void accept(Integer i) {
+				if(i == 100) throw thrown;
+				running.incrementAndGet();
+				try{
+					Thread.sleep(1);
+				}catch(InterruptedException e){
+				}
+				ran.incrementAndGet();
+				running.decrementAndGet();
+			}
+		});
+		try{
+			done.get();
+			fail("The batch did not fail");
+		}catch(ExecutionException e){
+			assertSame(thrown, e.getCause());
+		}
+
+		assertEquals("Elements still running once failed", 0, running.get());
+		assertTrue("Elements after the failure are skipped", ran.get() < ELEMENTS - 1);
+		assertEquals(ran.get(), mon.total());
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void noElements() throws Throwable {
+		Future<?> done = ThreadPool.parallelFor(Collections.<Integer>emptyList(), CHUNK, new Consumer<Integer>(){
+			@Override
+			public void accept(Integer i) {
+				fail("Ran an element of an empty batch");
+			}
+		});
+		assertTrue(done.isDone());
+		done.get();
+	}
+
+	private static List<Integer> indices(int n){
+		List<Integer> indices = new ArrayList<Integer>(n);
+		for(int i = 0; i < n; i++) indices.add(i);
+		return indices;
+	}
+
+	/**
+	 * Records each amount of work reported. parallelFor reports under the
+	 * monitor's lock.
+	 */
+	private static class RecordingMonitor extends NullProgressMonitor{
+		final List<Integer> worked = new ArrayList<Integer>();
+
+		@Override
+		public void worked(int work) {
+			worked.add(work);
+		}
+
+		synchronized int total(){
+			int total = 0;
+			for(int w : worked) total += w;
+			return total;
+		}
+	}
+}
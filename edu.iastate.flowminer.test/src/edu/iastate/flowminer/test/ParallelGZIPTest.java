@@ -0,0 +1,129 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.common.ParallelGZIPOutputStream;
+
+/**
+ * Tests that {@link ParallelGZIPOutputStream} writes standard gzip holding
+ * exactly what was written, however many threads compress it and however it
+ * is cut into members, and that its trailer can be read back.
+ */
+public class ParallelGZIPTest {
+	private static final int BLOCK = 1024;
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".gz");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	@Test
+	public void roundTrip() throws Exception {
+		byte[] data = sample(BLOCK * 50 + 17);
+		for(int threads : new int[]{1, 4}){
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			ParallelGZIPOutputStream gz = new ParallelGZIPOutputStream(compressed, threads, BLOCK);
+			// Single bytes and arrays straddling blocks
+			gz.write(data[0]);
+			gz.write(data, 1, BLOCK + 3);
+			gz.write(data, BLOCK + 4, data.length - BLOCK - 4);
+			gz.close();
+			assertArrayEquals("Threads: " + threads, data, inflate(compressed.toByteArray()));
+		}
+	}
+
+	@Test
+	public void empty() throws Exception {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGZIPOutputStream(compressed, 4, BLOCK).close();
+		assertEquals(0, inflate(compressed.toByteArray()).length);
+	}
+
+	/**
+	 * Each member starts where it was reported to, and inflates on its own.
+	 */
+	@Test
+	public void memberOffsets() throws Exception {
+		byte[] first = sample(BLOCK * 3 + 5);
+		byte[] second = sample(100);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ParallelGZIPOutputStream gz = new ParallelGZIPOutputStream(compressed, 4, BLOCK);
+		gz.write(first);
+		int member = gz.endMember();
+		gz.write(second);
+		gz.flush();
+		long offset = gz.getMemberOffset(member);
+		gz.close();
+
+		byte[] all = compressed.toByteArray();
+		byte[] rest = Arrays.copyOfRange(all, (int) offset, all.length);
+		assertArrayEquals(second, inflate(rest));
+	}
+
+	@Test
+	public void trailer() throws Exception {
+		byte[] data = sample(BLOCK * 5);
+		// Longer than fits in the extra field of one member
+		byte[] trailer = sample(150000);
+		ParallelGZIPOutputStream gz = new ParallelGZIPOutputStream(new FileOutputStream(file), 4, BLOCK);
+		gz.write(data);
+		gz.finish(trailer);
+		gz.close();
+
+		assertArrayEquals(trailer, ParallelGZIPOutputStream.readTrailer(file.getAbsolutePath()));
+		assertArrayEquals("Readers skip the trailer", data, inflate(Files.readAllBytes(file.toPath())));
+
+		gz = new ParallelGZIPOutputStream(new FileOutputStream(file), 4, BLOCK);
+		gz.write(data);
+		gz.close();
+		assertNull(ParallelGZIPOutputStream.readTrailer(file.getAbsolutePath()));
+	}
+
+	/**
+	 * Text-like runs, which compress, between random bytes, which do not.
+	 */
+	private static byte[] sample(int length){
+		Random random = new Random(length);
+		byte[] data = new byte[length];
+		for(int i = 0; i < length; i++){
+			if((i / 700) % 2 == 0) data[i] = (byte) ('a' + (i % 13));
+			else data[i] = (byte) random.nextInt();
+		}
+		return data;
+	}
+
+	private static byte[] inflate(byte[] compressed) throws Exception {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		try{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for(int n; (n = in.read(buffer)) > 0;) out.write(buffer, 0, n);
+			return out.toByteArray();
+		}finally{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.ids;
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ChunkedSummary;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.FieldVarElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.io.model.Relationship;
+
+/**
+ * Tests that reading the packages of a model on several threads reads the
+ * same model, and reports the same progress, as reading them on one.
+ */
+public class ParallelImportTest {
+	private static final long TIMEOUT = 60000;
+	private static final int LIBRARIES = 3;
+	private static final int PACKAGES = 20;
+
+	private File summary, back;
+	private int threads;
+	private long threshold;
+
+	@Before
+	public void setUp() throws Throwable {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		back = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		threads = ModelAPI.getImportThreads();
+		threshold = ChunkedSummary.getThreshold();
+		ModelAPI.exportToFile(new NullProgressMonitor(), model(), summary.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ModelAPI.setImportThreads(threads);
+		ChunkedSummary.setThreshold(threshold);
+		summary.delete();
+		back.delete();
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void matchesSingleThreaded() throws Throwable {
+		ModelAPI.setImportThreads(1);
+		WorkMonitor mon = new WorkMonitor();
+		List<Long> ids = ids(ModelAPI.importFromFile(mon, summary.getAbsolutePath()));
+		int work = mon.work;
+		List<String> expected = imported(summary);
+
+		for(boolean chunked : new boolean[]{false, true}){
+			ChunkedSummary.setThreshold(chunked ? 0 : threshold);
+			for(int threads : new int[]{2, 8}){
+				ModelAPI.setImportThreads(threads);
+				mon = new WorkMonitor();
+				IOModel model = ModelAPI.importFromFile(mon, summary.getAbsolutePath());
+				String at = threads + " threads" + (chunked ? ", chunked" : "");
+				assertEquals(at, ids, ids(model));
+				assertEquals(at, LIBRARIES, model.getLibrary().size());
+				for(LibraryElement library : model.getLibrary()) assertEquals(at, PACKAGES, library.getPackages().size());
+				if(!chunked) assertEquals(at, work, mon.work);
+
+				ModelAPI.exportToFile(new NullProgressMonitor(), model, back.getAbsolutePath());
+				assertEquals(at, expected, imported(back));
+			}
+		}
+	}
+
+	/**
+	 * Libraries of packages of uneven size, with relationships between
+	 * packages.
+	 */
+	private static IOModel model(){
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		MethodElement previous = null;
+		for(int l = 0; l < LIBRARIES; l++){
+			LibraryElement library = new LibraryElement("l" + l + ".jar");
+			model.getLibrary().add(library);
+			for(int p = 0; p < PACKAGES; p++){
+				PackageElement pkg = new PackageElement("p" + p);
+				library.getPackages().add(pkg);
+				for(int c = 0; c < p % 7; c++){
+					ClassTypeElement clazz = new ClassTypeElement("C" + c);
+					pkg.getType_class().add(clazz);
+					MethodElement m = new MethodElement("m");
+					clazz.getMethod().add(m);
+					FieldVarElement f = new FieldVarElement("f");
+					f.setType(clazz.getId());
+					clazz.getField().add(f);
+					if(previous != null) model.getRelationship().add(new Relationship(null, previous.getId(), m.getId(), "CALL"));
+					previous = m;
+				}
+			}
+		}
+		return model;
+	}
+
+	private static class WorkMonitor extends NullProgressMonitor{
+		int work;
+
+		@Override
+		public void worked(int work) {
+			this.work += work;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Test;
+
+import edu.iastate.flowminer.utility.PrecedenceGraph;
+
+/**
+ * Tests that {@link PrecedenceGraph} runs every job exactly once and only
+ * after all of its ancestors, single and multithreaded. Jobs' exceptions are
+ * logged rather than thrown, so jobs only record what they saw.
+ */
+public class PrecedenceGraphTest {
+	private static final int JOBS = 2000;
+	private static final int ANCESTORS = 3;
+	// A job that is never released leaves a multithreaded execute waiting
+	private static final long TIMEOUT = 60000;
+
+	@Test
+	public void singleThreadedOrder() throws Throwable {
+		for(int seed = 0; seed < 3; seed++) checkOrder(seed, false);
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void multithreadedOrder() throws Throwable {
+		for(int seed = 0; seed < 3; seed++) checkOrder(seed, true);
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void rejectsCycles() throws Throwable {
+		for(boolean multithreaded : new boolean[]{false, true}){
+			Job root = new Job(), x = new Job(), y = new Job();
+			PrecedenceGraph graph = new PrecedenceGraph();
+			graph.add(root);
+			graph.add(x);
+			graph.add(y);
+			graph.addPrecedence(root, x);
+			graph.addPrecedence(x, y);
+			graph.addPrecedence(y, x);
+			try{
+				graph.execute(multithreaded);
+				fail("Executed a graph with a cycle");
+			}catch(RuntimeException e){
+			}
+			assertEquals("No job runs if any is on a cycle", 0, root.runs.get() + x.runs.get() + y.runs.get());
+		}
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void duplicateEdges() throws Throwable {
+		for(boolean multithreaded : new boolean[]{false, true}){
+			final Job first = new Job();
+			final AtomicInteger firstRunsBeforeSecond = new AtomicInteger(-1);
+			Job second = new Job(){
+				@Override
+				public void run() {
+					firstRunsBeforeSecond.set(first.runs.get());
+					super.run();
+				}
+			};
+			PrecedenceGraph graph = new PrecedenceGraph();
+			graph.add(first);
+			graph.add(second);
+			graph.addPrecedence(first, second);
+			graph.addPrecedence(first, second);
+			graph.execute(multithreaded);
+			assertEquals(1, firstRunsBeforeSecond.get());
+			assertEquals(1, first.runs.get());
+			assertEquals(1, second.runs.get());
+		}
+	}
+
+	/**
+	 * Run a random graph in which each job waits on a few earlier ones.
+	 */
+	private static void checkOrder(int seed, boolean multithreaded) throws Throwable {
+		final AtomicIntegerArray runs = new AtomicIntegerArray(JOBS);
+		final AtomicInteger early = new AtomicInteger();
+		final List<List<Integer>> ancestors = new ArrayList<List<Integer>>();
+		Runnable[] jobs = new Runnable[JOBS];
+		PrecedenceGraph graph = new PrecedenceGraph();
+		for(int i = 0; i < JOBS; i++){
+			final int id = i;
+			ancestors.add(new ArrayList<Integer>());
+			jobs[i] = new Runnable(){
+				@Override
+				public void run() {
+					for(int ancestor : ancestors.get(id)){
+						if(runs.get(ancestor) == 0) early.incrementAndGet();
+					}
+					runs.incrementAndGet(id);
+				}
+			};
+			graph.add(jobs[i]);
+		}
+		Random random = new Random(seed);
+		for(int i = 1; i < JOBS; i++){
+			for(int k = 0; k < ANCESTORS; k++){
+				int ancestor = random.nextInt(i);
+				ancestors.get(i).add(ancestor);
+				graph.addPrecedence(jobs[ancestor], jobs[i]);
+			}
+		}
+
+		graph.execute(multithreaded);
+
+		assertEquals("Jobs run before their ancestors", 0, early.get());
+		for(int i = 0; i < JOBS; i++) assertEquals("Runs of job " + i, 1, runs.get(i));
+	}
+
+	private static class Job implements Runnable{
+		final AtomicInteger runs = new AtomicInteger();
+
+		@Override
+		public void run() {
+			runs.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.StreamAPI.Engine;
+import edu.iastate.flowminer.io.common.LongHashSet;
+import edu.iastate.flowminer.io.common.LongObjectHashMap;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+import edu.iastate.flowminer.test.BinaryFormatTest.Recorder;
+
+/**
+ * Tests that stream imports deliver each element after the elements it
+ * references, however long the chain of forward references, and the
+ * primitive-keyed collections that track them.
+ */
+public class PrecedenceTest {
+	// Completing these callbacks recursively would go as many frames deep
+	private static final int CHAIN = 50000;
+
+	private File summary;
+
+	@Before
+	public void setUp() throws Exception {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		summary.delete();
+	}
+
+	@Test
+	public void longExtendsChain() throws Throwable {
+		IOModel model = new IOModel("test", new Date(1234567890123L));
+		LibraryElement library = new LibraryElement("l.jar");
+		model.getLibrary().add(library);
+		PackageElement pkg = new PackageElement("p");
+		library.getPackages().add(pkg);
+		ClassTypeElement superclass = null;
+		for(int i = 0; i < CHAIN; i++){
+			ClassTypeElement clazz = new ClassTypeElement("C" + i);
+			if(superclass != null) superclass.setExtend(clazz.getId());
+			pkg.getType_class().add(clazz);
+			superclass = clazz;
+		}
+		NullProgressMonitor mon = new NullProgressMonitor();
+		ModelAPI.exportToFile(mon, model, summary.getAbsolutePath());
+
+		for(Engine engine : Engine.values()){
+			final Set<Long> delivered = new HashSet<Long>();
+			final int[] early = new int[1];
+			imported(mon, summary, null, engine, new Recorder(){
+				@Override
+				public void processClass(String name, long id, long parentID, Set<String> tag, Map<String, String> attr, long extendID, Set<Long> implementID) {
+					if(extendID != NOT_DEFINED && !delivered.contains(extendID)) early[0]++;
+					delivered.add(id);
+				}
+			});
+			assertEquals(engine.name(), CHAIN, delivered.size());
+			assertEquals(engine.name() + " classes delivered before their superclass", 0, early[0]);
+		}
+	}
+
+	@Test
+	public void longHashSet() {
+		Random random = new Random(1);
+		LongHashSet set = new LongHashSet(4);
+		Set<Long> expected = new HashSet<Long>();
+		for(int i = 0; i < 200000; i++){
+			long key = key(random);
+			switch(random.nextInt(3)){
+			case 0:
+				assertEquals(expected.remove(key), set.remove(key));
+				break;
+			default:
+				assertEquals(expected.add(key), set.add(key));
+			}
+			assertEquals(expected.size(), set.size());
+		}
+		for(long key = -1000; key < 1000; key++) assertEquals(expected.contains(key), set.contains(key));
+		for(long key : expected) assertTrue(set.contains(key));
+		set.ensureCapacity(1 << 16);
+		for(long key : expected) assertTrue(set.contains(key));
+	}
+
+	@Test
+	public void longObjectHashMap() {
+		Random random = new Random(2);
+		LongObjectHashMap<Long> map = new LongObjectHashMap<Long>(4);
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		for(int i = 0; i < 200000; i++){
+			long key = key(random);
+			switch(random.nextInt(3)){
+			case 0:
+				assertEquals(expected.remove(key), map.remove(key));
+				break;
+			default:
+				assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for(long key = -1000; key < 1000; key++){
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+			assertEquals(expected.get(key), map.get(key));
+		}
+		map.ensureCapacity(1 << 16);
+		Set<Long> keys = new HashSet<Long>();
+		for(long key : map.keys()) keys.add(key);
+		assertEquals(expected.keySet(), keys);
+		for(long key : keys) assertEquals(expected.get(key), map.get(key));
+		assertNull(map.get(Long.MIN_VALUE + 7));
+	}
+
+	/**
+	 * Mostly small keys which collide, with some at the extremes.
+	 */
+	private static long key(Random random){
+		switch(random.nextInt(10)){
+		case 0: return Long.MIN_VALUE + random.nextInt(4);
+		case 1: return Long.MAX_VALUE - random.nextInt(4);
+		case 2: return random.nextLong();
+		default: return random.nextInt(2000) - 1000;
+		}
+	}
+}
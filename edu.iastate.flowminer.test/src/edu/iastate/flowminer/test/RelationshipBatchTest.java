@@ -0,0 +1,98 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static edu.iastate.flowminer.test.BinaryFormatTest.sampleModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.BinaryAPI;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.StreamAPI.BatchStreamImporter;
+import edu.iastate.flowminer.io.StreamAPI.Engine;
+import edu.iastate.flowminer.io.model.Attribute;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.Relationship;
+import edu.iastate.flowminer.test.BinaryFormatTest.Recorder;
+
+/**
+ * Tests that a {@link BatchStreamImporter} is given exactly the
+ * relationships a plain importer is, whichever way the summary is read.
+ */
+public class RelationshipBatchTest {
+	// More than a batch
+	private static final int RELATIONSHIPS = 10000;
+
+	private File xml, bin;
+
+	@Before
+	public void setUp() throws Throwable {
+		xml = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		bin = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".bin");
+		NullProgressMonitor mon = new NullProgressMonitor();
+		IOModel model = model();
+		ModelAPI.exportToFile(mon, model, xml.getAbsolutePath());
+		BinaryAPI.exportToFile(mon, model, bin.getAbsolutePath());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		xml.delete();
+		bin.delete();
+	}
+
+	@Test
+	public void batchesMatchSingleRelationships() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		List<String> expected = imported(xml);
+		assertEquals(RELATIONSHIPS + 16, expected.size());
+		for(Engine engine : Engine.values()){
+			BatchRecorder recorder = new BatchRecorder();
+			assertEquals(engine.name(), expected, imported(mon, xml, null, engine, recorder));
+			assertTrue(engine.name(), recorder.batches > 1);
+		}
+		BatchRecorder recorder = new BatchRecorder();
+		assertEquals(expected, imported(mon, bin, null, Engine.VTD, recorder));
+		assertTrue(recorder.batches > 1);
+	}
+
+	/**
+	 * The sample model with many more relationships between the same
+	 * elements, of a few types and tag sets, some named or with attributes.
+	 */
+	private static IOModel model(){
+		IOModel model = sampleModel();
+		Relationship flow = model.getRelationship().iterator().next();
+		for(int i = 0; i < RELATIONSHIPS; i++){
+			Relationship r = new Relationship(i % 1000 == 0 ? "r" + i : null, flow.getOrigin_id(), flow.getDest_id(), i % 3 == 0 ? "CALL" : "FLOW");
+			if(i % 2 == 0) r.getTag().add("even");
+			if(i % 5 == 0) r.getTag().add("fifth");
+			if(i % 777 == 0) r.getAttr().add(new Attribute("i", Integer.toString(i)));
+			model.getRelationship().add(r);
+		}
+		return model;
+	}
+
+	private static class BatchRecorder extends Recorder implements BatchStreamImporter{
+		int batches;
+
+		@Override
+		public void processRelationships(int count, long[] ids, long[] originIDs, long[] destIDs,
+				int[] typeCodes, List<String> types, int[] tagCodes, List<Set<String>> tags) {
+			batches++;
+			for(int i = 0; i < count; i++){
+				record("Relationship", null, types.get(typeCodes[i]), ids[i], NOT_DEFINED, tags.get(tagCodes[i]),
+						Collections.emptyMap(), originIDs[i], destIDs[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.ids;
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static edu.iastate.flowminer.test.BinaryFormatTest.sampleModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ChunkedSummary;
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.StreamAPI;
+import edu.iastate.flowminer.io.StreamAPI.Engine;
+import edu.iastate.flowminer.io.model.IOModel;
+
+/**
+ * Tests that each way {@link StreamAPI} can read an XML summary delivers the
+ * same callbacks, including in chunks and however its numbers are written.
+ */
+public class StreamImportTest {
+	// Elements holding ids and references
+	private static final Pattern NUMBER = Pattern.compile("<(" + Schema.ELEMENT_ID + "|" + Schema.RELATIONSHIP_ORIGIN_ID + "|" 
+			+ Schema.RELATIONSHIP_DEST_ID + "|" + Schema.VAR_TYPE + ")>(-?)([0-9a-z]+)</\\1>");
+
+	private File summary, rewritten;
+	private long threshold;
+	private int chunkSize;
+
+	@Before
+	public void setUp() throws Throwable {
+		summary = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		ModelAPI.exportToFile(new NullProgressMonitor(), sampleModel(), summary.getAbsolutePath());
+		rewritten = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		threshold = ChunkedSummary.getThreshold();
+		chunkSize = ChunkedSummary.getChunkSize();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ChunkedSummary.setThreshold(threshold);
+		ChunkedSummary.setChunkSize(chunkSize);
+		summary.delete();
+		rewritten.delete();
+	}
+
+	@Test
+	public void staxMatchesVtd() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		for(boolean dependencyOrdered : new boolean[]{false, true}){
+			ModelAPI.exportToFile(mon, sampleModel(), summary.getAbsolutePath(), dependencyOrdered);
+			assertEquals(imported(summary), imported(mon, summary, null, Engine.STAX));
+		}
+	}
+
+	/**
+	 * Numbers too long to decode from the document's bytes, written with
+	 * character references, or in a multi-byte encoding, read the same as
+	 * they were written.
+	 */
+	@Test
+	public void numbersInAnyForm() throws Throwable {
+		List<String> expected = imported(summary);
+		String xml = read(summary);
+
+		Matcher m = NUMBER.matcher(xml);
+		StringBuffer zeros = new StringBuffer();
+		while(m.find()) m.appendReplacement(zeros, "<$1>$2000000000000000$3</$1>");
+		m.appendTail(zeros);
+		assertFalse("Rewrote numbers", xml.equals(zeros.toString()));
+		write(rewritten, zeros.toString(), StandardCharsets.UTF_8);
+		assertEquals(expected, imported(rewritten));
+
+		m = NUMBER.matcher(xml);
+		StringBuffer references = new StringBuffer();
+		while(m.find()){
+			StringBuilder digits = new StringBuilder();
+			for(char c : (m.group(2) + m.group(3)).toCharArray()) digits.append("&#").append((int) c).append(';');
+			m.appendReplacement(references, "<$1>" + digits + "</$1>");
+		}
+		m.appendTail(references);
+		write(rewritten, references.toString(), StandardCharsets.UTF_8);
+		assertEquals(expected, imported(rewritten));
+
+		write(rewritten, xml.replace("encoding=\"UTF-8\"", "encoding=\"UTF-16\""), StandardCharsets.UTF_16);
+		assertEquals(expected, imported(rewritten));
+	}
+
+	/**
+	 * With the smallest chunks the summary is cut after its library, so the
+	 * relationships are read apart from the elements they reference.
+	 */
+	@Test
+	public void chunked() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		for(boolean dependencyOrdered : new boolean[]{false, true}){
+			ModelAPI.exportToFile(mon, sampleModel(), summary.getAbsolutePath(), dependencyOrdered);
+			List<String> expected = imported(summary);
+			List<Long> ids = ids(ModelAPI.importFromFile(mon, summary.getAbsolutePath()));
+
+			ChunkedSummary.setThreshold(0);
+			ChunkedSummary.setChunkSize(1);
+			assertEquals(expected, imported(summary));
+			IOModel model = ModelAPI.importFromFile(mon, summary.getAbsolutePath());
+			assertEquals(ids, ids(model));
+			assertEquals(1, model.getLibrary().size());
+			assertEquals(2, model.getRelationship().size());
+			ChunkedSummary.setThreshold(threshold);
+			ChunkedSummary.setChunkSize(chunkSize);
+		}
+	}
+
+	/**
+	 * Without a monitor, imports run in a job with the job's monitor.
+	 */
+	@Test
+	public void withoutMonitor() throws Throwable {
+		List<String> expected = imported(summary);
+		assertEquals(expected, imported(null, summary, null, Engine.VTD));
+
+		ChunkedSummary.setThreshold(0);
+		assertEquals(expected, imported(null, summary, null, Engine.VTD));
+	}
+
+	/**
+	 * @return the XML of a gzipped UTF-8 summary
+	 */
+	static String read(File file) throws Exception {
+		InputStream in = new GZIPInputStream(new FileInputStream(file));
+		try{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for(int n; (n = in.read(buffer)) > 0;) out.write(buffer, 0, n);
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}finally{
+			in.close();
+		}
+	}
+
+	static void write(File file, String xml, Charset charset) throws Exception {
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+		try{
+			out.write(xml.getBytes(charset));
+		}finally{
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.ids;
+import static edu.iastate.flowminer.test.BinaryFormatTest.imported;
+import static edu.iastate.flowminer.test.BinaryFormatTest.sampleModel;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.ModelAPI;
+import edu.iastate.flowminer.io.SummaryIndex;
+import edu.iastate.flowminer.io.SummaryIndex.Entry;
+import edu.iastate.flowminer.io.model.ClassTypeElement;
+import edu.iastate.flowminer.io.model.Element;
+import edu.iastate.flowminer.io.model.IOModel;
+import edu.iastate.flowminer.io.model.LibraryElement;
+import edu.iastate.flowminer.io.model.PackageElement;
+
+/**
+ * Tests that an indexed summary reads like any other, and that each library
+ * and package it indexes can be read on its own.
+ */
+public class SummaryIndexTest {
+	private File plain, indexed;
+
+	@Before
+	public void setUp() throws Throwable {
+		plain = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		indexed = File.createTempFile("FlowMiner_" + System.currentTimeMillis(), ".xml.gz");
+		IOModel model = model();
+		ModelAPI.exportToFile(new NullProgressMonitor(), model, plain.getAbsolutePath(), false, false);
+		ModelAPI.exportToFile(new NullProgressMonitor(), model, indexed.getAbsolutePath(), false, true);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		plain.delete();
+		indexed.delete();
+	}
+
+	@Test
+	public void readsLikeAnyOther() throws Throwable {
+		assertEquals(imported(plain), imported(indexed));
+		assertNull(SummaryIndex.read(plain.getAbsolutePath()));
+	}
+
+	@Test
+	public void entries() throws Throwable {
+		SummaryIndex index = SummaryIndex.read(indexed.getAbsolutePath());
+		assertNotNull(index);
+		assertEquals(names(index.getLibraries()), sorted("l.jar", "m.jar"));
+		assertEquals(names(index.getPackages("l.jar")), sorted("p.q"));
+		assertEquals(names(index.getPackages("m.jar")), sorted("m", "m.n"));
+		assertEquals(5, index.getEntries().size());
+		assertEquals("m.jar", index.getPackage("m.jar", "m.n").getLibrary());
+		assertNull(index.getPackage("l.jar", "m.n"));
+	}
+
+	/**
+	 * Each entry reads the same subtree, with the same ids, as importing the
+	 * whole summary.
+	 */
+	@Test
+	public void importEntries() throws Throwable {
+		NullProgressMonitor mon = new NullProgressMonitor();
+		IOModel model = ModelAPI.importFromFile(mon, plain.getAbsolutePath());
+		SummaryIndex index = SummaryIndex.read(indexed.getAbsolutePath());
+		for(LibraryElement library : model.getLibrary()){
+			Entry libraryEntry = null;
+			for(Entry e : index.getLibraries()) if(e.getName().equals(library.getName())) libraryEntry = e;
+			assertEquals(library.getId(), libraryEntry.getId());
+			assertEquals(ids(library), ids(index.importEntry(mon, libraryEntry)));
+
+			for(PackageElement pkg : library.getPackages()){
+				Entry packageEntry = index.getPackage(library.getName(), pkg.getName());
+				List<Long> ids = ids(pkg);
+				assertEquals(ids, ids(index.importEntry(mon, packageEntry)));
+				for(long id : ids){
+					assertTrue(index.getEntriesContaining(id).contains(packageEntry));
+					assertTrue(index.getEntriesContaining(id).contains(libraryEntry));
+				}
+			}
+		}
+	}
+
+	/**
+	 * The sample model, with a second library of two packages.
+	 */
+	private static IOModel model(){
+		IOModel model = sampleModel();
+		LibraryElement library = new LibraryElement("m.jar");
+		model.getLibrary().add(library);
+		for(String name : new String[]{"m", "m.n"}){
+			PackageElement pkg = new PackageElement(name);
+			library.getPackages().add(pkg);
+			pkg.getType_class().add(new ClassTypeElement("A"));
+			pkg.getType_class().add(new ClassTypeElement("B"));
+		}
+		return model;
+	}
+
+	private static List<Long> ids(Element e){
+		List<Long> ids = new ArrayList<Long>();
+		BinaryFormatTest.ids(e, ids);
+		Collections.sort(ids);
+		return ids;
+	}
+
+	private static List<String> names(List<Entry> entries){
+		List<String> names = new ArrayList<String>();
+		for(Entry e : entries) names.add(e.getName());
+		Collections.sort(names);
+		return names;
+	}
+
+	private static List<String> sorted(String... names){
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, names);
+		Collections.sort(list);
+		return list;
+	}
+}
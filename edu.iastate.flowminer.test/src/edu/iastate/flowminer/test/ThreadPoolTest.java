@@ -0,0 +1,224 @@
+package edu.iastate.flowminer.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.common.ThreadPool;
+import edu.iastate.flowminer.io.common.ThreadPool.Work;
+
+/**
+ * Tests the pools shared by FlowMiner: that each kind of work runs on its
+ * own pool, that waiting on tasks from a pool thread does not starve the
+ * pool, that tasks submitted from a pool thread start in the order they were
+ * submitted, and that what a task throws is rethrown as it was thrown.
+ */
+public class ThreadPoolTest {
+	private static final long TIMEOUT = 60000;
+
+	@Test(timeout = TIMEOUT)
+	public void poolPerKindOfWork() throws Throwable {
+		for(Work work : Work.values()){
+			PoolName task = new PoolName();
+			ThreadPool.blockUntilAllComplete(true, ThreadPool.submit(work, task));
+			assertEquals("FlowMiner " + work.name().toLowerCase(), task.pool);
+		}
+
+		PoolName task = new PoolName();
+		ThreadPool.submitRunnablesBlocking(true, task);
+		assertEquals("FlowMiner cpu", task.pool);
+		task = new PoolName();
+		edu.iastate.flowminer.utility.ThreadPool.submitRunnablesBlocking(true, task);
+		assertEquals("FlowMiner cpu", task.pool);
+	}
+
+	/**
+	 * Tasks that each wait on more tasks than the pool has threads still
+	 * finish.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void nestedWaits() throws Throwable {
+		final int fanOut = Work.CPU.getParallelism() * 2 + 1;
+		final AtomicInteger ran = new AtomicInteger();
+		List<Runnable> outer = new ArrayList<Runnable>();
+		for(int i = 0; i < fanOut; i++){
+			outer.add(new Runnable(){
+				@Override
+				public void run() {
+					List<Runnable> inner = new ArrayList<Runnable>();
+					for(int k = 0; k < fanOut; k++){
+						inner.add(new Runnable(){
+							@Override
+							public void run() {
+								ran.incrementAndGet();
+							}
+						});
+					}
+					try{
+						ThreadPool.submitRunnablesBlocking(true, inner);
+					}catch(Throwable t){
+						throw new RuntimeException(t);
+					}
+				}
+			});
+		}
+		ThreadPool.submitRunnablesBlocking(true, outer);
+		assertEquals(fanOut * fanOut, ran.get());
+	}
+
+	/**
+	 * Every thread starts the tasks a pool thread submitted in the order
+	 * they were submitted, whether the submitting thread runs them itself
+	 * or others take them.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void tasksFromPoolThreadsStartFirstInFirstOut() throws Throwable {
+		for(final Work work : Work.values()){
+			final int tasks = 200;
+			final Map<Thread, List<Integer>> started = new ConcurrentHashMap<Thread, List<Integer>>();
+			final List<Future<?>> submitted = new ArrayList<Future<?>>();
+			Future<?> submitter = ThreadPool.submit(work, new Runnable(){
+				@Override
+				public void run() {
+					for(int i = 0; i < tasks; i++){
+						final int index = i;
+						submitted.add(ThreadPool.submit(work, new Runnable(){
+							@Override
+							public void run() {
+								List<Integer> order = started.get(Thread.currentThread());
+								if(order == null) started.put(Thread.currentThread(), order = new ArrayList<Integer>());
+								order.add(index);
+							}
+						}));
+					}
+				}
+			});
+			ThreadPool.blockUntilAllComplete(true, submitter);
+			ThreadPool.blockUntilAllComplete(true, new LinkedList<Future<?>>(submitted));
+
+			int total = 0;
+			for(List<Integer> order : started.values()){
+				for(int i = 1; i < order.size(); i++)
+					assertTrue(work + " started task " + order.get(i) + " after " + order.get(i - 1), order.get(i) > order.get(i - 1));
+				total += order.size();
+			}
+			assertEquals(tasks, total);
+		}
+	}
+
+	@Test(timeout = TIMEOUT)
+	public void rethrowsWhatTheTaskThrew() throws Throwable {
+		for(Work work : Work.values()){
+			// With a cause of its own type, which must not be taken for it
+			final IllegalStateException thrown = new IllegalStateException(work.name(), new IllegalStateException("cause"));
+			Future<?> f = ThreadPool.submit(work, new Runnable(){
+				@Override
+				public void run() {
+					throw thrown;
+				}
+			});
+			assertSame(thrown, caught(f));
+		}
+
+		final Error error = new AssertionError("error");
+		assertSame(error, caught(ThreadPool.submitRunnables(new Runnable(){
+			@Override
+			public void run() {
+				throw error;
+			}
+		})));
+	}
+
+	/**
+	 * A task failing because a future it waited on failed is rethrown as
+	 * what that future's task threw.
+	 */
+	@Test(timeout = TIMEOUT)
+	public void rethrowsCauseOfFailedWait() throws Throwable {
+		final IllegalStateException thrown = new IllegalStateException("inner");
+		final Future<?> inner = ThreadPool.submit(Work.CPU, new Runnable(){
+			@Override
+			public void run() {
+				throw thrown;
+			}
+		});
+		assertSame(thrown, caught(ThreadPool.submit(Work.IO, new Runnable(){
+			@Override
+			public void run() {
+				try{
+					ThreadPool.blockUntilAllComplete(true, inner);
+				}catch(RuntimeException e){
+					throw e;
+				}catch(Throwable t){
+					throw new RuntimeException(t);
+				}
+			}
+		})));
+
+		final CompletableFuture<Void> failed = new CompletableFuture<Void>();
+		failed.completeExceptionally(thrown);
+		assertSame(thrown, caughtByFlowMinerPool(new Runnable(){
+			@Override
+			public void run() {
+				failed.join();
+			}
+		}));
+
+		assertSame(thrown, caughtByFlowMinerPool(edu.iastate.flowminer.utility.ThreadPool.parallelFor(new ArrayList<Integer>(Arrays.asList(1)), 1, new Consumer<Integer>(){
+			@Override
+			public void accept(Integer i) {
+				throw thrown;
+			}
+		})));
+	}
+
+	private static Throwable caught(Future<?>... waitFor){
+		try{
+			ThreadPool.blockUntilAllComplete(true, waitFor);
+		}catch(Throwable t){
+			return t;
+		}
+		fail("Nothing was thrown");
+		return null;
+	}
+
+	private static Throwable caughtByFlowMinerPool(Runnable task){
+		return caughtByFlowMinerPool(edu.iastate.flowminer.utility.ThreadPool.submitRunnables(task));
+	}
+
+	private static Throwable caughtByFlowMinerPool(Future<?>... waitFor){
+		try{
+			edu.iastate.flowminer.utility.ThreadPool.blockUntilAllComplete(true, waitFor);
+		}catch(Throwable t){
+			return t;
+		}
+		fail("Nothing was thrown");
+		return null;
+	}
+
+	/**
+	 * Records the name of the thread it ran on, without its number.
+	 */
+	private static class PoolName implements Runnable{
+		volatile String pool;
+
+		@Override
+		public void run() {
+			pool = Thread.currentThread().getName().replaceFirst(" [0-9]+$", "");
+		}
+	}
+}
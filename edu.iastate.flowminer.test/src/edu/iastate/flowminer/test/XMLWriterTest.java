@@ -0,0 +1,90 @@
+package edu.iastate.flowminer.test;
+
+import static edu.iastate.flowminer.test.BinaryFormatTest.sampleModel;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.iastate.flowminer.io.Schema;
+import edu.iastate.flowminer.io.common.XMLWriter;
+import edu.iastate.flowminer.io.model.IOModel;
+
+/**
+ * Tests that {@link XMLWriter} encodes exactly as an
+ * {@link OutputStreamWriter} for UTF-8 does, however its buffer is filled,
+ * and that writing a model to a string matches streaming it.
+ */
+public class XMLWriterTest {
+	@Test
+	public void encodesLikeOutputStreamWriter() throws Exception {
+		String[] samples = {"", "plain", "\u00e9\u0800\uffff", "\ud83d\ude00",
+			// Unpaired surrogates
+			"\ud83d", "\ude00", "a\ud83db", "\ud83d\ud83d\ude00", "\ude00\ud83d"};
+		for(String s : samples) assertEncoded(s);
+
+		Random random = new Random(1);
+		for(int i = 0; i < 200; i++){
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(300);
+			for(int k = 0; k < length; k++){
+				switch(random.nextInt(4)){
+				case 0: sb.append((char) random.nextInt(0x80)); break;
+				case 1: sb.append((char) (0xD800 + random.nextInt(0x800))); break;
+				default: sb.append((char) random.nextInt(Character.MAX_VALUE + 1));
+				}
+			}
+			assertEncoded(sb.toString());
+		}
+	}
+
+	@Test
+	public void convertToStringMatchesStream() {
+		IOModel model = sampleModel();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		XMLWriter wr = new XMLWriter(bytes, 16);
+		model.convert(wr, Schema.IOMODEL);
+		wr.flush();
+
+		StringBuilder sb = new StringBuilder();
+		model.convert(sb, Schema.IOMODEL);
+		assertEquals(new String(bytes.toByteArray(), StandardCharsets.UTF_8), sb.toString());
+	}
+
+	/**
+	 * Write the string whole, a character at a time and split in two,
+	 * through the smallest buffer, and compare with OutputStreamWriter.
+	 */
+	private static void assertEncoded(String s) throws Exception {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8);
+		writer.write(s);
+		writer.close();
+
+		ByteArrayOutputStream whole = new ByteArrayOutputStream();
+		XMLWriter wr = new XMLWriter(whole, 16);
+		wr.append(s);
+		wr.close();
+		assertArrayEquals(s, expected.toByteArray(), whole.toByteArray());
+
+		ByteArrayOutputStream chars = new ByteArrayOutputStream();
+		wr = new XMLWriter(chars, 16);
+		for(int i = 0; i < s.length(); i++) wr.append(s.charAt(i));
+		wr.close();
+		assertArrayEquals(s, expected.toByteArray(), chars.toByteArray());
+
+		ByteArrayOutputStream split = new ByteArrayOutputStream();
+		wr = new XMLWriter(split, 16);
+		int at = s.length() / 2;
+		wr.append(s.substring(0, at));
+		wr.append(s.substring(at));
+		wr.close();
+		assertArrayEquals(s, expected.toByteArray(), split.toByteArray());
+	}
+}
@@ -3,6 +3,8 @@ package edu.iastate.flowminer;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 
+import edu.iastate.flowminer.utility.JobTrace;
+
 public class Activator implements BundleActivator {
 
 	private static BundleContext context;
@@ -17,6 +19,7 @@ public class Activator implements BundleActivator {
 	 */
 	public void start(BundleContext bundleContext) throws Exception {
 		Activator.context = bundleContext;
+		JobTrace.startIfRequested();
 	}
 
 	/*
@@ -43,6 +43,7 @@ import edu.iastate.flowminer.exporter.Exporter;
 import edu.iastate.flowminer.log.Log;
 import edu.iastate.flowminer.miner.Miner;
 import edu.iastate.flowminer.schema.ISUSchema;
+import edu.iastate.flowminer.utility.JobTrace;
 
 public class MineAndExport extends FlowMinerAction {
 	/**
@@ -181,6 +182,8 @@ public class MineAndExport extends FlowMinerAction {
 					} catch (CoreException e) {
 						Log.warning("Unable to delete temporary project", e);
 					}
+					// Again after mining, to include the export
+					JobTrace.writeIfRequested();
 				}
 				return new Status(IStatus.OK, Log.pluginid, null);
 			}
@@ -41,6 +41,8 @@ import edu.iastate.flowminer.io.model.IOModel;
 import edu.iastate.flowminer.io.model.InterfaceTypeElement;
 import edu.iastate.flowminer.io.model.LibraryElement;
 import edu.iastate.flowminer.io.model.MethodElement;
+import edu.iastate.flowminer.io.model.ModelBuilder;
+import edu.iastate.flowminer.io.model.ModelBuilder.Buffer;
 import edu.iastate.flowminer.io.model.NonPrimitiveTypeElement;
 import edu.iastate.flowminer.io.model.PackageElement;
 import edu.iastate.flowminer.io.model.ParamVarElement;
@@ -99,9 +101,11 @@ public class AtlasExporter extends Exporter{
 			Log.info("AtlasExporter nesting model elements and adding structural references");
 			SubMonitor sm3 = SubMonitor.convert(sm.newChild(33549), 100);
 			try{
-				nestElements(sm3.newChild(25), futures, model, nodesToExport);
-				addStructuralReferences(sm3.newChild(25), futures, nodesToExport);
+				ModelBuilder builder = new ModelBuilder();
+				nestElements(sm3.newChild(25), futures, builder, model, nodesToExport);
+				addStructuralReferences(sm3.newChild(25), futures, builder, nodesToExport);
 				ThreadPool.blockUntilAllComplete(true, futures);
+				builder.merge();
 			}finally{
 				sm3.done();
 			}
@@ -430,7 +434,7 @@ public class AtlasExporter extends Exporter{
 		}})[0]);
 	}
 	
-	private void nestElements(IProgressMonitor mon, List<Future<?>> futures, final IOModel model, final AtlasSet<Node> nodesToExport){
+	private void nestElements(IProgressMonitor mon, List<Future<?>> futures, final ModelBuilder builder, final IOModel model, final AtlasSet<Node> nodesToExport){
 		if(mon.isCanceled()) return;
 		final SubMonitor sm = SubMonitor.convert(mon, exported.keySet().size());
 		try{
@@ -449,16 +453,16 @@ public class AtlasExporter extends Exporter{
 			 * Nest top-level classes under packages
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nodesToExport.taggedWithAll(Attr.Node.IS_TOP_LEVEL, XCSG.Java.Class))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					PackageElement pe = (PackageElement) exported.get(ge2);
 					NonPrimitiveTypeElement cte = (NonPrimitiveTypeElement) exported.get(ge);
 					if(cte instanceof ClassTypeElement){
-						pe.getType_class().add((ClassTypeElement) cte);
+						buffer.add(pe.getType_class(), (ClassTypeElement) cte);
 					}else{
-						pe.getType_enum().add((EnumTypeElement) cte);
+						buffer.add(pe.getType_enum(), (EnumTypeElement) cte);
 					}
 					sm.worked(1);
 				}
@@ -468,12 +472,12 @@ public class AtlasExporter extends Exporter{
 			 * Nest top-level interfaces under packages
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nodesToExport.taggedWithAll(Attr.Node.IS_TOP_LEVEL, XCSG.Java.Interface))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					PackageElement pe = (PackageElement) exported.get(ge2);
-					pe.getType_interface().add((InterfaceTypeElement)exported.get(ge));
+					buffer.add(pe.getType_interface(), (InterfaceTypeElement)exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -482,12 +486,12 @@ public class AtlasExporter extends Exporter{
 			 * Nest top-level annotations under packages
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nodesToExport.taggedWithAll(Attr.Node.IS_TOP_LEVEL, XCSG.Java.Annotation))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					PackageElement pe = (PackageElement) exported.get(ge2);
-					pe.getType_annotation().add((AnnotationTypeElement)exported.get(ge));
+					buffer.add(pe.getType_annotation(), (AnnotationTypeElement)exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -496,7 +500,7 @@ public class AtlasExporter extends Exporter{
 			 * Nest methods under types
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nodesToExport.taggedWithAny(XCSG.Method))){
 					MethodElement me = (MethodElement) exported.get(ge);
@@ -505,9 +509,9 @@ public class AtlasExporter extends Exporter{
 					Node ge2 = decEdge.getNode(EdgeDirection.FROM);
 					NonPrimitiveTypeElement te = (NonPrimitiveTypeElement) exported.get(ge2);
 					if(ge.tags().contains(XCSG.Constructor)){
-						te.getConstructor().add((ConstructorElement) me);
+						buffer.add(te.getConstructor(), (ConstructorElement) me);
 					}else{
-						te.getMethod().add(me);
+						buffer.add(te.getMethod(), me);
 					}
 					sm.worked(1);
 				}
@@ -519,16 +523,16 @@ public class AtlasExporter extends Exporter{
 			 * Nest nested classes under types 
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nested.taggedWithAny(XCSG.Java.Class))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					NonPrimitiveTypeElement te2 = (NonPrimitiveTypeElement) exported.get(ge2);
 					NonPrimitiveTypeElement cte = (NonPrimitiveTypeElement) exported.get(ge);
 					if(cte instanceof ClassTypeElement){
-						te2.getNestedClass().add((ClassTypeElement) cte);
+						buffer.add(te2.getNestedClass(), (ClassTypeElement) cte);
 					}else{
-						te2.getNestedEnum().add((EnumTypeElement) cte);
+						buffer.add(te2.getNestedEnum(), (EnumTypeElement) cte);
 					}
 					sm.worked(1);
 				}
@@ -538,12 +542,12 @@ public class AtlasExporter extends Exporter{
 			 * Nest nested interfaces under types 
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nested.taggedWithAny(XCSG.Java.Interface))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					NonPrimitiveTypeElement te2 = (NonPrimitiveTypeElement) exported.get(ge2);
-					te2.getNestedInterface().add((InterfaceTypeElement)exported.get(ge));
+					buffer.add(te2.getNestedInterface(), (InterfaceTypeElement)exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -552,12 +556,12 @@ public class AtlasExporter extends Exporter{
 			 * Nest nested annotations under types 
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nested.taggedWithAny(XCSG.Java.Annotation))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					NonPrimitiveTypeElement te2 = (NonPrimitiveTypeElement) exported.get(ge2);
-					te2.getNestedAnnotation().add((AnnotationTypeElement)exported.get(ge));	
+					buffer.add(te2.getNestedAnnotation(), (AnnotationTypeElement)exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -566,13 +570,13 @@ public class AtlasExporter extends Exporter{
 			 * Nest fields under types
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(variables.taggedWithAny(XCSG.Field))){
 					FieldVarElement fe = (FieldVarElement) exported.get(ge);
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					NonPrimitiveTypeElement te = (NonPrimitiveTypeElement) exported.get(ge2);
-					te.getField().add(fe);
+					buffer.add(te.getField(), fe);
 					sm.worked(1);
 				}
 			}})[0]);
@@ -581,13 +585,13 @@ public class AtlasExporter extends Exporter{
 			 * Nest enum constants under types
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(variables.taggedWithAny(XCSG.Java.EnumConstant))){
 					EnumConstantElement ee = (EnumConstantElement) exported.get(ge);
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					EnumTypeElement te = (EnumTypeElement) exported.get(ge2);
-					te.getEnumConstant().add(ee);
+					buffer.add(te.getEnumConstant(), ee);
 					sm.worked(1);
 				}
 			}})[0]);
@@ -596,13 +600,13 @@ public class AtlasExporter extends Exporter{
 			 * Nest params under methods
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(variables.taggedWithAny(XCSG.Parameter))){
 					ParamVarElement pe = (ParamVarElement) exported.get(ge);
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					MethodElement me = (MethodElement) exported.get(ge2);
-					me.getParam().add(pe);
+					buffer.add(me.getParam(), pe);
 					sm.worked(1);
 				}
 			}})[0]);
@@ -626,16 +630,16 @@ public class AtlasExporter extends Exporter{
 			 * Nest local classes under methods
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(local.taggedWithAny(XCSG.Java.Class))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					MethodElement me = (MethodElement) exported.get(ge2);
 					NonPrimitiveTypeElement cte = (NonPrimitiveTypeElement) exported.get(ge);
 					if(cte instanceof ClassTypeElement){
-						me.getLocal_class().add((ClassTypeElement) cte);
+						buffer.add(me.getLocal_class(), (ClassTypeElement) cte);
 					}else{
-						me.getLocal_enum().add((EnumTypeElement) cte);
+						buffer.add(me.getLocal_enum(), (EnumTypeElement) cte);
 					}
 					sm.worked(1);
 				}
@@ -645,12 +649,12 @@ public class AtlasExporter extends Exporter{
 			 * Nest local interfaces under methods
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(local.taggedWithAny(XCSG.Java.Interface))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					MethodElement me = (MethodElement) exported.get(ge2);
-					me.getLocal_interface().add((InterfaceTypeElement)exported.get(ge));
+					buffer.add(me.getLocal_interface(), (InterfaceTypeElement)exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -659,12 +663,12 @@ public class AtlasExporter extends Exporter{
 			 * Nest local enums under methods
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(local.taggedWithAny(XCSG.Java.Enum))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					MethodElement me = (MethodElement) exported.get(ge2);
-					me.getLocal_enum().add((EnumTypeElement)exported.get(ge));
+					buffer.add(me.getLocal_enum(), (EnumTypeElement)exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -673,12 +677,12 @@ public class AtlasExporter extends Exporter{
 			 * Nest local annotations under methods
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(local.taggedWithAny(XCSG.Java.Annotation))){
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					MethodElement me = (MethodElement) exported.get(ge2);
-					me.getLocal_annotation().add((AnnotationTypeElement)exported.get(ge));
+					buffer.add(me.getLocal_annotation(), (AnnotationTypeElement)exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -702,10 +706,10 @@ public class AtlasExporter extends Exporter{
 			 *  Nest primitive types under IOModel
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nodesToExport.taggedWithAny(XCSG.Void, Attr.Node.NULL_TYPE, XCSG.Primitive))){
-					model.getPrimitive().add((PrimitiveTypeElement) exported.get(ge));
+					buffer.add(model.getPrimitive(), (PrimitiveTypeElement) exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -714,13 +718,13 @@ public class AtlasExporter extends Exporter{
 			 * Nest packages under libraries
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nodesToExport.taggedWithAny(XCSG.Package))){
 					PackageElement pe = (PackageElement) exported.get(ge);
 					Node ge2 = decG.edges(ge, NodeDirection.IN).getFirst().getNode(EdgeDirection.FROM);
 					LibraryElement le = (LibraryElement) exported.get(ge2);
-					le.getPackages().add(pe);
+					buffer.add(le.getPackages(), pe);
 					sm.worked(1);
 				}
 			}})[0]);
@@ -729,10 +733,10 @@ public class AtlasExporter extends Exporter{
 			 * Nest libraries under IOModel
 			 */
 			if(sm.isCanceled()) return;
-			futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+			futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 				if(sm.isCanceled()) return;
 				for(Node ge : new AtlasHashSet<Node>(nodesToExport.taggedWithAny(XCSG.Library, XCSG.Project))){
-					model.getLibrary().add((LibraryElement) exported.get(ge));
+					buffer.add(model.getLibrary(), (LibraryElement) exported.get(ge));
 					sm.worked(1);
 				}
 			}})[0]);
@@ -741,10 +745,10 @@ public class AtlasExporter extends Exporter{
 		}
 	}
 	
-	private void addStructuralReferences(final IProgressMonitor mon, List<Future<?>> futures, final AtlasSet<Node> nodesToExport){
+	private void addStructuralReferences(final IProgressMonitor mon, List<Future<?>> futures, final ModelBuilder builder, final AtlasSet<Node> nodesToExport){
 		if(mon.isCanceled()) return;
 		
-		futures.add(ThreadPool.submitRunnables(new Runnable(){public void run() {
+		futures.add(ThreadPool.submitRunnables(new Runnable(){Buffer buffer = builder.newBuffer(); public void run() {
 			AtlasSet<Node> workSet = new AtlasHashSet<Node>(
 					nodesToExport.taggedWithAny(XCSG.Variable, XCSG.ReturnValue, XCSG.Method, XCSG.Type));
 			SubMonitor sm = SubMonitor.convert(mon, (int) workSet.size());
@@ -775,7 +779,7 @@ public class AtlasExporter extends Exporter{
 							MethodElement me = (MethodElement) exported.get(ge);
 							Node overridden = overridesEdge.getNode(EdgeDirection.TO);
 							MethodElement overriddenElement = (MethodElement) exported.get(overridden);
-							me.getOverrides().add(overriddenElement.getId());
+							buffer.add(me.getOverrides(), overriddenElement.getId());
 						}
 					}
 					else if(geTags.contains(XCSG.Java.Class) || geTags.contains(XCSG.Java.Interface) || geTags.contains(XCSG.Java.Annotation)){
@@ -795,7 +799,7 @@ public class AtlasExporter extends Exporter{
 							if(ancestor.taggedWith(XCSG.Java.Class)){
 								te.setExtend(ancestorElement.getId());
 							}else {
-								te.getImplement().add(ancestorElement.getId());
+								buffer.add(te.getImplement(), ancestorElement.getId());
 							}
 						}
 					}
@@ -69,6 +69,21 @@ public abstract class Exporter {
 	 * @throws Throwable 
 	 */
 	public static void exportSummary(final IProgressMonitor mon, final SummarySchema schema, final String path) throws Throwable{
+		exportSummary(mon, schema, path, false);
+	}
+	
+	/**
+	 * Export the requested summary schema to its compressed XML file.
+	 * 
+	 * ASSERT: You have already mined the given summary schema using Miner.
+	 * 
+	 * @param toExport
+	 * @param destinationFile
+	 * @param dependencyOrdered number elements so that everything an element
+	 * refers to comes before it, letting StreamAPI import without deferring
+	 * @throws Throwable 
+	 */
+	public static void exportSummary(final IProgressMonitor mon, final SummarySchema schema, final String path, final boolean dependencyOrdered) throws Throwable{
 		final String schemaName = schema.getClass().getSimpleName();
 		class JobExporter{
 			IProgressMonitor monitor;
@@ -121,7 +136,7 @@ public abstract class Exporter {
 					msg = "Exporting model to file";
 					Log.info(msg);
 					sm.setTaskName(msg);
-					edu.iastate.flowminer.io.ModelAPI.exportToFile(sm.newChild(74073), model, path);
+					edu.iastate.flowminer.io.ModelAPI.exportToFile(sm.newChild(74073), model, path, dependencyOrdered);
 					
 					msg = "Export finished";
 					Log.info(msg);
@@ -1,6 +1,7 @@
 package edu.iastate.flowminer.importer;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -55,6 +56,26 @@ public class ISUImporter extends Importer{
 		return true;
 	}
 	@Override
+	protected boolean processRelationships(Map<Long, GraphElement> imported, int count, long[] ids, long[] originIDs, long[] destIDs,
+			int[] typeCodes, List<String> types, int[] tagCodes, List<Set<String>> tags) {
+		// Look up the tags and name of each schema type once per batch rather than once per edge
+		String[][] typeTags = new String[types.size()][];
+		String[] typeNames = new String[types.size()];
+		for(int t = 0; t < types.size(); t++){
+			Set<String> s = ISUSchema.getTags(types.get(t));
+			typeTags[t] = s.toArray(new String[s.size()]);
+			typeNames[t] = ISUSchema.getDisplayName(types.get(t));
+		}
+		
+		for(int i = 0; i < count; i++){
+			GraphElement match = createBlankEdge(imported.get(originIDs[i]), imported.get(destIDs[i]));
+			int type = typeCodes[i];
+			for(String s : typeTags[type]) match.tag(s);
+			match.putAttr(XCSG.name, typeNames[type]);
+		}
+		return true;
+	}
+	@Override
 	protected boolean processAnnotation(Map<Long, GraphElement> imported,
 			String name, long id,
 			long parentID, Set<String> tag, Map<String, String> attr,
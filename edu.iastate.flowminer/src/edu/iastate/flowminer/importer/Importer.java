@@ -3,7 +3,9 @@ package edu.iastate.flowminer.importer;
 import static com.ensoftcorp.atlas.core.script.Common.typeSelect;
 import static com.ensoftcorp.atlas.core.script.Common.universe;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,9 +33,11 @@ import com.ensoftcorp.atlas.core.xcsg.XCSG;
 import com.ensoftcorp.atlas.java.core.script.Common;
 
 import edu.iastate.flowminer.exception.FlowMinerException;
+import edu.iastate.flowminer.io.ImportFilter;
 import edu.iastate.flowminer.io.Schema;
 import edu.iastate.flowminer.io.StreamAPI;
 import edu.iastate.flowminer.io.StreamAPI.StreamImporter.Param;
+import edu.iastate.flowminer.io.common.DenseIdMap;
 import edu.iastate.flowminer.log.Log;
 import edu.iastate.flowminer.schema.ISUSchema;
 import edu.iastate.flowminer.schema.SummarySchema;
@@ -155,6 +159,21 @@ public abstract class Importer {
 	 * @throws Throwable
 	 */
 	public static Q importSummary(final IProgressMonitor mon, final boolean existingIndex, final SummarySchema schema, final String path) throws Throwable{
+		return importSummary(mon, existingIndex, schema, path, null);
+	}
+	
+	/**
+	 * Import just the part of the summary selected by the filter. Types outside
+	 * the selection are imported without their members where selected elements
+	 * refer to them.
+	 * 
+	 * @param mon
+	 * @param schema
+	 * @param filter may be null to import everything
+	 * @return
+	 * @throws Throwable
+	 */
+	public static Q importSummary(final IProgressMonitor mon, final boolean existingIndex, final SummarySchema schema, final String path, final ImportFilter filter) throws Throwable{
 		final Q[] result = new Q[1];
 		final String what = schema.getClass().getSimpleName() + ": " + path;
 		
@@ -180,11 +199,17 @@ public abstract class Importer {
 					
 					sm.setTaskName("Streaming graph schema from XML into Index");
 					StreamImporter si = new StreamImporter(atlasImporter, schemaImporter);
-					edu.iastate.flowminer.io.StreamAPI.importFromFile(sm, file, si);
+					edu.iastate.flowminer.io.StreamAPI.importFromFile(sm, file, si, filter);
 					
 					sm.setTaskName("Collecting result");
-					AtlasSet<GraphElement> importedNodes = new AtlasHashSet<GraphElement>();
-					AtlasSet<GraphElement> importedEdges = new AtlasHashSet<GraphElement>();
+					AtlasSet<GraphElement> importedNodes, importedEdges;
+					if(si.expectedNodes > -1){
+						importedNodes = new AtlasHashSet<GraphElement>(Graph.U, (int) Math.min(si.expectedNodes, Integer.MAX_VALUE - 8));
+						importedEdges = new AtlasHashSet<GraphElement>(Graph.U, (int) Math.min(si.expectedEdges, Integer.MAX_VALUE - 8));
+					}else{
+						importedNodes = new AtlasHashSet<GraphElement>();
+						importedEdges = new AtlasHashSet<GraphElement>();
+					}
 					for(GraphElement ge : si.imported.values()){
 						if(Graph.U.nodes().contains(ge)) importedNodes.add(ge);
 						if(Graph.U.edges().contains(ge)){
@@ -523,6 +548,17 @@ public abstract class Importer {
 			long parentID, Set<String> tag, Map<String, String> attr,
 			long originID, long destID);
 	
+	/**
+	 * Process a batch of relationships without names or attributes, see
+	 * {@link StreamAPI.BatchStreamImporter#processRelationships}.
+	 * 
+	 * @return false to have each relationship passed to processRelationship instead
+	 */
+	protected boolean processRelationships(Map<Long,GraphElement> imported, int count, long[] ids, long[] originIDs, long[] destIDs,
+			int[] typeCodes, List<String> types, int[] tagCodes, List<Set<String>> tags){
+		return false;
+	}
+	
 	protected abstract boolean processThis(Map<Long,GraphElement> imported, String name, long id,
 			long parentID, Set<String> tag, Map<String, String> attr,
 			long type);
@@ -532,10 +568,14 @@ public abstract class Importer {
 			long type, int dimension);
 	
 	
-	private static class StreamImporter implements StreamAPI.StreamImporter{
+	private static class StreamImporter implements StreamAPI.BatchStreamImporter, StreamAPI.DenseStreamImporter,
+			StreamAPI.SizedStreamImporter{
 		Importer atlasImporter;
 		Importer schemaImporter;
-		private final Map<Long, GraphElement> imported = new CompactHashMap<Long, GraphElement>();
+		// Indexed by id once a compacted summary gives its largest id
+		private final DenseIdMap<GraphElement> imported = new DenseIdMap<GraphElement>();
+		// From the summary header, if it records counts
+		private long expectedNodes = -1, expectedEdges = -1;
 		
 		public StreamImporter(Importer atlasImporter, Importer schemaImporter){
 			this.atlasImporter = atlasImporter;
@@ -609,6 +649,24 @@ public abstract class Importer {
 			}
 		}
 
+		@Override
+		public final void processMaxID(long maxID) {
+			imported.setMaxID(maxID);
+		}
+
+		@Override
+		public final void processCounts(Map<String, Long> counts) {
+			long elements = 0;
+			for(String kind : Schema.Count.ELEMENT_KINDS){
+				Long count = counts.get(kind);
+				if(count != null) elements += count;
+			}
+			Long relationships = counts.get(Schema.Count.RELATIONSHIP);
+			expectedEdges = relationships == null ? 0 : relationships;
+			expectedNodes = elements - expectedEdges;
+			imported.ensureCapacity((int) Math.min(elements, Integer.MAX_VALUE - 8));
+		}
+
 		@Override
 		public final void processIOModel(String author, Date created) {
 			// Version check
@@ -668,6 +726,18 @@ public abstract class Importer {
 			}
 		}
 
+		@Override
+		public final void processRelationships(int count, long[] ids, long[] originIDs, long[] destIDs, 
+				int[] typeCodes, List<String> types, int[] tagCodes, List<Set<String>> tags) {
+			if(atlasImporter.processRelationships(imported, count, ids, originIDs, destIDs, typeCodes, types, tagCodes, tags)) return;
+			if(schemaImporter != null && schemaImporter.processRelationships(imported, count, ids, originIDs, destIDs, typeCodes, types, tagCodes, tags)) return;
+			
+			Map<String, String> attr = Collections.emptyMap();
+			for(int i = 0; i < count; i++){
+				processRelationship(null, types.get(typeCodes[i]), ids[i], NOT_DEFINED, tags.get(tagCodes[i]), attr, originIDs[i], destIDs[i]);
+			}
+		}
+
 		@Override
 		public void processThis(String name, long id,
 				long parentID, Set<String> tag, Map<String, String> attr,
@@ -11,6 +11,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
@@ -41,6 +42,9 @@ import edu.iastate.flowminer.utility.ThreadPool;
 import net.ontopia.utils.CompactHashSet;
 
 public class ISUMiner extends Miner{
+	// Fewest methods or call sites worth mining as a task of their own
+	private static final int MINING_CHUNK = 16;
+	
 	private Set<SummaryEdge> summaryEdges = Collections.synchronizedSet(new CompactHashSet<SummaryEdge>());
 	
 	/**
@@ -386,31 +390,29 @@ public class ISUMiner extends Miner{
 		final SubMonitor sm = SubMonitor.convert(mon, (int) concreteMethods.eval().nodes().size());
 		final Graph dfLocalContextG = localDFContext.eval();
 		
-		for(final GraphElement concreteMethod : concreteMethods.eval().nodes()){
-			futures.add(ThreadPool.submitRunnables(new CRunnable(sm, new Runnable(){public void run() {
-				AtlasSet<Node> cmDecs = 
-						concreteMethodDecs.intersection(containsContext.forward(toQ(toGraph(concreteMethod)))).eval().nodes();
-				
-				AtlasSet<GraphElement> mKeyNodes = new AtlasHashSet<GraphElement>(new IntersectionSet<GraphElement>(cmDecs, keyNodes));
-				LinkedList<SummaryEdge> toAdd = new LinkedList<SummaryEdge>();
+		futures.add(ThreadPool.parallelFor(sm, concreteMethods.eval().nodes(), MINING_CHUNK, new Consumer<GraphElement>(){public void accept(GraphElement concreteMethod) {
+			AtlasSet<Node> cmDecs = 
+					concreteMethodDecs.intersection(containsContext.forward(toQ(toGraph(concreteMethod)))).eval().nodes();
+			
+			AtlasSet<GraphElement> mKeyNodes = new AtlasHashSet<GraphElement>(new IntersectionSet<GraphElement>(cmDecs, keyNodes));
+			LinkedList<SummaryEdge> toAdd = new LinkedList<SummaryEdge>();
 
-				AtlasSet<GraphElement> arrayRef = new AtlasHashSet<GraphElement>();
-				AtlasSet<GraphElement> arrayIdx = new AtlasHashSet<GraphElement>();
-				for(GraphElement ge : mKeyNodes){
-					arrayRef.clear();
-					arrayIdx.clear();
-					
-					// Find other key nodes that this node reaches
-					AtlasSet<Node> reached = localFlow(dfLocalContextG, ge, mKeyNodes, arrayRef, arrayIdx);
-					
-					for(GraphElement ge2 : reached){
-						toAdd.add(new SummaryEdge(ge, ge2, ISUSchema.Edge.FLOW_LOCAL, ISUSchema.EDGE_FLOW_LOCAL_TAGS, null));
-					}
-				}
+			AtlasSet<GraphElement> arrayRef = new AtlasHashSet<GraphElement>();
+			AtlasSet<GraphElement> arrayIdx = new AtlasHashSet<GraphElement>();
+			for(GraphElement ge : mKeyNodes){
+				arrayRef.clear();
+				arrayIdx.clear();
 				
-				if(!toAdd.isEmpty()) summaryEdges.addAll(toAdd);
-			}}))[0]);
-		}
+				// Find other key nodes that this node reaches
+				AtlasSet<Node> reached = localFlow(dfLocalContextG, ge, mKeyNodes, arrayRef, arrayIdx);
+				
+				for(GraphElement ge2 : reached){
+					toAdd.add(new SummaryEdge(ge, ge2, ISUSchema.Edge.FLOW_LOCAL, ISUSchema.EDGE_FLOW_LOCAL_TAGS, null));
+				}
+			}
+			
+			if(!toAdd.isEmpty()) summaryEdges.addAll(toAdd);
+		}}));
 	}
 	
 	private void mineArrayFlows(IProgressMonitor mon, List<Future<?>> futures, final UniverseManipulator um){		
@@ -536,72 +538,70 @@ public class ISUMiner extends Miner{
 		final AtlasSet<Node> singletonCallsiteSet = resolvableCallsites.eval().nodes();
 		
 		// Find the features of this method's signature
-		for(final GraphElement dfi : callsiteSet){
-			futures.add(ThreadPool.submitRunnables(new CRunnable(sm, new Runnable(){public void run() {
-				boolean isSingleton = singletonCallsiteSet.contains(dfi);
-				
-				// Find the local stack items for this invocation
-				GraphElement dfiThis = null;
-				GraphElement dfiThisEdge = identityPassedToContext.eval().edges(dfi, NodeDirection.IN).getFirst();
-				if(dfiThisEdge != null) dfiThis = dfiThisEdge.getNode(EdgeDirection.FROM);
-				
-				AtlasSet<GraphElement> dfiParamEdges = parameterPassedToContext.eval().edges(dfi, NodeDirection.IN);
-				AtlasSet<Node> dfiParams = new AtlasHashSet<Node>(Graph.U, (int) dfiParamEdges.size());
-				for(GraphElement dfiParamEdge : dfiParamEdges) dfiParams.add(dfiParamEdge.getNode(EdgeDirection.FROM));
+		futures.add(ThreadPool.parallelFor(sm, callsiteSet, MINING_CHUNK, new Consumer<GraphElement>(){public void accept(GraphElement dfi) {
+			boolean isSingleton = singletonCallsiteSet.contains(dfi);
+			
+			// Find the local stack items for this invocation
+			GraphElement dfiThis = null;
+			GraphElement dfiThisEdge = identityPassedToContext.eval().edges(dfi, NodeDirection.IN).getFirst();
+			if(dfiThisEdge != null) dfiThis = dfiThisEdge.getNode(EdgeDirection.FROM);
+			
+			AtlasSet<GraphElement> dfiParamEdges = parameterPassedToContext.eval().edges(dfi, NodeDirection.IN);
+			AtlasSet<Node> dfiParams = new AtlasHashSet<Node>(Graph.U, (int) dfiParamEdges.size());
+			for(GraphElement dfiParamEdge : dfiParamEdges) dfiParams.add(dfiParamEdge.getNode(EdgeDirection.FROM));
 
-				// Find the features of the destination method's signature
-				GraphElement dMethod = invokedSignatureContext.eval().edges(dfi, NodeDirection.OUT).getFirst().getNode(EdgeDirection.TO);
-				AtlasSet<Node> dDeclared = new AtlasHashSet<Node>(containsContext.forwardStep(toQ(toGraph(dMethod))).eval().nodes());
-				GraphElement dReturn = dDeclared.taggedWithAny(XCSG.ReturnValue).getFirst();
-				GraphElement dThis = dDeclared.taggedWithAny(XCSG.Identity).getFirst();
-				AtlasSet<Node> dParams = dDeclared.taggedWithAny(XCSG.Parameter);
+			// Find the features of the destination method's signature
+			GraphElement dMethod = invokedSignatureContext.eval().edges(dfi, NodeDirection.OUT).getFirst().getNode(EdgeDirection.TO);
+			AtlasSet<Node> dDeclared = new AtlasHashSet<Node>(containsContext.forwardStep(toQ(toGraph(dMethod))).eval().nodes());
+			GraphElement dReturn = dDeclared.taggedWithAny(XCSG.ReturnValue).getFirst();
+			GraphElement dThis = dDeclared.taggedWithAny(XCSG.Identity).getFirst();
+			AtlasSet<Node> dParams = dDeclared.taggedWithAny(XCSG.Parameter);
 
-				GraphElement ttsEdge = invokedTypeContext.eval().edges(dfi, NodeDirection.OUT).getFirst();
-				GraphElement dTTS = ttsEdge == null ? null:ttsEdge.getNode(EdgeDirection.TO);
-				
-				LinkedList<SummaryEdge> toAdd = new LinkedList<SummaryEdge>();
-				
-				if(dfiThis != null){
-					if(dThis == null) {
-						Log.warning("Missing dependencies", new FlowMinerException("Unable to find signature 'this' (the identity parameter) for:\n" + dMethod));
-						return;
-					}
-					if(isSingleton){
-						toAdd.add(new SummaryEdge(dfiThis, dThis, ISUSchema.Edge.FLOW_METHOD_RESOLVED, ISUSchema.EDGE_FLOW_METHOD_RESOLVED_TAGS));
-					} else{
-						toAdd.add(new SummaryEdge(dfiThis, dfi, ISUSchema.Edge.DYNAMIC_CALLSITE_THIS, ISUSchema.EDGE_DYNAMIC_CALLSITE_THIS_TAGS));
-					}
+			GraphElement ttsEdge = invokedTypeContext.eval().edges(dfi, NodeDirection.OUT).getFirst();
+			GraphElement dTTS = ttsEdge == null ? null:ttsEdge.getNode(EdgeDirection.TO);
+			
+			LinkedList<SummaryEdge> toAdd = new LinkedList<SummaryEdge>();
+			
+			if(dfiThis != null){
+				if(dThis == null) {
+					Log.warning("Missing dependencies", new FlowMinerException("Unable to find signature 'this' (the identity parameter) for:\n" + dMethod));
+					return;
 				}
-				
-				if(isSingleton && voidType != typeOfContext.eval().edges(dfi, NodeDirection.OUT).getFirst().getNode(EdgeDirection.TO)){
-					if(dReturn == null) {
-						Log.warning("Missing dependencies", new FlowMinerException("Unable to find signature return for:\n" + dMethod));
-						return;
-					}
-					toAdd.add(new SummaryEdge(dReturn, dfi, ISUSchema.Edge.FLOW_METHOD_RESOLVED, ISUSchema.EDGE_FLOW_METHOD_RESOLVED_TAGS));
+				if(isSingleton){
+					toAdd.add(new SummaryEdge(dfiThis, dThis, ISUSchema.Edge.FLOW_METHOD_RESOLVED, ISUSchema.EDGE_FLOW_METHOD_RESOLVED_TAGS));
+				} else{
+					toAdd.add(new SummaryEdge(dfiThis, dfi, ISUSchema.Edge.DYNAMIC_CALLSITE_THIS, ISUSchema.EDGE_DYNAMIC_CALLSITE_THIS_TAGS));
 				}
-				
-				for(GraphElement dfiParam : dfiParams){
-					GraphElement dParam = dParams.filter(XCSG.parameterIndex, dfiParam.getAttr(XCSG.parameterIndex)).getFirst();
-					if(dParam == null) {
-						Log.warning("Missing dependencies", new FlowMinerException("Unable to find signature param for:\n" + dfiParam + "\n" + dMethod));
-						return;
-					}
-					if(isSingleton){
-						toAdd.add(new SummaryEdge(dfiParam, dParam, ISUSchema.Edge.FLOW_METHOD_RESOLVED, ISUSchema.EDGE_FLOW_METHOD_RESOLVED_TAGS));
-					}else{
-						toAdd.add(new SummaryEdge(dfiParam, dfi, ISUSchema.Edge.DYNAMIC_CALLSITE_PARAM, ISUSchema.EDGE_DYNAMIC_CALLSITE_PARAM_TAGS));
-					}
+			}
+			
+			if(isSingleton && voidType != typeOfContext.eval().edges(dfi, NodeDirection.OUT).getFirst().getNode(EdgeDirection.TO)){
+				if(dReturn == null) {
+					Log.warning("Missing dependencies", new FlowMinerException("Unable to find signature return for:\n" + dMethod));
+					return;
 				}
-				
-				if(!isSingleton){
-					toAdd.add(new SummaryEdge(dfi, dTTS, ISUSchema.Edge.DYNAMIC_CALLSITE_TYPE, ISUSchema.EDGE_DYNAMIC_CALLSITE_TYPE_TAGS));
-					toAdd.add(new SummaryEdge(dfi, dMethod, ISUSchema.Edge.DYNAMIC_CALLSITE_SIGNATURE, ISUSchema.EDGE_DYNAMIC_CALLSITE_SIGNATURE_TAGS));
+				toAdd.add(new SummaryEdge(dReturn, dfi, ISUSchema.Edge.FLOW_METHOD_RESOLVED, ISUSchema.EDGE_FLOW_METHOD_RESOLVED_TAGS));
+			}
+			
+			for(GraphElement dfiParam : dfiParams){
+				GraphElement dParam = dParams.filter(XCSG.parameterIndex, dfiParam.getAttr(XCSG.parameterIndex)).getFirst();
+				if(dParam == null) {
+					Log.warning("Missing dependencies", new FlowMinerException("Unable to find signature param for:\n" + dfiParam + "\n" + dMethod));
+					return;
 				}
-				
-				if(!toAdd.isEmpty()) summaryEdges.addAll(toAdd);
-			}}))[0]);
-		}
+				if(isSingleton){
+					toAdd.add(new SummaryEdge(dfiParam, dParam, ISUSchema.Edge.FLOW_METHOD_RESOLVED, ISUSchema.EDGE_FLOW_METHOD_RESOLVED_TAGS));
+				}else{
+					toAdd.add(new SummaryEdge(dfiParam, dfi, ISUSchema.Edge.DYNAMIC_CALLSITE_PARAM, ISUSchema.EDGE_DYNAMIC_CALLSITE_PARAM_TAGS));
+				}
+			}
+			
+			if(!isSingleton){
+				toAdd.add(new SummaryEdge(dfi, dTTS, ISUSchema.Edge.DYNAMIC_CALLSITE_TYPE, ISUSchema.EDGE_DYNAMIC_CALLSITE_TYPE_TAGS));
+				toAdd.add(new SummaryEdge(dfi, dMethod, ISUSchema.Edge.DYNAMIC_CALLSITE_SIGNATURE, ISUSchema.EDGE_DYNAMIC_CALLSITE_SIGNATURE_TAGS));
+			}
+			
+			if(!toAdd.isEmpty()) summaryEdges.addAll(toAdd);
+		}}));
 	}
 	
 	private class SummaryEdge{
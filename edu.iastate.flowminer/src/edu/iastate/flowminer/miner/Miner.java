@@ -11,6 +11,7 @@ import com.ensoftcorp.atlas.core.script.UniverseManipulator;
 import edu.iastate.flowminer.exception.FlowMinerException;
 import edu.iastate.flowminer.log.Log;
 import edu.iastate.flowminer.schema.SummarySchema;
+import edu.iastate.flowminer.utility.JobTrace;
 
 public abstract class Miner {
 	/**
@@ -55,6 +56,7 @@ public abstract class Miner {
 					return new Status(Status.ERROR, Log.pluginid, "Exception thrown during mining", t);
 				}finally{
 					sm.done();
+					JobTrace.writeIfRequested();
 				}
 			}
 		};
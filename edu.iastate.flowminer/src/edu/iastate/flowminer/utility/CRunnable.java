@@ -2,7 +2,7 @@ package edu.iastate.flowminer.utility;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
-public class CRunnable implements Runnable{
+public class CRunnable implements Runnable, PrecedenceGraph.CostKeyed{
 	IProgressMonitor mon;
 	Runnable r;
 	
@@ -11,6 +11,14 @@ public class CRunnable implements Runnable{
 		this.r = r;
 	}
 	
+	/**
+	 * Jobs learn their costs by the work they wrap.
+	 */
+	@Override
+	public Object costKey() {
+		return r.getClass();
+	}
+	
 	@Override
 	public void run() {
 		if(mon != null && mon.isCanceled()) return;
@@ -0,0 +1,281 @@
+package edu.iastate.flowminer.utility;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.iastate.flowminer.io.common.ThreadPool.TaskWrapper;
+import edu.iastate.flowminer.io.common.ThreadPool.Work;
+import edu.iastate.flowminer.log.Log;
+
+/**
+ * Records a timeline of the jobs run through {@link PrecedenceGraph} and the
+ * pools of {@link edu.iastate.flowminer.io.common.ThreadPool}, including the
+ * io plugin's own tasks such as reading packages and compressing summaries:
+ * when each was queued, started and finished, on which thread, and which
+ * jobs it waited on. While recording, each job is also committed as a JDK
+ * Flight Recorder event, if the JVM has JFR and the edu.iastate.flowminer.jfr
+ * fragment is installed, so it shows up in any running flight recording.
+ *
+ * 1) {@link #start()} recording
+ * 2) Run the work to look at
+ * 3) {@link #stop()} recording, and {@link #writeChromeTrace(File)} to open
+ * the timeline in chrome://tracing or Perfetto
+ *
+ * Or, without writing any code, start Eclipse with
+ * -Dflowminer.trace=&lt;file&gt; to record from when the plugin starts, and
+ * write the timeline to the file each time mining ends.
+ */
+public class JobTrace {
+	// Don't construct this class
+	private JobTrace() {
+	}
+
+	public static final String TRACE_PROPERTY = "flowminer.trace";
+
+	private static volatile boolean recording;
+	private static final AtomicLong idGen = new AtomicLong();
+	private static final ConcurrentLinkedQueue<Job> jobs = new ConcurrentLinkedQueue<Job>();
+	private static final ConcurrentLinkedQueue<long[]> edges = new ConcurrentLinkedQueue<long[]>();
+	private static final FlightRecorder flightRecorder = loadFlightRecorder();
+
+	/**
+	 * Marks jobs which record themselves, so that the pools do not record
+	 * them again.
+	 */
+	interface SelfTraced{
+	}
+
+	/**
+	 * Commits jobs as Flight Recorder events. Implemented in the Java 11
+	 * fragment, since this plugin is built for Java 8.
+	 */
+	interface FlightRecorder{
+		/**
+		 * @return the started event, or null if it is not being recorded
+		 */
+		Object begin(Job job);
+
+		void commit(Object event);
+	}
+
+	private static final TaskWrapper POOL_TRACER = new TaskWrapper(){
+		@Override
+		public Runnable wrap(Work work, Runnable task) {
+			return trace(task);
+		}
+	};
+
+	/**
+	 * Forget anything recorded so far, and start recording.
+	 */
+	public static void start(){
+		jobs.clear();
+		edges.clear();
+		recording = true;
+		edu.iastate.flowminer.io.common.ThreadPool.setTaskWrapper(POOL_TRACER);
+	}
+
+	/**
+	 * Stop recording. What was recorded is kept until the next start.
+	 */
+	public static void stop(){
+		recording = false;
+		edu.iastate.flowminer.io.common.ThreadPool.setTaskWrapper(null);
+	}
+
+	/**
+	 * Start recording if {@link #TRACE_PROPERTY} names a file to write the
+	 * timeline to. Called when the plugin starts.
+	 */
+	public static void startIfRequested(){
+		if(System.getProperty(TRACE_PROPERTY) != null) start();
+	}
+
+	/**
+	 * Write everything recorded so far to the file {@link #TRACE_PROPERTY}
+	 * names, if it names one, and keep recording. Called when mining ends,
+	 * so the file always holds everything up to the latest run.
+	 */
+	public static void writeIfRequested(){
+		String destination = System.getProperty(TRACE_PROPERTY);
+		if(destination == null || !recording) return;
+		try{
+			writeChromeTrace(new File(destination));
+			Log.info("Wrote job trace to " + destination);
+		}catch(IOException e){
+			Log.warning("Could not write job trace to " + destination, e);
+		}
+	}
+
+	public static boolean isRecording(){
+		return recording;
+	}
+
+	/**
+	 * @return a new job, queued now, or null if not recording
+	 */
+	static Job queued(String category, String name){
+		if(!recording) return null;
+		return new Job(category, name);
+	}
+
+	/**
+	 * Record that the job with id child waited on the job with id ancestor.
+	 */
+	static void dependency(long ancestor, long child){
+		if(recording) edges.add(new long[]{ancestor, child});
+	}
+
+	/**
+	 * Wrap the task so that running it is recorded, if recording.
+	 */
+	static Runnable trace(final Runnable task){
+		if(!recording || task instanceof SelfTraced) return task;
+		final Job job = queued("ThreadPool", nameOf(task));
+		return new Runnable(){
+			@Override
+			public void run() {
+				job.started();
+				try{
+					task.run();
+				}finally{
+					job.finished();
+				}
+			}
+		};
+	}
+
+	static String nameOf(Object task){
+		Object key = task instanceof PrecedenceGraph.CostKeyed ? ((PrecedenceGraph.CostKeyed) task).costKey() : task.getClass();
+		return key instanceof Class ? ((Class<?>) key).getName() : String.valueOf(key);
+	}
+
+	/**
+	 * Write what was recorded in the Chrome Trace Event format. Each job is a
+	 * complete event on its thread's track, with the time it spent queued as
+	 * an argument, and each dependency is a flow arrow from the end of one
+	 * job to the start of the next.
+	 */
+	public static void writeChromeTrace(File destination) throws IOException {
+		List<Job> recorded = new ArrayList<Job>(jobs);
+		long origin = Long.MAX_VALUE;
+		for(Job job : recorded) origin = Math.min(origin, job.queuedNanos);
+
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(destination), StandardCharsets.UTF_8));
+		try{
+			out.write("{\"traceEvents\":[");
+			boolean first = true;
+			for(Job job : recorded){
+				if(job.endNanos == 0) continue;
+				if(!first) out.write(",");
+				first = false;
+				out.write("\n{\"name\":\"" + json(job.name) + "\",\"cat\":\"" + job.category + "\",\"ph\":\"X\"" +
+						",\"ts\":" + micros(job.startNanos - origin) + ",\"dur\":" + micros(job.endNanos - job.startNanos) +
+						",\"pid\":1,\"tid\":" + job.threadId +
+						",\"args\":{\"id\":" + job.id + ",\"queuedUs\":" + micros(job.startNanos - job.queuedNanos) + "}}");
+				out.write(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + job.threadId +
+						",\"args\":{\"name\":\"" + json(job.threadName) + "\"}}");
+			}
+
+			Map<Long, Job> byId = new HashMap<Long, Job>();
+			for(Job job : recorded) byId.put(job.id, job);
+			long flowId = 0;
+			for(long[] edge : edges){
+				Job from = byId.get(edge[0]), to = byId.get(edge[1]);
+				if(from == null || to == null || from.endNanos == 0 || to.endNanos == 0) continue;
+				String flow = "\"name\":\"waits on\",\"cat\":\"dependency\",\"id\":" + (++flowId) + ",\"pid\":1";
+				if(!first) out.write(",");
+				first = false;
+				out.write("\n{" + flow + ",\"ph\":\"s\",\"tid\":" + from.threadId + ",\"ts\":" + micros(from.endNanos - origin) + "}");
+				out.write(",\n{" + flow + ",\"ph\":\"f\",\"bp\":\"e\",\"tid\":" + to.threadId + ",\"ts\":" + micros(to.startNanos - origin) + "}");
+			}
+			out.write("\n],\"displayTimeUnit\":\"ms\"}\n");
+		}finally{
+			out.close();
+		}
+	}
+
+	private static String micros(long nanos){
+		return Long.toString(nanos / 1000) + "." + String.format("%03d", Math.abs(nanos % 1000));
+	}
+
+	private static String json(String s){
+		StringBuilder sb = new StringBuilder(s.length());
+		for(int i = 0; i < s.length(); i++){
+			char c = s.charAt(i);
+			if(c == '"' || c == '\\') sb.append('\\').append(c);
+			else if(c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+			else sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private static FlightRecorder loadFlightRecorder(){
+		try{
+			Class.forName("jdk.jfr.Event");
+			return (FlightRecorder) Class.forName("edu.iastate.flowminer.utility.JobEvent$Recorder").getDeclaredConstructor().newInstance();
+		}catch(Throwable t){
+			return null;
+		}
+	}
+
+	/**
+	 * One recorded run of a job.
+	 */
+	static class Job{
+		final long id = idGen.incrementAndGet();
+		final String category;
+		final String name;
+		volatile long queuedNanos = System.nanoTime();
+		volatile long startNanos, endNanos;
+		volatile long threadId;
+		volatile String threadName;
+		private Object jfrEvent;
+
+		private Job(String category, String name){
+			this.category = category;
+			this.name = name;
+			jobs.add(this);
+		}
+
+		/**
+		 * The job was queued again, now.
+		 */
+		void queued(){
+			queuedNanos = System.nanoTime();
+		}
+
+		void started(){
+			Thread t = Thread.currentThread();
+			threadId = t.getId();
+			threadName = t.getName();
+			startNanos = System.nanoTime();
+			if(flightRecorder != null){
+				try{
+					jfrEvent = flightRecorder.begin(this);
+				}catch(Throwable e){
+					Log.warning("Could not record job in flight recording", e);
+				}
+			}
+		}
+
+		void finished(){
+			endNanos = System.nanoTime();
+			if(jfrEvent != null){
+				flightRecorder.commit(jfrEvent);
+				jfrEvent = null;
+			}
+		}
+	}
+}
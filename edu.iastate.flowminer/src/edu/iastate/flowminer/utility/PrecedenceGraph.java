@@ -1,14 +1,19 @@
 package edu.iastate.flowminer.utility;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.iastate.flowminer.log.Log;
 
@@ -37,12 +42,23 @@ public class PrecedenceGraph {
 		public void jobFinished(Runnable job);
 	}
 	
-	private JobStateListener jobStateNotifier = null;
+	/**
+	 * Implemented by jobs which should share learned costs with jobs of other
+	 * runs, such as wrappers whose own class says nothing about the work.
+	 * Jobs are otherwise keyed by class.
+	 */
+	public interface CostKeyed{
+		public Object costKey();
+	}
+	
+	// Learned cost in nanoseconds, by cost key, of jobs run by any graph
+	private static final ConcurrentHashMap<Object, Long> learnedCosts = new ConcurrentHashMap<Object, Long>();
+	private static final long UNKNOWN_COST = -1;
+	
+	private JobStateNotifier jobStateNotifier = null;
 	
 	private static int idCounter;
 	private final Map<Runnable, WorkItemNode> all = new HashMap<Runnable, WorkItemNode>();
-	private Set<WorkItemNode> roots = new HashSet<WorkItemNode>();
-	private final Set<WorkItemNode> pendingCompletion = new HashSet<WorkItemNode>();
 	
 	/**
 	 * Constructs a new PrecedenceGraph with no listener for job state changes.
@@ -63,8 +79,20 @@ public class PrecedenceGraph {
 	 * @param toAdd
 	 */
 	public synchronized void add(final Runnable toAdd) {
+		add(toAdd, UNKNOWN_COST);
+	}
+	
+	/**
+	 * Add a new item to the PrecedenceGraph, with the time it is expected to
+	 * take. Items added without a cost use what earlier runs of the same
+	 * kind of job took, see {@link CostKeyed}.
+	 * 
+	 * @param toAdd
+	 * @param expectedNanos
+	 */
+	public synchronized void add(final Runnable toAdd, long expectedNanos) {
 		WorkItemNode node = new WorkItemNode(toAdd);
-		roots.add(node);
+		node.cost = expectedNanos;
 		all.put(toAdd, node);
 		if(jobStateNotifier != null) jobStateNotifier.jobAdded(toAdd);
 	}
@@ -80,102 +108,200 @@ public class PrecedenceGraph {
 			Runnable child) {
 		WorkItemNode childNode = all.get(child);
 		WorkItemNode ancestorNode = all.get(ancestor);
-		ancestorNode.children.add(childNode);
-		childNode.ancestors.add(ancestorNode);
-		roots.remove(childNode);
+		if(ancestorNode.children.add(childNode)) childNode.numAncestors++;
 	}
 
 	/**
-	 * Mark an item has having been completed.
+	 * Executes this PrecedenceGraph of tasks, either single or multithreaded.
+	 * Multithreaded, there is no dispatcher: each finished job puts those of
+	 * its children which it was the last ancestor of in a queue of ready jobs,
+	 * submitting a task to the {@link ThreadPool} for each, and this thread
+	 * just waits for the last job.
+	 * <p>
+	 * Whenever a task starts, it runs whichever ready job has the longest
+	 * expected time from its start to the end of the chain of jobs waiting on
+	 * it, so jobs on the critical path go first as threads come free. Running
+	 * jobs are not interrupted, and the graph's tasks share the pool with
+	 * other work.
+	 * <p>
+	 * While {@link JobTrace} is recording, each job is recorded along with the
+	 * jobs it waited on. Listener threads are stopped once the graph is done,
+	 * after delivering what is left to deliver.
 	 * 
-	 * @param completed
+	 * @param multithreaded
+	 * @throws Throwable 
 	 */
-	private void markCompleted(WorkItemNode completed) {
-		synchronized(all){
-			pendingCompletion.remove(completed);
-			for (WorkItemNode child : completed.children) {
-				child.ancestors.remove(completed);
-				if (child.ancestors.size() == 0) roots.add(child);
-			}
-			all.notifyAll();
+	public synchronized void execute(boolean multithreaded) throws Throwable {
+		List<WorkItemNode> order = topologicalOrder();
+		initPriorities(order);
+		List<WorkItemNode> roots = new ArrayList<WorkItemNode>();
+		for(WorkItemNode node : order){
+			if(node.numAncestors == 0) roots.add(node);
 		}
+		Collections.sort(roots, Collections.reverseOrder());
+		if(JobTrace.isRecording()) initTraces(order);
 		
-		completed.ancestors.clear();
-		completed.children.clear();
-	}
+		try{
+			if (multithreaded) {
+				Execution execution = new Execution(all.size());
+				for(WorkItemNode root : roots) execution.release(root);
+				final CountDownLatch unfinished = execution.unfinished;
+				
+				// Waiting on a pool thread lets the pool start another meanwhile
+				ForkJoinPool.ManagedBlocker wait = new ForkJoinPool.ManagedBlocker(){
+					@Override
+					public boolean block() throws InterruptedException {
+						unfinished.await();
+						return true;
+					}
 
+					@Override
+					public boolean isReleasable() {
+						return unfinished.getCount() == 0;
+					}
+				};
+				boolean interrupted = false;
+				while(true){
+					try{
+						ForkJoinPool.managedBlock(wait);
+						break;
+					}catch(InterruptedException e){
+						interrupted = true;
+					}
+				}
+				if(interrupted) Thread.currentThread().interrupt();
+			} else {
+				for(WorkItemNode root : roots){
+					if(root.trace != null) root.trace.queued();
+				}
+				TreeSet<WorkItemNode> ready = new TreeSet<WorkItemNode>(roots);
+				WorkItemNode nextItem;
+				while ((nextItem = ready.pollLast()) != null) {
+					nextItem.runItem();
+					for(WorkItemNode child : nextItem.children){
+						if(child.pending.decrementAndGet() == 0){
+							if(child.trace != null) child.trace.queued();
+							ready.add(child);
+						}
+					}
+				}
+			}
+		}finally{
+			all.clear();
+			if(jobStateNotifier != null) jobStateNotifier.stop();
+		}
+	}
+	
 	/**
-	 * Executes this PrecedenceGraph of tasks, either single or multithreaded.
+	 * Reset each job's count of unfinished ancestors.
 	 * 
-	 * @param multithreaded
-	 * @throws Throwable 
+	 * @return every job, ancestors before children
+	 * @throws RuntimeException if the jobs cannot all be run because of a
+	 * cycle, in which case none are run
 	 */
-	public synchronized void execute(boolean multithreaded) throws Throwable {
-		initDescendentCounts();
-		roots = new TreeSet<WorkItemNode>(roots);
-		WorkItemNode nextItem;
-		if (multithreaded) {
-			LinkedList<Future<?>> submitted = new LinkedList<Future<?>>();
-			while ((nextItem = blockForNextItem()) != null) {
-				submitted.add(ThreadPool.submitRunnables(nextItem)[0]);
-			}
-			ThreadPool.blockUntilAllComplete(true, submitted);
-		} else {
-			while ((nextItem = blockForNextItem()) != null) {
-				nextItem.run();
+	private List<WorkItemNode> topologicalOrder(){
+		List<WorkItemNode> order = new ArrayList<WorkItemNode>(all.size());
+		for(WorkItemNode node : all.values()){
+			node.pending.set(node.numAncestors);
+			if(node.numAncestors == 0) order.add(node);
+		}
+		
+		// Kahn's algorithm, on a scratch count
+		Map<WorkItemNode, Integer> remaining = new HashMap<WorkItemNode, Integer>();
+		for(int i = 0; i < order.size(); i++){
+			for(WorkItemNode child : order.get(i).children){
+				Integer left = remaining.get(child);
+				int now = (left == null ? child.numAncestors : left) - 1;
+				remaining.put(child, now);
+				if(now == 0) order.add(child);
 			}
 		}
-		roots = new HashSet<WorkItemNode>();
+		if(order.size() != all.size())
+			throw new RuntimeException("Precedence graph with cyclical dependencies could not be executed!");
+		
+		return order;
 	}
-
+	
 	/**
-	 * Walk the precedence graph, building up counts of the number of descendents.
-	 * That value is stored as a field of each node for use in by sorted root set.
-	 * @throws Throwable 
+	 * Set each job's priority to the expected time of the longest chain of
+	 * jobs starting with it, in one pass from the last jobs back. Jobs with
+	 * neither a given nor a learned cost count as the average of the rest.
 	 */
-	private void initDescendentCounts() throws Throwable{
-		List<Runnable> initJobs = new LinkedList<Runnable>();
-		
-		for(final WorkItemNode win : all.values()){
-			initJobs.add(new Runnable(){
-				@Override
-				public void run() {
-					win.initDescendents();
-				}	
-			});
+	private void initPriorities(List<WorkItemNode> order){
+		long known = 0, total = 0;
+		for(WorkItemNode node : order){
+			if(node.cost == UNKNOWN_COST){
+				Long learned = learnedCosts.get(node.costKey());
+				if(learned != null) node.cost = learned;
+			}
+			if(node.cost != UNKNOWN_COST){
+				known++;
+				total += node.cost;
+			}
 		}
+		long defaultCost = known == 0 ? 1 : Math.max(total / known, 1);
 		
-		ThreadPool.submitRunnablesBlocking(true, initJobs);
+		for(int i = order.size() - 1; i >= 0; i--){
+			WorkItemNode node = order.get(i);
+			long longestAfter = 0;
+			for(WorkItemNode child : node.children) longestAfter = Math.max(longestAfter, child.priority);
+			node.priority = (node.cost == UNKNOWN_COST ? defaultCost : node.cost) + longestAfter;
+		}
 	}
 	
 	/**
-	 * Returns the next available item that can be worked on, blocking to wait
-	 * for one to become ready if necessary. If there is no next available item,
-	 * then returns null.
-	 * 
-	 * @return
+	 * Make each job's trace, and record what each waits on.
 	 */
-	private WorkItemNode blockForNextItem() {
-		synchronized(all){
-			while(true) {	
-				if (!roots.isEmpty()) {
-					WorkItemNode next = ((TreeSet<WorkItemNode>) roots).pollLast();
-					all.remove(next.thisItem);
-					pendingCompletion.add(next);
-					return next;
-				} else if(pendingCompletion.isEmpty()){
-					if(!all.isEmpty()) 
-						throw new RuntimeException("Precedence graph with cyclical dependencies could not be executed!");
-
-					return null;
-				}
-				
-				try {
-					all.wait(500);
-				} catch (InterruptedException e) { Log.error("Problem encountered in ThreadPool thread.", e); }
+	private void initTraces(List<WorkItemNode> order){
+		for(WorkItemNode node : order) node.trace = JobTrace.queued("PrecedenceGraph", JobTrace.nameOf(node.thisItem));
+		for(WorkItemNode node : order){
+			if(node.trace == null) continue;
+			for(WorkItemNode child : node.children){
+				if(child.trace != null) JobTrace.dependency(node.trace.id, child.trace.id);
 			}
 		}
 	}
+	
+	/**
+	 * The state of one multithreaded execution, kept by the pool's tasks
+	 * rather than the graph, since execute forgets its jobs if it is left
+	 * early while they still run.
+	 */
+	private static class Execution implements Runnable, JobTrace.SelfTraced {
+		// Jobs which have not finished yet
+		private final CountDownLatch unfinished;
+		private final PriorityBlockingQueue<WorkItemNode> ready = new PriorityBlockingQueue<WorkItemNode>(11, Collections.reverseOrder());
+		
+		Execution(int jobs){
+			unfinished = new CountDownLatch(jobs);
+		}
+		
+		/**
+		 * Queue a job whose ancestors have all finished, and a task to run
+		 * the most urgent ready job. If the pool refuses the task it is run
+		 * here, so that execute is never left waiting.
+		 */
+		void release(WorkItemNode node){
+			if(node.trace != null) node.trace.queued();
+			ready.add(node);
+			try{
+				ThreadPool.submitRunnables(this);
+			}catch(RuntimeException e){
+				Log.error("Could not submit job to the ThreadPool, running it now", e);
+				run();
+			}
+		}
+		
+		/**
+		 * Run the most urgent ready job. There is a task for each job
+		 * released, so every job is run.
+		 */
+		@Override
+		public void run() {
+			WorkItemNode node = ready.poll();
+			if(node != null) node.run(this);
+		}
+	}
 
 	/**
 	 * An item in the PrecedenceGraph.
@@ -183,134 +309,187 @@ public class PrecedenceGraph {
 	 * @author Tom Deering
 	 * 
 	 */
-	private class WorkItemNode implements Runnable, Comparable<WorkItemNode> {
+	private class WorkItemNode implements Comparable<WorkItemNode> {
 		private int id;
 		private Runnable thisItem;
-		private int descendents = Integer.MIN_VALUE;
-		private Set<WorkItemNode> ancestors = new HashSet<WorkItemNode>();
-		private Set<WorkItemNode> children = new HashSet<WorkItemNode>();
+		// Expected nanoseconds for this job, and for the longest chain of jobs
+		// starting with it
+		private long cost;
+		private long priority;
+		private int numAncestors;
+		// Ancestors which have not finished in the running execution
+		private final AtomicInteger pending = new AtomicInteger();
+		private Set<WorkItemNode> children = new LinkedHashSet<WorkItemNode>();
+		// This job's record while JobTrace is recording, otherwise null
+		private JobTrace.Job trace;
 
 		public WorkItemNode(Runnable item) {
 			this.id = idCounter++;
 			thisItem = item;
 		}
 
-		@Override
-		public void run() {
+		/**
+		 * Run the job on the pool, then release any children now ready.
+		 */
+		private void run(Execution execution) {
+			try{
+				runItem();
+				
+				for(WorkItemNode child : children){
+					if(child.pending.decrementAndGet() == 0) execution.release(child);
+				}
+			}finally{
+				execution.unfinished.countDown();
+			}
+		}
+		
+		private void runItem() {
 			if(jobStateNotifier != null) jobStateNotifier.jobStarted(thisItem);
 			
+			JobTrace.Job trace = this.trace;
+			if(trace != null) trace.started();
+			long start = System.nanoTime();
 			try{
 				thisItem.run();
 			}catch(Throwable t){ Log.error("ThreadPool thread encountered exception", t); }
- 			PrecedenceGraph.this.markCompleted(this);
+			learn(System.nanoTime() - start);
+			if(trace != null) trace.finished();
+			this.trace = null;
  			
  			if(jobStateNotifier != null) jobStateNotifier.jobFinished(thisItem);
 		}
 		
-		private void initDescendents(){
-			Set<WorkItemNode> descendentSet = new HashSet<WorkItemNode>(children);
-			for(WorkItemNode child : children) descendentWalk(child, descendentSet);
-			descendents = descendentSet.size();
+		private Object costKey(){
+			return thisItem instanceof CostKeyed ? ((CostKeyed) thisItem).costKey() : thisItem.getClass();
 		}
 		
-		private void descendentWalk(WorkItemNode current, Set<WorkItemNode> descendentSet){
-			for(WorkItemNode win : current.children){
-				if(!descendentSet.contains(win)){
-					descendentSet.add(win);
-					descendentWalk(win, descendentSet);
+		/**
+		 * Fold the time this run took into the learned cost, weighting the
+		 * latest run by half.
+		 */
+		private void learn(long nanos){
+			Object key = costKey();
+			if(key == null) return;
+			while(true){
+				Long old = learnedCosts.get(key);
+				if(old == null){
+					if(learnedCosts.putIfAbsent(key, nanos) == null) return;
+				}else if(learnedCosts.replace(key, old, (old + nanos) / 2)){
+					return;
 				}
 			}
 		}
 		
 		@Override
 		public int compareTo(WorkItemNode arg0) {
-			int comparison = this.descendents - arg0.descendents;
+			int comparison = Long.compare(this.priority, arg0.priority);
 			return comparison == 0 ? this.id - arg0.id : comparison;
 		}
 	}
 	
+	/**
+	 * Delivers job state changes to a listener on a thread of its own, one
+	 * at a time and in the order they happened. The thread is started when
+	 * there is something to deliver, and stops once stopped and drained.
+	 */
 	private class JobStateNotifier implements JobStateListener{
-		JobStateListener listener;
-		AdditionNotifier additionNotifier;
-		StartNotifier startNotifier;
-		FinishNotifier finishNotifier;
+		private final JobStateListener listener;
+		// Guarded by this; null while stopped
+		private LinkedBlockingQueue<Runnable> queue;
+		private Thread thread;
 		
 		public JobStateNotifier(JobStateListener listener){
 			this.listener = listener;
-			additionNotifier = new AdditionNotifier();
-			startNotifier = new StartNotifier();
-			finishNotifier = new FinishNotifier();
 		}
 		
 		@Override
-		public void jobAdded(Runnable job) {
-			additionNotifier.addToQueue(job);
+		public void jobAdded(final Runnable job) {
+			post(new Runnable(){
+				@Override
+				public void run() {
+					listener.jobAdded(job);
+				}
+			});
 		}
 
 		@Override
-		public void jobStarted(Runnable job) {
-			startNotifier.addToQueue(job);
+		public void jobStarted(final Runnable job) {
+			post(new Runnable(){
+				@Override
+				public void run() {
+					listener.jobStarted(job);
+				}
+			});
 		}
 
 		@Override
-		public void jobFinished(Runnable job) {
-			finishNotifier.addToQueue(job);
+		public void jobFinished(final Runnable job) {
+			post(new Runnable(){
+				@Override
+				public void run() {
+					listener.jobFinished(job);
+				}
+			});
 		}
 		
-		private abstract class ActionQueueThread<T> implements Runnable{
-			LinkedBlockingQueue<T> queue = new LinkedBlockingQueue<T>();
-			Thread t;
-			
-			public ActionQueueThread(){
-				t = new Thread(this);
-				t.start();
-			}
-			
-			public void addToQueue(T job){
-				boolean success = false;
-				while(!success){
-					try{
-						queue.put(job);
-						success = true;
-					}catch(InterruptedException ie){}
-				}
-			}
-			
-			public abstract void takeAction(T t);
-			
-			@Override
-			public void run() {
-				T item;
-				while(true){
-					try {
-						item = queue.take();
-						
-						try{
-							takeAction(item);
-						}catch(Exception e){}
-					} catch (InterruptedException e) {}
-				}
+		private synchronized void post(Runnable event){
+			if(queue == null){
+				queue = new LinkedBlockingQueue<Runnable>();
+				thread = new Thread(new Deliverer(queue, thread), "PrecedenceGraph job state notifier");
+				thread.setDaemon(true);
+				thread.start();
 			}
+			queue.add(event);
 		}
 		
-		private class AdditionNotifier extends ActionQueueThread<Runnable>{
-			@Override
-			public void takeAction(Runnable job) {
-				listener.jobAdded(job);
-			}
+		/**
+		 * Let the thread exit after delivering what has been posted so far.
+		 */
+		public synchronized void stop(){
+			if(queue == null) return;
+			queue.add(STOP);
+			queue = null;
 		}
+	}
+	
+	private static final Runnable STOP = new Runnable(){
+		@Override
+		public void run() {
+		}
+	};
+	
+	private static class Deliverer implements Runnable{
+		private final LinkedBlockingQueue<Runnable> queue;
+		// The thread delivering earlier changes, if it might not be done yet
+		private Thread previous;
 		
-		private class StartNotifier extends ActionQueueThread<Runnable>{
-			@Override
-			public void takeAction(Runnable job) {
-				listener.jobStarted(job);
-			}
+		Deliverer(LinkedBlockingQueue<Runnable> queue, Thread previous){
+			this.queue = queue;
+			this.previous = previous;
 		}
 		
-		private class FinishNotifier extends ActionQueueThread<Runnable>{
-			@Override
-			public void takeAction(Runnable job) {
-				listener.jobFinished(job);
+		@Override
+		public void run() {
+			while(previous != null){
+				try{
+					previous.join();
+					previous = null;
+				}catch(InterruptedException e){}
+			}
+			
+			while(true){
+				Runnable event;
+				try{
+					event = queue.take();
+				}catch(InterruptedException e){
+					continue;
+				}
+				if(event == STOP) return;
+				try{
+					event.run();
+				}catch(Throwable t){
+					Log.error("Job state listener encountered exception", t);
+				}
 			}
 		}
 	}
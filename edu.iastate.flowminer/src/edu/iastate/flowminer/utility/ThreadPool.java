@@ -1,17 +1,26 @@
 
 package edu.iastate.flowminer.utility;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import edu.iastate.flowminer.io.common.ThreadPool.Work;
 
 /**
- * A wrapped, fixed thread pool for accomplishing tasks in parallel. Allows for
- * both synchronous and asynchronous task execution.
+ * Runs tasks in parallel on the CPU bound pool shared with the io plugin,
+ * see {@link edu.iastate.flowminer.io.common.ThreadPool} for how it is
+ * configured. Allows for both synchronous and asynchronous task execution.
  * 
  * @author Tom Deering
  * 
@@ -21,11 +30,6 @@ public abstract class ThreadPool {
 	private ThreadPool() {
 	}
 
-	// The wrapped thread pool. We do 2 more than the number of CPUs so that
-	// use cases where multiple threads in the pool block don't cause a deadlock.
-	private static ThreadPoolExecutor executor = (ThreadPoolExecutor) 
-			Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()*2 + 2);
-	
 	/**
 	 * Submits the given runnables for non-blocking execution.
 	 * 
@@ -33,14 +37,12 @@ public abstract class ThreadPool {
 	 * @return
 	 */
 	public static Future<?>[] submitRunnables(Runnable... tasks) {
-		List<Runnable> taskList = new LinkedList<Runnable>();
-		for (Runnable r : tasks)
-			taskList.add(r);
-		return submitRunnables(taskList);
+		return submitRunnables(new ArrayList<Runnable>(Arrays.asList(tasks)));
 	}
 
 	/**
-	 * Submits the given runnables for non-blocking execution.
+	 * Submits the given runnables for non-blocking execution. While
+	 * {@link JobTrace} is recording, each run is recorded.
 	 * 
 	 * @param tasks
 	 * @return
@@ -49,12 +51,12 @@ public abstract class ThreadPool {
 		// Randomize task order, to mitigate worst-case performance problems
 		// with
 		// concurrent locking
-		Collections.shuffle(tasks);
+		if(tasks.size() > 1) Collections.shuffle(tasks);
 
 		// Add the tasks
 		Future<?>[] futures = new Future<?>[tasks.size()];
 		for (int i = 0; i < tasks.size(); i++) {
-			futures[i] = executor.submit(tasks.get(i));
+			futures[i] = submit(tasks.get(i));
 		}
 
 		return futures;
@@ -103,7 +105,8 @@ public abstract class ThreadPool {
 	/**
 	 * Blocks until the Runnables for the given Futures complete.
 	 * 
-	 * Optionally rethrows for issues encountered by the tasks.
+	 * Optionally rethrows for issues encountered by the tasks, as they were
+	 * thrown.
 	 * 
 	 * @param throwTaskException
 	 * @param waitFor
@@ -111,22 +114,141 @@ public abstract class ThreadPool {
 	 * @throws Throwable 
 	 */
 	public static void blockUntilAllComplete(boolean throwTaskException, LinkedList<Future<?>> waitFor) throws Throwable {
-		// Wait for tasks to complete
-		while (waitFor.size() > 0) {
-			Future<?> f = waitFor.poll();
-
-			while (true) {
-				synchronized (f) {
-					if (f.isDone())
-						break;
-					try {
-						f.get();
-					} catch (InterruptedException e) {
-					} catch (ExecutionException e) {
-						if(throwTaskException) throw e.getCause();
+		try{
+			edu.iastate.flowminer.io.common.ThreadPool.blockUntilAllComplete(throwTaskException, waitFor);
+		}catch(CompletionException e){
+			// Thrown by a task which joined a failed CompletableFuture
+			throw e.getCause() != null ? e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Runs the body once for each of the elements, without blocking. See
+	 * {@link #parallelFor(IProgressMonitor, Iterable, int, Consumer)}.
+	 */
+	public static <T> Future<?> parallelFor(Iterable<? extends T> elements, int chunkSize, Consumer<? super T> body) {
+		return parallelFor(null, elements, chunkSize, body);
+	}
+
+	/**
+	 * Runs the body once for each of the elements, without blocking, and
+	 * returns one Future for the whole batch.
+	 * 
+	 * The elements start out as a single range. Whichever thread runs a range
+	 * works through it chunkSize elements at a time, and before each chunk
+	 * splits off the upper half of what is left for the pool for as long as
+	 * the pool has idle threads to take the halves. So the batch only costs
+	 * about as many tasks as there are threads to keep busy, however many
+	 * elements it has, and threads that run out of work are given more.
+	 * 
+	 * If the body throws, elements not yet started are skipped and, once
+	 * every range has stopped, the batch fails with the first exception.
+	 * Elements not yet started are also skipped once the monitor, if any, is
+	 * canceled. Each element run counts one unit of work on the monitor,
+	 * reported after each chunk.
+	 * 
+	 * @param mon
+	 * @param elements
+	 * @param chunkSize fewest elements worth running as a task of their own
+	 * @param body
+	 * @return
+	 */
+	public static <T> Future<?> parallelFor(IProgressMonitor mon, Iterable<? extends T> elements, int chunkSize, Consumer<? super T> body) {
+		List<T> list = new ArrayList<T>();
+		for(T t : elements) list.add(t);
+		Batch<T> batch = new Batch<T>(mon, list, Math.max(chunkSize, 1), body);
+		if(list.isEmpty()) batch.done.complete(null);
+		else submit(batch.new Range(0, list.size()));
+		return batch.done;
+	}
+
+	/**
+	 * One call of parallelFor.
+	 */
+	private static class Batch<T>{
+		private final IProgressMonitor mon;
+		private final List<T> elements;
+		private final int chunkSize;
+		private final Consumer<? super T> body;
+		// Elements not yet run or skipped
+		private final AtomicInteger remaining;
+		// The first exception the body threw
+		private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		private final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+		Batch(IProgressMonitor mon, List<T> elements, int chunkSize, Consumer<? super T> body){
+			this.mon = mon;
+			this.elements = elements;
+			this.chunkSize = chunkSize;
+			this.body = body;
+			remaining = new AtomicInteger(elements.size());
+		}
+
+		private boolean stopped(){
+			return error.get() != null || (mon != null && mon.isCanceled());
+		}
+
+		private void worked(int ran){
+			if(mon != null && ran > 0){
+				synchronized(mon){
+					mon.worked(ran);
+				}
+			}
+		}
+
+		private class Range implements Runnable, PrecedenceGraph.CostKeyed{
+			private final int from;
+			private int to;
+
+			Range(int from, int to){
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			public Object costKey() {
+				return body.getClass();
+			}
+
+			@Override
+			public void run() {
+				int ran = 0;
+				try{
+					int i = from;
+					while(i < to && !stopped()){
+						splitWhileIdle(i);
+						int end = Math.min(i + chunkSize, to);
+						for(; i < end && !stopped(); i++){
+							body.accept(elements.get(i));
+							ran++;
+						}
+						worked(ran);
+						ran = 0;
+					}
+				}catch(Throwable t){
+					error.compareAndSet(null, t);
+				}finally{
+					worked(ran);
+					// The last range to stop completes the batch
+					if(remaining.addAndGet(from - to) == 0){
+						Throwable t = error.get();
+						if(t == null) done.complete(null);
+						else done.completeExceptionally(t);
 					}
 				}
 			}
+
+			/**
+			 * Hand the upper half of what is left, from next on, to the pool
+			 * for as long as it has threads with nothing to do.
+			 */
+			private void splitWhileIdle(int next){
+				while(to - next > chunkSize && edu.iastate.flowminer.io.common.ThreadPool.hasIdleThreads(Work.CPU)){
+					int mid = (next + to) >>> 1;
+					submit(new Range(mid, to));
+					to = mid;
+				}
+			}
 		}
 	}
 
@@ -137,6 +259,10 @@ public abstract class ThreadPool {
 	 * @return
 	 */
 	public static int numRunnablesInQueue() {
-		return executor.getQueue().size();
+		return edu.iastate.flowminer.io.common.ThreadPool.numRunnablesInQueue();
+	}
+
+	private static Future<?> submit(Runnable task) {
+		return edu.iastate.flowminer.io.common.ThreadPool.submit(Work.CPU, task);
 	}
 }
\ No newline at end of file